@@ -0,0 +1,199 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.ui.auctionTableModel;
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+import com.jbidwatcher.Upgrader;
+
+import java.util.*;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * What the benchmarks share; finding and parsing saved pages, making and
+ * 'painting' entries, measuring the heap, and scratch databases.
+ */
+final class Bench {
+  /** The saved pages checked in with the source, which most benchmarks run over unless they're given another directory. */
+  static final String PAGES = "bench/pages";
+
+  private Bench() { }
+
+  /**
+   * @param dirName - The directory to list.
+   *
+   * @return The files in the directory, or null (after saying so) if it can't be read.
+   */
+  static File[] listPages(String dirName) {
+    File[] pages = new File(dirName).listFiles();
+    if(pages == null) System.err.println("Can't read directory: " + dirName);
+    return pages;
+  }
+
+  /**
+   * @param server - The server to parse the pages with.
+   * @param dirName - The directory holding saved item pages.
+   *
+   * @return The first item page in it that parses, with the database turned off, or null if none do.
+   */
+  static AuctionInfo parseSample(ebayServer server, String dirName) {
+    File[] pages = listPages(dirName);
+    if(pages == null) return null;
+
+    ActiveRecord.disableDatabase();
+    for(File page : pages) {
+      if(!page.isFile() || !page.getName().startsWith("item")) continue;
+      try {
+        AuctionInfo sample = server.doParse(new StringBuffer(StringTools.cat(page.getAbsolutePath())));
+        if(sample != null) return sample;
+      } catch(Exception ignored) {
+        //  Try the next one.
+      }
+    }
+    System.err.println("No item pages parsed in: " + dirName);
+    return null;
+  }
+
+  /**
+   * Make in-memory copies of a parsed item, each with its own identifier.
+   *
+   * @param sample - The item to copy.
+   * @param count - How many entries to make.
+   * @param list - The list to add them to.
+   *
+   * @return The entries, in the order they were added.
+   */
+  static List<AuctionEntry> makeEntries(AuctionInfo sample, int count, AuctionList list) {
+    List<AuctionEntry> entries = new ArrayList<AuctionEntry>(count);
+    for(int i=0; i<count; i++) {
+      String identifier = Long.toString(300000000L + i);
+      AuctionInfo ai = new AuctionInfo();
+      ai.setBacking(copyStrings(sample.getBacking(), new Record(), false));
+      ai.setString("id", Integer.toString(i + 1));
+      ai.setString("identifier", identifier);
+      AuctionEntry ae = EntryFactory.getInstance().constructEntry();
+      ae.setString("identifier", identifier);
+      ae.setCategory("current");
+      ae.setAuctionInfo(ai);
+      entries.add(ae);
+      list.add(ae);
+    }
+    return entries;
+  }
+
+  static void paintRows(auctionTableModel model, int from, int to, int columns) {
+    for(int row=from; row<to; row++) {
+      for(int column=0; column<columns; column++) model.getValueAt(row, column);
+    }
+  }
+
+  static <T extends Map<String, String>> T copyStrings(Map<String, String> from, T to, boolean copyKeys) {
+    for(Map.Entry<String, String> e : from.entrySet()) {
+      String key = copyKeys ? new String(e.getKey()) : e.getKey();
+      to.put(key, e.getValue() == null ? null : new String(e.getValue()));
+    }
+    return to;
+  }
+
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    //  Collect until it stops shrinking, so the measurement isn't thrown off by garbage.
+    for(int i=0; i<10; i++) {
+      System.gc();
+      try { Thread.sleep(50); } catch(InterruptedException ignored) { }
+      long now = rt.totalMemory() - rt.freeMemory();
+      if(now >= used) break;
+      used = now;
+    }
+    return used;
+  }
+
+  /**
+   * Point JBidwatcher at a new, empty database in a scratch directory.
+   *
+   * @throws Exception - If the scratch directory or database can't be created.
+   */
+  static void openScratchDatabase() throws Exception {
+    File scratch = File.createTempFile("jbdb", "bench");
+    if(!scratch.delete() || !scratch.mkdirs()) throw new IOException("Can't create a scratch directory.");
+    JConfig.setHomeDirectory(scratch.getAbsolutePath());
+    Upgrader.upgrade();
+    ActiveRecord.enableDatabase();
+  }
+
+  /**
+   * Parse a saved item page, and save it as a new entry in the database.
+   *
+   * @param server - The server to parse the page with.
+   * @param name - The page's name, for reporting.
+   * @param source - The page's HTML.
+   *
+   * @return The new entry, or null if the page couldn't be parsed.
+   *
+   * @throws Exception - If the page says it needs reloading.
+   */
+  static AuctionEntry loadPageEntry(ebayServer server, String name, String source) throws Exception {
+    AuctionInfo ai = server.doParse(new StringBuffer(source));
+    if(ai == null) {
+      System.out.println(name + ": failed to parse, skipped.");
+      return null;
+    }
+    ai.saveDB();
+    AuctionEntry ae = EntryFactory.getInstance().constructEntry();
+    ae.setString("identifier", ai.getIdentifier());
+    ae.setCategory("current");
+    ae.setAuctionInfo(ai);
+    return ae;
+  }
+
+  /**
+   * Read every entry value the auction table's columns display.
+   *
+   * @param ae - The entry to 'paint'.
+   */
+  static void paintRow(AuctionEntry ae) {
+    ae.getErrorPage();
+    ae.getIdentifier();
+    ae.getCurrentPrice();
+    ae.isFixed();
+    ae.getQuantity();
+    ae.getNumBidders();
+    ae.isBidOn();
+    ae.isSniped();
+    ae.getSnipeAmount();
+    ae.snipeCancelled();
+    ae.isComplete();
+    ae.getEndDate();
+    ae.getTimeLeft();
+    ae.getTitle();
+    ae.getFlags();
+    ae.getSellerName();
+    ae.getComment();
+    ae.getHighBidder();
+    ae.getBuyNow();
+    ae.getShippingWithInsurance();
+    ae.getItemLocation();
+  }
+
+  /**
+   * @return A way to count the bytes each thread allocates, or null (after saying so) if this JVM can't.
+   */
+  static com.sun.management.ThreadMXBean allocationCounter() {
+    java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+    if(!(mx instanceof com.sun.management.ThreadMXBean)) {
+      System.err.println("This JVM can't report allocated bytes.");
+      return null;
+    }
+    return (com.sun.management.ThreadMXBean) mx;
+  }
+}
@@ -0,0 +1,101 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.AuctionServerManager;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Observer;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+/**
+ * Runs the benchmarks and checks, which aren't part of the application.
+ * They're built from bench/src by the 'compile-bench' target, and run from
+ * the top of the source tree, so they can find the saved pages in bench/pages:
+ *
+ *   java -cp classes:bench-classes:lib/... com.jbidwatcher.bench.BenchTool [--debug] [--logging] name[=argument] ...
+ *
+ * Each named benchmark is run in turn.  The checks print PASS or FAIL as
+ * their last line.
+ */
+public class BenchTool {
+  private static final Map<String, Class<? extends Benchmark>> sBenchmarks = new LinkedHashMap<String, Class<? extends Benchmark>>();
+
+  static {
+    sBenchmarks.put("timequeue", TimeQueueBenchmark.class);
+    sBenchmarks.put("db", DatabaseBenchmark.class);
+    sBenchmarks.put("persist", PersistenceBenchmark.class);
+    sBenchmarks.put("parse", ParseBenchmark.class);
+    sBenchmarks.put("memory", MemoryBenchmark.class);
+    sBenchmarks.put("repaint", RepaintBenchmark.class);
+    sBenchmarks.put("sort", SortBenchmark.class);
+    sBenchmarks.put("changes", ChangeDetectionBenchmark.class);
+    sBenchmarks.put("updates", UpdateBenchmark.class);
+    sBenchmarks.put("gzip", CompressionBenchmark.class);
+    sBenchmarks.put("logging", LoggingBenchmark.class);
+    sBenchmarks.put("index", IndexRouteBenchmark.class);
+    sBenchmarks.put("http", HttpBenchmark.class);
+    sBenchmarks.put("receive", ReceiveBenchmark.class);
+    sBenchmarks.put("queue", QueueBenchmark.class);
+    sBenchmarks.put("snipes", SnipeTimingBenchmark.class);
+
+    sBenchmarks.put("parity", ParityCheck.class);
+    sBenchmarks.put("tokencheck", TokenizerCheck.class);
+    sBenchmarks.put("querycount", QueryCountCheck.class);
+    sBenchmarks.put("updatecheck", UpdateIndexCheck.class);
+    sBenchmarks.put("conditionalcheck", ConditionalRequestCheck.class);
+    sBenchmarks.put("timecheck", ClockCheck.class);
+  }
+
+  private BenchTool() { }
+
+  public static void main(String[] args) throws Exception {
+    ActiveRecord.disableDatabase();
+    AuctionEntry.addObserver(EntryFactory.getInstance());
+    AuctionEntry.addObserver(new Observer<AuctionEntry>() {
+      public void afterCreate(AuctionEntry o) {
+        EntryCorral.getInstance().putWeakly(o);
+      }
+    });
+
+    int ran = 0;
+    ebayServer server = null;
+    for(String arg : args) {
+      if(arg.equals("--debug")) { JConfig.setConfiguration("debugging", "true"); continue; }
+      if(arg.equals("--logging")) { JConfig.setConfiguration("logging", "true"); continue; }
+
+      int split = arg.indexOf('=');
+      String name = split == -1 ? arg : arg.substring(0, split);
+      String argument = split == -1 ? null : arg.substring(split + 1);
+      Class<? extends Benchmark> benchmark = sBenchmarks.get(name);
+      if(benchmark == null) {
+        System.err.println("Unknown benchmark: " + name);
+        continue;
+      }
+      if(server == null) server = setupAuctionResolver();
+      benchmark.newInstance().run(server, argument);
+      ran++;
+    }
+
+    if(ran == 0) System.err.println("Usage: BenchTool [--debug] [--logging] name[=argument] ...\n  Benchmarks and checks: " + sBenchmarks.keySet());
+    System.exit(0);
+  }
+
+  private static ebayServer setupAuctionResolver() {
+    final ebayServer server = new ebayServer("ebay.com", "default", "default");
+
+    Resolver r = new Resolver() {
+      public AuctionServerInterface getServer() { return server; }
+    };
+    AuctionServerManager.getInstance().setServer(server);
+    EntryFactory.setResolver(r);
+    return server;
+  }
+}
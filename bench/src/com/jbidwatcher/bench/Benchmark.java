@@ -0,0 +1,22 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+
+/**
+ * A benchmark or check that BenchTool can run.  Each is registered there
+ * under the name it's run by, and is constructed fresh for each run.
+ */
+public interface Benchmark {
+  /**
+   * @param server - An eBay server, set up to parse pages offline; not logged in.
+   * @param argument - Whatever followed an '=' after the benchmark's name, or null if nothing did.
+   *
+   * @throws Exception - If the benchmark fails in a way it doesn't report itself.
+   */
+  void run(ebayServer server, String argument) throws Exception;
+}
@@ -0,0 +1,80 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+
+import java.io.*;
+
+/**
+ * Compare the allocation cost of detecting whether a refresh changed an
+ * entry, by diffing toXML(false) before and after versus tracking changed
+ * fields.  Each saved page is loaded into a scratch database, then
+ * 'refreshed' from freshly parsed copies of itself; only the detection
+ * around setAuctionInfo is measured, not the parsing.
+ *
+ * Its argument is the directory holding saved item pages (bench/pages by default).
+ */
+public class ChangeDetectionBenchmark implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int REFRESHES = 50;
+    File[] pages = Bench.listPages(dirName);
+    if(pages == null) return;
+
+    com.sun.management.ThreadMXBean threads = Bench.allocationCounter();
+    if(threads == null) return;
+    long self = Thread.currentThread().getId();
+
+    try {
+      Bench.openScratchDatabase();
+
+      long xmlBytes = 0, xmlNanos = 0, trackBytes = 0, trackNanos = 0;
+      int refreshes = 0, xmlChanged = 0, trackChanged = 0;
+      for(File page : pages) {
+        if(!page.isFile()) continue;
+        String source = StringTools.cat(page.getAbsolutePath());
+        AuctionEntry ae = Bench.loadPageEntry(server, page.getName(), source);
+        if(ae == null) continue;
+
+        for(int i=0; i<REFRESHES; i++) {
+          AuctionInfo refreshed = server.doParse(new StringBuffer(source));
+          refreshed.saveDB();
+          long bytes = threads.getThreadAllocatedBytes(self);
+          long start = System.nanoTime();
+          String before = ae.toXML(false).toString();
+          ae.setAuctionInfo(refreshed);
+          if(!ae.toXML(false).toString().equals(before)) xmlChanged++;
+          xmlNanos += System.nanoTime() - start;
+          xmlBytes += threads.getThreadAllocatedBytes(self) - bytes;
+
+          refreshed = server.doParse(new StringBuffer(source));
+          refreshed.saveDB();
+          bytes = threads.getThreadAllocatedBytes(self);
+          start = System.nanoTime();
+          ae.startChangeTracking();
+          ae.setAuctionInfo(refreshed);
+          if(Auctions.hasInterestingChanges(ae.finishChangeTracking())) trackChanged++;
+          trackNanos += System.nanoTime() - start;
+          trackBytes += threads.getThreadAllocatedBytes(self) - bytes;
+          refreshes++;
+        }
+      }
+
+      if(refreshes == 0) return;
+      System.out.println("XML diff: " + (xmlBytes / refreshes) + " bytes, " + (xmlNanos / refreshes / 1000) + "us per refresh (" + xmlChanged + " of " + refreshes + " changed)");
+      System.out.println("Tracking: " + (trackBytes / refreshes) + " bytes, " + (trackNanos / refreshes / 1000) + "us per refresh (" + trackChanged + " of " + refreshes + " changed)");
+    } catch(Exception e) {
+      JConfig.log().handleException("Change detection benchmark failed.", e);
+    } finally {
+      ActiveRecord.disableDatabase();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.ClockSkew;
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.Externalized;
+import com.jbidwatcher.util.TT;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.MessageQueue;
+import com.jbidwatcher.util.queue.TimeQueueManager;
+import com.jbidwatcher.util.queue.TimerHandler;
+
+import java.util.*;
+import java.io.*;
+import java.net.ServerSocket;
+import java.text.SimpleDateFormat;
+
+/**
+ * Check the server clock estimate three ways:
+ *
+ *  - Simulated; rounds of samples half an hour apart against a server
+ *    clock which shows only seconds, is 2.345s ahead, and drifts 50ppm,
+ *    over links with random (seeded, so repeatable) latency and the
+ *    occasional very slow response.  The estimate is compared with the
+ *    single sample the time check used to take.
+ *  - Live; a local stand-in for eBay's time page, with the same offset and
+ *    injected latency, synchronized with through the eBay server code.
+ *  - Timers; events scheduled on a precise TimeQueueManager are checked
+ *    for how close to their due times they're sent, against the default.
+ */
+public class ClockCheck implements Benchmark {
+  private ebayServer mServer;
+
+  public void run(ebayServer server, String argument) {
+    mServer = server;
+    final long OFFSET = 2345;
+    final double DRIFT = 0.00005;
+    final long ROUND_SPACING = Constants.ONE_MINUTE * 30;
+    final int ROUNDS = 6;
+    final int SAMPLES = 5;
+    boolean pass = true;
+
+    Random r = new Random(42);
+    ClockSkew skew = new ClockSkew(Constants.ONE_SECOND);
+    long start = 1000000000000L;
+    long oldWorst = 0, newWorst = 0;
+    for(int round=0; round<ROUNDS; round++) {
+      long roundStart = start + round * ROUND_SPACING + r.nextInt(1000);
+      long now = roundStart;
+      long oldDelta = 0;
+      for(int i=0; i<SAMPLES; i++) {
+        long sent = Math.max(now, skew.nextSampleTime(now));
+        long up = 20 + r.nextInt(60) + (r.nextInt(5) == 0 ? 400 : 0);
+        long down = 20 + r.nextInt(60);
+        long serverTime = sent + up + OFFSET + Math.round(DRIFT * (sent + up - start));
+        long shown = serverTime - serverTime % Constants.ONE_SECOND;
+        now = sent + up + down;
+        skew.addSample(sent, shown, now);
+        //  What the time check used to do; one page, compared with the time it arrived.
+        if(i == 0) oldDelta = shown - now;
+      }
+      skew.finish();
+
+      long truth = OFFSET + Math.round(DRIFT * (now - start));
+      long oldError = Math.abs(oldDelta - truth);
+      long newError = Math.abs(skew.getOffset(now) - truth);
+      oldWorst = Math.max(oldWorst, oldError);
+      newWorst = Math.max(newWorst, newError);
+      //  The truth has to be within the error bound the estimate claims.
+      if(newError > skew.getError()) pass = false;
+      System.out.println("round " + (round + 1) + ": single sample off by " + oldError + "ms, estimate off by " + newError +
+          "ms (+/- " + skew.getError() + "ms), drift " + String.format("%.1f", skew.getDriftPPM()) + "ppm");
+    }
+    //  Between rounds, the drift estimate has to carry the offset.
+    long later = start + ROUNDS * ROUND_SPACING - 1;
+    long driftError = Math.abs(skew.getOffset(later) - (OFFSET + Math.round(DRIFT * (later - start))));
+    System.out.println("simulated: single sample worst " + oldWorst + "ms, estimate worst " + newWorst + "ms, " + driftError +
+        "ms off just before the next round; true drift " + (DRIFT * 1000000) + "ppm");
+    if(newWorst > 150 || driftError > 150) pass = false;
+
+    pass &= checkLiveClockSkew(OFFSET);
+    pass &= checkTimerPrecision();
+
+    System.out.println(pass ? "PASS" : "FAIL");
+  }
+
+  private boolean checkLiveClockSkew(final long offset) {
+    final Random latency = new Random(7);
+    final SimpleDateFormat format = new SimpleDateFormat(Externalized.getString("ebayServer.officialTimeFormat"), Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+    final String prequel = new TT("ebay.com").s("ebayServer.timePrequel1");
+
+    ServerSocket standIn;
+    try {
+      standIn = StandIn.start(new StandIn.Page() {
+        public String respond() throws InterruptedException {
+          long up, down;
+          synchronized(latency) {
+            up = 5 + latency.nextInt(40) + (latency.nextInt(5) == 0 ? 300 : 0);
+            down = 5 + latency.nextInt(40);
+          }
+          Thread.sleep(up);
+          String shown;
+          synchronized(format) {
+            shown = format.format(new Date(System.currentTimeMillis() + offset));
+          }
+          Thread.sleep(down);
+          return "<html><body><p>" + prequel + "</p><p>" + shown + "</p><p>Stand-in</p></body></html>";
+        }
+      });
+    } catch(IOException e) {
+      JConfig.log().handleException("Couldn't start the stand-in server.", e);
+      return false;
+    }
+
+    try {
+      JConfig.setConfiguration("timesync.url", "http://localhost:" + standIn.getLocalPort() + "/time");
+      mServer.reloadTime();
+      long error = Math.abs(mServer.getServerTimeDelta() - offset);
+      System.out.println("stand-in: delta " + mServer.getServerTimeDelta() + "ms, off by " + error + "ms; " + mServer.getClockStatistics());
+      //  Real timing, so this is looser than the simulation; a single sample could be off by a second or more.
+      return error <= 250;
+    } finally {
+      try { standIn.close(); } catch(IOException ignored) { }
+    }
+  }
+
+  private boolean checkTimerPrecision() {
+    final int EVENTS = 20;
+    boolean pass = true;
+    for(boolean precise : new boolean[] { false, true }) {
+      final String queueName = "timecheck-" + precise;
+      final long[] error = new long[2];
+      final int[] fired = new int[1];
+      MQFactory.getConcrete(queueName).registerListener(new MessageQueue.Listener() {
+        public void messageAction(Object deQ) {
+          long early = Long.parseLong((String) deQ) - System.currentTimeMillis();
+          synchronized(fired) {
+            error[0] = Math.max(error[0], early);
+            error[1] = Math.max(error[1], -early);
+            fired[0]++;
+            fired.notifyAll();
+          }
+        }
+      });
+
+      TimeQueueManager tqm = new TimeQueueManager();
+      tqm.setPrecise(precise);
+      TimerHandler timer = new TimerHandler(tqm);
+      timer.start();
+      Random r = new Random(3);
+      long now = System.currentTimeMillis();
+      for(int i=0; i<EVENTS; i++) {
+        long when = now + 100 + r.nextInt(2000);
+        tqm.add(Long.toString(when), queueName, when);
+      }
+      synchronized(fired) {
+        long until = System.currentTimeMillis() + 5000;
+        while(fired[0] < EVENTS && System.currentTimeMillis() < until) {
+          try { fired.wait(100); } catch(InterruptedException ignored) { }
+        }
+      }
+      timer.interrupt();
+
+      System.out.println((precise ? "precise" : "default") + " timers: " + fired[0] + " of " + EVENTS + " fired, up to " + error[0] +
+          "ms early and " + error[1] + "ms late");
+      if(precise && (fired[0] != EVENTS || error[0] > 0 || error[1] > 50)) pass = false;
+    }
+    return pass;
+  }
+}
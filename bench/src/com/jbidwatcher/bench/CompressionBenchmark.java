@@ -0,0 +1,67 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.GZip;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+
+/**
+ * Compress a saved page over and over from several threads at once, at a
+ * couple of compression levels, reporting pages per second; the page is
+ * compressed both from a copy of its bytes and straight from its characters.
+ */
+public class CompressionBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int PAGES = 2000;
+    final StringBuffer page = new StringBuffer(StringTools.cat("bench/pages/item-active.html"));
+    if(page.length() == 0) {
+      System.err.println("Can't read bench/pages/item-active.html");
+      return;
+    }
+
+    GZip check = new GZip();
+    check.setData(page);
+    if(!page.toString().equals(check.getUncompressedData(false).toString())) {
+      System.err.println("Compressed page doesn't round-trip!");
+      return;
+    }
+    System.out.println("Page is " + page.length() + " characters, compressing to " + check.getCompressedData().length + " bytes.");
+
+    String[] levels = { "9", "6", "1" };
+    int[] threadCounts = { 1, 4, 8 };
+    for(String level : levels) {
+      JConfig.setConfiguration("compression.level", level);
+      for(final boolean fromChars : new boolean[] { false, true }) {
+        for(int threadCount : threadCounts) {
+          Thread[] threads = new Thread[threadCount];
+          final int each = PAGES / threadCount;
+          for(int i=0; i<threadCount; i++) {
+            threads[i] = new Thread("Compress-" + i) {
+              public void run() {
+                for(int j=0; j<each; j++) {
+                  GZip gz = new GZip();
+                  if(fromChars) gz.setData(page); else gz.setData(page.toString().getBytes());
+                }
+              }
+            };
+          }
+          long start = System.nanoTime();
+          for(Thread t : threads) t.start();
+          try {
+            for(Thread t : threads) t.join();
+          } catch(InterruptedException ignored) {
+            return;
+          }
+          long elapsed = System.nanoTime() - start;
+          System.out.println("level=" + level + ", " + (fromChars ? "chars" : "bytes") + ", threads=" + threadCount + ": " +
+              (each * threadCount * 1000000000L / elapsed) + " pages/sec");
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.Externalized;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.MessageQueue;
+
+import java.util.*;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+
+/**
+ * Check conditional refreshes against a local stand-in for eBay, serving
+ * a saved item page and a thumbnail.  Once an item's loaded, refreshing it
+ * should get a 304 (or, from a server that doesn't send validators, the
+ * same content) and skip the parse and save; once the page changes, the
+ * refresh should parse it and pick up the change.  The thumbnail goes
+ * through the same cycle via the thumbnail queue.
+ */
+public class ConditionalRequestCheck implements Benchmark {
+  private ebayServer mServer;
+
+  public void run(ebayServer server, String argument) {
+    mServer = server;
+    boolean pass = true;
+    //  Only the requests themselves are being timed.
+    JConfig.setConfiguration("http.host_rate", "0");
+    try {
+      Bench.openScratchDatabase();
+      String source = StringTools.cat("bench/pages/item-active.html");
+      AuctionInfo parsed = mServer.doParse(new StringBuffer(source));
+      if(parsed == null) {
+        System.out.println("Can't parse bench/pages/item-active.html");
+        return;
+      }
+      String identifier = parsed.getIdentifier();
+      pass &= checkConditionalRefresh(source, identifier, parsed.getTitle(), true);
+      //  A separate item, so it starts with no validators.
+      String other = Long.toString(Long.parseLong(identifier) + 1000);
+      pass &= checkConditionalRefresh(source.replace(identifier, other), other, parsed.getTitle(), false);
+      pass &= checkConditionalThumbnail(identifier);
+      System.out.println(com.jbidwatcher.util.http.Validators.getStatistics());
+    } catch(Exception e) {
+      JConfig.log().handleException("Conditional request check failed.", e);
+      pass = false;
+    } finally {
+      JConfig.setConfiguration("proxyfirewall", "none");
+      ActiveRecord.disableDatabase();
+    }
+    System.out.println(pass ? "PASS" : "FAIL");
+  }
+
+  private boolean checkConditionalRefresh(String source, String identifier, String title, boolean honor) throws Exception {
+    final java.util.concurrent.atomic.AtomicLong requests = new java.util.concurrent.atomic.AtomicLong();
+    final java.util.concurrent.atomic.AtomicLong notModified = new java.util.concurrent.atomic.AtomicLong();
+    StandInResource page = new StandInResource(source.getBytes("UTF-8"), "text/html; charset=UTF-8");
+    Map<String, StandInResource> resources = new HashMap<String, StandInResource>();
+    resources.put(Externalized.getString("ebayServer.file"), page);
+    ServerSocket standIn = startConditionalStandIn(resources, honor, requests, notModified);
+    String how = honor ? "validators" : "content hash";
+    boolean pass = true;
+
+    try {
+      StandIn.useAsProxy(standIn);
+      AuctionInfo ai = mServer.create(identifier);
+      if(ai == null) {
+        System.out.println(how + ": couldn't load the item from the stand-in.");
+        return false;
+      }
+      ai.saveDB();
+      AuctionEntry ae = EntryFactory.getInstance().constructEntry();
+      ae.setString("identifier", ai.getIdentifier());
+      ae.setCategory("current");
+      ae.setAuctionInfo(ai);
+
+      //  The first refresh brings the entry back into memory.
+      mServer.reload(identifier);
+
+      com.jbidwatcher.util.db.Database db = com.jbidwatcher.util.db.Database.getShared();
+      final int REFRESHES = 10;
+      long before = db.getAcquired();
+      long notModifiedBefore = notModified.get();
+      long start = System.nanoTime();
+      for(int i=0; i<REFRESHES; i++) mServer.reload(identifier);
+      double unchangedMs = (System.nanoTime() - start) / (REFRESHES * 1000000.0);
+      long unchangedQueries = db.getAcquired() - before;
+      long answered304 = notModified.get() - notModifiedBefore;
+
+      page.replace(source.replace(title, title + " (changed)").getBytes("UTF-8"));
+      before = db.getAcquired();
+      start = System.nanoTime();
+      mServer.reload(identifier);
+      double changedMs = (System.nanoTime() - start) / 1000000.0;
+      long changedQueries = db.getAcquired() - before;
+      String newTitle = EntryCorral.getInstance().takeForRead(identifier).getTitle();
+      boolean pickedUp = newTitle != null && newTitle.endsWith("(changed)");
+
+      //  And once it's loaded, the changed page is the one it's compared against.
+      long requestsBefore = requests.get();
+      before = db.getAcquired();
+      mServer.reload(identifier);
+      boolean settled = db.getAcquired() == before && requests.get() == requestsBefore + 1;
+
+      System.out.println(how + ": " + REFRESHES + " unchanged refreshes, " + answered304 + " answered 304, " +
+          String.format("%.2fms", unchangedMs) + " and " + (unchangedQueries / (double) REFRESHES) + " queries each; changed refresh " +
+          String.format("%.2fms", changedMs) + " and " + changedQueries + " queries, " + (pickedUp ? "picked up the change" : "MISSED the change (title: " + newTitle + ")") +
+          (settled ? "" : "; the next refresh didn't settle"));
+
+      if(unchangedQueries != 0 || !pickedUp || !settled || changedQueries == 0) pass = false;
+      if(honor && answered304 != REFRESHES) pass = false;
+      if(!honor && answered304 != 0) pass = false;
+    } finally {
+      try { standIn.close(); } catch(IOException ignored) { }
+    }
+    return pass;
+  }
+
+  private boolean checkConditionalThumbnail(String identifier) throws Exception {
+    final java.util.concurrent.atomic.AtomicLong requests = new java.util.concurrent.atomic.AtomicLong();
+    final java.util.concurrent.atomic.AtomicLong notModified = new java.util.concurrent.atomic.AtomicLong();
+    StandInResource image = new StandInResource(readResource("/jbidwatch64.jpg"), "image/jpeg");
+    Map<String, StandInResource> resources = new HashMap<String, StandInResource>();
+    resources.put("/thumb.jpg", image);
+    ServerSocket standIn = startConditionalStandIn(resources, true, requests, notModified);
+
+    final java.util.concurrent.Semaphore drawn = new java.util.concurrent.Semaphore(0);
+    MQFactory.getConcrete("redraw").registerListener(new MessageQueue.Listener() {
+      public void messageAction(Object deQ) { drawn.release(); }
+    });
+    JConfig.setConfiguration("auctions.savepath", JConfig.getHomeDirectory());
+    ThumbnailLoader.start();
+    //  Let the thumbnails the earlier loads asked for, and the redraws they caused, go through first.
+    while(drawn.tryAcquire(500, java.util.concurrent.TimeUnit.MILLISECONDS)) { /* Wait for a quiet moment. */ }
+
+    try {
+      AuctionInfo ai = EntryCorral.getInstance().takeForRead(identifier).getAuction();
+      StandIn.useAsProxy(standIn);
+      ai.setThumbnailURL("http://thumbs.ebaystatic.com/thumb.jpg");
+      File saved = new File(JConfig.getHomeDirectory(), identifier + ".jpg");
+      long[] sizes = new long[3];
+      for(int i=0; i<3; i++) {
+        if(i == 2) image.replace(readResource("/jbidwatch.jpg"));
+        ((com.jbidwatcher.util.queue.PlainMessageQueue) MQFactory.getConcrete("thumbnail")).enqueueObject(ai);
+        if(!drawn.tryAcquire(10, java.util.concurrent.TimeUnit.SECONDS)) {
+          System.out.println("thumbnail: the thumbnail queue didn't finish.");
+          return false;
+        }
+        sizes[i] = saved.length();
+      }
+      boolean pass = notModified.get() == 1 && sizes[0] == readResource("/jbidwatch64.jpg").length && sizes[1] == sizes[0] &&
+                     sizes[2] == readResource("/jbidwatch.jpg").length;
+      System.out.println("thumbnail: " + requests.get() + " requests, " + notModified.get() + " answered 304, saved sizes " +
+          sizes[0] + ", " + sizes[1] + ", " + sizes[2]);
+      return pass;
+    } finally {
+      try { standIn.close(); } catch(IOException ignored) { }
+    }
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    URL resource = JConfig.getResource(name);
+    if(resource == null) throw new FileNotFoundException(name);
+    InputStream in = resource.openStream();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int count;
+      while((count = in.read(buffer)) != -1) out.write(buffer, 0, count);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Content served by the conditional stand-in; its ETag and Last-Modified
+   * change each time it's replaced.
+   */
+  private static class StandInResource {
+    private final String mContentType;
+    private byte[] mBody;
+    private int mVersion = 1;
+
+    private StandInResource(byte[] body, String contentType) {
+      mBody = body;
+      mContentType = contentType;
+    }
+
+    private synchronized void replace(byte[] body) {
+      mBody = body;
+      mVersion++;
+    }
+  }
+
+  /**
+   * Start a stand-in server for conditional requests.  It serves each
+   * resource by its path (ignoring the host, if it's asked as a proxy, and
+   * any query), one request per connection.
+   *
+   * @param resources - The resources to serve, by path; anything else is a 404.
+   * @param honor - true to send validators and answer 304 when they match; false to act like a server that does neither.
+   * @param requests - Counts the requests served.
+   * @param notModified - Counts the 304s sent.
+   *
+   * @return The listening socket; close it to stop the server.
+   * @throws IOException - If the server socket can't be opened.
+   */
+  private static ServerSocket startConditionalStandIn(final Map<String, StandInResource> resources, final boolean honor,
+                                                      final java.util.concurrent.atomic.AtomicLong requests,
+                                                      final java.util.concurrent.atomic.AtomicLong notModified) throws IOException {
+    final ServerSocket server = new ServerSocket(0);
+    final SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+    final long baseTime = 1200000000000L;
+
+    Thread acceptor = new Thread("StandIn") {
+      public void run() {
+        while(!server.isClosed()) {
+          try {
+            final Socket client = server.accept();
+            Thread handler = new Thread("StandIn-Request") {
+              public void run() {
+                try {
+                  InputStream in = new BufferedInputStream(client.getInputStream());
+                  String requestLine = StandIn.readLine(in);
+                  String ifNoneMatch = null, ifModifiedSince = null;
+                  String header;
+                  while((header = StandIn.readLine(in)) != null && header.length() != 0) {
+                    String lower = header.toLowerCase();
+                    if(lower.startsWith("if-none-match:")) ifNoneMatch = header.substring(14).trim();
+                    if(lower.startsWith("if-modified-since:")) ifModifiedSince = header.substring(18).trim();
+                  }
+                  if(requestLine == null) return;
+                  requests.incrementAndGet();
+
+                  String path = requestLine.split(" ")[1];
+                  if(path.startsWith("http")) path = path.substring(path.indexOf('/', path.indexOf("://") + 3));
+                  if(path.indexOf('?') != -1) path = path.substring(0, path.indexOf('?'));
+                  StandInResource resource = resources.get(path);
+                  String status = "200 OK";
+                  String headers = "";
+                  byte[] body;
+                  if(resource == null) {
+                    status = "404 Not Found";
+                    body = "<html><body>Not found.</body></html>".getBytes();
+                  } else {
+                    int version;
+                    synchronized(resource) {
+                      body = resource.mBody;
+                      version = resource.mVersion;
+                    }
+                    headers = "Content-Type: " + resource.mContentType + "\r\n";
+                    if(honor) {
+                      String etag = "\"v" + version + '"';
+                      String lastModified;
+                      synchronized(httpDate) {
+                        lastModified = httpDate.format(new Date(baseTime + version * Constants.ONE_SECOND));
+                      }
+                      headers += "ETag: " + etag + "\r\nLast-Modified: " + lastModified + "\r\n";
+                      if(ifNoneMatch != null ? ifNoneMatch.equals(etag) : lastModified.equals(ifModifiedSince)) {
+                        status = "304 Not Modified";
+                        body = new byte[0];
+                        notModified.incrementAndGet();
+                      }
+                    }
+                  }
+                  OutputStream out = new BufferedOutputStream(client.getOutputStream());
+                  out.write(("HTTP/1.1 " + status + "\r\n" + headers + "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes());
+                  out.write(body);
+                  out.flush();
+                } catch(Exception ignored) {
+                  //  The check will report the failure.
+                } finally {
+                  try { client.close(); } catch(IOException ignored) { }
+                }
+              }
+            };
+            handler.setDaemon(true);
+            handler.start();
+          } catch(IOException ignored) {
+            //  Closed; the loop will exit.
+          }
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server;
+  }
+}
@@ -0,0 +1,77 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.Upgrader;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.Table;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Measure findFirstBy/updateMap throughput from several threads against a
+ * scratch Derby database, first configured like the old code (a single
+ * connection, re-preparing every statement), then with the connection pool
+ * and prepared statement cache.
+ */
+public class DatabaseBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int THREADS = 4;
+    final int ROWS = 500;
+    final int OPERATIONS = 2000;
+    String[][] modes = { { "1", "0" }, { "4", "64" } };
+
+    try {
+      File scratch = File.createTempFile("jbdb", "bench");
+      if(!scratch.delete() || !scratch.mkdirs()) throw new RuntimeException("Can't create a scratch directory.");
+      JConfig.setHomeDirectory(scratch.getAbsolutePath());
+      Upgrader.upgrade();
+
+      for(String[] mode : modes) {
+        JConfig.setConfiguration("db.pool.size", mode[0]);
+        JConfig.setConfiguration("db.statement_cache", mode[1]);
+        final Table t = new Table("auctions");
+        if(t.count() == 0) {
+          for(int i=0; i<ROWS; i++) {
+            Record row = new Record();
+            row.put("identifier", Integer.toString(1000000 + i));
+            row.put("title", "Benchmark item " + i);
+            row.put("current_bid", "1.00");
+            t.storeMap(row);
+          }
+        }
+
+        Thread[] workers = new Thread[THREADS];
+        long start = System.nanoTime();
+        for(int w=0; w<THREADS; w++) {
+          final Random r = new Random(w);
+          workers[w] = new Thread() {
+            public void run() {
+              for(int i=0; i<OPERATIONS; i++) {
+                String identifier = Integer.toString(1000000 + r.nextInt(ROWS));
+                Record row = t.findFirstBy("identifier", identifier);
+                row.put("current_bid", Integer.toString(r.nextInt(10000)) + ".00");
+                t.updateMap("auctions", "identifier", identifier, row);
+              }
+            }
+          };
+          workers[w].start();
+        }
+        for(Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("pool=" + mode[0] + ", cache=" + mode[1] + ": " + (THREADS * OPERATIONS * 1000000000L / elapsed) + " find+update/sec");
+        System.out.println("  " + t.getDB().getStatistics());
+        t.shutdown().shutdown();
+      }
+    } catch(Exception e) {
+      JConfig.log().handleException("Database benchmark failed.", e);
+    }
+  }
+}
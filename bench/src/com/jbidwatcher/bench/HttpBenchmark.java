@@ -0,0 +1,202 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.http.Http;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+/**
+ * Run refresh and presnipe-like request sequences against a local
+ * keep-alive stand-in server, first asking for a new connection per
+ * request, then reusing pooled connections, and report the latency and
+ * how many connections the server saw.  Each cycle loads an item page,
+ * posts a 'bid' that redirects back to the item (setting a cookie), and
+ * asks for a missing thumbnail.
+ *
+ * Its argument, if there is one, is a JKS keystore with a certificate for
+ * localhost and its password, as 'path:password', to run over TLS instead
+ * of plain HTTP.
+ */
+public class HttpBenchmark implements Benchmark {
+  public void run(ebayServer server, String keystore) {
+    final int CYCLES = 200;
+    final int[] threadCounts = { 1, 4 };
+
+    javax.net.ServerSocketFactory factory = javax.net.ServerSocketFactory.getDefault();
+    String scheme = "http";
+    if(keystore != null) {
+      try {
+        int split = keystore.lastIndexOf(':');
+        char[] password = keystore.substring(split + 1).toCharArray();
+        java.security.KeyStore ks = java.security.KeyStore.getInstance("JKS");
+        FileInputStream in = new FileInputStream(keystore.substring(0, split));
+        try { ks.load(in, password); } finally { in.close(); }
+
+        javax.net.ssl.KeyManagerFactory kmf = javax.net.ssl.KeyManagerFactory.getInstance(javax.net.ssl.KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, password);
+        javax.net.ssl.TrustManagerFactory tmf = javax.net.ssl.TrustManagerFactory.getInstance(javax.net.ssl.TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        javax.net.ssl.SSLContext ctx = javax.net.ssl.SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        //  Trust the stand-in's certificate for this run.
+        javax.net.ssl.HttpsURLConnection.setDefaultSSLSocketFactory(ctx.getSocketFactory());
+        factory = ctx.getServerSocketFactory();
+        scheme = "https";
+      } catch(Exception e) {
+        System.err.println("Can't load the keystore (path:password) " + keystore + ": " + e);
+        return;
+      }
+    }
+
+    final java.util.concurrent.atomic.AtomicLong connections = new java.util.concurrent.atomic.AtomicLong();
+    final java.util.concurrent.atomic.AtomicLong requests = new java.util.concurrent.atomic.AtomicLong();
+    ServerSocket standIn;
+    try {
+      standIn = startKeepAliveStandIn(factory, scheme, connections, requests);
+    } catch(IOException e) {
+      JConfig.log().handleException("Couldn't start the stand-in server.", e);
+      return;
+    }
+    final String base = scheme + "://localhost:" + standIn.getLocalPort();
+
+    try {
+      for(String keepAlive : new String[] { "false", "true" }) {
+        JConfig.setConfiguration("http.keepalive", keepAlive);
+        for(final int threads : threadCounts) {
+          //  Warm up the JIT, and (for keep-alive) the pool, before timing.
+          runHttpCycles(base, 10, threads);
+          long startConnections = connections.get();
+          long startRequests = requests.get();
+
+          long start = System.nanoTime();
+          int failed = runHttpCycles(base, CYCLES, threads);
+          long elapsed = System.nanoTime() - start;
+
+          long served = requests.get() - startRequests;
+          System.out.println(String.format("%s, %s, %d thread%s: %.3fms/cycle, %d requests over %d new connections, %d failed cycles",
+              scheme, keepAlive.equals("true") ? "keep-alive" : "close", threads, threads == 1 ? "" : "s",
+              elapsed / (CYCLES * 1000000.0), served, connections.get() - startConnections, failed));
+        }
+      }
+      System.out.println(com.jbidwatcher.util.http.ConnectionManager.getInstance().getStatistics());
+    } finally {
+      JConfig.setConfiguration("http.keepalive", "true");
+      try { standIn.close(); } catch(IOException ignored) { }
+    }
+  }
+
+  private static int runHttpCycles(final String base, final int cycles, int threads) {
+    final java.util.concurrent.atomic.AtomicInteger next = new java.util.concurrent.atomic.AtomicInteger();
+    final java.util.concurrent.atomic.AtomicInteger failed = new java.util.concurrent.atomic.AtomicInteger();
+    Thread[] workers = new Thread[threads];
+    for(int i=0; i<threads; i++) {
+      workers[i] = new Thread("HttpBench-" + i) {
+        public void run() {
+          com.jbidwatcher.util.http.CookieJar cj = new com.jbidwatcher.util.http.CookieJar();
+          while(next.getAndIncrement() < cycles) {
+            try {
+              StringBuffer item = cj.getPage(base + "/item", null, null);
+              StringBuffer bid = cj.getPage(base + "/bid", "amount=1.00", base + "/item");
+              com.jbidwatcher.util.ByteBuffer thumbnail = Http.net().getURL(new URL(base + "/missing"));
+              if(item == null || bid == null || thumbnail != null || cj.getCookie("bid") == null) failed.incrementAndGet();
+            } catch(Exception e) {
+              failed.incrementAndGet();
+            }
+          }
+        }
+      };
+      workers[i].start();
+    }
+    for(Thread worker : workers) {
+      try { worker.join(); } catch(InterruptedException ignored) { }
+    }
+    return failed.get();
+  }
+
+  /**
+   * A stand-in for a web server that keeps connections open between
+   * requests, the way eBay's does, counting the connections and requests it
+   * handles.  /item is an item-sized page, /bid redirects to it setting a
+   * cookie, and anything else is a 404.
+   */
+  private static ServerSocket startKeepAliveStandIn(javax.net.ServerSocketFactory factory, String scheme, final java.util.concurrent.atomic.AtomicLong connections,
+                                                    final java.util.concurrent.atomic.AtomicLong requests) throws IOException {
+    final ServerSocket server = factory.createServerSocket(0);
+    final String base = scheme + "://localhost:" + server.getLocalPort();
+    StringBuilder itemPage = new StringBuilder("<html><head><title>Stand-in</title></head><body>");
+    while(itemPage.length() < 40000) itemPage.append("<p>Current bid: $1.00</p>\n");
+    final byte[] item = itemPage.append("</body></html>").toString().getBytes();
+
+    Thread acceptor = new Thread("StandIn") {
+      public void run() {
+        while(!server.isClosed()) {
+          try {
+            final Socket client = server.accept();
+            //  Like a real server; otherwise a response split across writes waits on the client's delayed ACK.
+            client.setTcpNoDelay(true);
+            connections.incrementAndGet();
+            Thread handler = new Thread("StandIn-Connection") {
+              public void run() {
+                try {
+                  InputStream in = new BufferedInputStream(client.getInputStream());
+                  OutputStream out = new BufferedOutputStream(client.getOutputStream());
+                  String requestLine;
+                  while((requestLine = StandIn.readLine(in)) != null && requestLine.length() != 0) {
+                    int length = 0;
+                    boolean close = false;
+                    String header;
+                    while((header = StandIn.readLine(in)) != null && header.length() != 0) {
+                      String lower = header.toLowerCase();
+                      if(lower.startsWith("content-length:")) length = Integer.parseInt(header.substring(15).trim());
+                      if(lower.startsWith("connection:") && lower.contains("close")) close = true;
+                    }
+                    for(int i=0; i<length; i++) in.read();
+                    requests.incrementAndGet();
+
+                    String path = requestLine.split(" ")[1];
+                    String status = "200 OK";
+                    String extra = "";
+                    byte[] body = item;
+                    if(path.startsWith("/bid")) {
+                      status = "302 Found";
+                      extra = "Location: " + base + "/item\r\nSet-Cookie: bid=1; path=/\r\n";
+                      body = "<html><body>Moved.</body></html>".getBytes();
+                    } else if(!path.startsWith("/item")) {
+                      status = "404 Not Found";
+                      body = "<html><body>Not found.</body></html>".getBytes();
+                    }
+                    out.write(("HTTP/1.1 " + status + "\r\nContent-Type: text/html\r\nContent-Length: " + body.length + "\r\n" + extra +
+                        (close ? "Connection: close\r\n" : "") + "\r\n").getBytes());
+                    out.write(body);
+                    out.flush();
+                    if(close) break;
+                  }
+                } catch(Exception ignored) {
+                  //  The client went away; the benchmark will report any failure.
+                } finally {
+                  try { client.close(); } catch(IOException ignored) { }
+                }
+              }
+            };
+            handler.setDaemon(true);
+            handler.start();
+          } catch(IOException ignored) {
+            //  Closed; the loop will exit.
+          }
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server;
+  }
+}
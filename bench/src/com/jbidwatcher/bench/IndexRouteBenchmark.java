@@ -0,0 +1,132 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.xml.XMLElement;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Time the web interface's index page over synthetic auction lists of a
+ * few sizes, the old way (write auctions.xml, compile the stylesheet,
+ * transform the file) against transforming an in-memory snapshot with the
+ * cached stylesheet, and against reusing a snapshot that's still recent.
+ * (The old way also fetched auctions.dtd from the web site on every
+ * request, which isn't measured here.)  Building the auction XML from the entries is the same in every case, so
+ * it's done once up front and not measured.
+ */
+public class IndexRouteBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int[] sizes = { 100, 1000, 5000 };
+    try {
+      final File saveFile = File.createTempFile("jbauctions", ".xml");
+      saveFile.deleteOnExit();
+
+      for(int size : sizes) {
+        final XMLElement auctions = buildSyntheticAuctions(size);
+        final StringBuffer snapshot = com.jbidwatcher.ui.AuctionsManager.buildSnapshot(auctions);
+        int iterations = Math.max(5, 20000 / size);
+
+        timeRoute(size, "save+compile", iterations, new Route() {
+          public StringBuffer run() throws Exception {
+            PrintStream ps = new PrintStream(new FileOutputStream(saveFile));
+            //  The saved file's DOCTYPE made each request fetch the DTD from the
+            //  web site too; leave it out, so this runs offline.
+            ps.println(com.jbidwatcher.ui.AuctionsManager.buildSaveBuffer(auctions).toString().replace(Constants.XML_SAVE_DOCTYPE, ""));
+            ps.close();
+            InputStream xslIn = JConfig.bestSource(IndexRouteBenchmark.class.getClassLoader(), "auctionTransform.xsl");
+            javax.xml.transform.Transformer t = javax.xml.transform.TransformerFactory.newInstance().newTransformer(new javax.xml.transform.stream.StreamSource(xslIn));
+            xslIn.close();
+            StringWriter sw = new StringWriter();
+            t.transform(new javax.xml.transform.stream.StreamSource(saveFile), new javax.xml.transform.stream.StreamResult(sw));
+            return sw.getBuffer();
+          }
+        });
+        timeRoute(size, "snapshot", iterations, new Route() {
+          public StringBuffer run() {
+            return AuctionTransformer.outputHTML(com.jbidwatcher.ui.AuctionsManager.buildSnapshot(auctions));
+          }
+        });
+        timeRoute(size, "recent", iterations, new Route() {
+          public StringBuffer run() {
+            return AuctionTransformer.outputHTML(snapshot);
+          }
+        });
+      }
+    } catch(Exception e) {
+      System.out.println("Index route benchmark failed: " + e);
+    }
+  }
+
+  private interface Route {
+    StringBuffer run() throws Exception;
+  }
+
+  private static void timeRoute(int size, String name, int iterations, Route route) throws Exception {
+    StringBuffer page = route.run();
+    if(page == null) {
+      System.out.println(String.format("%6d entries, %-12s failed", size, name));
+      return;
+    }
+
+    long[] samples = new long[iterations];
+    for(int i=0; i<iterations; i++) {
+      long before = System.nanoTime();
+      route.run();
+      samples[i] = System.nanoTime() - before;
+    }
+    Arrays.sort(samples);
+    System.out.println(String.format("%6d entries, %-12s p50 %8.2fms, p99 %8.2fms, %d bytes of HTML",
+        size, name, samples[iterations / 2] / 1000000.0, samples[(iterations * 99) / 100] / 1000000.0, page.length()));
+  }
+
+  private static XMLElement buildSyntheticAuctions(int count) {
+    XMLElement auctions = new XMLElement("auctions");
+    XMLElement server = new XMLElement("server");
+    server.setProperty("name", "ebay");
+    long now = System.currentTimeMillis();
+    for(int i=0; i<count; i++) {
+      XMLElement auction = new XMLElement("auction");
+      auction.setProperty("id", Long.toString(200000000000L + i));
+      XMLElement info = new XMLElement("info");
+      addChild(info, "title", "Synthetic auction number " + i + " & friends");
+      XMLElement minimum = new XMLElement("minimum");
+      minimum.setProperty("currency", "USD");
+      minimum.setProperty("price", "0.99");
+      minimum.setEmpty();
+      info.addChild(minimum);
+      XMLElement currently = new XMLElement("currently");
+      currently.setProperty("currency", "USD");
+      currently.setProperty("price", Integer.toString(i % 500) + ".00");
+      currently.setEmpty();
+      info.addChild(currently);
+      addChild(info, "bidcount", Integer.toString(i % 17));
+      addChild(info, "start", Long.toString(now - Constants.ONE_DAY * 3));
+      addChild(info, "end", Long.toString(now + Constants.ONE_DAY * 4));
+      auction.addChild(info);
+      addChild(auction, "category", "current");
+      //  Ended, so the stylesheet doesn't look each one up to get its time left.
+      XMLElement complete = new XMLElement("complete");
+      complete.setEmpty();
+      auction.addChild(complete);
+      server.addChild(auction);
+    }
+    auctions.addChild(server);
+    auctions.setProperty("count", Integer.toString(count));
+    return auctions;
+  }
+
+  private static void addChild(XMLElement parent, String name, String contents) {
+    XMLElement child = new XMLElement(name);
+    child.setContents(contents);
+    parent.addChild(child);
+  }
+}
@@ -0,0 +1,80 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Log from several threads at once, synchronously and through the
+ * asynchronous writer with each overflow policy, reporting how many log
+ * calls per second the logging threads manage, and how long each call
+ * held them up.  Console output goes to a scratch file, as it would for
+ * a redirected launch.
+ */
+public class LoggingBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int THREADS = 4;
+    final int MESSAGES = 20000;
+    String[][] modes = { { "false", "block" }, { "true", "block" }, { "true", "drop" }, { "true", "drop_oldest" } };
+
+    PrintStream originalErr = System.err;
+    try {
+      File console = File.createTempFile("jbconsole", ".log");
+      console.deleteOnExit();
+      System.setErr(new PrintStream(new FileOutputStream(console), true));
+
+      for(String[] mode : modes) {
+        JConfig.setConfiguration("logging.async", mode[0]);
+        JConfig.setConfiguration("logging.overflow", mode[1]);
+        final com.cyberfox.util.config.ErrorManagement log = new com.cyberfox.util.config.ErrorManagement();
+        File logFile = File.createTempFile("jblog", ".log");
+        logFile.deleteOnExit();
+        log.openLog(logFile);
+
+        final long[][] samples = new long[THREADS][MESSAGES];
+        Thread[] threads = new Thread[THREADS];
+        for(int i=0; i<THREADS; i++) {
+          final long[] mine = samples[i];
+          threads[i] = new Thread("Logger-" + i) {
+            public void run() {
+              for(int j=0; j<MESSAGES; j++) {
+                long before = System.nanoTime();
+                log.logMessage("Updating item " + j + " from " + getName() + "; nothing interesting changed.");
+                mine[j] = System.nanoTime() - before;
+              }
+            }
+          };
+        }
+
+        long start = System.nanoTime();
+        for(Thread t : threads) t.start();
+        for(Thread t : threads) t.join();
+        long elapsed = System.nanoTime() - start;
+        log.flush();
+        long drained = System.nanoTime() - start;
+        String statistics = com.cyberfox.util.config.ErrorManagement.getSharedStatistics();
+        log.closeLog();
+
+        long[] all = new long[THREADS * MESSAGES];
+        for(int i=0; i<THREADS; i++) System.arraycopy(samples[i], 0, all, i * MESSAGES, MESSAGES);
+        Arrays.sort(all);
+        System.out.println(String.format("async=%s, overflow=%s: %d calls/sec, p50 %.1fus, p99 %.1fus, max %.1fus, written in %dms",
+            mode[0], mode[1], all.length * 1000000000L / elapsed,
+            all[all.length / 2] / 1000.0, all[(all.length * 99) / 100] / 1000.0, all[all.length - 1] / 1000.0,
+            drained / 1000000));
+        System.out.println("  " + statistics);
+      }
+    } catch(Exception e) {
+      System.out.println("Logging benchmark failed: " + e);
+    } finally {
+      System.setErr(originalErr);
+    }
+  }
+}
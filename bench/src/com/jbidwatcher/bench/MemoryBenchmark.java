@@ -0,0 +1,82 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Record;
+
+import java.util.*;
+import java.text.SimpleDateFormat;
+
+/**
+ * Build ten thousand entries from copies of a parsed item page, the way
+ * they're loaded from the database (every value a separate string), read
+ * every value the auction table shows from each, and report the heap each
+ * entry's records take, against the same rows held as plain string maps
+ * with a date formatter per record, the way they used to be.  Also times
+ * reading the table values from all the entries.
+ *
+ * Its argument is the directory holding saved item pages (bench/pages by
+ * default); the first one that parses is used.
+ */
+public class MemoryBenchmark implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int ENTRIES = 10000;
+    final int PAINTS = 10;
+    AuctionInfo sample = Bench.parseSample(server, dirName);
+    if(sample == null) return;
+    Record auction = sample.getBacking();
+    auction.put("id", "1");
+    AuctionEntry template = EntryFactory.getInstance().constructEntry();
+    template.setString("identifier", sample.getIdentifier());
+    template.setCategory("current");
+    template.setAuctionInfo(sample);
+    Record entry = template.getBacking();
+
+    long before = Bench.usedHeap();
+    List<Object> old = new ArrayList<Object>(ENTRIES * 4);
+    for(int i=0; i<ENTRIES; i++) {
+      old.add(Bench.copyStrings(entry, new HashMap<String, String>(), true));
+      old.add(Bench.copyStrings(auction, new HashMap<String, String>(), true));
+    }
+    long mapBytes = (Bench.usedHeap() - before) / ENTRIES;
+    for(int i=0; i<ENTRIES * 2; i++) old.add(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+    long oldBytes = (Bench.usedHeap() - before) / ENTRIES;
+    old.clear();
+
+    before = Bench.usedHeap();
+    List<AuctionEntry> entries = new ArrayList<AuctionEntry>(ENTRIES);
+    for(int i=0; i<ENTRIES; i++) {
+      AuctionInfo ai = new AuctionInfo();
+      ai.setBacking(Bench.copyStrings(auction, new Record(), false));
+      AuctionEntry ae = EntryFactory.getInstance().constructEntry();
+      ae.setBacking(Bench.copyStrings(entry, new Record(), false));
+      ae.setAuctionInfo(ai);
+      entries.add(ae);
+    }
+    long loadedBytes = (Bench.usedHeap() - before) / ENTRIES;
+
+    long start = System.nanoTime();
+    for(AuctionEntry ae : entries) Bench.paintRow(ae);
+    long firstPaint = System.nanoTime() - start;
+    long paintedBytes = (Bench.usedHeap() - before) / ENTRIES;
+
+    start = System.nanoTime();
+    for(int i=0; i<PAINTS; i++) {
+      for(AuctionEntry ae : entries) Bench.paintRow(ae);
+    }
+    long painted = (System.nanoTime() - start) / PAINTS;
+
+    System.out.println(entries.size() + " entries with " + entry.size() + " entry and " + auction.size() + " auction values each:");
+    System.out.println("  string maps: " + mapBytes + " bytes/entry, " + oldBytes + " with a date formatter per record (records only)");
+    System.out.println("  entries as loaded: " + loadedBytes + " bytes/entry (entry and auction objects included)");
+    System.out.println("  entries after reading every column: " + paintedBytes + " bytes/entry");
+    System.out.println(String.format("  reading every column: first pass %.2fus/entry, after that %.2fus/entry",
+        firstPaint / 1000.0 / ENTRIES, painted / 1000.0 / ENTRIES));
+  }
+}
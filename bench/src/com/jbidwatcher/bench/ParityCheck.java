@@ -0,0 +1,87 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Parse every saved item page in a directory twice, once through the
+ * separate Jsoup and JHTML parsers and once in single-pass mode, and report
+ * any extracted auction field that differs between the two.
+ *
+ * Its argument is the directory holding saved item pages (bench/pages by default).
+ */
+public class ParityCheck implements Benchmark {
+  private ebayServer mServer;
+
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    mServer = server;
+    JConfig.setHomeDirectory("./");
+    File[] pages = Bench.listPages(dirName);
+    if(pages == null) return;
+    Arrays.sort(pages);
+
+    String original = JConfig.queryConfiguration("parse.single_pass", "false");
+    int mismatched = 0, failed = 0;
+    try {
+      for(File page : pages) {
+        if(!page.isFile()) continue;
+        String source = StringTools.cat(page.getAbsolutePath());
+        AuctionInfo twoPass = parseForParity(source, false);
+        AuctionInfo onePass = parseForParity(source, true);
+        if(twoPass == null || onePass == null) {
+          System.out.println(page.getName() + ": FAILED (two-pass " + (twoPass == null ? "failed" : "ok") + ", single-pass " + (onePass == null ? "failed" : "ok") + ")");
+          failed++;
+          continue;
+        }
+
+        List<String> differences = compareFields(twoPass.getBacking(), onePass.getBacking());
+        if(differences.isEmpty()) {
+          System.out.println(page.getName() + ": ok");
+        } else {
+          mismatched++;
+          System.out.println(page.getName() + ": MISMATCH");
+          for(String difference : differences) System.out.println("  " + difference);
+        }
+      }
+    } finally {
+      JConfig.setConfiguration("parse.single_pass", original);
+    }
+    System.out.println(pages.length + " files, " + mismatched + " mismatched, " + failed + " failed to parse.");
+  }
+
+  private AuctionInfo parseForParity(String source, boolean singlePass) {
+    JConfig.setConfiguration("parse.single_pass", Boolean.toString(singlePass));
+    try {
+      return mServer.doParse(new StringBuffer(source));
+    } catch(Exception e) {
+      JConfig.log().handleException("Parse failed (single pass: " + singlePass + ")", e);
+      return null;
+    }
+  }
+
+  private static List<String> compareFields(Record expected, Record actual) {
+    List<String> differences = new ArrayList<String>();
+    Set<String> keys = new TreeSet<String>(expected.keySet());
+    keys.addAll(actual.keySet());
+    for(String key : keys) {
+      String left = expected.get(key);
+      String right = actual.get(key);
+      if(left == null ? right != null : !left.equals(right)) {
+        differences.add(key + ": \"" + left + "\" != \"" + right + "\"");
+      }
+    }
+    return differences;
+  }
+}
@@ -0,0 +1,152 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.SpecificAuction;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.html.JHTML;
+import com.jbidwatcher.util.html.JHTMLParser;
+import org.jsoup.Jsoup;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Repeatable timing of the HTML parsing paths, run over a directory of saved
+ * pages (bench/pages has an anonymized set of item, search, bid form and My
+ * eBay pages).  Each stage is warmed up, then run repeatedly on each page,
+ * reporting operations per second, median and 99th percentile latency, and
+ * bytes allocated per operation.
+ *
+ * The grep stage repeats the same lookups on one already-tokenized document,
+ * as the parsers do between them; parse+grep is the cost for a fresh page.
+ * Each is followed by how many content searches it made per operation, and
+ * how many content entries those searches tested.
+ *
+ * Pages are tokenized both by the copying tokenizer and the streaming one.
+ *
+ * Item pages (named item-*) additionally go through the auction server's
+ * full item parse; preParseAuction, then parseAuction, which does the
+ * microformat extraction and parseItemDetails.
+ * It's meant to be run headless, with the database disabled and no network.
+ */
+public class ParseBenchmark implements Benchmark {
+  private static final int WARMUP = 50;
+  private static final int ITERATIONS = 500;
+
+  private ebayServer mServer;
+  private final com.sun.management.ThreadMXBean mThreads;
+
+  private interface Stage {
+    void run(String page) throws Exception;
+  }
+
+  public ParseBenchmark() {
+    java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    mThreads = mx instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) mx : null;
+  }
+
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    mServer = server;
+    File[] pages = Bench.listPages(dirName);
+    if(pages == null) return;
+    Arrays.sort(pages);
+
+    System.out.println(String.format("%-24s %-10s %10s %10s %10s %12s", "page", "stage", "ops/sec", "p50 (us)", "p99 (us)", "bytes/op"));
+    for(File page : pages) {
+      if(!page.isFile()) continue;
+      String source = StringTools.cat(page.getAbsolutePath());
+
+      final StringBuffer buffer = new StringBuffer(source);
+      measure(page.getName(), "tokenize", source, new Stage() {
+        public void run(String page) { new JHTMLParser(buffer, null, false); }
+      });
+      measure(page.getName(), "stream", source, new Stage() {
+        public void run(String page) { new JHTMLParser(buffer, null, true); }
+      });
+      final JHTML doc = new JHTML(new StringBuffer(source));
+      long[] before = JHTML.getSearchCounts();
+      measure(page.getName(), "grep", source, new Stage() {
+        public void run(String page) { grep(doc); }
+      });
+      reportSearches(page.getName(), "grep", before);
+      before = JHTML.getSearchCounts();
+      measure(page.getName(), "parse+grep", source, new Stage() {
+        public void run(String page) { grep(new JHTML(new StringBuffer(page))); }
+      });
+      reportSearches(page.getName(), "parse+grep", before);
+      measure(page.getName(), "jsoup", source, new Stage() {
+        public void run(String page) { Jsoup.parse(page); }
+      });
+      if(page.getName().startsWith("item")) {
+        measure(page.getName(), "details", source, new Stage() {
+          public void run(String page) {
+            SpecificAuction auction = mServer.getNewSpecificAuction();
+            auction.setContent(new StringBuffer(page), false);
+            if(auction.preParseAuction()) auction.parseAuction(null);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * The sort of lookups the item and bid parsing do against a JHTML document.
+   *
+   * @param doc - The document to search.
+   */
+  private static void grep(JHTML doc) {
+    doc.reset();
+    doc.grep("(?i)This (item|listing) has ended.*");
+    doc.reset();
+    doc.getNextContentAfterRegex(".*Item.[Ll]ocation.*");
+    doc.reset();
+    doc.find("Current bid", true);
+    doc.reset();
+    doc.hasSequence("Price:", ".*", "(?i)Buy.It.Now");
+    doc.reset();
+    doc.findSequence("\\s*(e[Bb]ay.)?[Ii]tem.[Nn]umber:\\s*", "\\d+");
+    doc.reset();
+  }
+
+  private static void reportSearches(String name, String stageName, long[] before) {
+    long[] after = JHTML.getSearchCounts();
+    long searches = after[0] - before[0];
+    long tested = after[1] - before[1];
+    System.out.println(String.format("%-24s %-10s %10.1f searches/op, %.1f entries tested/search", name, stageName,
+        searches / (double) (WARMUP + ITERATIONS), searches == 0 ? 0.0 : tested / (double) searches));
+  }
+
+  private void measure(String name, String stageName, String page, Stage stage) {
+    try {
+      for(int i=0; i<WARMUP; i++) stage.run(page);
+
+      long[] samples = new long[ITERATIONS];
+      long self = Thread.currentThread().getId();
+      long bytes = mThreads == null ? 0 : mThreads.getThreadAllocatedBytes(self);
+      long start = System.nanoTime();
+      for(int i=0; i<ITERATIONS; i++) {
+        long before = System.nanoTime();
+        stage.run(page);
+        samples[i] = System.nanoTime() - before;
+      }
+      long elapsed = System.nanoTime() - start;
+      String allocated = mThreads == null ? "n/a" : Long.toString((mThreads.getThreadAllocatedBytes(self) - bytes) / ITERATIONS);
+
+      Arrays.sort(samples);
+      System.out.println(String.format("%-24s %-10s %10d %10.1f %10.1f %12s", name, stageName,
+          ITERATIONS * 1000000000L / elapsed,
+          samples[ITERATIONS / 2] / 1000.0,
+          samples[(ITERATIONS * 99) / 100] / 1000.0,
+          allocated));
+    } catch(Exception e) {
+      System.out.println(String.format("%-24s %-10s failed: %s", name, stageName, e));
+    }
+  }
+}
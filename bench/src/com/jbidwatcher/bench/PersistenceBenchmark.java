@@ -0,0 +1,80 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+import com.jbidwatcher.util.db.WriteBehind;
+
+import java.util.*;
+
+/**
+ * Save updates to a few hundred auction records from several threads
+ * against a scratch Derby database, first writing each save synchronously,
+ * then through the write-behind queue.  Write-behind throughput is
+ * reported both as the savers see it, and including the time to drain the
+ * queue to the database afterwards.
+ */
+public class PersistenceBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int THREADS = 4;
+    final int ROWS = 500;
+    final int OPERATIONS = 2000;
+
+    try {
+      Bench.openScratchDatabase();
+      for(final boolean writeBehind : new boolean[] { false, true }) {
+        JConfig.setConfiguration("db.write_behind", Boolean.toString(writeBehind));
+        WriteBehind.shutdownShared();
+
+        final AuctionInfo[] rows = new AuctionInfo[ROWS];
+        for(int i=0; i<ROWS; i++) {
+          rows[i] = new AuctionInfo();
+          rows[i].setString("identifier", Integer.toString(1000000 + i));
+          rows[i].setString("title", "Benchmark item " + i);
+          rows[i].saveDB();
+        }
+
+        Thread[] workers = new Thread[THREADS];
+        long start = System.nanoTime();
+        for(int w=0; w<THREADS; w++) {
+          final int first = w;
+          workers[w] = new Thread() {
+            public void run() {
+              Random r = new Random(first);
+              for(int i=0; i<OPERATIONS; i++) {
+                //  Each worker has its own rows, as a record is only ever updated by one thread at a time.
+                AuctionInfo row = rows[first + THREADS * r.nextInt(ROWS / THREADS)];
+                row.setInteger("bid_count", i);
+                row.setString("high_bidder", "bidder" + r.nextInt(100));
+                row.saveDB();
+              }
+            }
+          };
+          workers[w].start();
+        }
+        for(Thread worker : workers) worker.join();
+        long saved = System.nanoTime() - start;
+        WriteBehind queue = WriteBehind.getInstance();
+        if(queue != null) queue.flush();
+        long drained = System.nanoTime() - start;
+
+        int saves = THREADS * OPERATIONS;
+        System.out.println((writeBehind ? "write-behind" : "synchronous") + ": " + (saves * 1000000000L / saved) + " saves/sec, " +
+            (saves * 1000000000L / drained) + " saves/sec including drain");
+        if(queue != null) System.out.println("  " + queue.getStatistics());
+      }
+      WriteBehind.shutdownShared();
+      ActiveRecord.shutdown();
+    } catch(Exception e) {
+      JConfig.log().handleException("Persistence benchmark failed.", e);
+    } finally {
+      ActiveRecord.disableDatabase();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Load every item page in the directory into a scratch database, load the
+ * entries back the way the UI does, and then count the database queries
+ * made reading every value the auction table displays.  Once the entries
+ * are loaded, painting them should take no queries at all.
+ *
+ * Its argument is the directory holding saved item pages (bench/pages by default).
+ */
+public class QueryCountCheck implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int COPIES = 20;
+    File[] pages = Bench.listPages(dirName);
+    if(pages == null) return;
+
+    try {
+      Bench.openScratchDatabase();
+      for(File page : pages) {
+        if(!page.isFile() || !page.getName().startsWith("item")) continue;
+        String source = StringTools.cat(page.getAbsolutePath());
+        AuctionEntry first = Bench.loadPageEntry(server, page.getName(), source);
+        if(first == null) continue;
+        String identifier = first.getIdentifier();
+        for(int i=1; i<COPIES; i++) {
+          //  Give each copy its own item number, so they're separate entries.
+          Bench.loadPageEntry(server, page.getName(), source.replace(identifier, Long.toString(Long.parseLong(identifier) + i * 1000)));
+        }
+      }
+
+      List<AuctionEntry> entries = AuctionEntry.findAll();
+      for(AuctionEntry ae : entries) Bench.paintRow(ae);
+
+      com.jbidwatcher.util.db.Database db = com.jbidwatcher.util.db.Database.getShared();
+      long before = db.getAcquired();
+      for(AuctionEntry ae : entries) Bench.paintRow(ae);
+      long queries = db.getAcquired() - before;
+
+      System.out.println("Painting " + entries.size() + " entries took " + queries + " queries.");
+      System.out.println(queries == 0 ? "PASS" : "FAIL");
+    } catch(Exception e) {
+      JConfig.log().handleException("Query count check failed.", e);
+    } finally {
+      ActiveRecord.disableDatabase();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.queue.AuctionQObject;
+import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.MessageQueue;
+import com.jbidwatcher.util.queue.Topic;
+
+import java.io.*;
+import java.beans.DefaultPersistenceDelegate;
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+
+/**
+ * Send bid commands through a message queue to a listener, first the way
+ * they used to go (written out with XMLEncoder, and read back in on the
+ * queue's thread), then published by reference on a Topic.
+ */
+public class QueueBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int MESSAGES = 20000;
+    String[] modes = { "bean", "reference" };
+
+    for(final String mode : modes) {
+      final Topic<AuctionQObject> topic = new Topic<AuctionQObject>("queuebench-" + mode, AuctionQObject.class);
+      final int[] received = new int[1];
+      final Topic.Subscriber<AuctionQObject> counter = new Topic.Subscriber<AuctionQObject>() {
+        public void messageAction(AuctionQObject message) {
+          if(message.getCommand() == AuctionQObject.BID && message.getData() instanceof AuctionBid) {
+            synchronized(received) {
+              received[0]++;
+              received.notifyAll();
+            }
+          }
+        }
+      };
+      if(mode.equals("bean")) {
+        MQFactory.getConcrete(topic.getName()).registerListener(new MessageQueue.Listener() {
+          public void messageAction(Object deQ) {
+            XMLDecoder xd = new XMLDecoder(new ByteArrayInputStream(((String) deQ).getBytes()));
+            counter.messageAction((AuctionQObject) xd.readObject());
+            xd.close();
+          }
+        });
+      } else {
+        MQFactory.subscribe(topic, counter);
+      }
+
+      long start = System.nanoTime();
+      for(int i=0; i<MESSAGES; i++) {
+        AuctionBid bid = new AuctionBid();
+        bid.setIdentifier(Integer.toString(100000000 + i));
+        bid.setAmount("$1.00");
+        bid.setQuantity(1);
+        AuctionQObject message = new AuctionQObject(AuctionQObject.BID, bid, "none");
+        if(mode.equals("bean")) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          XMLEncoder xe = new XMLEncoder(bytes);
+          xe.setPersistenceDelegate(AuctionQObject.class, new DefaultPersistenceDelegate(new String[] { "command", "data", "label" }));
+          xe.writeObject(message);
+          xe.close();
+          MQFactory.getConcrete(topic.getName()).enqueue(bytes.toString());
+        } else {
+          MQFactory.publish(topic, message);
+        }
+      }
+      long sent = System.nanoTime();
+      synchronized(received) {
+        long until = System.currentTimeMillis() + 60000;
+        while(received[0] < MESSAGES && System.currentTimeMillis() < until) {
+          try { received.wait(100); } catch(InterruptedException ignored) { }
+        }
+      }
+      long done = System.nanoTime();
+
+      System.out.println(mode + ": " + received[0] + " of " + MESSAGES + " delivered, send " + ((sent - start) / MESSAGES) +
+          "ns/message, delivered " + ((done - start) / MESSAGES) + "ns/message overall");
+    }
+  }
+}
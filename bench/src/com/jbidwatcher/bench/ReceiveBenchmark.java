@@ -0,0 +1,145 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.http.Http;
+
+import java.util.*;
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Compare the allocation and time it takes to receive a page and turn it
+ * into a StringBuffer for the parser, the way Http used to (a fresh
+ * buffer per page, tripled as it fills, decoded to a String and copied
+ * into a StringBuffer) against Http.receivePage now.  Each saved page is
+ * served from memory as if it had just arrived, along with one made by
+ * repeating the pages until it's the size of a real item page.
+ *
+ * Its argument is the directory holding saved pages (bench/pages by default).
+ */
+public class ReceiveBenchmark implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int ROUNDS = 200;
+    File[] files = Bench.listPages(dirName);
+    if(files == null) return;
+
+    com.sun.management.ThreadMXBean threads = Bench.allocationCounter();
+    if(threads == null) return;
+    long self = Thread.currentThread().getId();
+
+    Map<String, byte[]> pages = new LinkedHashMap<String, byte[]>();
+    ByteArrayOutputStream everything = new ByteArrayOutputStream();
+    for(File file : files) {
+      if(!file.isFile()) continue;
+      try {
+        byte[] page = StringTools.cat(file.getAbsolutePath()).getBytes("UTF-8");
+        pages.put(file.getName(), page);
+        everything.write(page);
+      } catch(IOException e) {
+        System.err.println("Can't read " + file + ": " + e);
+      }
+    }
+    if(everything.size() == 0) return;
+    ByteArrayOutputStream large = new ByteArrayOutputStream();
+    while(large.size() < 250000) large.write(everything.toByteArray(), 0, everything.size());
+    pages.put("(" + large.size() / 1024 + "K combined)", large.toByteArray());
+
+    String contentType = "text/html; charset=UTF-8";
+    try {
+      //  Warm up both paths, so the first page measured isn't charged for the JIT.
+      for(int i=0; i<ROUNDS; i++) {
+        for(byte[] page : pages.values()) {
+          legacyReceivePage(page, contentType);
+          Http.net().receivePage(servedPage(page, contentType));
+        }
+      }
+
+      for(Map.Entry<String, byte[]> entry : pages.entrySet()) {
+        byte[] page = entry.getValue();
+        if(!legacyReceivePage(page, contentType).toString().equals(Http.net().receivePage(servedPage(page, contentType)).toString())) {
+          System.out.println(entry.getKey() + ": MISMATCH");
+          continue;
+        }
+
+        long legacyBytes = 0, legacyNanos = 0, bytes = 0, nanos = 0;
+        for(int i=0; i<ROUNDS; i++) {
+          long before = threads.getThreadAllocatedBytes(self);
+          long start = System.nanoTime();
+          legacyReceivePage(page, contentType);
+          legacyNanos += System.nanoTime() - start;
+          legacyBytes += threads.getThreadAllocatedBytes(self) - before;
+
+          URLConnection uc = servedPage(page, contentType);
+          before = threads.getThreadAllocatedBytes(self);
+          start = System.nanoTime();
+          Http.net().receivePage(uc);
+          nanos += System.nanoTime() - start;
+          bytes += threads.getThreadAllocatedBytes(self) - before;
+        }
+        System.out.println(String.format("%s (%d bytes): before %d bytes, %.1fus; now %d bytes, %.1fus per page",
+            entry.getKey(), page.length, legacyBytes / ROUNDS, legacyNanos / (ROUNDS * 1000.0), bytes / ROUNDS, nanos / (ROUNDS * 1000.0)));
+      }
+    } catch(IOException e) {
+      JConfig.log().handleException("Receive benchmark failed.", e);
+    }
+  }
+
+  /**
+   * A connection that 'receives' a page from memory, a network packet's worth at a time.
+   */
+  private static URLConnection servedPage(final byte[] page, final String contentType) throws IOException {
+    return new URLConnection(new URL("http://localhost/saved")) {
+      public void connect() { }
+      public InputStream getInputStream() { return packetStream(page); }
+      public String getContentType() { return contentType; }
+      public int getContentLength() { return page.length; }
+    };
+  }
+
+  private static InputStream packetStream(byte[] page) {
+    return new ByteArrayInputStream(page) {
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1460));
+      }
+    };
+  }
+
+  /**
+   * How Http received and decoded a page before it pooled its buffers.
+   */
+  private static StringBuffer legacyReceivePage(byte[] page, String contentType) throws IOException {
+    InputStream is = packetStream(page);
+    int curMax = 111821;
+    byte[] mainBuf = new byte[curMax];
+    int count = is.read(mainBuf, 0, curMax);
+    int offset = 0;
+    while(count != -1) {
+      if(offset+count == curMax) {
+        curMax *= 3;
+        byte[] tmp = new byte[curMax];
+        System.arraycopy(mainBuf, 0, tmp, 0, offset+count);
+        mainBuf = tmp;
+      }
+      offset += count;
+      count = is.read(mainBuf, offset, curMax-offset);
+    }
+    is.close();
+    com.jbidwatcher.util.ByteBuffer buff = new com.jbidwatcher.util.ByteBuffer(mainBuf, offset);
+
+    String charset = contentType;
+    if(charset != null && charset.matches(".*charset=([^;]*).*")) {
+      charset = charset.replaceFirst(".*charset=([^;]*).*", "$1");
+      return new StringBuffer(new String(buff.getData(), 0, buff.getLength(), charset));
+    }
+    return new StringBuffer(new String(buff.getData(), 0, buff.getLength()));
+  }
+}
@@ -0,0 +1,81 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.ui.auctionTableModel;
+import com.jbidwatcher.ui.table.TableColumnController;
+
+import java.util.*;
+
+/**
+ * Page through an auction table of ten thousand entries the way a JTable
+ * paints it, a screenful of rows at a time, every column of each; first
+ * building the rows, then scrolling with nothing changed, then repainting
+ * a screenful after each change to one of its entries.  For comparison,
+ * the least each paint used to do is timed too; looking the entry up for
+ * every cell, and reading each value from it once.
+ *
+ * Its argument is the directory of saved item pages to make the entries
+ * from (bench/pages by default).
+ */
+public class RepaintBenchmark implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int ENTRIES = 10000;
+    final int SCREEN = 40;
+    final int CHANGES = 200;
+    AuctionInfo sample = Bench.parseSample(server, dirName);
+    if(sample == null) return;
+
+    AuctionList list = new AuctionList();
+    List<AuctionEntry> entries = Bench.makeEntries(sample, ENTRIES, list);
+    auctionTableModel model = new auctionTableModel(list);
+    int columns = TableColumnController.MAX_FIXED_COLUMN + 1;
+
+    //  The first pass reads (and caches) the entries' values for the first time; it's the second that's timed.
+    long start = 0;
+    for(int pass=0; pass<2; pass++) {
+      start = System.nanoTime();
+      for(int row=0; row<ENTRIES; row++) {
+        AuctionEntry ae = null;
+        for(int column=0; column<columns; column++) ae = list.get(row);
+        Bench.paintRow(ae);
+      }
+    }
+    long direct = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    Bench.paintRows(model, 0, ENTRIES, columns);
+    long built = System.nanoTime() - start;
+    long buildChecks = model.getRowChecks();
+
+    start = System.nanoTime();
+    for(int top=0; top<ENTRIES; top++) Bench.paintRows(model, top, Math.min(ENTRIES, top + SCREEN), columns);
+    long scrolled = System.nanoTime() - start;
+    long scrollChecks = model.getRowChecks() - buildChecks;
+
+    Random r = new Random(ENTRIES);
+    long changed = 0;
+    for(int i=0; i<CHANGES; i++) {
+      int top = r.nextInt(ENTRIES - SCREEN);
+      entries.get(top + r.nextInt(SCREEN)).setString("comment", "Changed " + i);
+      start = System.nanoTime();
+      Bench.paintRows(model, top, top + SCREEN, columns);
+      changed += System.nanoTime() - start;
+    }
+
+    long cells = (long) ENTRIES * columns;
+    long scrollCells = (long) ENTRIES * SCREEN * columns;
+    System.out.println(ENTRIES + " rows, " + columns + " columns:");
+    System.out.println(String.format("  looking up entries and reading them: %.1fns/cell", direct / (double) cells));
+    System.out.println(String.format("  building the rows: %.1fns/cell", built / (double) cells));
+    System.out.println(String.format("  scrolling, nothing changed: %.1fns/cell, %d entries looked at", scrolled / (double) scrollCells, scrollChecks));
+    System.out.println(String.format("  repainting after a change: %.1fus/screen", changed / 1000.0 / CHANGES));
+    System.out.println("  " + model.getStatistics());
+  }
+}
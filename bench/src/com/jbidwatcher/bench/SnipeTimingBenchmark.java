@@ -0,0 +1,104 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.MessageQueue;
+import com.jbidwatcher.util.queue.TimeQueueManager;
+import com.jbidwatcher.util.queue.TimerHandler;
+
+import java.util.*;
+
+/**
+ * Fire a few hundred simulated snipes, in bursts with several due at the
+ * same moment, through the timer queue (as it sends events by default, and
+ * precisely) and through the SnipeScheduler, and report how far from their
+ * due times they went out.  Each 'bid' holds its thread for a while, the
+ * way a real one waits on eBay.
+ */
+public class SnipeTimingBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int SNIPES = 120;
+    final int BURST = 3;
+    final long SEND_TIME = 25;
+    String[] engines = { "queue", "precise", "scheduler" };
+
+    for(String engine : engines) {
+      final String queueName = "snipebench-" + engine;
+      final List<Double> late = new ArrayList<Double>(SNIPES);
+      final long baseNanos = System.nanoTime();
+      final long baseMillis = System.currentTimeMillis();
+
+      MQFactory.getConcrete(queueName).registerListener(new MessageQueue.Listener() {
+        public void messageAction(Object deQ) {
+          recordSnipe(late, Long.parseLong((String) deQ), baseMillis, baseNanos, SEND_TIME);
+        }
+      });
+
+      TimeQueueManager tqm = new TimeQueueManager();
+      tqm.setPrecise(!engine.equals("queue"));
+      TimerHandler timer = new TimerHandler(tqm);
+      timer.start();
+      SnipeScheduler scheduler = new SnipeScheduler("SnipeBench", new SnipeScheduler.Clock() {
+        public long getCurrentTime() { return System.currentTimeMillis(); }
+      });
+
+      Random r = new Random(17);
+      long now = System.currentTimeMillis();
+      for(int i=0; i<SNIPES; i += BURST) {
+        final long when = now + 500 + r.nextInt(10000);
+        for(int j=0; j<BURST; j++) {
+          if(engine.equals("scheduler")) {
+            scheduler.schedule("snipe" + (i + j), when, new Runnable() {
+              public void run() { recordSnipe(late, when, baseMillis, baseNanos, SEND_TIME); }
+            });
+          } else {
+            tqm.add(Long.toString(when), queueName, when);
+          }
+        }
+      }
+
+      synchronized(late) {
+        long until = System.currentTimeMillis() + 10000 + SNIPES * SEND_TIME;
+        while(late.size() < SNIPES && System.currentTimeMillis() < until) {
+          try { late.wait(100); } catch(InterruptedException ignored) { }
+        }
+      }
+      timer.interrupt();
+      scheduler.shutdown();
+
+      List<Double> sorted;
+      synchronized(late) { sorted = new ArrayList<Double>(late); }
+      Collections.sort(sorted);
+      if(sorted.isEmpty()) {
+        System.out.println(engine + ": no snipes fired");
+        continue;
+      }
+      double total = 0.0;
+      int early = 0;
+      for(double l : sorted) {
+        total += l;
+        if(l < -1.0) early++;
+      }
+      System.out.println(String.format("%-9s: %d of %d fired; late mean %.3fms, p50 %.3fms, p99 %.3fms, max %.3fms, min %.3fms, %d early by over 1ms",
+          engine, sorted.size(), SNIPES, total / sorted.size(), sorted.get(sorted.size() / 2),
+          sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * 0.99))), sorted.get(sorted.size() - 1), sorted.get(0), early));
+      if(engine.equals("scheduler")) System.out.println(scheduler.getStatistics());
+    }
+  }
+
+  private static void recordSnipe(List<Double> late, long when, long baseMillis, long baseNanos, long sendTime) {
+    double firedAt = (System.nanoTime() - baseNanos) / 1000000.0;
+    synchronized(late) {
+      late.add(firedAt - (when - baseMillis));
+      late.notifyAll();
+    }
+    //  Stand in for the bid request.
+    try { Thread.sleep(sendTime); } catch(InterruptedException ignored) { }
+  }
+}
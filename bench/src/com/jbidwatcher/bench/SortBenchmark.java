@@ -0,0 +1,121 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.ui.auctionTableModel;
+import com.jbidwatcher.ui.table.ColumnState;
+import com.jbidwatcher.ui.table.ColumnStateList;
+import com.jbidwatcher.ui.table.SortTransformation;
+import com.jbidwatcher.ui.table.TableColumnController;
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.Currency;
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.*;
+
+/**
+ * Sort auction tables of a thousand, ten thousand and fifty thousand
+ * entries, by end date, current bid and title, the way SortTransformation
+ * does now (reading each row's sort value once) and the way it used to
+ * (asking the model to compare two rows, for every comparison).  Then
+ * change the end dates of a few hundred entries, one at a time, moving
+ * each to its new place, against sorting the whole table again.
+ *
+ * Its argument is the directory of saved item pages to make the entries
+ * from (bench/pages by default).
+ */
+public class SortBenchmark implements Benchmark {
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    final int[] SIZES = { 1000, 10000, 50000 };
+    final int[] COLUMNS = { TableColumnController.TIME_LEFT, TableColumnController.CUR_BID, TableColumnController.TITLE };
+    final int CHANGES = 200;
+    AuctionInfo sample = Bench.parseSample(server, dirName);
+    if(sample == null) return;
+    //  There's no database to load entries back from, so the corral has to hold all of them.
+    JConfig.setConfiguration("corral.max_entries", "0");
+
+    for(int size : SIZES) {
+      AuctionList list = new AuctionList();
+      List<AuctionEntry> entries = Bench.makeEntries(sample, size, list);
+      Random r = new Random(size);
+      long now = System.currentTimeMillis();
+      for(AuctionEntry ae : entries) {
+        AuctionInfo ai = ae.getAuction();
+        ai.setDate("end", new Date(now + r.nextInt(10 * 24 * 60) * Constants.ONE_MINUTE));
+        ai.setMonetary("curBid", Currency.getCurrency(Currency.US_DOLLAR, r.nextInt(100000) / 100.0));
+        ai.setString("title", "Item " + Integer.toString(r.nextInt(size * 10), 36));
+      }
+      final auctionTableModel model = new auctionTableModel(list);
+      Bench.paintRows(model, 0, size, TableColumnController.MAX_FIXED_COLUMN + 1);
+
+      System.out.println(size + " rows:");
+      for(int column : COLUMNS) {
+        final ColumnStateList sortBy = new ColumnStateList();
+        sortBy.add(new ColumnState(column, 1));
+
+        //  Both are timed on their second run, once the code's been compiled.
+        long compared = 0, keyed = 0;
+        List<Integer> byComparing = null;
+        SortTransformation st = null;
+        for(int pass=0; pass<2; pass++) {
+          byComparing = new ArrayList<Integer>(size);
+          for(int i=0; i<size; i++) byComparing.add(i);
+          long start = System.nanoTime();
+          Collections.sort(byComparing, new Comparator<Integer>() {
+            public int compare(Integer row1, Integer row2) { return model.compare(row1, row2, sortBy); }
+          });
+          compared = System.nanoTime() - start;
+
+          st = new SortTransformation(model);
+          st.setSortList(sortBy);
+          start = System.nanoTime();
+          st.sort();
+          keyed = System.nanoTime() - start;
+        }
+
+        boolean same = true;
+        for(int i=0; i<size && same; i++) same = st.convertRowIndexToModel(i) == byComparing.get(i);
+        System.out.println(String.format("  sorting by %s: comparing rows %.2fms, sort values read once %.2fms%s",
+            model.getColumnName(column), compared / 1000000.0, keyed / 1000000.0, same ? "" : " (DIFFERENT ORDER)"));
+      }
+
+      ColumnStateList byEnd = new ColumnStateList();
+      byEnd.add(new ColumnState(TableColumnController.TIME_LEFT, 1));
+      SortTransformation st = new SortTransformation(model);
+      st.setSortList(byEnd);
+      st.sort();
+      long repositioned = 0, resorted = 0;
+      for(int i=0; i<CHANGES; i++) {
+        int row = r.nextInt(size);
+        AuctionEntry ae = entries.get(st.convertRowIndexToModel(row));
+        ae.getAuction().setDate("end", new Date(now + r.nextInt(10 * 24 * 60) * Constants.ONE_MINUTE));
+        //  Repainting the changed row builds it again; it's only moving it that's timed.
+        model.getSortByValueAt(st.convertRowIndexToModel(row), TableColumnController.TIME_LEFT);
+        long start = System.nanoTime();
+        int moved = st.reposition(row);
+        repositioned += System.nanoTime() - start;
+
+        //  The same change, sorting everything again.
+        SortTransformation full = new SortTransformation(model);
+        full.setSortList(byEnd);
+        start = System.nanoTime();
+        full.sort();
+        resorted += System.nanoTime() - start;
+        if(model.compare(st.convertRowIndexToModel(moved), full.convertRowIndexToModel(moved), byEnd) != 0) {
+          System.out.println("  Repositioned row " + row + " to " + moved + ", but sorting puts it elsewhere.");
+        }
+      }
+      boolean sorted = true;
+      for(int i=1; i<size && sorted; i++) sorted = model.compare(st.convertRowIndexToModel(i - 1), st.convertRowIndexToModel(i), byEnd) <= 0;
+      System.out.println(String.format("  after changing an end date: repositioning %.1fus, sorting again %.2fms%s",
+          repositioned / 1000.0 / CHANGES, resorted / 1000000.0 / CHANGES, sorted ? "" : " (OUT OF ORDER)"));
+      System.out.println("  " + st.getStatistics());
+    }
+  }
+}
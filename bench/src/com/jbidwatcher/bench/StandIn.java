@@ -0,0 +1,96 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A local stand-in for a web server, so benchmarks and checks can make
+ * real requests without the network.  Each request gets a fresh page,
+ * answered once the request's headers have been read, and the connection
+ * is closed after it.
+ */
+final class StandIn {
+  private StandIn() { }
+
+  static ServerSocket start(final int delay) throws IOException {
+    return start(new Page() {
+      public String respond() throws InterruptedException {
+        Thread.sleep(delay);
+        return "<html><head><title>Stand-in</title></head><body>Current bid: $1.00</body></html>";
+      }
+    });
+  }
+
+  interface Page {
+    /**
+     * @return The page to answer a request with; called once the request has been read.
+     *
+     * @throws InterruptedException - If the stand-in is interrupted while delaying its answer.
+     */
+    String respond() throws InterruptedException;
+  }
+
+  static ServerSocket start(final Page page) throws IOException {
+    final ServerSocket server = new ServerSocket(0);
+    Thread acceptor = new Thread("StandIn") {
+      public void run() {
+        while(!server.isClosed()) {
+          try {
+            final Socket client = server.accept();
+            new Thread("StandIn-Request") {
+              public void run() {
+                try {
+                  BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+                  String line;
+                  while((line = in.readLine()) != null && line.length() != 0) { /* Skip the request headers. */ }
+                  byte[] body = page.respond().getBytes();
+                  OutputStream out = client.getOutputStream();
+                  out.write(("HTTP/1.0 200 OK\r\nContent-Type: text/html\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes());
+                  out.write(body);
+                  out.flush();
+                } catch(Exception ignored) {
+                  //  The benchmark will report the failure.
+                } finally {
+                  try { client.close(); } catch(IOException ignored) { }
+                }
+              }
+            }.start();
+          } catch(IOException ignored) {
+            //  Closed; the loop will exit.
+          }
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server;
+  }
+
+  static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while((c = in.read()) != -1 && c != '\n') {
+      if(c != '\r') line.append((char) c);
+    }
+    return c == -1 && line.length() == 0 ? null : line.toString();
+  }
+
+  /**
+   * Send every plain HTTP request through the stand-in, as if it were a proxy.
+   *
+   * @param standIn - The stand-in server's socket.
+   */
+  static void useAsProxy(ServerSocket standIn) {
+    JConfig.setConfiguration("proxyfirewall", "proxy");
+    JConfig.setConfiguration("proxy.host", "localhost");
+    JConfig.setConfiguration("proxy.port", Integer.toString(standIn.getLocalPort()));
+  }
+}
@@ -0,0 +1,57 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.queue.TimeQueueInterface;
+import com.jbidwatcher.util.queue.TimeQueueManager;
+
+import java.util.*;
+
+/**
+ * Compare the Heap-backed TimeQueue against the TimingWheel, scheduling events
+ * randomly over a day, cancelling and looking up a thousand of them by payload,
+ * and then draining the queue a second at a time the way the TimerHandler does.
+ */
+public class TimeQueueBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    int[] sizes = { 1000, 10000, 100000 };
+    String[] engines = { "heap", "wheel" };
+    final long DAY = 24 * 60 * 60 * 1000L;
+    final int LOOKUPS = 1000;
+
+    for(int size : sizes) {
+      for(String engine : engines) {
+        Random r = new Random(size);
+        long base = System.currentTimeMillis();
+        TimeQueueInterface tq = TimeQueueManager.createQueue(engine);
+        TimeQueueManager tqm = new TimeQueueManager(tq);
+
+        long start = System.nanoTime();
+        for(int i=0; i<size; i++) tqm.add("item" + i, "bench", base + (long)(r.nextDouble() * DAY));
+        long added = System.nanoTime();
+
+        int found = 0;
+        for(int i=0; i<LOOKUPS; i++) if(tqm.contains("item" + r.nextInt(size))) found++;
+        long looked = System.nanoTime();
+
+        for(int i=0; i<LOOKUPS; i++) tqm.erase("item" + r.nextInt(size));
+        long erased = System.nanoTime();
+
+        int drained = 0;
+        for(long when = base; when <= base + DAY + 1000; when += 1000) {
+          while(tq.getAnyLessThan(when) != null) drained++;
+        }
+        long done = System.nanoTime();
+
+        System.out.println(engine + " @ " + size + ": insert " + ((added - start) / size) + "ns/event, " +
+            "contains " + ((looked - added) / LOOKUPS) + "ns (" + found + " found), " +
+            "erase " + ((erased - looked) / LOOKUPS) + "ns, " +
+            "drain " + ((done - erased) / 1000000) + "ms (" + drained + " fired)");
+      }
+    }
+  }
+}
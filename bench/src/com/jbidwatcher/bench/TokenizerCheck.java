@@ -0,0 +1,82 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.StringTools;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.html.JHTMLParser;
+import com.jbidwatcher.util.html.htmlToken;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Tokenize every page in a directory, and a set of awkward cases, with
+ * both the copying and the streaming tokenizer, with and without the title
+ * fix, and report any page where their tokens differ.
+ *
+ * Its argument is the directory holding saved pages (bench/pages by default).
+ */
+public class TokenizerCheck implements Benchmark {
+  //  Awkward bits of HTML the tokenizers have to agree on, beyond what's in the saved pages.
+  private static final String[] TOKENIZER_CASES = {
+      "<html><head><title>A & B <i>c</i></title></head><body>x<title>Second</title></body></html>",
+      "<title>One</title> and <title>Two</title>\n<title>Three</title>\r<title>Unclosed\n</title>",
+      "<nobr>$1.00</nobr> <b><nobr>bold</nobr></b> <no<nobr>br>x</nobr> <NOBR>upper</NOBR>",
+      "<title><nobr>Wrapped</nobr> title</title><p>&nbsp;&nbsp;text&nbsp between&#160;</p>",
+      "<a href=\"x\">ok</a><img src=\"y\"\"><input value=\"unclosed><b>bold</b><i class=\"z\">z</i>",
+      "<!-- a comment with <tags> and -- dashes --><p>after</p><!---->x<!-- unterminated",
+      "a<b\"c\">d</b>e<\"f\">g<h i=\"j>k\" l=\"m\">n",
+      "", "x", "<", "<!--", "<title></title>", "trailing text",
+  };
+
+  public void run(ebayServer server, String dirName) {
+    if(dirName == null) dirName = Bench.PAGES;
+    File[] pages = Bench.listPages(dirName);
+    if(pages == null) return;
+    Arrays.sort(pages);
+
+    Map<String, String> sources = new LinkedHashMap<String, String>();
+    for(File page : pages) {
+      if(page.isFile()) sources.put(page.getName(), StringTools.cat(page.getAbsolutePath()));
+    }
+    for(int i = 0; i < TOKENIZER_CASES.length; i++) sources.put("case " + (i + 1), TOKENIZER_CASES[i]);
+
+    String original = JConfig.queryConfiguration("ebay.titleFix", "true");
+    int mismatched = 0;
+    try {
+      for(Map.Entry<String, String> source : sources.entrySet()) {
+        String difference = null;
+        for(String titleFix : new String[] { "true", "false" }) {
+          JConfig.setConfiguration("ebay.titleFix", titleFix);
+          List<htmlToken> copied = new JHTMLParser(source.getValue(), null, false).getTokens();
+          List<htmlToken> streamed = new JHTMLParser(new StringBuffer(source.getValue()), null, true).getTokens();
+          int count = Math.min(copied.size(), streamed.size());
+          for(int i = 0; difference == null && i < count; i++) {
+            htmlToken left = copied.get(i);
+            htmlToken right = streamed.get(i);
+            if(left.getTokenType() != right.getTokenType() || !left.getToken().equals(right.getToken())) {
+              difference = "token " + i + " (title fix " + titleFix + "): " + left.getTokenType() + " \"" + left.getToken() + "\" != " + right.getTokenType() + " \"" + right.getToken() + "\"";
+            }
+          }
+          if(difference == null && copied.size() != streamed.size()) {
+            difference = "(title fix " + titleFix + ") " + copied.size() + " tokens != " + streamed.size() + " tokens";
+          }
+        }
+        if(difference == null) {
+          System.out.println(source.getKey() + ": ok");
+        } else {
+          mismatched++;
+          System.out.println(source.getKey() + ": MISMATCH " + difference);
+        }
+      }
+    } finally {
+      JConfig.setConfiguration("ebay.titleFix", original);
+    }
+    System.out.println(sources.size() + " sources, " + mismatched + " mismatched; " + (mismatched == 0 ? "PASS" : "FAIL"));
+  }
+}
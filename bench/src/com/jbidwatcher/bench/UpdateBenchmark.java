@@ -0,0 +1,71 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.http.HostThrottle;
+import com.jbidwatcher.util.http.Http;
+
+import java.io.*;
+import java.net.ServerSocket;
+
+/**
+ * Refresh a couple hundred 'entries' from a local stand-in server, which
+ * answers every request after a fixed delay, through UpdatePools of various
+ * sizes and per-host rates, reporting throughput, queue wait and fetch latency.
+ */
+public class UpdateBenchmark implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    final int ENTRIES = 200;
+    final int DELAY = 50;
+    double[][] modes = { { 1, 0 }, { 4, 0 }, { 8, 0 }, { 4, 20 } };
+
+    ServerSocket standIn;
+    try {
+      standIn = StandIn.start(DELAY);
+    } catch(IOException e) {
+      JConfig.log().handleException("Couldn't start the stand-in server.", e);
+      return;
+    }
+
+    final String url = "http://localhost:" + standIn.getLocalPort() + "/item";
+    try {
+      for(double[] mode : modes) {
+        UpdatePool pool = new UpdatePool((int) mode[0]);
+        final HostThrottle throttle = new HostThrottle(mode[1], 60000);
+
+        long start = System.nanoTime();
+        for(int i=0; i<ENTRIES; i++) {
+          pool.submit("item" + i, new Runnable() {
+            public void run() {
+              try {
+                throttle.acquire("localhost");
+              } catch(InterruptedException e) {
+                return;
+              }
+              long fetchStart = System.nanoTime();
+              StringBuffer page = Http.net().get(url);
+              throttle.done("localhost", page != null, System.nanoTime() - fetchStart);
+            }
+          });
+        }
+        pool.awaitIdle();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("workers=" + (int) mode[0] + ", rate=" + (mode[1] == 0 ? "unlimited" : mode[1] + "/s") + ": " +
+            (ENTRIES * 1000000000L / elapsed) + " updates/sec");
+        System.out.println("  " + pool.getStatistics());
+        System.out.println("  " + throttle.getStatistics());
+      }
+    } catch(InterruptedException ignored) {
+      //  Just stop.
+    } finally {
+      try { standIn.close(); } catch(IOException ignored) { }
+    }
+  }
+}
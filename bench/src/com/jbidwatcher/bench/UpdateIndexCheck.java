@@ -0,0 +1,95 @@
+package com.jbidwatcher.bench;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.*;
+import com.jbidwatcher.auction.server.ebay.ebayServer;
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.config.JConfig;
+import com.jbidwatcher.util.db.ActiveRecord;
+
+import java.util.*;
+
+/**
+ * Fill a scratch database with entries covering each combination of last
+ * update time, end date and ended flag, and check that the UpdateIndex
+ * picks exactly the entries the update queries do, both as it's
+ * maintained by saves, and rebuilt from the database.  Then compare the
+ * database queries a minute of update checks makes each way.
+ */
+public class UpdateIndexCheck implements Benchmark {
+  public void run(ebayServer server, String argument) {
+    long now = System.currentTimeMillis();
+    Long[] lastUpdated = { null, now - 10 * Constants.ONE_SECOND, now - 5 * Constants.ONE_MINUTE, now - 2 * Constants.ONE_HOUR };
+    Long[] endings = { null, now - 2 * Constants.ONE_HOUR, now - 30 * Constants.ONE_MINUTE, now + 10 * Constants.ONE_MINUTE,
+                       now + 40 * Constants.ONE_MINUTE, now + 3 * Constants.ONE_HOUR };
+
+    try {
+      Bench.openScratchDatabase();
+      int identifier = 2000000;
+      for(Long last : lastUpdated) {
+        for(Long ending : endings) {
+          for(boolean ended : new boolean[] { false, true }) {
+            AuctionInfo ai = new AuctionInfo();
+            ai.setString("identifier", Integer.toString(identifier++));
+            ai.setString("title", "Update index check");
+            if(ending != null) ai.setDate("end", new Date(ending));
+            ai.saveDB();
+            AuctionEntry ae = EntryFactory.getInstance().constructEntry();
+            ae.setString("identifier", ai.getIdentifier());
+            ae.setCategory("current");
+            ae.setAuctionInfo(ai);
+            ae.setDate("last_updated_at", last == null ? null : new Date(last));
+            ae.setBoolean("ended", ended);
+            ae.saveDB();
+          }
+        }
+      }
+
+      boolean pass = compareUpdateIndex("maintained");
+      UpdateIndex.getInstance().rebuild();
+      pass &= compareUpdateIndex("rebuilt");
+
+      com.jbidwatcher.util.db.Database db = com.jbidwatcher.util.db.Database.getShared();
+      long before = db.getAcquired();
+      for(int tick=0; tick<60; tick++) {
+        AuctionEntry.findAllNeedingUpdates(Constants.ONE_MINUTE * 69);
+        AuctionEntry.findEndingNeedingUpdates(Constants.ONE_MINUTE);
+        AuctionEntry.findManualUpdates();
+      }
+      long sqlQueries = db.getAcquired() - before;
+      before = db.getAcquired();
+      for(int tick=0; tick<60; tick++) UpdateIndex.getInstance().findDue(System.currentTimeMillis(), true);
+      long indexQueries = db.getAcquired() - before;
+      System.out.println("60 update checks: " + sqlQueries + " queries with SQL polling, " + indexQueries + " with the index.");
+      System.out.println(UpdateIndex.getInstance().getStatistics());
+
+      System.out.println(pass ? "PASS" : "FAIL");
+    } catch(Exception e) {
+      JConfig.log().handleException("Update index check failed.", e);
+    } finally {
+      ActiveRecord.disableDatabase();
+    }
+  }
+
+  private static boolean compareUpdateIndex(String how) {
+    long now = System.currentTimeMillis();
+    Set<String> expected = new TreeSet<String>();
+    for(AuctionEntry ae : AuctionEntry.findAllNeedingUpdates(Constants.ONE_MINUTE * 69)) expected.add(ae.getIdentifier());
+    for(AuctionEntry ae : AuctionEntry.findEndingNeedingUpdates(Constants.ONE_MINUTE)) expected.add(ae.getIdentifier());
+    for(AuctionEntry ae : AuctionEntry.findManualUpdates()) expected.add(ae.getIdentifier());
+    Set<String> manual = new TreeSet<String>();
+    for(AuctionEntry ae : AuctionEntry.findManualUpdates()) manual.add(ae.getIdentifier());
+
+    Set<String> actual = new TreeSet<String>(UpdateIndex.getInstance().findDue(now, true));
+    Set<String> actualManual = new TreeSet<String>(UpdateIndex.getInstance().findDue(now, false));
+
+    boolean same = expected.equals(actual) && manual.equals(actualManual);
+    System.out.println(how + ": queries found " + expected.size() + " due (" + manual.size() + " manual), index found " +
+        actual.size() + " (" + actualManual.size() + " manual)" + (same ? "" : "; queries " + expected + ", index " + actual));
+    return same;
+  }
+}
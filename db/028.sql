@@ -0,0 +1,13 @@
+CREATE TABLE validators (
+  id integer NOT NULL generated by default as identity (START WITH 1, INCREMENT BY 1),
+  identifier varchar(255) default NULL,
+  url varchar(1024) default NULL,
+  etag varchar(255) default NULL,
+  last_modified varchar(64) default NULL,
+  content_hash varchar(64) default NULL,
+  created_at timestamp default NULL,
+  updated_at timestamp default NULL,
+  PRIMARY KEY  (id)
+)
+
+CREATE INDEX IDX_Validators_Identifier ON validators(identifier)
@@ -0,0 +1,339 @@
+package com.cyberfox.util.config;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import java.io.*;
+
+/**
+ * Writes log entries to the log file (and optionally the console) from a
+ * single background thread, so threads doing the logging don't wait on disk
+ * or terminal I/O.
+ *
+ * Entries go into a bounded ring buffer; the writer thread takes everything
+ * pending at once, writes it, and flushes once per batch.  When the buffer
+ * fills, the overflow policy decides whether the logging thread waits for
+ * room (block), the new entry is thrown away (drop), or the oldest queued
+ * entry is (drop_oldest).  With a capacity of zero, entries are written
+ * immediately on the caller's thread, as JBidwatcher always used to.
+ *
+ * The log file is rotated to the next free numbered name once it grows past
+ * the maximum size.
+ */
+@SuppressWarnings({"UseOfSystemOutOrSystemErr"})
+class AsyncLogWriter {
+  enum Overflow { BLOCK, DROP, DROP_OLDEST }
+
+  private final int mCapacity;
+  private final Overflow mOverflow;
+  private final long mMaxSize;
+
+  private final String[] mFileText;
+  private final String[] mConsoleText;
+  private int mHead = 0;
+  private int mCount = 0;
+
+  //  Sequence numbers for flush(); every entry accepted gets one, and it's
+  //  complete once it's been written out, or pushed out of the buffer.
+  private long mAccepted = 0;
+  private long mCompleted = 0;
+
+  private long mWritten = 0;
+  private long mDropped = 0;
+  private long mUnreportedDrops = 0;
+  private long mBatches = 0;
+  private int mMaxQueued = 0;
+  private int mRotations = 0;
+
+  //  The output side has its own lock, so loggers never wait on the disk.
+  private final Object mOutLock = new Object();
+  private File mFile;
+  private Writer mOut;
+  private long mSize;
+  private Thread mThread = null;
+  private volatile boolean mClosed = false;
+
+  /**
+   * @param fp - The log file to write; it's replaced if it already exists.
+   * @param capacity - How many entries can be waiting to be written; zero means write synchronously.
+   * @param overflow - What to do when the buffer is full.
+   * @param maxSize - The size (in characters) at which to rotate to a new log file; zero means never.
+   *
+   * @throws IOException - If the log file can't be opened.
+   */
+  AsyncLogWriter(File fp, int capacity, Overflow overflow, long maxSize) throws IOException {
+    mCapacity = Math.max(capacity, 0);
+    mOverflow = overflow;
+    mMaxSize = maxSize;
+    mFileText = new String[mCapacity];
+    mConsoleText = new String[mCapacity];
+    open(fp);
+
+    if(mCapacity != 0) {
+      mThread = new Thread("LogWriter") {
+        public void run() { writeLoop(); }
+      };
+      mThread.setDaemon(true);
+      mThread.start();
+    }
+  }
+
+  static Overflow parseOverflow(String policy) {
+    if("drop".equals(policy)) return Overflow.DROP;
+    if("drop_oldest".equals(policy)) return Overflow.DROP_OLDEST;
+    return Overflow.BLOCK;
+  }
+
+  private void open(File fp) throws IOException {
+    mFile = fp;
+    mOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fp)));
+    mSize = 0;
+  }
+
+  /**
+   * Switch to logging to a different file.  Everything logged before the
+   * switch is written out to the old file first; the writer itself carries
+   * on, so nothing being logged meanwhile is lost.
+   *
+   * @param fp - The log file to write from now on; it's replaced if it already exists.
+   *
+   * @throws IOException - If the new log file can't be opened; the old one is kept.
+   */
+  void reopen(File fp) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fp)));
+    flush();
+    synchronized(mOutLock) {
+      try {
+        mOut.close();
+      } catch(IOException ignored) {
+        //  It's being replaced regardless.
+      }
+      mFile = fp;
+      mOut = out;
+      mSize = 0;
+    }
+  }
+
+  File getFile() {
+    synchronized(mOutLock) {
+      return mFile;
+    }
+  }
+
+  /**
+   * Queue up an entry to be logged.
+   *
+   * @param fileText - The text to write to the log file, or null for none.
+   * @param consoleText - The text to write to the console, or null for none.
+   */
+  void append(String fileText, String consoleText) {
+    if(mCapacity == 0) {
+      synchronized(mOutLock) {
+        if(mClosed) return;
+        write(fileText, consoleText);
+        flushOut();
+      }
+      return;
+    }
+
+    synchronized(this) {
+      if(mClosed) return;
+      while(mCount == mCapacity) {
+        if(mOverflow == Overflow.DROP) {
+          mDropped++;
+          mUnreportedDrops++;
+          return;
+        }
+        if(mOverflow == Overflow.DROP_OLDEST) {
+          mFileText[mHead] = null;
+          mConsoleText[mHead] = null;
+          mHead = (mHead + 1) % mCapacity;
+          mCount--;
+          mCompleted++;
+          mDropped++;
+          mUnreportedDrops++;
+          break;
+        }
+        try {
+          wait();
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if(mClosed) return;
+      }
+
+      int tail = (mHead + mCount) % mCapacity;
+      mFileText[tail] = fileText;
+      mConsoleText[tail] = consoleText;
+      mCount++;
+      mAccepted++;
+      if(mCount > mMaxQueued) mMaxQueued = mCount;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wait until everything logged so far has been written out.
+   */
+  void flush() {
+    if(mCapacity == 0 || Thread.currentThread() == mThread) return;
+
+    synchronized(this) {
+      long target = mAccepted;
+      while(mCompleted < target && mThread.isAlive()) {
+        try {
+          wait(1000);
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop taking entries, write out anything pending, stop the writer thread,
+   * and close the log file.
+   *
+   * @return The log file that was closed.
+   */
+  File close() {
+    synchronized(this) {
+      mClosed = true;
+      notifyAll();
+    }
+    //  The writer thread writes out everything queued, or already taken, before it stops.
+    if(mThread != null && Thread.currentThread() != mThread) {
+      try {
+        mThread.join();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized(mOutLock) {
+      try {
+        mOut.close();
+      } catch(IOException ignored) {
+        //  It's going away regardless.
+      }
+      return mFile;
+    }
+  }
+
+  private void writeLoop() {
+    String[] fileBatch = new String[mCapacity];
+    String[] consoleBatch = new String[mCapacity];
+
+    while(true) {
+      int batch;
+      long drops;
+      synchronized(this) {
+        while(mCount == 0 && !mClosed) {
+          try {
+            wait();
+          } catch(InterruptedException ignored) {
+            //  Keep going until closed.
+          }
+        }
+        if(mCount == 0 && mClosed) return;
+
+        batch = mCount;
+        for(int i=0; i<batch; i++) {
+          int slot = (mHead + i) % mCapacity;
+          fileBatch[i] = mFileText[slot];
+          consoleBatch[i] = mConsoleText[slot];
+          mFileText[slot] = null;
+          mConsoleText[slot] = null;
+        }
+        mHead = (mHead + batch) % mCapacity;
+        mCount = 0;
+        drops = mUnreportedDrops;
+        mUnreportedDrops = 0;
+        notifyAll();
+      }
+
+      synchronized(mOutLock) {
+        if(drops != 0) write("(" + drops + " log message(s) dropped; the log buffer was full.)", null);
+        for(int i=0; i<batch; i++) {
+          write(fileBatch[i], consoleBatch[i]);
+          fileBatch[i] = null;
+          consoleBatch[i] = null;
+        }
+        flushOut();
+      }
+
+      synchronized(this) {
+        mBatches++;
+        mCompleted += batch;
+        notifyAll();
+      }
+    }
+  }
+
+  private void write(String fileText, String consoleText) {
+    if(consoleText != null) System.err.println(consoleText);
+    if(fileText == null) return;
+
+    try {
+      mOut.write(fileText);
+      mOut.write(System.getProperty("line.separator"));
+      mSize += fileText.length() + 1;
+      mWritten++;
+      if(mMaxSize > 0 && mSize > mMaxSize) rotate();
+    } catch(IOException ioe) {
+      System.err.println("FAILED TO WRITE TO THE ERROR LOG.");
+      ioe.printStackTrace();
+    }
+  }
+
+  private void flushOut() {
+    try {
+      mOut.flush();
+    } catch(IOException ioe) {
+      System.err.println("FAILED TO WRITE TO THE ERROR LOG.");
+      ioe.printStackTrace();
+    }
+  }
+
+  private void rotate() throws IOException {
+    mOut.close();
+    open(nextFile(mFile));
+    mRotations++;
+  }
+
+  /**
+   * Find the next unused numbered log file name after the given one; errors.log
+   * is followed by errors.1.log, errors.2.log, and so on.
+   *
+   * @param current - The log file being rotated away from.
+   *
+   * @return A log file name that doesn't exist yet.
+   */
+  private static File nextFile(File current) {
+    String name = current.getName();
+    String suffix = "";
+    if(name.endsWith(".log")) {
+      suffix = ".log";
+      name = name.substring(0, name.length() - 4);
+    }
+    int dot = name.lastIndexOf('.');
+    if(dot != -1 && name.substring(dot + 1).matches("\\d+")) name = name.substring(0, dot);
+
+    File fp;
+    int stepper = 1;
+    do {
+      fp = new File(current.getParentFile(), name + "." + stepper++ + suffix);
+    } while(fp.exists());
+    return fp;
+  }
+
+  synchronized String getStatistics() {
+    synchronized(mOutLock) {
+      return String.format("Log: %s, %d written, %d dropped, %d queued (max %d of %d), %d batches, %d rotations",
+        mCapacity == 0 ? "synchronous" : "asynchronous", mWritten, mDropped, mCount, mMaxQueued, mCapacity, mBatches, mRotations);
+    }
+  }
+}
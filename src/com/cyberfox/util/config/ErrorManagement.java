@@ -12,9 +12,11 @@ import java.util.ArrayList;
 
 @SuppressWarnings({"UseOfSystemOutOrSystemErr"})
 public class ErrorManagement implements LoggerInterface {
-  private static PrintWriter mLogWriter = null;
+  private static final int DEFAULT_BUFFER = 4096;
+  private static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+  private static volatile AsyncLogWriter mLogWriter = null;
+  private static boolean sShutdownHook = false;
   private List<ErrorHandler> sHandlers = new ArrayList<ErrorHandler>();
-  private File mFP;
   private int fileNumber = 1;
   private boolean mPaused = false;
 
@@ -47,8 +49,7 @@ public class ErrorManagement implements LoggerInterface {
             fp = new File(home + sep + "errors" + increment + ".log");
             increment = "." + stepper++;
           } while(fp.exists());
-          mFP = fp;
-          mLogWriter = new PrintWriter(new FileOutputStream(fp));
+          mLogWriter = createWriter(fp);
         } catch(IOException ioe) {
           System.err.println("FAILED TO OPEN AN ERROR LOG.");
           ioe.printStackTrace();
@@ -57,13 +58,67 @@ public class ErrorManagement implements LoggerInterface {
     }
   }
 
+  /**
+   * Open a log writer on the given file, set up per the logging.* configuration.
+   * Unless logging.async is false, entries are written by a background thread
+   * from a ring buffer of logging.buffer entries, and logging.overflow (block,
+   * drop or drop_oldest) says what happens when it fills.  The log rotates to a
+   * new file after logging.max_size characters (zero for never).
+   *
+   * @param fp - The file to log to.
+   *
+   * @return A new log writer.
+   *
+   * @throws IOException - If the file can't be opened.
+   */
+  private static AsyncLogWriter createWriter(File fp) throws IOException {
+    int buffer = JConfig.queryIntConfiguration("logging.buffer", DEFAULT_BUFFER);
+    long maxSize = JConfig.queryLongConfiguration("logging.max_size", DEFAULT_MAX_SIZE);
+    if(!JConfig.queryConfiguration("logging.async", "true").equals("true")) buffer = 0;
+    AsyncLogWriter.Overflow overflow = AsyncLogWriter.parseOverflow(JConfig.queryConfiguration("logging.overflow", "block"));
+
+    addShutdownHook();
+    return new AsyncLogWriter(fp, buffer, overflow, maxSize);
+  }
+
+  /**
+   * Make sure anything still waiting to be logged gets written out when the program exits.
+   */
+  private static synchronized void addShutdownHook() {
+    if(sShutdownHook) return;
+    sShutdownHook = true;
+    Runtime.getRuntime().addShutdownHook(new Thread("LogFlush") {
+      public void run() {
+        AsyncLogWriter writer = mLogWriter;
+        if(writer != null) writer.flush();
+      }
+    });
+  }
+
+  /**
+   * Wait for everything logged so far to be written out to the log file.
+   */
+  public void flush() {
+    AsyncLogWriter writer = mLogWriter;
+    if(writer != null) writer.flush();
+  }
+
+  /**
+   * @return Statistics for the log writer, or null if there's no log open.
+   */
+  public static String getSharedStatistics() {
+    AsyncLogWriter writer = mLogWriter;
+    return writer == null ? null : writer.getStatistics();
+  }
+
   public void pause() { mPaused = true; }
   public void resume() { mPaused = false; }
 
   public boolean openLog(File fp) {
     try {
-      mFP = fp;
-      mLogWriter = new PrintWriter(new FileOutputStream(fp));
+      //  Switched in place, so threads logging meanwhile aren't left appending to a closed writer.
+      AsyncLogWriter writer = mLogWriter;
+      if(writer != null) writer.reopen(fp); else mLogWriter = createWriter(fp);
       return true;
     } catch (IOException ioe) {
       System.err.println("FAILED TO OPEN AN ERROR LOG.");
@@ -73,8 +128,9 @@ public class ErrorManagement implements LoggerInterface {
   }
 
   public String getLog() {
-    if(mFP == null) return null;
-    return mFP.getAbsolutePath();
+    AsyncLogWriter writer = mLogWriter;
+    if(writer == null) return null;
+    return writer.getFile().getAbsolutePath();
   }
 
   public File closeLog() {
@@ -82,10 +138,8 @@ public class ErrorManagement implements LoggerInterface {
       handler.close();
     }
     if(mLogWriter != null) {
-      mLogWriter.close();
+      File oldFP = mLogWriter.close();
       mLogWriter = null;
-      File oldFP = mFP;
-      mFP = null;
       return oldFP;
     }
     return null;
@@ -95,8 +149,6 @@ public class ErrorManagement implements LoggerInterface {
     initLog();
     Date log_time = new Date();
 
-    System.err.println(log_time + ": " + msg);
-
     String logMsg = log_time + ": ";
     //  This should stop the annoying time duplication in log messages.
     if(msg.startsWith(logMsg)) logMsg = msg; else logMsg += msg;
@@ -104,12 +156,13 @@ public class ErrorManagement implements LoggerInterface {
       handler.addLog(logMsg);
     }
 
+    String consoleMsg = log_time + ": " + msg;
     String doLogging = JConfig.queryConfiguration("logging", "true");
-    if(doLogging.equals("true")) {
-      if(mLogWriter != null) {
-        mLogWriter.println(logMsg);
-        mLogWriter.flush();
-      }
+    AsyncLogWriter writer = mLogWriter;
+    if(writer != null) {
+      writer.append(doLogging.equals("true") ? logMsg : null, consoleMsg);
+    } else {
+      System.err.println(consoleMsg);
     }
   }
 
@@ -125,47 +178,21 @@ public class ErrorManagement implements LoggerInterface {
     if(JConfig.debugging) handleException(sError, e);
   }
 
-  public static class LoggerWriter extends PrintWriter {
-    private StringBuffer mSnapshot = null;
-
-    public LoggerWriter() {
-      super(System.out);
-    }
-
-    public void println(String x) {
-      if (mSnapshot != null) {
-        mSnapshot.append(x);
-        mSnapshot.append('\n');
-      }
-    }
-
-    public void setSnapshot(StringBuffer sb) {
-      mSnapshot = sb;
-    }
-  }
-
-  private static LoggerWriter sWriter = new LoggerWriter();
-
   public static String getStackTrace(Throwable e) {
-    StringBuffer sb = new StringBuffer();
-    sWriter.setSnapshot(sb);
-    e.printStackTrace(sWriter);
-    sWriter.setSnapshot(null);
-
-    return sb.toString();
+    //  A writer per call; exceptions can be logged from several threads at once,
+    //  and the trace is what ends up in the log file now.
+    StringWriter sw = new StringWriter();
+    PrintWriter pw = new PrintWriter(sw);
+    e.printStackTrace(pw);
+    pw.flush();
+
+    return sw.toString();
   }
 
   public void handleException(String sError, Throwable e) {
     initLog();
     Date log_time = new Date();
 
-    if(sError == null || sError.length() == 0) {
-      System.err.println("[" + log_time + "]");
-    } else {
-      System.err.println(log_time + ": " + sError);
-    }
-    e.printStackTrace();
-
     String doLogging = JConfig.queryConfiguration("logging", "true");
 
     String logMsg;
@@ -180,13 +207,20 @@ public class ErrorManagement implements LoggerInterface {
       handler.exception(logMsg, e.getMessage(), trace);
     }
 
-    if(doLogging.equals("true")) {
-      if(mLogWriter != null) {
-        mLogWriter.println(logMsg);
-        if(e.getMessage() != null) mLogWriter.println(e.getMessage());
-        e.printStackTrace(mLogWriter);
-        mLogWriter.flush();
+    String consoleMsg = logMsg + '\n' + trace.trim();
+    AsyncLogWriter writer = mLogWriter;
+    if(writer != null) {
+      String fileMsg = null;
+      if(doLogging.equals("true")) {
+        fileMsg = logMsg;
+        if(e.getMessage() != null) fileMsg += '\n' + e.getMessage();
+        fileMsg += '\n' + trace.trim();
       }
+      writer.append(fileMsg, consoleMsg);
+      //  Exceptions are often followed by things going badly wrong, so make sure it's on disk.
+      writer.flush();
+    } else {
+      System.err.println(consoleMsg);
     }
   }
 
@@ -195,17 +229,12 @@ public class ErrorManagement implements LoggerInterface {
     String doLogging = JConfig.queryConfiguration("logging", "true");
     if(doLogging.equals("true")) {
       if(JConfig.debugging) {
-        if(mLogWriter != null) {
-          mLogWriter.println("+------------------------------");
-          mLogWriter.println("| " + msgtop);
-          mLogWriter.println("+------------------------------");
-          if(dumpsb != null) {
-            mLogWriter.println(dumpsb);
-          } else {
-            mLogWriter.println("(null)");
-          }
-          mLogWriter.println("+------------end---------------");
-          mLogWriter.flush();
+        AsyncLogWriter writer = mLogWriter;
+        if(writer != null) {
+          String separator = "\n+------------------------------\n";
+          writer.append("+------------------------------\n| " + msgtop + separator +
+              (dumpsb != null ? dumpsb.toString() : "(null)") +
+              "\n+------------end---------------", null);
         }
         for(ErrorHandler handler : sHandlers) {
           handler.addLog("...");
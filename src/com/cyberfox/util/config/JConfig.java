@@ -510,6 +510,54 @@ public class JConfig {
     return retVal;
   }
 
+  /**
+   * @param query - The configuration key to look up.
+   * @param inDefault - The value to use if the key isn't set, or isn't an integer.
+   *
+   * @return The configured value, or the default.
+   */
+  public static int queryIntConfiguration(String query, int inDefault) {
+    String value = queryConfiguration(query);
+    if(value == null) return inDefault;
+    try {
+      return Integer.parseInt(value.trim());
+    } catch(NumberFormatException ignored) {
+      return inDefault;
+    }
+  }
+
+  /**
+   * @param query - The configuration key to look up.
+   * @param inDefault - The value to use if the key isn't set, or isn't an integer.
+   *
+   * @return The configured value, or the default.
+   */
+  public static long queryLongConfiguration(String query, long inDefault) {
+    String value = queryConfiguration(query);
+    if(value == null) return inDefault;
+    try {
+      return Long.parseLong(value.trim());
+    } catch(NumberFormatException ignored) {
+      return inDefault;
+    }
+  }
+
+  /**
+   * @param query - The configuration key to look up.
+   * @param inDefault - The value to use if the key isn't set, or isn't a number.
+   *
+   * @return The configured value, or the default.
+   */
+  public static double queryDoubleConfiguration(String query, double inDefault) {
+    String value = queryConfiguration(query);
+    if(value == null) return inDefault;
+    try {
+      return Double.parseDouble(value.trim());
+    } catch(NumberFormatException ignored) {
+      return inDefault;
+    }
+  }
+
   public static String queryConfiguration(String query) {
     if(soleProperty.getProperty("config.logging", "false").equals("true")) {
       System.out.println("Query: " + query);
@@ -12,7 +12,7 @@ import com.jbidwatcher.util.queue.MessageQueue;
 import com.jbidwatcher.util.queue.TimerHandler;
 import com.jbidwatcher.util.Constants;
 
-public class UpdateManager implements TimerHandler.WakeupProcess, MessageQueue.Listener {
+public class UpdateManager implements TimerHandler.WakeupProcess, MessageQueue.BlockingListener {
   private static UpdateManager _instance=null;
   private static UpdaterEntry _ue = null;
 
@@ -12,6 +12,7 @@ import com.jbidwatcher.util.xml.XMLElement;
 import com.jbidwatcher.util.xml.XMLSerializeSimple;
 import com.jbidwatcher.util.xml.XMLInterface;
 import com.jbidwatcher.ui.util.OptionUI;
+import com.jbidwatcher.util.http.ConnectionManager;
 import com.jbidwatcher.util.http.Http;
 import com.jbidwatcher.util.Constants;
 
@@ -146,7 +147,12 @@ public class UpdaterEntry extends XMLSerializeSimple {
     URL changelog = getChangelogURL();
 
     if(_changelog == null && changelog != null) {
-      _changelog = StringTools.cat(changelog);
+      //  Opened like every other connection, so it goes through the configured proxy.
+      try {
+        _changelog = StringTools.cat(ConnectionManager.getInstance().open(changelog).getInputStream());
+      } catch (IOException e) {
+        JConfig.log().handleException("Failed to load " + changelog, e);
+      }
     }
     return _changelog;
   }
@@ -10,6 +10,7 @@ import com.jbidwatcher.util.db.ActiveRecord;
 import com.jbidwatcher.util.xml.XMLElement;
 import com.jbidwatcher.util.queue.AuctionQObject;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.Constants;
 import com.jbidwatcher.util.ToolInterface;
 import com.jbidwatcher.util.StringTools;
@@ -74,7 +75,7 @@ public class JBTool implements ToolInterface {
     }
   }
 
-  private Map testMicroformats(String file) {
+  private Map<String, String> testMicroformats(String file) {
     StringBuffer sb = new StringBuffer(StringTools.cat(file));
     JHTML hDoc = new JHTML(sb);
 
@@ -106,7 +107,7 @@ public class JBTool implements ToolInterface {
     if(mRunServer) {
       spawnServer();
     } else if(mJustMyeBay) {
-      MQFactory.getConcrete(mEbay.getFriendlyName()).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_MYITEMS, null, null));
+      MQFactory.publish(Topic.auctionServer(mEbay.getFriendlyName()), new AuctionQObject(AuctionQObject.LOAD_MYITEMS, null, null));
       try { Thread.sleep(120000); } catch(Exception ignored) { }
     } else if(mParseFile != null) {
       JConfig.setHomeDirectory("./");
@@ -267,12 +268,12 @@ public class JBTool implements ToolInterface {
     mEbay.forceLogin();
   }
 
-  private void dumpMap(Map m) {
+  private void dumpMap(Map<?, ?> m) {
     dumpMap(m, 0);
     System.out.println();
   }
 
-  private void dumpMap(Map m, int offset) {
+  private void dumpMap(Map<?, ?> m, int offset) {
     System.out.println("{");
     for (Object o : m.keySet()) {
       Object value = m.get(o);
@@ -280,7 +281,7 @@ public class JBTool implements ToolInterface {
         System.out.println("\"" + o.toString() + "\" => \"" + value.toString().replace("\"", "\\\"") + "\"");
       } else if (value instanceof Map) {
         System.out.print("\"" + o.toString() + "\" => ");
-        dumpMap((Map) value, offset + 2);
+        dumpMap((Map<?, ?>) value, offset + 2);
       }
     }
     System.out.print("}");
@@ -253,8 +253,7 @@ public class JBidProxy extends AbstractMiniServer {
   }
 
   public StringBuffer index() {
-    AuctionsManager.getInstance().saveAuctions();
-    return checkError(AuctionTransformer.outputHTML(JConfig.queryConfiguration("savefile", "auctions.xml")));
+    return checkError(AuctionTransformer.outputHTML(AuctionsManager.getInstance().getSnapshot(false)));
   }
 
   public StringBuffer synchronize() {
@@ -324,8 +323,7 @@ public class JBidProxy extends AbstractMiniServer {
     AuctionEntry auctionEntry = EntryFactory.getInstance().conditionallyAddEntry(false, identifier, null);
 
     //show Overview
-    AuctionsManager.getInstance().saveAuctions();
-    return checkError(AuctionTransformer.outputHTML(JConfig.queryConfiguration("savefile", "auctions.xml")));
+    return checkError(AuctionTransformer.outputHTML(AuctionsManager.getInstance().getSnapshot(true)));
   }
 
   public StringBuffer doSnipe(String auctionId, String snipeAmount) {
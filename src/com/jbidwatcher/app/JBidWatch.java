@@ -29,6 +29,7 @@ import com.jbidwatcher.util.Constants;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.db.ActiveRecord;
 import com.jbidwatcher.util.db.Database;
+import com.jbidwatcher.util.http.ConnectionManager;
 import com.jbidwatcher.util.services.ActivityMonitor;
 import com.jbidwatcher.util.ErrorMonitor;
 import com.jbidwatcher.util.script.Scripting;
@@ -216,66 +217,19 @@ public final class JBidWatch implements JConfig.ConfigListener {
   }
 
   /**
- * @brief Set the proxy values if they are indicated by the configuration.
- *
- * @param inProps - The properties list to check.
- *
- * @return - true if proxies were set, false otherwise.
- */
-  private static boolean EstablishProxy(Properties inProps) {
-    String webProxyHost = JConfig.queryConfiguration("proxy.host", null);
-    String webProxyPort = JConfig.queryConfiguration("proxy.port", null);
-
-    if(JConfig.queryConfiguration("proxyfirewall", "none").equals("proxy")) {
-      if (webProxyHost != null && webProxyPort != null) {
-        inProps.setProperty("http.proxySet", "true");
-        inProps.setProperty("http.proxyHost", webProxyHost);
-        inProps.setProperty("http.proxyPort", webProxyPort);
-
-        inProps.setProperty("proxySet", "true");
-        inProps.setProperty("proxyHost", webProxyHost);
-        inProps.setProperty("proxyPort", webProxyPort);
-        setProxyAuthenticator();
-        return true;
-      }
-    }
-    return false;
-  }
-
-  private static boolean EstablishHTTPSProxy(Properties inProps) {
-    if(JConfig.queryConfiguration("proxy.https.set", "false").equals("true")) {
-      String secureProxyHost = JConfig.queryConfiguration("proxy.https.host");
-      String secureProxyPort = JConfig.queryConfiguration("proxy.https.port");
-      if(secureProxyHost != null && secureProxyPort != null) {
-        inProps.setProperty("https.proxySet", "true");
-        inProps.setProperty("https.proxyHost", secureProxyHost);
-        inProps.setProperty("https.proxyPort", secureProxyPort);
-        setProxyAuthenticator();
-        return true;
-      }
-    }
-    return false;
-  }
-
-  /**
-   * @brief Set the firewall values, if they are indicated by the configuration.
+   * @brief Check whether a proxy or firewall is configured.
    *
-   * @param inProps - The properties list to check.
+   * The proxy itself is given to each connection by ConnectionManager, so
+   * nothing is set JVM-wide here.
    *
-   * @return - true if the firewall info was set, false otherwise.
+   * @return - true if connections will go through a proxy or firewall.
    */
-  private static boolean EstablishFirewall(Properties inProps) {
-    if(JConfig.queryConfiguration("proxyfirewall", "none").equals("firewall")) {
-      String socksHost = JConfig.queryConfiguration("firewall.host", null);
-      String socksPort = JConfig.queryConfiguration("firewall.port", "1080");//  Default SOCKS port.
-      if(socksHost != null) {
-        inProps.setProperty("socksProxyHost", socksHost);
-        inProps.setProperty("socksProxyPort", socksPort);
-        setProxyAuthenticator();
-        return true;
-      }
-    }
-    return false;
+  private static boolean isProxied() {
+    String mode = JConfig.queryConfiguration("proxyfirewall", "none");
+    if(mode.equals("proxy") && JConfig.queryConfiguration("proxy.host", null) != null && JConfig.queryConfiguration("proxy.port", null) != null) return true;
+    if(mode.equals("firewall") && JConfig.queryConfiguration("firewall.host", null) != null) return true;
+    return JConfig.queryConfiguration("proxy.https.set", "false").equals("true") &&
+        JConfig.queryConfiguration("proxy.https.host") != null && JConfig.queryConfiguration("proxy.https.port") != null;
   }
 
   private static void setProxyAuthenticator() {
@@ -404,6 +358,8 @@ public final class JBidWatch implements JConfig.ConfigListener {
     JConfig.setConfiguration("temp.cfg.load", cfgLoad);
     loadConfig(configStream);
     JConfig.setConfiguration("first.run", firstRun?"true":"false");
+    //  The JVM reads its connection pool settings when the first connection is made, so they're set up before any are.
+    ConnectionManager.getInstance();
     if(args.length > 0 && args[0] != null && args[0].equals("-transform")) {
       String outName;
       if(args.length == 1 || args[1] == null) {
@@ -507,15 +463,8 @@ public final class JBidWatch implements JConfig.ConfigListener {
   }
 
   private static void loadProxySettings() {
-    Properties sysProps = System.getProperties();
-
-    boolean proxied = EstablishProxy(sysProps);
-    boolean firewalled = EstablishFirewall(sysProps);
-    boolean secured = EstablishHTTPSProxy(sysProps);
-
-    boolean sysPropsChanged = proxied || firewalled || secured;
-
-    if(sysPropsChanged) System.setProperties(sysProps);
+    //  Proxies which need a login get it from the authenticator.
+    if(isProxied()) setProxyAuthenticator();
   }
 
   /**
@@ -584,7 +533,7 @@ public final class JBidWatch implements JConfig.ConfigListener {
     inSplash.message("Initializing Monitors");
     ActivityMonitor.start();
     UIBackbone backbone = new UIBackbone();
-    MQFactory.getConcrete("login").registerListener(new MessageQueue.Listener() {
+    MQFactory.getConcrete("login").registerListener(new MessageQueue.BlockingListener() {
       public void messageAction(Object deQ) {
         MQFactory.getConcrete("Swing").enqueue("LOGINSTATUS " + deQ.toString());
       }
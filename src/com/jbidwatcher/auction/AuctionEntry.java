@@ -14,6 +14,8 @@ import com.jbidwatcher.util.config.*;
 import com.jbidwatcher.util.queue.MQFactory;
 import com.jbidwatcher.util.db.ActiveRecord;
 import com.jbidwatcher.util.db.Table;
+import com.jbidwatcher.util.db.WriteBehind;
+import com.jbidwatcher.util.http.Validators;
 import com.jbidwatcher.util.xml.XMLElement;
 import com.jbidwatcher.util.xml.XMLInterface;
 
@@ -100,6 +102,9 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
 
   private AuctionSnipe mSnipe = null;
 
+  //  Set when the snipe is removed, so the removal is written immediately too.
+  private boolean mSnipeCleared = false;
+
   /**
    * How much was a cancelled snipe for?  (Recordkeeping)
    */
@@ -201,8 +206,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
   }
 
   public boolean hasAuction() {
-    AuctionInfo ai = findByIdOrIdentifier(getAuctionId(), getIdentifier());
-    return (ai != null);
+    return findAuction() != null;
   }
 
   public enum ObserverMode { AFTER_CREATE, AFTER_SAVE }
@@ -299,6 +303,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
       //  "CANCEL_SNIPE #{id}"
       if(isSniped()) getServer().cancelSnipe(getIdentifier());
       mServer = newServer;
+      touch();
       if(isSniped()) getServer().setSnipe(getIdentifier());
     }
   }
@@ -717,7 +722,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     XMLElement xmlResult = new XMLElement("auction");
 
     xmlResult.setProperty("id", getIdentifier());
-    AuctionInfo ai = findByIdOrIdentifier(getAuctionId(), getIdentifier());
+    AuctionInfo ai = findAuction();
     xmlResult.addChild(ai.toXML());
 
     if(isBidOn()) {
@@ -834,6 +839,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     //  If the multisnipe was null, remove the snipe entirely.
     prepareSnipe(Currency.NoValue(), 0);
     setInteger("multisnipe_id", null);
+    mSnipeCleared = true;
     saveDB();
   }
 
@@ -855,6 +861,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     getSnipe().delete();
     setInteger("snipe_id", null);
     mSnipe = null;
+    mSnipeCleared = true;
     setDirty();
     setNeedsUpdate();
     saveDB();
@@ -960,6 +967,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
       }
       setInteger("snipe_id", null);
       mSnipe = null;
+      mSnipeCleared = true;
       getServer().cancelSnipe(getIdentifier());
     } else {
       mSnipe = AuctionSnipe.create(snipe, quantity, 0);
@@ -1118,37 +1126,69 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
    * in this auction.
    */
   public String getTimeLeft() {
+    return getTimeLeft(getServer(), getEndDate(), isComplete());
+  }
+
+  /**
+   * @brief Format the time left before an end date, as getTimeLeft() does,
+   * for when the end date and completion have already been looked up.
+   *
+   * @param server - The server the auction is on, for its clock.
+   * @param endDate - When the auction ends.
+   * @param complete - Whether the auction has been seen to end.
+   *
+   * @return A nicely formatted string showing how much time is left.
+   */
+  public static String getTimeLeft(AuctionServerInterface server, Date endDate, boolean complete) {
+    if(complete) return endedAuction;
+
+    long dateDiff;
+    try {
+      dateDiff = getTimeRemaining(server, endDate);
+    } catch(Exception endDateException) {
+      JConfig.log().handleException("Error getting the end date.", endDateException);
+      dateDiff = 0;
+    }
+    return formatTimeLeft(dateDiff);
+  }
+
+  /**
+   * @param server - The server the auction is on, for its clock.
+   * @param endDate - When the auction ends.
+   *
+   * @return The milliseconds left before the end date, by the server's clock.
+   */
+  public static long getTimeRemaining(AuctionServerInterface server, Date endDate) {
     long rightNow = System.currentTimeMillis();
-    long officialDelta = getServer().getServerTimeDelta();
-    long pageReqTime = getServer().getPageRequestTime();
+    long officialDelta = server.getServerTimeDelta();
+    long pageReqTime = server.getPageRequestTime();
 
-    if(!isComplete()) {
-      long dateDiff;
-      try {
-        dateDiff = getEndDate().getTime() - ((rightNow + officialDelta) - pageReqTime);
-      } catch(Exception endDateException) {
-        JConfig.log().handleException("Error getting the end date.", endDateException);
-        dateDiff = 0;
-      }
+    return endDate.getTime() - ((rightNow + officialDelta) - pageReqTime);
+  }
 
-      if(dateDiff > Constants.ONE_DAY * 60) return "N/A";
+  /**
+   * @param dateDiff - The milliseconds left in an auction which hasn't been seen to end.
+   *
+   * @return The time left, formatted; the same for every dateDiff within the same second.
+   */
+  public static String formatTimeLeft(long dateDiff) {
+    if(dateDiff > Constants.ONE_DAY * 60) return "N/A";
 
-      if(dateDiff >= 0) {
-        long days = dateDiff / (Constants.ONE_DAY);
-        dateDiff -= days * (Constants.ONE_DAY);
-        long hours = dateDiff / (Constants.ONE_HOUR);
-        dateDiff -= hours * (Constants.ONE_HOUR);
-        long minutes = dateDiff / (Constants.ONE_MINUTE);
-        dateDiff -= minutes * (Constants.ONE_MINUTE);
-        long seconds = dateDiff / Constants.ONE_SECOND;
+    if(dateDiff >= 0) {
+      long days = dateDiff / (Constants.ONE_DAY);
+      dateDiff -= days * (Constants.ONE_DAY);
+      long hours = dateDiff / (Constants.ONE_HOUR);
+      dateDiff -= hours * (Constants.ONE_HOUR);
+      long minutes = dateDiff / (Constants.ONE_MINUTE);
+      dateDiff -= minutes * (Constants.ONE_MINUTE);
+      long seconds = dateDiff / Constants.ONE_SECOND;
 
-        String mf = getTimeFormatter(days, hours);
+      String mf = getTimeFormatter(days, hours);
 
-        Object[] timeArgs = { days,           hours,      minutes,     seconds,
-                              pad(days), pad(hours), pad(minutes), pad(seconds) };
+      Object[] timeArgs = { days,           hours,      minutes,     seconds,
+                            pad(days), pad(hours), pad(minutes), pad(seconds) };
 
-        return(MessageFormat.format(mf, timeArgs));
-      }
+      return(MessageFormat.format(mf, timeArgs));
     }
     return endedAuction;
   }
@@ -1270,11 +1310,43 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
   @SuppressWarnings({"ObjectEquality"})
   public boolean isNullAuction() { return get("auction_id") == null; }
   private boolean deleting = false;
+
+  //  The auction row this entry is bound to, kept in memory so the getters
+  //  don't have to look it up every time.  It's replaced when an update or
+  //  reload binds a new row, and looked up again if some other copy of the
+  //  row has been saved since.
+  private volatile AuctionInfo mAuction = null;
+
+  /**
+   * @return The auction info for this entry; the resident copy if it's
+   * still current, otherwise it's looked up and bound.
+   */
+  private AuctionInfo findAuction() {
+    AuctionInfo info = mAuction;
+    String auctionId = getString("auction_id");
+    if(info != null && info.isCurrent() && (auctionId == null || auctionId.equals(info.get("id")))) return info;
+
+    info = findByIdOrIdentifier(auctionId, getString("identifier"));
+    mAuction = info;
+    if(info != null) setSecondary(info.getBacking());
+    return info;
+  }
+
+  /**
+   * @return A stamp which changes whenever anything about this entry does,
+   * including its auction info, so things built from it (like table rows)
+   * can tell when they need building again.
+   */
+  public long getChangeStamp() {
+    AuctionInfo info = findAuction();
+    long auctionChanges = info == null ? 0 : info.getChangeCount() & 0xffffffffL;
+    return ((long) getChangeCount() << 32) | auctionChanges;
+  }
+
   public AuctionInfo getAuction() {
-    String identifier = getString("identifier");
     String auctionId = getString("auction_id");
 
-    AuctionInfo info = findByIdOrIdentifier(auctionId, identifier);
+    AuctionInfo info = findAuction();
 
     if(info == null) {
       if(!deleting) {
@@ -1307,7 +1379,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
   }
 
   protected void loadSecondary() {
-    AuctionInfo ai = findByIdOrIdentifier(getAuctionId(), getIdentifier());
+    AuctionInfo ai = findAuction();
     if(ai != null) setAuctionInfo(ai);
   }
 
@@ -1320,6 +1392,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
    */
   public void setAuctionInfo(AuctionInfo inAI) {
     if (inAI.getId() != null) {
+      mAuction = inAI;
       setSecondary(inAI.getBacking());
 
       setDefaultCurrency(inAI.getDefaultCurrency());
@@ -1370,7 +1443,10 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
 
   public String getBrowseableURL() { return getServer().getBrowsableURLFromItem(getIdentifier()); }
 
-  public void setErrorPage(StringBuffer page) { mLastErrorPage = page; }
+  public void setErrorPage(StringBuffer page) {
+    mLastErrorPage = page;
+    touch();
+  }
   public StringBuffer getErrorPage() { return mLastErrorPage; }
 
   public Currency getShippingWithInsurance() {
@@ -1476,11 +1552,35 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     }
 
     String id = super.saveDB();
+    mSnipeCleared = false;
     set("id", id);
+    reschedule();
     notifyObservers(ObserverMode.AFTER_SAVE);
     return id;
   }
 
+  /**
+   * Tell the update index when this entry next needs updating, based on
+   * what's just been saved.  Only entries with auction information are
+   * scheduled, as the update queries only find those.
+   */
+  private void reschedule() {
+    if(get("auction_id") == null || getRealDatabase() == null) return;
+    AuctionInfo ai = findAuction();
+    UpdateIndex.getInstance().update(getIdentifier(), getDate("last_updated_at"), ai == null ? null : ai.getEnd(), isComplete());
+  }
+
+  /**
+   * Entries with a snipe pending (or just cancelled) are written
+   * immediately, so the snipe's state survives even if JBidwatcher is killed
+   * before queued saves are written.
+   *
+   * @return true if this entry is sniped, singly or as part of a multisnipe, or its snipe was just removed.
+   */
+  protected boolean isWriteCritical() {
+    return mSnipeCleared || isSniped() || get("multisnipe_id") != null;
+  }
+
   public boolean reload() {
     try {
       AuctionEntry ae = AuctionEntry.findFirstBy("id", get("id"));
@@ -1666,8 +1766,11 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     String entries = makeCommaList(toDelete);
     List<Integer> auctions = new ArrayList<Integer>();
     List<AuctionSnipe> snipes = new ArrayList<AuctionSnipe>();
+    List<String> identifiers = new ArrayList<String>();
 
     for(AuctionEntry entry : toDelete) {
+      UpdateIndex.getInstance().remove(entry.getIdentifier());
+      if(entry.getIdentifier() != null) identifiers.add(entry.getIdentifier());
       auctions.add(entry.getInteger("auction_id"));
       if(entry.isSniped()) snipes.add(entry.getSnipe());
     }
@@ -1675,15 +1778,19 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     boolean success = new EventStatus().deleteAllEntries(entries);
     if(!snipes.isEmpty()) success &= AuctionSnipe.deleteAll(snipes);
     success &= AuctionInfo.deleteAll(auctions);
+    Validators.deleteAll(identifiers);
     success &= getRealDatabase().deleteBy("id IN (" + entries + ")");
 
     return success;
   }
 
   public boolean delete() {
-    AuctionInfo ai = findByIdOrIdentifier(getAuctionId(), getIdentifier());
+    AuctionInfo ai = findAuction();
     if(ai != null) ai.delete();
+    mAuction = null;
     if(getSnipe() != null) getSnipe().delete();
+    UpdateIndex.getInstance().remove(getIdentifier());
+    if(getIdentifier() != null) Validators.deleteAll(Collections.singletonList(getIdentifier()));
     return super.delete();
   }
 
@@ -1702,7 +1809,7 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
   }
 
   public void setNumBids(int bidCount) {
-    AuctionInfo info = findByIdOrIdentifier(getAuctionId(), getIdentifier());
+    AuctionInfo info = findAuction();
     info.setNumBids(bidCount);
     info.saveDB();
   }
@@ -1731,13 +1838,23 @@ public class AuctionEntry extends AuctionCore implements Comparable<AuctionEntry
     return (List<AuctionEntry>) findAllBySQL(AuctionEntry.class, "SELECT e.* FROM entries e JOIN auctions a ON a.id = e.auction_id WHERE (e.snipe_id IS NOT NULL OR e.multisnipe_id IS NOT NULL OR e.bid_amount IS NOT NULL) ORDER BY a.ending_at ASC", itemCount);
   }
 
+  //  Changes made directly in SQL mustn't be overwritten by older saves still waiting to be written.
+  private static void flushQueuedSaves() {
+    WriteBehind queue = WriteBehind.getInstance();
+    if(queue != null) queue.flush();
+  }
+
   public static void forceUpdateActive() {
+    flushQueuedSaves();
     getRealDatabase().execute("UPDATE entries SET last_updated_at=NULL WHERE ended != 1 OR ended IS NULL");
+    UpdateIndex.getInstance().rebuild();
   }
 
   public static void trueUpEntries() {
+    flushQueuedSaves();
     getRealDatabase().execute("UPDATE entries SET auction_id=(SELECT max(id) FROM auctions WHERE auctions.identifier=entries.identifier)");
     getRealDatabase().execute("DELETE FROM entries e WHERE id != (SELECT max(id) FROM entries e2 WHERE e2.auction_id = e.auction_id)");
+    UpdateIndex.getInstance().rebuild();
   }
 
   public String getUnique() {
@@ -23,7 +23,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AuctionInfo extends AuctionCore {
   private String potentialThumbnail = null;
@@ -34,6 +37,20 @@ public class AuctionInfo extends AuctionCore {
   protected Seller mSeller;
   protected GZip mLoadedPage = null;
 
+  //  Every save of an auction row bumps its version, so an entry holding
+  //  an older copy of the row in memory knows to reload it.  The copies of
+  //  a row share its version, which is only held weakly here, so a row
+  //  drops out once no copy of it is in memory, and when it's deleted.
+  private static final Map<String, VersionRef> sVersions = new HashMap<String, VersionRef>();
+  private static final ReferenceQueue<AtomicInteger> sClearedVersions = new ReferenceQueue<AtomicInteger>();
+  private AtomicInteger mRowVersion = null;
+  private int mVersion = 0;
+
+  private static class VersionRef extends WeakReference<AtomicInteger> {
+    private final String mId;
+    VersionRef(String id, AtomicInteger version) { super(version, sClearedVersions); mId = id; }
+  }
+
   /**
    * @brief Empty constructor, for XML parsing.
    *
@@ -200,6 +217,7 @@ public class AuctionInfo extends AuctionCore {
   public void setThumbnail(String thumbPath) {
     if(thumbPath == null) setNoThumbnail(true);
     mThumbnailPath = thumbPath;
+    touch();
   }
 
   public void save() {
@@ -240,24 +258,30 @@ public class AuctionInfo extends AuctionCore {
 
   void setRealContent(StringBuffer changedContent, boolean final_data) {
     if(changedContent != null) {
-      byte[] localBytes = changedContent.toString().getBytes();
-      setRealContent(localBytes, final_data);
+      //  Compress straight from the characters, rather than copying the whole page into a byte array first.
+      GZip page = new GZip();
+      page.setData(changedContent);
+      storeContent(page, final_data);
     }
   }
 
   void setRealContent(byte[] changedContent, boolean final_data) {
-    String outPath = JConfig.queryConfiguration("auctions.savepath");
-
     if(changedContent != null) {
-      mLoadedPage = new GZip();
-      mLoadedPage.setData(changedContent);
+      GZip page = new GZip();
+      page.setData(changedContent);
+      storeContent(page, final_data);
+    }
+  }
 
-      if(outPath != null && outPath.length() != 0) {
-        if(final_data) {
-          String filePath = outPath + System.getProperty("file.separator") + getIdentifier() + ".html.gz";
-          mLoadedPage.save(filePath);
-          mLoadedPage = null;
-        }
+  private void storeContent(GZip page, boolean final_data) {
+    String outPath = JConfig.queryConfiguration("auctions.savepath");
+
+    mLoadedPage = page;
+    if(outPath != null && outPath.length() != 0) {
+      if(final_data) {
+        String filePath = outPath + System.getProperty("file.separator") + getIdentifier() + ".html.gz";
+        mLoadedPage.save(filePath);
+        mLoadedPage = null;
       }
     }
   }
@@ -409,7 +433,75 @@ public class AuctionInfo extends AuctionCore {
       if(seller_id != null) set("seller_id", seller_id);
     }
 
-    return super.saveDB();
+    boolean writing = isDirty() || get("id") == null;
+    String id = super.saveDB();
+    if(writing && id != null) {
+      mRowVersion = versionOf(id);
+      mVersion = mRowVersion.incrementAndGet();
+    }
+    return id;
+  }
+
+  public void setBacking(Record r) {
+    super.setBacking(r);
+    String id = get("id");
+    mRowVersion = id == null ? null : versionOf(id);
+    mVersion = mRowVersion == null ? 0 : mRowVersion.get();
+  }
+
+  public boolean delete() {
+    String id = get("id");
+    boolean rval = super.delete();
+    if(id != null) retireVersion(id);
+    return rval;
+  }
+
+  /**
+   * @return true if this copy of the auction reflects the most recent save
+   * of its row, false if some other copy has saved (or deleted) it since.
+   */
+  public boolean isCurrent() {
+    return get("id") == null || mRowVersion == null || mVersion == mRowVersion.get();
+  }
+
+  /**
+   * @param id - An auction row's id.
+   *
+   * @return The version shared by the copies of the row in memory.
+   */
+  private static AtomicInteger versionOf(String id) {
+    synchronized(sVersions) {
+      expungeVersions();
+      VersionRef ref = sVersions.get(id);
+      AtomicInteger version = ref == null ? null : ref.get();
+      if(version == null) {
+        version = new AtomicInteger(0);
+        sVersions.put(id, new VersionRef(id, version));
+      }
+      return version;
+    }
+  }
+
+  /**
+   * The row has been deleted; bump its version one last time, so any copies
+   * still in memory know they're stale, and forget it.
+   *
+   * @param id - The deleted row's id.
+   */
+  private static void retireVersion(String id) {
+    synchronized(sVersions) {
+      VersionRef ref = sVersions.remove(id);
+      AtomicInteger version = ref == null ? null : ref.get();
+      if(version != null) version.incrementAndGet();
+    }
+  }
+
+  //  Must be called holding sVersions.
+  private static void expungeVersions() {
+    VersionRef ref;
+    while((ref = (VersionRef) sClearedVersions.poll()) != null) {
+      if(sVersions.get(ref.mId) == ref) sVersions.remove(ref.mId);
+    }
   }
 
   public static AuctionInfo find(String id) {
@@ -436,6 +528,9 @@ public class AuctionInfo extends AuctionCore {
     if(toDelete.isEmpty()) return true;
     //  TODO - Replace with Guava?
     String auctions = buildCSL(toDelete);
+    for(Integer id : toDelete) {
+      if(id != null) retireVersion(id.toString());
+    }
 
     return getRealDatabase().deleteBy("id IN (" + auctions + ")");
   }
@@ -16,6 +16,8 @@ import java.util.ArrayList;
 */
 public class AuctionList {
   private final List<String> mList = Collections.synchronizedList(new ArrayList<String>());
+  //  Bumped whenever an entry is added or removed, so positions in the list can be cached.
+  private volatile int mModCount = 0;
 
   public int size() { synchronized(mList) { return mList.size(); } }
   public AuctionEntry get(int i) {
@@ -24,11 +26,19 @@ public class AuctionList {
       return EntryCorral.getInstance().takeForRead(identifier);
     }
   }
+  /**
+   * @param i - The position in the list.
+   *
+   * @return The identifier of the entry at that position, without looking the entry up.
+   */
+  public String getIdentifier(int i) { synchronized(mList) { return mList.get(i); } }
+
   public void remove(int i) {
     synchronized (mList) {
       String identifier = mList.get(i);
       EntryCorral.getInstance().takeForRead(identifier);
       mList.remove(i);
+      mModCount++;
     }
   }
 
@@ -36,9 +46,15 @@ public class AuctionList {
     synchronized (mList) {
       EntryCorral.getInstance().put(ae);
       mList.add(ae.getIdentifier());
+      mModCount++;
     }
   }
 
+  /**
+   * @return A count which changes whenever entries are added or removed, and so whenever positions might have changed.
+   */
+  public int getModCount() { return mModCount; }
+
   public AuctionEntry find(Comparison c) {
     synchronized (mList) {
       for (String identifier : mList) {
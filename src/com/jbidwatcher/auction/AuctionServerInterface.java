@@ -90,6 +90,20 @@ public interface AuctionServerInterface {
    */
   long getServerTimeDelta();
 
+  /**
+   * @brief Describe how the server time delta was estimated.
+   *
+   * @return - The delta's error bound, drift, and the samples it came from.
+   */
+  String getClockStatistics();
+
+  /**
+   * @brief Describe how closely snipes have been fired to when they were due.
+   *
+   * @return - The number of snipes waiting and fired, and how late they went out.
+   */
+  String getSnipeStatistics();
+
   /**
    * @brief Retrieve what time zone the server is in.
    *
@@ -60,6 +60,9 @@ public class AuctionSnipe extends ActiveRecord
     return snipe;
   }
 
+  //  Snipes are never left waiting to be written.
+  protected boolean isWriteCritical() { return true; }
+
   private static Table sDB = null;
   protected static String getTableName() { return "snipes"; }
 
@@ -31,56 +31,105 @@ public class AuctionTransformer implements ErrorListener, URIResolver {
 
   public static String formatDate(String when) {
     try {
-      return dateFmt.format(new Date(Long.parseLong(when)));
+      Date date = new Date(Long.parseLong(when));
+      synchronized(dateFmt) {
+        return dateFmt.format(date);
+      }
     } catch (NumberFormatException e) {
       return "(unknown)";
     }
   }
 
+  private static final String XSLT_FILE = "auctionTransform.xsl";
+  private static Templates sTemplates = null;
+  private static long sTemplatesModified = 0;
+
+  /**
+   * Compile the auction stylesheet once, and keep it until it changes on
+   * disk.  A stylesheet loaded from the jar never changes.
+   *
+   * @return The compiled stylesheet.
+   *
+   * @throws TransformerConfigurationException - If the stylesheet couldn't be compiled.
+   */
+  private static synchronized Templates getTemplates() throws TransformerConfigurationException {
+    File onDisk = new File(XSLT_FILE);
+    long modified = onDisk.exists() ? onDisk.lastModified() : -1;
+
+    if(sTemplates == null || modified != sTemplatesModified) {
+      InputStream xslIn = JConfig.bestSource(AuctionTransformer.class.getClassLoader(), XSLT_FILE);
+      try {
+        TransformerFactory tf = TransformerFactory.newInstance();
+        tf.setErrorListener(new AuctionTransformer());
+        sTemplates = tf.newTemplates(new StreamSource(xslIn));
+        sTemplatesModified = modified;
+      } finally {
+        try {
+          if(xslIn != null) xslIn.close();
+        } catch(IOException ignored) {
+          //  Ignore exceptions on close.
+        }
+      }
+    }
+
+    return sTemplates;
+  }
+
   public static StringBuffer outputHTML(String loadFile) {
     return outputHTML(loadFile, null);
   }
 
   public static StringBuffer outputHTML(String loadFile, String xmlOutputFile) {
     InputStream xmlIn = null;
-    InputStream xslIn = null;
     Source xmlSource;
-    FileOutputStream htmlOut = null;
 
     // create the XML content input source
     // can be a DOM node, SAX stream, or any
     // Java input stream/reader
     try {
-      //String xmlInputFile = "myXMLinput.xml";
+      xmlIn = new FileInputStream(loadFile);
+      xmlSource = new StreamSource(xmlIn);
+    } catch(FileNotFoundException fnfe) {
+      xmlSource = new StreamSource(new StringReader(
+          "<?xml version=\"1.0\"?>\n" +
+          "\n" +
+          "<!DOCTYPE auctions SYSTEM \"http://www.jbidwatcher.com/auctions.dtd\">\n" +
+          "<jbidwatcher format=\"0101\">" +
+          "<auctions count=\"0\">" +
+          "</auctions>" +
+          "</jbidwatcher>"
+      ));
+    }
+
+    try {
+      return transform(xmlSource, xmlOutputFile);
+    } finally {
       try {
-        xmlIn = new FileInputStream(loadFile);
-        xmlSource = new StreamSource(xmlIn);
-      } catch(FileNotFoundException fnfe) {
-        //noinspection deprecation
-        Reader xmlReader = new StringReader(
-            "<?xml version=\"1.0\"?>\n" +
-            "\n" +
-            "<!DOCTYPE auctions SYSTEM \"http://www.jbidwatcher.com/auctions.dtd\">\n" +
-            "<jbidwatcher format=\"0101\">" +
-            "<auctions count=\"0\">" +
-            "</auctions>" +
-            "</jbidwatcher>"
-        );
-        xmlSource = new StreamSource(xmlReader);
+        if(xmlIn != null) xmlIn.close();
+      } catch(IOException ignored) {
+        //  Ignore exceptions on close.
       }
+    }
+  }
 
-      // create the XSLT Stylesheet input source
-      // can be a DOM node, SAX stream, or a
-      // java input stream/reader
-      String xsltInputFile = "auctionTransform.xsl";
-//      xslIn = new FileInputStream(xsltInputFile);
-      xslIn = JConfig.bestSource(AuctionTransformer.class.getClassLoader(), xsltInputFile);
-      Source xsltSource = new StreamSource(xslIn);
+  /**
+   * Transform auction XML that's already in memory, rather than loading it from a file.
+   *
+   * @param xml - The auctions XML document.
+   *
+   * @return The HTML output, or null if the transformation failed.
+   */
+  public static StringBuffer outputHTML(StringBuffer xml) {
+    return transform(new StreamSource(new StringReader(xml.toString())), null);
+  }
 
+  private static StringBuffer transform(Source xmlSource, String xmlOutputFile) {
+    FileOutputStream htmlOut = null;
+
+    try {
       // create the result target of the transformation
       // can be a DOM node, SAX stream, or a java out
       // stream/reader
-
       Result transResult;
       StringWriter sw = null;
       if(xmlOutputFile == null) {
@@ -91,10 +140,8 @@ public class AuctionTransformer implements ErrorListener, URIResolver {
         transResult = new StreamResult(htmlOut);
       }
 
-      // create the transformerfactory & transformer instance
-      TransformerFactory tf = TransformerFactory.newInstance();
-      //tf.setURIResolver(new AuctionTransformer());
-      Transformer t = tf.newTransformer(xsltSource);
+      //  Transformers aren't thread-safe, but they're cheap to make from the compiled stylesheet.
+      Transformer t = getTemplates().newTransformer();
       t.setErrorListener(new AuctionTransformer());
 
       // execute transformation & fill result target object
@@ -107,8 +154,6 @@ public class AuctionTransformer implements ErrorListener, URIResolver {
       ignored.printStackTrace();
     } finally {
       try {
-        if(xmlIn != null) xmlIn.close();
-        if(xslIn != null) xslIn.close();
         if(htmlOut != null) htmlOut.close();
       } catch(IOException ignored) {
         //  Ignore exceptions on close.
@@ -8,7 +8,10 @@ package com.jbidwatcher.auction;
 
 import com.jbidwatcher.util.queue.MQFactory;
 import com.jbidwatcher.util.Task;
-import com.jbidwatcher.util.xml.XMLInterface;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  *  This class shouldn't have a 'TableSorter', it should defer to some
@@ -22,6 +25,9 @@ import com.jbidwatcher.util.xml.XMLInterface;
  *  class could build it's own atm and tablesorter.  --  BUGBUG
  */
 public class Auctions {
+  //  Bookkeeping fields which change on every update, without anything the user would see changing.
+  private static final Set<String> UNINTERESTING = new HashSet<String>(Arrays.asList("id", "auction_id", "created_at", "updated_at", "last_updated_at"));
+
   boolean _complete = false;
 //  private volatile TableSorter _tSort;
   private AuctionList mList;
@@ -88,11 +94,9 @@ public class Auctions {
       MQFactory.getConcrete("Swing").enqueue("Updating " + titleWithComment);
       MQFactory.getConcrete("redraw").enqueue(ae.getIdentifier());
       Thread.yield();
-      XMLInterface before = ae.toXML(false);
+      ae.startChangeTracking();
       ae.update();
-      XMLInterface after = ae.toXML(false);
-
-      boolean changed = !(after.toString().equals(before.toString()));
+      boolean changed = hasInterestingChanges(ae.finishChangeTracking());
 
       MQFactory.getConcrete("my").enqueue("UPDATE " + ae.getIdentifier() + "," + Boolean.toString(changed));
       if(changed) {
@@ -108,6 +112,18 @@ public class Auctions {
     }
   }
 
+  /**
+   * @param changed - The fields changed by an update, from finishChangeTracking().
+   *
+   * @return - true if any of the changes is one the user would notice.
+   */
+  public static boolean hasInterestingChanges(Set<String> changed) {
+    for(String key : changed) {
+      if(!UNINTERESTING.contains(key)) return true;
+    }
+    return false;
+  }
+
   public void each(Task task) {
     mList.each(task);
   }
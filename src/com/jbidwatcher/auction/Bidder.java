@@ -30,4 +30,31 @@ public interface Bidder {
   int bid(AuctionEntry inEntry, Currency inBid, int inQuantity);
 
   int placeFinalBid(CookieJar cj, JHTML.Form bidForm, AuctionEntry inEntry, Currency inBid, int inQuantity);
+
+  /**
+   * A final bid with everything but the submission itself done ahead of time.
+   */
+  interface PreparedBid {
+    /**
+     * Submit the bid, and work out what happened.
+     *
+     * @return - A bid response code, as placeFinalBid returns.
+     */
+    int place();
+  }
+
+  /**
+   * @brief Do all the work of placing a final bid that doesn't need to
+   * wait for the moment it's placed, so a snipe can go out with as little
+   * delay as possible.
+   *
+   * @param cj - The cookie jar to bid with.
+   * @param bidForm - The bid form, as getBidForm returned it.
+   * @param inEntry - The item to bid on.
+   * @param inBid - The amount to bid.
+   * @param inQuantity - The number of items to bid on.
+   *
+   * @return - The bid, ready to be placed.
+   */
+  PreparedBid prepareFinalBid(CookieJar cj, JHTML.Form bidForm, AuctionEntry inEntry, Currency inBid, int inQuantity);
 }
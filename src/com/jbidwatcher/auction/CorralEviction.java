@@ -0,0 +1,71 @@
+package com.jbidwatcher.auction;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+
+/**
+ * Decides which entry the corral drops when it grows past its limit.  The
+ * corral tells the policy about every key it hands out, adds or removes,
+ * and asks it for a victim when it's over size.
+ *
+ * Implementations must be thread-safe; the corral calls them from whatever
+ * thread is taking or putting entries.
+ */
+public interface CorralEviction {
+  void accessed(String key);
+  void added(String key);
+  void removed(String key);
+
+  /**
+   * @return The key to evict next, or null if there's nothing to evict.
+   */
+  String victim();
+
+  /**
+   * @return How many keys the policy is tracking.
+   */
+  int size();
+
+  /**
+   * Least recently used; the entry nobody has looked at for longest goes first.
+   */
+  class LRU implements CorralEviction {
+    private final LinkedHashMap<String, Boolean> mOrder = new LinkedHashMap<String, Boolean>(1024, 0.75f, true);
+
+    public synchronized void accessed(String key) { mOrder.get(key); }
+    public synchronized void added(String key) { mOrder.put(key, Boolean.TRUE); }
+    public synchronized void removed(String key) { mOrder.remove(key); }
+
+    public synchronized String victim() {
+      Iterator<String> it = mOrder.keySet().iterator();
+      return it.hasNext() ? it.next() : null;
+    }
+
+    public synchronized int size() { return mOrder.size(); }
+  }
+
+  /**
+   * First in, first out; the entry that's been in the corral longest goes
+   * first, however often it's used.  Cheaper than LRU, as lookups don't
+   * reorder anything.
+   */
+  class FIFO implements CorralEviction {
+    private final LinkedHashMap<String, Boolean> mOrder = new LinkedHashMap<String, Boolean>(1024);
+
+    public void accessed(String key) { }
+    public synchronized void added(String key) { mOrder.put(key, Boolean.TRUE); }
+    public synchronized void removed(String key) { mOrder.remove(key); }
+
+    public synchronized String victim() {
+      Iterator<String> it = mOrder.keySet().iterator();
+      return it.hasNext() ? it.next() : null;
+    }
+
+    public synchronized int size() { return mOrder.size(); }
+  }
+}
@@ -1,13 +1,17 @@
 package com.jbidwatcher.auction;
 
+import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.db.ActiveRecord;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.Lock;
 
 /**
  * User: mrs
@@ -18,57 +22,147 @@ import java.util.concurrent.locks.Lock;
  * same underlying objects.  Thread safety is a serious concern.
  */
 abstract class EntryCorralTemplate<T extends ActiveRecord> {
-  private Map<String, Reference<T>> mEntryList;
-  private final Map<String, Lock> mLockList;
+  private static final int DEFAULT_MAX_ENTRIES = 25000;
 
+  private final ConcurrentMap<String, Reference<T>> mEntryList = new ConcurrentHashMap<String, Reference<T>>();
+  private final ReferenceQueue<T> mCleared = new ReferenceQueue<T>();
+  private final CorralEviction mEviction;
+  private final int mMaxEntries;
+
+  //  Locks exist only while someone holds or is waiting on them, so the
+  //  table doesn't grow with every entry ever written.
+  private final Map<String, EntryLock> mLockList = new HashMap<String, EntryLock>();
+
+  private final AtomicLong mHits = new AtomicLong();
+  private final AtomicLong mMisses = new AtomicLong();
+  private final AtomicLong mEvictions = new AtomicLong();
+  private final AtomicLong mCollected = new AtomicLong();
+  private final AtomicLong mLoads = new AtomicLong();
+  private final AtomicLong mLoadNanos = new AtomicLong();
+  private volatile long mMaxLoadNanos = 0;
+
+  private static class EntryLock {
+    private final ReentrantLock mLock = new ReentrantLock(true);
+    private int mUsers = 0;
+  }
+
+  //  References that remember their key, so they can be removed once their entry is collected.
+  private interface Keyed { String getKey(); }
+
+  private static class SoftEntry<T> extends SoftReference<T> implements Keyed {
+    private final String mKey;
+    SoftEntry(String key, T referent, ReferenceQueue<? super T> q) { super(referent, q); mKey = key; }
+    public String getKey() { return mKey; }
+  }
+
+  private static class WeakEntry<T> extends WeakReference<T> implements Keyed {
+    private final String mKey;
+    WeakEntry(String key, T referent, ReferenceQueue<? super T> q) { super(referent, q); mKey = key; }
+    public String getKey() { return mKey; }
+  }
+
+  /**
+   * The corral keeps at most 'corral.max_entries' entries alive (zero for
+   * no limit), evicting per 'corral.eviction', either lru (the default) or
+   * fifo.  Evicted entries stay reachable through it for as long as
+   * something else holds them.
+   */
   protected EntryCorralTemplate() {
-    mEntryList = new HashMap<String, Reference<T>>();
-    mLockList = new HashMap<String, Lock>();
+    mMaxEntries = JConfig.queryIntConfiguration("corral.max_entries", DEFAULT_MAX_ENTRIES);
+    mEviction = JConfig.queryConfiguration("corral.eviction", "lru").equals("fifo") ? new CorralEviction.FIFO() : new CorralEviction.LRU();
+  }
+
+  protected EntryCorralTemplate(int maxEntries, CorralEviction eviction) {
+    mMaxEntries = maxEntries;
+    mEviction = eviction;
   }
 
   private T get(String identifier) {
     Reference<T> r = mEntryList.get(identifier);
-    if(r != null) return r.get();
+    if(r != null) {
+      T result = r.get();
+      if(result != null) {
+        mEviction.accessed(identifier);
+        return result;
+      }
+    }
     return null;
   }
 
   abstract public T getItem(String param);
 
+  private T load(String identifier) {
+    long start = System.nanoTime();
+    T result = getItem(identifier);
+    long elapsed = System.nanoTime() - start;
+    mLoads.incrementAndGet();
+    mLoadNanos.addAndGet(elapsed);
+    if(elapsed > mMaxLoadNanos) mMaxLoadNanos = elapsed;
+    return result;
+  }
+
   public ActiveRecord takeForWrite(String identifier) {
-    T result = get(identifier);
-    if(result == null) {
-      result = getItem(identifier);
-    }
+    T result = takeForRead(identifier);
     if(result != null) {
-      Lock l = mLockList.get(identifier);
-      if (l == null) {
-        l = new ReentrantLock(true);
-        synchronized (mLockList) {
+      EntryLock l;
+      synchronized (mLockList) {
+        l = mLockList.get(identifier);
+        if (l == null) {
+          l = new EntryLock();
           mLockList.put(identifier, l);
         }
+        l.mUsers++;
       }
-      l.lock();
+      l.mLock.lock();
     }
     return result;
   }
 
   public void release(String identifier) {
-    Lock l = mLockList.get(identifier);
-    if(l != null) l.unlock();
+    synchronized (mLockList) {
+      EntryLock l = mLockList.get(identifier);
+      if(l != null && l.mLock.isHeldByCurrentThread()) unlock(identifier, l);
+    }
+  }
+
+  //  Must be called holding mLockList.
+  private void unlock(String identifier, EntryLock l) {
+    l.mLock.unlock();
+    if(--l.mUsers == 0) mLockList.remove(identifier);
   }
 
   public T takeForRead(String identifier) {
+    if(identifier == null) return null;
     T result = get(identifier);
-    if (result == null) {
-      result = getItem(identifier);
-      if(result != null) mEntryList.put(identifier, new WeakReference<T>(result));
+    if(result != null) {
+      mHits.incrementAndGet();
+      return result;
+    }
+
+    mMisses.incrementAndGet();
+    result = load(identifier);
+    if(result != null) {
+      //  If another thread loaded it first, use theirs, so everybody's working on the same object.
+      Reference<T> mine = new WeakEntry<T>(identifier, result, mCleared);
+      while(true) {
+        Reference<T> theirs = mEntryList.putIfAbsent(identifier, mine);
+        if(theirs == null) break;
+        T existing = theirs.get();
+        if(existing != null) return existing;
+        //  Theirs has been collected; replace it, unless someone else just did.
+        if(mEntryList.replace(identifier, theirs, mine)) break;
+      }
+      added(identifier);
     }
     return result;
   }
 
   public T put(T ae) {
+    //  Entries without an identifier (yet) can't be shared, so they aren't held.
+    if(ae.getUnique() == null) return ae;
     T result = chooseLatest(ae, ae.getUnique());
-    mEntryList.put(ae.getUnique(), new SoftReference<T>(result));
+    mEntryList.put(ae.getUnique(), new SoftEntry<T>(ae.getUnique(), result, mCleared));
+    added(ae.getUnique());
 
     return result;
   }
@@ -77,7 +171,8 @@ abstract class EntryCorralTemplate<T extends ActiveRecord> {
     return chooseLatest(ae, ae.getUnique());
   }
 
-  protected T chooseLatest(T ae, String identifier) {
+  protected synchronized T chooseLatest(T ae, String identifier) {
+    if(identifier == null) return ae;
     T chosen;
     T existing = get(identifier);
     final Date inputDate = ae.getDate("updated_at");
@@ -86,10 +181,11 @@ abstract class EntryCorralTemplate<T extends ActiveRecord> {
         (inputDate != null && existingDate == null) ||
         (inputDate != null && inputDate.after(existingDate))) {
       if(mEntryList.get(identifier) instanceof SoftReference) {
-        mEntryList.put(identifier, new SoftReference<T>(ae));
+        mEntryList.put(identifier, new SoftEntry<T>(identifier, ae, mCleared));
       } else {
-        mEntryList.put(identifier, new WeakReference<T>(ae));
+        mEntryList.put(identifier, new WeakEntry<T>(identifier, ae, mCleared));
       }
+      added(identifier);
       chosen = ae;
     } else {
       chosen = existing;
@@ -97,11 +193,62 @@ abstract class EntryCorralTemplate<T extends ActiveRecord> {
     return chosen;
   }
 
+  /**
+   * Note a newly added key, and bring the corral back under its limit;
+   * entries that have been garbage collected go first, then the eviction
+   * policy's choices.  An evicted entry may still be in use elsewhere, and
+   * dropping it would let the next takeForRead() load a second copy, so
+   * it's only held weakly from then on, and leaves once nobody uses it.
+   *
+   * @param identifier - The key just added.
+   */
+  private void added(String identifier) {
+    mEviction.added(identifier);
+    expunge();
+    if(mMaxEntries <= 0) return;
+
+    int skipped = 0;
+    while(mEviction.size() > mMaxEntries && skipped < mMaxEntries) {
+      String victim = mEviction.victim();
+      if(victim == null) break;
+      if(victim.equals(identifier)) {
+        //  Move it to the back of the line, and try the next one.
+        mEviction.removed(victim);
+        mEviction.added(victim);
+        skipped++;
+        continue;
+      }
+      mEviction.removed(victim);
+      Reference<T> r = mEntryList.get(victim);
+      if(r == null) continue;
+      T held = r.get();
+      if(held == null) {
+        if(mEntryList.remove(victim, r)) mEvictions.incrementAndGet();
+      } else if(r instanceof SoftEntry) {
+        if(mEntryList.replace(victim, r, new WeakEntry<T>(victim, held, mCleared))) mEvictions.incrementAndGet();
+      }
+    }
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private void expunge() {
+    Reference<? extends T> r;
+    while((r = mCleared.poll()) != null) {
+      String key = ((Keyed) r).getKey();
+      if(mEntryList.remove(key, r)) {
+        mEviction.removed(key);
+        mCollected.incrementAndGet();
+      }
+    }
+  }
+
   public T erase(String identifier) {
+    if(identifier == null) return null;
     synchronized(mLockList) {
-      Lock l = mLockList.remove(identifier);
+      EntryLock l = mLockList.get(identifier);
       Reference<T> rval = mEntryList.remove(identifier);
-      if (l != null) l.unlock();
+      mEviction.removed(identifier);
+      if (l != null && l.mLock.isHeldByCurrentThread()) unlock(identifier, l);
       if (rval == null) {
         return null;
       }
@@ -109,14 +256,32 @@ abstract class EntryCorralTemplate<T extends ActiveRecord> {
     }
   }
 
+  /**
+   * Forget every entry, so they're all loaded fresh.  Locks held by other
+   * threads are left alone; they're released as those threads finish with them.
+   */
   public void clear() {
-    synchronized(mLockList) {
-      for (String s : mLockList.keySet()) {
-        erase(s);
-      }
+    List<String> keys = new ArrayList<String>(mEntryList.keySet());
+    for(String key : keys) {
+      mEntryList.remove(key);
+      mEviction.removed(key);
+    }
+  }
+
+  public int size() { return mEntryList.size(); }
+  public long getHits() { return mHits.get(); }
+  public long getMisses() { return mMisses.get(); }
+  public long getEvictions() { return mEvictions.get(); }
 
-      mEntryList.clear();
+  public String getStatistics() {
+    int locks;
+    synchronized(mLockList) {
+      locks = mLockList.size();
     }
+    long loads = mLoads.get();
+    return String.format("Corral: %d entries, %d tracked (max %d), %d hits, %d misses, %d evicted, %d collected, %d locks; load avg %.2fms max %.2fms",
+        mEntryList.size(), mEviction.size(), mMaxEntries, mHits.get(), mMisses.get(), mEvictions.get(), mCollected.get(), locks,
+        loads == 0 ? 0.0 : mLoadNanos.get() / (loads * 1000000.0), mMaxLoadNanos / 1000000.0);
   }
 }
 
@@ -151,8 +316,15 @@ public class EntryCorral extends EntryCorralTemplate<AuctionEntry> {
   //  Singleton stuff
   private static EntryCorral sInstance = null;
   private EntryCorral() { super(); }
-  public static EntryCorral getInstance() {
+  public static synchronized EntryCorral getInstance() {
     if (sInstance == null) sInstance = new EntryCorral();
     return sInstance;
   }
+
+  /**
+   * @return Statistics for the shared corral, or null if it hasn't been created.
+   */
+  public static synchronized String getSharedStatistics() {
+    return sInstance == null ? null : sInstance.getStatistics();
+  }
 }
\ No newline at end of file
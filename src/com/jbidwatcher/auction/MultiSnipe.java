@@ -207,6 +207,8 @@ public class MultiSnipe extends ActiveRecord {
   /* Database access stuff */
   /*************************/
 
+  protected boolean isWriteCritical() { return true; }
+
   private static Table sDB = null;
 
   protected static String getTableName() { return "multisnipes"; }
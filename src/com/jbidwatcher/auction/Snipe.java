@@ -26,6 +26,7 @@ public class Snipe {
   private CookieJar mCJ = null;
   private AuctionEntry mEntry;
   private JHTML.Form mBidForm = null;
+  private Bidder.PreparedBid mPreparedBid = null;
   private LoginManager mLogin;
   private Bidder mBidder;
 
@@ -35,7 +36,7 @@ public class Snipe {
     mBidder = bidder;
   }
 
-  public int fire() {
+  public synchronized int fire() {
     if(mEntry.getSnipeAmount().getValue() < 0.0) {
       mEntry.setLastStatus("Snipe amount is negative.  Not sniping.");
       return FAIL;
@@ -51,7 +52,7 @@ public class Snipe {
 
   private int doSnipe() {
     //  Just punt if we had failed to get the bidding form initially.
-    if(mBidForm == null) return FAIL;
+    if(mPreparedBid == null) return FAIL;
     UpdateBlocker.startBlocking();
     MultiSnipe ms = MultiSnipeManager.getInstance().getForAuctionIdentifier(mEntry.getIdentifier());
     if(ms != null) {
@@ -64,11 +65,11 @@ public class Snipe {
       }
     }
     MQFactory.getConcrete("Swing").enqueue("Sniping on " + mEntry.getTitle());
-    mEntry.setLastStatus("Firing actual snipe.");
 
+    //  Everything else (saving status, metrics) waits until the bid is in.
+    int rval = mPreparedBid.place();
     // Metrics
     JConfig.getMetrics().trackEvent("snipe", "fired");
-    int rval = mBidder.placeFinalBid(mCJ, mBidForm, mEntry, mEntry.getSnipeAmount(), mEntry.getSnipeQuantity());
     boolean success = (rval == AuctionServer.BID_WINNING || rval == AuctionServer.BID_SELFWIN);
     // Metrics
     if(success) {
@@ -112,6 +113,8 @@ public class Snipe {
         // We have a problem.
         mBidForm.setText("maxbid", mEntry.getSnipeAmount().getValueString());
       }
+      //  Build the request ahead of time, so firing the snipe only has to send it.
+      mPreparedBid = mBidder.prepareFinalBid(mCJ, mBidForm, mEntry, mEntry.getSnipeAmount(), mEntry.getSnipeQuantity());
       // Metrics
       JConfig.getMetrics().trackEvent("presnipe", "success");
     } catch (BadBidException bbe) {
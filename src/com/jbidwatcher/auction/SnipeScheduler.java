@@ -0,0 +1,224 @@
+package com.jbidwatcher.auction;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires prepared snipes at their exact times.
+ *
+ * The general timer queue only wakes once a second, and sends anything due
+ * within the next 900ms, so a snipe could go out anywhere in a second-wide
+ * window.  This has a thread of its own, which waits on the clock until a
+ * snipe is close, then commits to a System.nanoTime() deadline, parks until
+ * just before it, and spins the last fraction of a millisecond.  The shot
+ * itself is handed to an idle firing thread, so a slow bid doesn't hold up
+ * a snipe due right after it.
+ *
+ * Times are in the clock's terms (for eBay, its server time), and are
+ * converted to a deadline only at the last moment, so a time check that
+ * adjusts the clock while a snipe is waiting is still honored.
+ */
+public class SnipeScheduler {
+  public interface Clock {
+    /**
+     * @return The current time, in milliseconds, in the same terms as the scheduled times.
+     */
+    long getCurrentTime();
+  }
+
+  //  How long before a shot is due to stop watching the clock, and commit to a deadline.
+  private static final long APPROACH = 20;
+  //  How long before the deadline to stop parking, and spin instead.
+  private static final long SPIN_NANOS = 200000;
+
+  private final Clock mClock;
+  private final TreeSet<Shot> mShots = new TreeSet<Shot>();
+  private final Map<String, Shot> mByIdentifier = new HashMap<String, Shot>();
+  private final ThreadPoolExecutor mFiring;
+  private final Thread mThread;
+  private volatile boolean mClosed = false;
+  private long mSequence = 0;
+
+  private long mScheduled = 0;
+  private long mCancelled = 0;
+  private long mFired = 0;
+  private long mTotalLate = 0;
+  private long mMaxLate = 0;
+
+  private class Shot implements Comparable<Shot> {
+    private final String mIdentifier;
+    private final long mWhen;
+    private final long mSequence;
+    private final Runnable mRun;
+    private volatile boolean mCancelledShot = false;
+
+    private Shot(String identifier, long when, long sequence, Runnable run) {
+      mIdentifier = identifier;
+      mWhen = when;
+      mSequence = sequence;
+      mRun = run;
+    }
+
+    public int compareTo(Shot o) {
+      if(mWhen != o.mWhen) return mWhen < o.mWhen ? -1 : 1;
+      if(mSequence != o.mSequence) return mSequence < o.mSequence ? -1 : 1;
+      return 0;
+    }
+  }
+
+  /**
+   * @param name - The name of the scheduler's thread.
+   * @param clock - The clock the scheduled times are in.
+   */
+  public SnipeScheduler(String name, Clock clock) {
+    mClock = clock;
+
+    final AtomicInteger count = new AtomicInteger(0);
+    final String firingName = name + "-Fire-";
+    mFiring = new ThreadPoolExecutor(1, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, firingName + count.incrementAndGet());
+        t.setDaemon(true);
+        t.setPriority(Thread.MAX_PRIORITY);
+        return t;
+      }
+    });
+    //  Keep one firing thread waiting, so the first shot doesn't pay to start one.
+    mFiring.prestartCoreThread();
+
+    mThread = new Thread(name) {
+      public void run() { scheduleLoop(); }
+    };
+    mThread.setDaemon(true);
+    mThread.setPriority(Thread.MAX_PRIORITY);
+    mThread.start();
+  }
+
+  /**
+   * Schedule a shot, replacing any already scheduled for the same identifier.
+   *
+   * @param identifier - The auction identifier the shot is for.
+   * @param when - When to fire, in the clock's terms; a time already past fires right away.
+   * @param shot - What to run, on a firing thread, at that time.
+   */
+  public synchronized void schedule(String identifier, long when, Runnable shot) {
+    cancel(identifier);
+    Shot s = new Shot(identifier, when, mSequence++, shot);
+    mShots.add(s);
+    mByIdentifier.put(identifier, s);
+    mScheduled++;
+    notifyAll();
+  }
+
+  /**
+   * @param identifier - The auction identifier whose shot to cancel.
+   *
+   * @return true if a shot was waiting to be fired, and won't be.
+   */
+  public synchronized boolean cancel(String identifier) {
+    Shot s = mByIdentifier.remove(identifier);
+    if(s == null) return false;
+    mShots.remove(s);
+    //  It may already be on its final approach, out of the schedule.
+    s.mCancelledShot = true;
+    mCancelled++;
+    return true;
+  }
+
+  public synchronized boolean contains(String identifier) {
+    return mByIdentifier.containsKey(identifier);
+  }
+
+  public synchronized int size() {
+    return mShots.size();
+  }
+
+  public void shutdown() {
+    mClosed = true;
+    synchronized(this) {
+      notifyAll();
+    }
+    mFiring.shutdown();
+  }
+
+  private void scheduleLoop() {
+    while(!mClosed) {
+      Shot next;
+      long deadline;
+      synchronized(this) {
+        try {
+          if(mShots.isEmpty()) {
+            wait();
+            continue;
+          }
+          next = mShots.first();
+          long remaining = next.mWhen - mClock.getCurrentTime();
+          if(remaining > APPROACH) {
+            //  Come back and look again; the clock may be adjusted, or something sooner scheduled.
+            wait(remaining - APPROACH);
+            continue;
+          }
+          deadline = System.nanoTime() + Math.max(remaining, 0) * 1000000L;
+          mShots.remove(next);
+        } catch(InterruptedException ignored) {
+          continue;
+        }
+      }
+
+      long left;
+      while((left = deadline - System.nanoTime()) > SPIN_NANOS) LockSupport.parkNanos(left - SPIN_NANOS);
+      while(System.nanoTime() < deadline) { /* Spin the last fraction of a millisecond. */ }
+
+      fire(next, deadline);
+    }
+  }
+
+  private void fire(final Shot shot, long deadline) {
+    synchronized(this) {
+      if(shot.mCancelledShot) return;
+      if(mByIdentifier.get(shot.mIdentifier) == shot) mByIdentifier.remove(shot.mIdentifier);
+    }
+
+    long late = System.nanoTime() - deadline;
+    try {
+      mFiring.execute(new Runnable() {
+        public void run() {
+          try {
+            shot.mRun.run();
+          } catch(RuntimeException e) {
+            JConfig.log().handleException("Snipe on " + shot.mIdentifier + " failed.", e);
+          }
+        }
+      });
+    } catch(java.util.concurrent.RejectedExecutionException e) {
+      JConfig.log().handleException("Couldn't fire the snipe on " + shot.mIdentifier + "; shutting down.", e);
+      return;
+    }
+
+    synchronized(this) {
+      mFired++;
+      mTotalLate += late;
+      if(late > mMaxLate) mMaxLate = late;
+    }
+  }
+
+  public synchronized String getStatistics() {
+    return String.format("SnipeScheduler: %d waiting, %d scheduled, %d cancelled, %d fired, late avg %.3fms max %.3fms",
+        mShots.size(), mScheduled, mCancelled, mFired,
+        mFired == 0 ? 0.0 : mTotalLate / (mFired * 1000000.0), mMaxLate / 1000000.0);
+  }
+}
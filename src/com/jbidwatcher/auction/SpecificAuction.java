@@ -6,6 +6,7 @@ package com.jbidwatcher.auction;
  * Developed by mrs (Morgan Schweers)
  */
 
+import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.html.*;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -43,7 +44,12 @@ public abstract class SpecificAuction extends AuctionInfo implements CleanupHand
     mDocument2 = Jsoup.parse(sb.toString());
     cleanup(sb);
 
-    mDocument = new JHTML(sb);
+    //  In single-pass mode the JHTML tokens come from the Jsoup document, so the page is only parsed once.
+    if(JConfig.queryConfiguration("parse.single_pass", "false").equals("true")) {
+      mDocument = new JHTML(mDocument2);
+    } else {
+      mDocument = new JHTML(sb);
+    }
 
     return true;
   }
@@ -17,6 +17,18 @@ import java.io.IOException;
  * them, and loading them.
  */
 public class Thumbnail {
+  /**
+   * @param identifier - The item to look for a saved image of.
+   *
+   * @return - true if an image for the item has been saved.
+   */
+  public static boolean hasImage(String identifier) {
+    String outPath = JConfig.queryConfiguration("auctions.savepath");
+    if(outPath == null || outPath.length() == 0) return false;
+
+    return new File(outPath + System.getProperty("file.separator") + identifier + ".jpg").exists();
+  }
+
   public static String getValidImagePath(String identifier) {
     return getValidImagePath(identifier, null);
   }
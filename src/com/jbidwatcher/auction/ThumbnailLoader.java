@@ -9,12 +9,14 @@ import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.queue.MQFactory;
 import com.jbidwatcher.util.queue.MessageQueue;
 import com.jbidwatcher.util.http.Http;
+import com.jbidwatcher.util.http.NotModifiedException;
+import com.jbidwatcher.util.http.Validators;
 import com.jbidwatcher.util.ByteBuffer;
 
 import java.net.*;
 
 /** @noinspection MagicNumber,Singleton*/
-public class ThumbnailLoader implements MessageQueue.Listener {
+public class ThumbnailLoader implements MessageQueue.BlockingListener {
   private static ThumbnailLoader sInstance = null;
   private ThumbnailLoader() { }
 
@@ -26,21 +28,33 @@ public class ThumbnailLoader implements MessageQueue.Listener {
     //  but it's named '*6464.jpg' instead of '*.jpg'.
     if(thumbnail == null) thumbnail = ai.getAlternateSiteThumbnail();
 
-    ByteBuffer thumbnailImage = getThumbnailByURL(thumbnail);
+    String imgPath;
+    try {
+      ByteBuffer thumbnailImage = getThumbnailByURL(ai.getIdentifier(), thumbnail);
 
-    //  If we retrieved 'something', but it was 0 bytes long, it's not a thumbnail.
-    if(thumbnailImage != null && thumbnailImage.getLength() == 0) thumbnailImage = null;
+      //  If we retrieved 'something', but it was 0 bytes long, it's not a thumbnail.
+      if(thumbnailImage != null && thumbnailImage.getLength() == 0) thumbnailImage = null;
 
-    String imgPath = Thumbnail.getValidImagePath(ai.getIdentifier(), thumbnailImage);
+      imgPath = Thumbnail.getValidImagePath(ai.getIdentifier(), thumbnailImage);
+    } catch(NotModifiedException unchanged) {
+      //  The image saved last time is still the right one.
+      imgPath = Thumbnail.getValidImagePath(ai.getIdentifier());
+    }
 
     ai.setThumbnail(imgPath);
     MQFactory.getConcrete("redraw").enqueue(ai.getIdentifier());
   }
 
-  private ByteBuffer getThumbnailByURL(String url) {
+  private ByteBuffer getThumbnailByURL(String identifier, String url) throws NotModifiedException {
     ByteBuffer tmpThumb;
     try {
-      tmpThumb = downloadThumbnail(JConfig.getURL(url));
+      Validators validators = Validators.forURL(identifier, url);
+      //  Only ask if it's changed if there's a saved copy to use if it hasn't.
+      if(!Thumbnail.hasImage(identifier)) validators.forget();
+      tmpThumb = downloadThumbnail(JConfig.getURL(url), validators);
+      validators.save();
+    } catch (NotModifiedException unchanged) {
+      throw unchanged;
     } catch (Exception ignored) {
       tmpThumb = null;
     }
@@ -48,7 +62,24 @@ public class ThumbnailLoader implements MessageQueue.Listener {
   }
 
   public static ByteBuffer downloadThumbnail(URL img) {
-    ByteBuffer tmpThumb = Http.net().getURL(img);
+    return checkPlaceholder(Http.net().getURL(img));
+  }
+
+  /**
+   * Download a thumbnail, unless it hasn't changed since the validators were recorded.
+   *
+   * @param img - The URL of the thumbnail.
+   * @param validators - The validators from the last time it was downloaded.
+   *
+   * @return - The thumbnail, or null if it couldn't be downloaded or is a placeholder.
+   * @throws NotModifiedException - If the thumbnail hasn't changed.
+   */
+  public static ByteBuffer downloadThumbnail(URL img, Validators validators) throws NotModifiedException {
+    return checkPlaceholder(Http.net().getURL(img, validators));
+  }
+
+  private static ByteBuffer checkPlaceholder(ByteBuffer tmpThumb) {
+    if(tmpThumb == null) return null;
     //  There's a specific image which is just 'click here to
     //  view item'.  Boring, and misleading.
     if(tmpThumb.getCRC() == 0xAEF9E727 ||
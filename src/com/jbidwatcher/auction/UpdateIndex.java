@@ -0,0 +1,216 @@
+package com.jbidwatcher.auction;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.HashBacked;
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.db.Table;
+import com.jbidwatcher.util.db.WriteBehind;
+
+import java.util.*;
+
+/**
+ * An in-memory schedule of when each entry next needs updating, so the
+ * update timer doesn't have to ask the database every second.
+ *
+ * It's built from the database once, and kept current by AuctionEntry as
+ * entries are saved or deleted.  The rules are the same ones the
+ * findAllNeedingUpdates, findEndingNeedingUpdates and findManualUpdates
+ * queries use:
+ *
+ *  - Entries with no last update time need updating right away, ended or not.
+ *  - Entries which haven't ended need updating every 69 minutes, and every
+ *    minute from 25 minutes before they end until an hour after.
+ */
+public class UpdateIndex {
+  static final long SLOW_INTERVAL = Constants.ONE_MINUTE * 69;
+  static final long FAST_INTERVAL = Constants.ONE_MINUTE;
+  static final long FAST_BEFORE = Constants.ONE_MINUTE * 25;
+  static final long FAST_AFTER = Constants.ONE_HOUR;
+
+  private static final long NONE = Long.MIN_VALUE;
+  private static final long NEVER = Long.MAX_VALUE;
+  private static UpdateIndex sInstance = null;
+
+  private final Map<String, Slot> mSlots = new HashMap<String, Slot>();
+  private final TreeSet<Slot> mSchedule = new TreeSet<Slot>();
+
+  private long mRebuilds = 0;
+  private long mChecks = 0;
+  private long mFound = 0;
+
+  private static class Slot implements Comparable<Slot> {
+    private final String mIdentifier;
+    private final long mLastUpdated;
+    private final long mEnding;
+    private final boolean mEnded;
+    private final long mDue;
+
+    private Slot(String identifier, long lastUpdated, long ending, boolean ended) {
+      mIdentifier = identifier;
+      mLastUpdated = lastUpdated;
+      mEnding = ending;
+      mEnded = ended;
+      mDue = computeDue(lastUpdated, ending, ended);
+    }
+
+    private boolean isManual() { return mLastUpdated == NONE; }
+
+    //  Due first, then by end date (entries with none last), like the queries' 'ORDER BY ending_at'.
+    public int compareTo(Slot o) {
+      if(mDue != o.mDue) return mDue < o.mDue ? -1 : 1;
+      return compareEnding(this, o);
+    }
+  }
+
+  private static int compareEnding(Slot a, Slot b) {
+    long aEnd = a.mEnding == NONE ? NEVER : a.mEnding;
+    long bEnd = b.mEnding == NONE ? NEVER : b.mEnding;
+    if(aEnd != bEnd) return aEnd < bEnd ? -1 : 1;
+    return a.mIdentifier.compareTo(b.mIdentifier);
+  }
+
+  private static final Comparator<Slot> BY_ENDING = new Comparator<Slot>() {
+    public int compare(Slot a, Slot b) { return compareEnding(a, b); }
+  };
+
+  /**
+   * Work out the earliest time (in milliseconds) at which an entry will need updating.
+   *
+   * @param lastUpdated - When the entry was last updated, or NONE if it's been flagged for an update.
+   * @param ending - When the auction ends, or NONE if it isn't known.
+   * @param ended - Whether the auction is already known to have ended.
+   *
+   * @return The time the entry becomes due; NONE if it's due right away, NEVER if it doesn't need updating.
+   */
+  static long computeDue(long lastUpdated, long ending, boolean ended) {
+    if(lastUpdated == NONE) return NONE;
+    if(ended) return NEVER;
+
+    //  The queries compare strictly, so an entry is due the millisecond after each boundary.
+    long due = lastUpdated + SLOW_INTERVAL + 1;
+    if(ending != NONE) {
+      long fast = Math.max(lastUpdated + FAST_INTERVAL, ending - FAST_BEFORE) + 1;
+      if(fast < ending + FAST_AFTER) due = Math.min(due, fast);
+    }
+    return due;
+  }
+
+  /**
+   * @return The update index, built from the database the first time it's asked for.
+   */
+  public static synchronized UpdateIndex getInstance() {
+    if(sInstance == null) {
+      sInstance = new UpdateIndex();
+      sInstance.rebuild();
+    }
+    return sInstance;
+  }
+
+  /**
+   * @return Statistics for the update index, or null if it hasn't been built.
+   */
+  public static synchronized String getSharedStatistics() {
+    return sInstance == null ? null : sInstance.getStatistics();
+  }
+
+  /**
+   * Throw out the schedule, and rebuild it from the database; used at
+   * startup, and after changes made directly in SQL.
+   */
+  public void rebuild() {
+    WriteBehind queue = WriteBehind.getInstance();
+    if(queue != null) queue.flush();
+    Table entries = AuctionEntry.getRealDatabase();
+    List<Record> rows = entries == null ? new ArrayList<Record>() : entries.findAll(
+        "SELECT e.identifier, e.last_updated_at, e.ended, a.ending_at FROM entries e JOIN auctions a ON a.id = e.auction_id", 0);
+
+    synchronized(this) {
+      mSlots.clear();
+      mSchedule.clear();
+      for(Record row : rows) {
+        //  Read the columns the same way the entries themselves do.
+        HashBacked columns = new HashBacked(row);
+        String identifier = columns.getString("identifier");
+        if(identifier == null) continue;
+        put(new Slot(identifier, toTime(columns.getDate("last_updated_at")), toTime(columns.getDate("ending_at")), columns.getBoolean("ended")));
+      }
+      mRebuilds++;
+    }
+  }
+
+  private static long toTime(Date date) {
+    return date == null ? NONE : date.getTime();
+  }
+
+  private void put(Slot slot) {
+    Slot old = mSlots.put(slot.mIdentifier, slot);
+    if(old != null) mSchedule.remove(old);
+    if(slot.mDue != NEVER) mSchedule.add(slot);
+  }
+
+  /**
+   * Reschedule an entry, after it's been saved.
+   *
+   * @param identifier - The entry's auction identifier.
+   * @param lastUpdated - When it was last updated, or null if it's been flagged for an update.
+   * @param ending - When the auction ends, or null if it isn't known.
+   * @param ended - Whether the auction has ended.
+   */
+  public synchronized void update(String identifier, Date lastUpdated, Date ending, boolean ended) {
+    if(identifier == null) return;
+    Slot old = mSlots.get(identifier);
+    long last = toTime(lastUpdated);
+    long end = toTime(ending);
+    if(old != null && old.mLastUpdated == last && old.mEnding == end && old.mEnded == ended) return;
+    put(new Slot(identifier, last, end, ended));
+  }
+
+  public synchronized void remove(String identifier) {
+    Slot old = mSlots.remove(identifier);
+    if(old != null) mSchedule.remove(old);
+  }
+
+  /**
+   * Find the entries that need updating now, ordered by their end dates,
+   * the way the update queries order them.
+   *
+   * @param now - The current time.
+   * @param scheduled - Whether to include entries due for their regular
+   * updates, or just those which have been flagged for an update.
+   *
+   * @return The identifiers of the entries that are due.
+   */
+  public List<String> findDue(long now, boolean scheduled) {
+    List<Slot> due = new ArrayList<Slot>();
+    synchronized(this) {
+      mChecks++;
+      for(Slot slot : mSchedule) {
+        if(slot.mDue > now) break;
+        if(scheduled || slot.isManual()) due.add(slot);
+      }
+      mFound += due.size();
+    }
+
+    Collections.sort(due, BY_ENDING);
+    List<String> identifiers = new ArrayList<String>(due.size());
+    for(Slot slot : due) identifiers.add(slot.mIdentifier);
+    return identifiers;
+  }
+
+  public synchronized int size() { return mSlots.size(); }
+
+  public synchronized String getStatistics() {
+    String next = "nothing scheduled";
+    if(!mSchedule.isEmpty()) {
+      long due = mSchedule.first().mDue;
+      next = due == NONE ? "next due now" : "next due in " + Math.max(0, due - System.currentTimeMillis()) / 1000 + "s";
+    }
+    return String.format("UpdateIndex: %d entries, %d scheduled, %s; %d checks found %d due, %d rebuilds",
+        mSlots.size(), mSchedule.size(), next, mChecks, mFound, mRebuilds);
+  }
+}
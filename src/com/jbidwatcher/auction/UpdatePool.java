@@ -0,0 +1,159 @@
+package com.jbidwatcher.auction;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.UpdateBlocker;
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of workers which refresh auction entries, so a single slow
+ * page doesn't hold up every other update behind it.
+ *
+ * Each piece of work is keyed (by auction identifier); a key that's already
+ * queued or running is refused, so the same update isn't queued twice.
+ * While an update runs, its worker holds the entry's lock in the
+ * EntryCorral, the same as anyone else changing the entry, so it can't
+ * overlap a bid, a snipe, or a user's change to it.  Workers hold off
+ * starting an update while UpdateBlocker says a snipe or bid is in progress.
+ */
+public class UpdatePool {
+  private static final int DEFAULT_WORKERS = 3;
+  private static UpdatePool sInstance = null;
+
+  private final ThreadPoolExecutor mPool;
+  //  Keys queued or running; only used to refuse duplicate submissions, and to tell when the pool is idle.
+  private final Set<String> mInFlight = new HashSet<String>();
+
+  private long mCompleted = 0;
+  private long mTotalWait = 0;
+  private long mMaxWait = 0;
+  private long mTotalRun = 0;
+  private long mMaxRun = 0;
+
+  /**
+   * @return The shared update pool, or null if updates are configured
+   * (updates.workers = 0) to run directly on the caller's thread.
+   */
+  public static synchronized UpdatePool getInstance() {
+    if(sInstance == null) {
+      int workers = JConfig.queryIntConfiguration("updates.workers", DEFAULT_WORKERS);
+      if(workers <= 0) return null;
+      sInstance = new UpdatePool(workers);
+    }
+
+    return sInstance;
+  }
+
+  /**
+   * @return Statistics for the shared update pool, or null if it hasn't been started.
+   */
+  public static synchronized String getSharedStatistics() {
+    return sInstance == null ? null : sInstance.getStatistics();
+  }
+
+  public UpdatePool(int workers) {
+    final AtomicInteger count = new AtomicInteger(0);
+    mPool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Update-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    mPool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Queue up work for the given key, unless work for that key is already queued or running.
+   *
+   * @param key - The identifier of the entry being updated.
+   * @param work - The update to run.
+   *
+   * @return true if the work was queued, false if that key was already in progress.
+   */
+  public boolean submit(final String key, final Runnable work) {
+    synchronized(mInFlight) {
+      if(!mInFlight.add(key)) return false;
+    }
+
+    final long queued = System.nanoTime();
+    mPool.execute(new Runnable() {
+      public void run() {
+        long started = System.nanoTime();
+        try {
+          UpdateBlocker.waitWhileBlocked();
+          started = System.nanoTime();
+          EntryCorral corral = EntryCorral.getInstance();
+          corral.takeForWrite(key);
+          try {
+            work.run();
+          } finally {
+            corral.release(key);
+          }
+        } catch(InterruptedException ignored) {
+          //  Shutting down; drop the update.
+        } catch(RuntimeException e) {
+          JConfig.log().handleException("Update of " + key + " failed.", e);
+        } finally {
+          record(started - queued, System.nanoTime() - started);
+          synchronized(mInFlight) {
+            mInFlight.remove(key);
+            mInFlight.notifyAll();
+          }
+        }
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Wait for every queued and running update to finish.
+   *
+   * @throws InterruptedException - If the wait is interrupted.
+   */
+  public void awaitIdle() throws InterruptedException {
+    synchronized(mInFlight) {
+      while(!mInFlight.isEmpty()) mInFlight.wait();
+    }
+  }
+
+  public int getInFlight() {
+    synchronized(mInFlight) {
+      return mInFlight.size();
+    }
+  }
+
+  private synchronized void record(long waitNanos, long runNanos) {
+    mCompleted++;
+    mTotalWait += waitNanos;
+    if(waitNanos > mMaxWait) mMaxWait = waitNanos;
+    mTotalRun += runNanos;
+    if(runNanos > mMaxRun) mMaxRun = runNanos;
+  }
+
+  public synchronized long getCompleted() { return mCompleted; }
+
+  /** @return The average time (in milliseconds) an update waited for a worker. */
+  public synchronized double getAverageWait() { return mCompleted == 0 ? 0.0 : mTotalWait / (mCompleted * 1000000.0); }
+  public synchronized double getMaxWait() { return mMaxWait / 1000000.0; }
+
+  /** @return The average time (in milliseconds) an update took once it started. */
+  public synchronized double getAverageRun() { return mCompleted == 0 ? 0.0 : mTotalRun / (mCompleted * 1000000.0); }
+  public synchronized double getMaxRun() { return mMaxRun / 1000000.0; }
+
+  public String getStatistics() {
+    return String.format("Updates: %d workers, %d in flight, %d completed, wait avg %.2fms max %.2fms, update avg %.2fms max %.2fms",
+        mPool.getMaximumPoolSize(), getInFlight(), getCompleted(), getAverageWait(), getMaxWait(), getAverageRun(), getMaxRun());
+  }
+}
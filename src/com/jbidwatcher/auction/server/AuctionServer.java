@@ -18,9 +18,13 @@ package com.jbidwatcher.auction.server;
  */
 import com.jbidwatcher.util.config.*;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.AuctionQObject;
 import com.jbidwatcher.util.http.CookieJar;
 import com.jbidwatcher.util.http.Http;
+import com.jbidwatcher.util.http.HostThrottle;
+import com.jbidwatcher.util.http.NotModifiedException;
+import com.jbidwatcher.util.http.Validators;
 import com.jbidwatcher.util.Constants;
 import com.jbidwatcher.util.StringTools;
 import com.jbidwatcher.search.SearchManagerInterface;
@@ -112,11 +116,13 @@ public abstract class AuctionServer implements AuctionServerInterface {
    * Get the full text of an auction from the auction server.
    *
    * @param id - The item id for the item to retrieve from the server.
+   * @param validators - The validators from the last time the item was retrieved; the request is made conditional on them.
    *
    * @return - The full text of the auction from the server, or null if it wasn't found.
    * @throws java.io.FileNotFoundException - If the auction is gone from the server.
+   * @throws NotModifiedException - If the auction hasn't changed since the validators were recorded.
    */
-  protected abstract StringBuffer getAuction(String id) throws FileNotFoundException;
+  protected abstract StringBuffer getAuction(String id, Validators validators) throws FileNotFoundException, NotModifiedException;
 
   /**
    * @brief Get the current time inline with the current thread.  This will
@@ -135,7 +141,12 @@ public abstract class AuctionServer implements AuctionServerInterface {
   //  -----------------
   //  Note: AuctionEntry
   public AuctionInfo create(String itemId) {
-    return loadAuction(itemId, null);
+    try {
+      return loadAuction(itemId, null);
+    } catch(NotModifiedException cantHappen) {
+      //  With no entry, there's nothing to compare against, so the request isn't conditional.
+      return null;
+    }
   }
 
   /**
@@ -150,27 +161,65 @@ public abstract class AuctionServer implements AuctionServerInterface {
    * @throws java.io.FileNotFoundException -- If the URL doesn't exist on the auction server.
    */
   public StringBuffer getAuction(URL auctionURL) throws FileNotFoundException {
+    try {
+      return getAuction(auctionURL, null);
+    } catch(NotModifiedException cantHappen) {
+      //  Without validators, the request wasn't conditional.
+      return null;
+    }
+  }
+
+  /**
+   * @brief Load an auction from a given URL, if it's changed since the
+   * given validators were recorded; what the response says about it is
+   * recorded in them.
+   *
+   * @param auctionURL - The URL of the auction to load.
+   * @param validators - The validators from the last time the URL was loaded, or null to load it unconditionally.
+   *
+   * @return - A StringBuffer containing the text of the auction at that URL.
+   *
+   * @throws java.io.FileNotFoundException -- If the URL doesn't exist on the auction server.
+   * @throws NotModifiedException -- If the auction hasn't changed since the validators were recorded.
+   */
+  protected StringBuffer getAuction(URL auctionURL, Validators validators) throws FileNotFoundException, NotModifiedException {
     if(auctionURL == null) return null;
-    StringBuffer loadedPage;
+    StringBuffer loadedPage = null;
+    String host = auctionURL.getHost();
+    HostThrottle throttle = HostThrottle.getInstance();
+    boolean responded = false;
+    long start = System.nanoTime();
 
     try {
+      throttle.acquire(host);
+      start = System.nanoTime();
       CookieJar curCook = getNecessaryCookie(false);
       URLConnection uc;
       if(curCook != null) {
-        uc = curCook.connect(auctionURL.toString());
+        uc = curCook.connect(auctionURL.toString(), validators);
       } else {
         uc = Http.net().makeRequest(auctionURL, null);
+        if(validators != null) validators.addTo(uc);
       }
-      loadedPage = Http.net().receivePage(uc);
+      loadedPage = validators == null ? Http.net().receivePage(uc) : Http.net().receivePage(uc, validators);
+      responded = loadedPage != null;
       if(loadedPage != null && loadedPage.length() == 0) {
         loadedPage = null;
       }
+    } catch(NotModifiedException unchanged) {
+      responded = true;
+      throw unchanged;
     } catch(FileNotFoundException fnfe) {
+      responded = true;
       JConfig.log().logDebug("Item not found: " + auctionURL.toString());
       throw fnfe;
     } catch(IOException e) {
       JConfig.log().handleException("Error loading URL (" + auctionURL.toString() + ')', e);
       loadedPage = null;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      throttle.done(host, responded, System.nanoTime() - start);
     }
     return loadedPage;
   }
@@ -188,7 +237,14 @@ public abstract class AuctionServer implements AuctionServerInterface {
     AuctionEntry ae = (AuctionEntry) EntryCorral.getInstance().takeForWrite(auctionId);
     SpecificAuction curAuction;
     try {
-      curAuction = (SpecificAuction) loadAuction(auctionId, ae);
+      try {
+        curAuction = (SpecificAuction) loadAuction(auctionId, ae);
+      } catch(NotModifiedException unchanged) {
+        //  What was parsed and saved last time is still current.
+        ae.clearInvalid();
+        MQFactory.getConcrete("Swing").enqueue("LINK UP");
+        return;
+      }
 
       if (curAuction != null) {
         curAuction.saveDB();
@@ -213,24 +269,33 @@ public abstract class AuctionServer implements AuctionServerInterface {
    * @param ae - An object to notify when an error occurs.
    *
    * @return - An object containing the information extracted from the auction.
+   * @throws NotModifiedException - If the auction hasn't changed since it was last loaded into the entry.
    */
-  private AuctionInfo loadAuction(String item_id, AuctionEntry ae) {
+  private AuctionInfo loadAuction(String item_id, AuctionEntry ae) throws NotModifiedException {
     StringBuffer sb = null;
     SpecificAuction curAuction = null;
     int runCount = 0;
 
+    Validators validators = Validators.forURL(item_id, getStringURLFromItem(item_id));
+    //  If there's no earlier copy of the auction to fall back on, it has to be loaded in full.
+    if(ae == null || !ae.hasAuction()) validators.forget();
+
     // Retry loop
     while(sb == null && runCount < 2) {
-      sb = retrieveAuction(item_id, ae);
+      sb = retrieveAuction(item_id, ae, validators);
 
       try {
         curAuction = doParse(sb, ae, item_id);
       } catch (ReloadItemException e) {
         sb = null;
+        //  The retry is for a different page than the one just loaded.
+        validators.forget();
       }
       runCount++;
     }
 
+    if (curAuction != null) validators.save();
+
     if (curAuction == null) {
       JConfig.log().logMessage("Multiple failures attempting to load item " + item_id + ", giving up.");
 
@@ -243,14 +308,16 @@ public abstract class AuctionServer implements AuctionServerInterface {
     return curAuction;
   }
 
-  private StringBuffer retrieveAuction(String item_id, AuctionEntry ae) {
+  private StringBuffer retrieveAuction(String item_id, AuctionEntry ae, Validators validators) throws NotModifiedException {
     StringBuffer sb = null;
 
     try {
-      sb = getAuction(item_id);
+      sb = getAuction(item_id, validators);
       if(sb != null && ae != null) {
         ae.clearDeleted();
       }
+    } catch (NotModifiedException unchanged) {
+      throw unchanged;
     } catch (FileNotFoundException ignored) {
       //  Just get out.  The item no longer exists on the auction
       //  server, so we shouldn't be trying any of the rest.  The
@@ -359,7 +426,7 @@ public abstract class AuctionServer implements AuctionServerInterface {
     //  Only retry the login cookie once every ten minutes of these errors.
     if ((sLastUpdated + Constants.ONE_MINUTE * 10) > System.currentTimeMillis()) {
       sLastUpdated = System.currentTimeMillis();
-      MQFactory.getConcrete(this.getFriendlyName()).enqueueBean(new AuctionQObject(AuctionQObject.MENU_CMD, UPDATE_LOGIN_COOKIE, null)); //$NON-NLS-1$ //$NON-NLS-2$
+      MQFactory.publish(Topic.auctionServer(getFriendlyName()), new AuctionQObject(AuctionQObject.MENU_CMD, UPDATE_LOGIN_COOKIE, null)); //$NON-NLS-1$ //$NON-NLS-2$
     }
   }
 
@@ -26,7 +26,7 @@ import java.util.*;
  * JBidwatcher is not used on any other auction sites than eBay, and hasn't
  * been for many years.
  */
-public class AuctionServerManager implements XMLSerialize, MessageQueue.Listener, Resolver {
+public class AuctionServerManager implements XMLSerialize, MessageQueue.BlockingListener, Resolver {
   private final static AuctionServerManager mInstance;
   private static EntryManager sEntryManager = null;
   private AuctionServer mServer = null;
@@ -351,29 +351,45 @@ public class ebayBidder implements com.jbidwatcher.auction.Bidder {
   }
 
   public int placeFinalBid(CookieJar cj, JHTML.Form bidForm, AuctionEntry inEntry, Currency inBid, int inQuantity) {
+    return prepareFinalBid(cj, bidForm, inEntry, inBid, inQuantity).place();
+  }
+
+  public PreparedBid prepareFinalBid(final CookieJar cj, final JHTML.Form bidForm, final AuctionEntry inEntry, Currency inBid, int inQuantity) {
     String bidRequest = Externalized.getString("ebayServer.protocol") + T.s("ebayServer.bidHost") + Externalized.getString("ebayServer.V3file");
     String bidInfo = Externalized.getString("ebayServer.bidCmd") + Externalized.getString("ebayServer.itemCGI") + inEntry.getIdentifier() +
         Externalized.getString("ebayServer.quantCGI") + inQuantity +
         Externalized.getString("ebayServer.bidCGI") + inBid.getValue();
-    String bidURL = bidRequest + '?' + bidInfo;
+    final String bidURL = bidRequest + '?' + bidInfo;
 
     bidForm.delInput("BIN_button");
-    StringBuffer loadedPage = null;
-
+    final String action = bidForm.getAction();
+    String encoded = null;
     try {
-      if (JConfig.debugging) inEntry.setLastStatus("Submitting bid form.");
-      loadedPage = cj.getPage(bidForm.getAction(), bidForm.getFormData(), bidURL);
-      if (JConfig.debugging) inEntry.setLastStatus("Done submitting bid form.");
+      encoded = bidForm.getFormData();
     } catch (UnsupportedEncodingException uee) {
       JConfig.log().handleException("UTF-8 not supported locally, can't URLEncode bid form.", uee);
-    } catch (CookieJar.CookieException ignored) {
-      return AuctionServerInterface.BID_ERROR_CONNECTION;
     }
+    final String formData = encoded;
+
+    return new PreparedBid() {
+      public int place() {
+        if (formData == null) return AuctionServerInterface.BID_ERROR_CONNECTION;
+        StringBuffer loadedPage;
+
+        try {
+          if (JConfig.debugging) inEntry.setLastStatus("Submitting bid form.");
+          loadedPage = cj.getPage(action, formData, bidURL);
+          if (JConfig.debugging) inEntry.setLastStatus("Done submitting bid form.");
+        } catch (CookieJar.CookieException ignored) {
+          return AuctionServerInterface.BID_ERROR_CONNECTION;
+        }
 
-    if (loadedPage == null) {
-      return AuctionServerInterface.BID_ERROR_CONNECTION;
-    }
-    return handlePostBidBuyPage(cj, loadedPage, bidForm, inEntry);
+        if (loadedPage == null) {
+          return AuctionServerInterface.BID_ERROR_CONNECTION;
+        }
+        return handlePostBidBuyPage(cj, loadedPage, bidForm, inEntry);
+      }
+    };
   }
 
   private int handlePostBidBuyPage(CookieJar cj, StringBuffer loadedPage, JHTML.Form bidForm, AuctionEntry inEntry) {
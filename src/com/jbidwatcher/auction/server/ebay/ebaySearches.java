@@ -17,6 +17,7 @@ import com.jbidwatcher.auction.server.AuctionServerManager;
 import com.jbidwatcher.auction.*;
 import com.jbidwatcher.util.html.CleanupHandler;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.DropQObject;
 import com.jbidwatcher.util.queue.SuperQueue;
 import com.jbidwatcher.search.Searcher;
@@ -89,7 +90,7 @@ public class ebaySearches {
       JConfig.log().logDebug("No items on page!");
     } else {
       for (String url : urls) {
-        MQFactory.getConcrete("drop").enqueueBean(new DropQObject(url.trim(), category, interactive));
+        MQFactory.publish(Topic.DROP, new DropQObject(url.trim(), category, interactive));
       }
     }
   }
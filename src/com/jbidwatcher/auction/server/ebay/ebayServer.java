@@ -18,6 +18,8 @@ import com.jbidwatcher.util.queue.*;
 import com.jbidwatcher.util.queue.TimerHandler;
 import com.jbidwatcher.util.html.JHTML;
 import com.jbidwatcher.util.http.CookieJar;
+import com.jbidwatcher.util.http.NotModifiedException;
+import com.jbidwatcher.util.http.Validators;
 import com.jbidwatcher.util.*;
 import com.jbidwatcher.util.Currency;
 import com.jbidwatcher.search.Searcher;
@@ -31,10 +33,11 @@ import java.util.*;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.FileNotFoundException;
 
 /** @noinspection OverriddenMethodCallInConstructor*/
-public final class ebayServer extends AuctionServer implements MessageQueue.Listener,JConfig.ConfigListener {
+public final class ebayServer extends AuctionServer implements Topic.BlockingSubscriber<AuctionQObject>,JConfig.ConfigListener {
   private final static ebayCurrencyTables sCurrencies = new ebayCurrencyTables();
   private TT T;
 
@@ -48,12 +51,18 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
   /** @noinspection FieldCanBeLocal*/
   private TimerHandler eQueue;
 
+  /**< Fires prepared snipes at their exact times, rather than on the timer queue's one-second ticks. */
+  private SnipeScheduler mSnipeScheduler;
+
   /**< The full amount of time it takes to request a single page from this site. */
   private long mPageRequestTime;
 
   /**< The amount of time to adjust the system clock by, to make it be nearly second-accurate to eBay time. */
   private long mOfficialServerTimeDelta;
 
+  /**< Estimates the difference from eBay's clock from several samples of its time page, which only shows seconds. */
+  private final ClockSkew mSkew = new ClockSkew(Constants.ONE_SECOND);
+
   /**< The time zone the auction server is in (for eBay this will be PST or PDT). */
   private TimeZone mOfficialServerTimeZone;
   private Date mNow = new Date();
@@ -83,6 +92,10 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
   }
 
   private class eBayTimeQueueManager extends TimeQueueManager {
+    private boolean isReady() {
+      return JConfig.queryConfiguration("timesync.enabled", "true").equals("false") || getServerTimeDelta() != 0;
+    }
+
     /**
      * Don't start checking until the server time delta becomes non-zero,
      * i.e. we've done a time-check.  Unless the user has disabled time
@@ -91,7 +104,16 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
      * @return Should be false.  Always false.
      */
     public boolean check() {
-      return (JConfig.queryConfiguration("timesync.enabled", "true").equals("false") || getServerTimeDelta() != 0) && super.check();
+      return isReady() && super.check();
+    }
+
+    /**
+     * Events won't be sent before the time check, so there's no point waking for them.
+     *
+     * @return The local time the next event is due, or Long.MAX_VALUE if there's none, or it can't be sent yet.
+     */
+    public long getNextWakeup() {
+      return isReady() ? super.getNextWakeup() : Long.MAX_VALUE;
     }
 
     /**
@@ -192,8 +214,7 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
   /**
    * @brief Process an action, based on messages passed through our internal queues.
    */
-  public void messageAction(Object deQ) {
-    AuctionQObject ac = (AuctionQObject)deQ;
+  public void messageAction(AuctionQObject ac) {
     String failString = null;
 
     switch(ac.getCommand()) {
@@ -322,8 +343,8 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
         ae.setLastStatus("Establishing a snipe for " + ae.getSnipeAmount());
 
         _etqm.add("TIMECHECK", "auction_manager", (endDate.getTime() - snipeDelta) - FIVE_MINUTES);
+        //  The snipe itself is scheduled with the snipe scheduler once this has prepared it.
         _etqm.add(auctionId, mSnipeQueue.getQueueName(), (endDate.getTime() - snipeDelta) - TWO_MINUTES);
-        _etqm.add(auctionId, mSnipeQueue.getQueueName(), (endDate.getTime() - snipeDelta));
         _etqm.add(auctionId, "drop",       endDate.getTime() + THIRTY_SECONDS);
       } else {
         JConfig.log().logMessage("Failing to set snipe for " + auctionId + ", endDate is null or in the far future (" + endDate + ")");
@@ -396,7 +417,7 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
           return BID_ERROR_OUTBID;
         }
 
-        //  These two are called by sniping.
+        //  These are called by sniping.
         public JHTML.Form getBidForm(CookieJar cj, AuctionEntry inEntry, Currency inCurr) throws BadBidException {
           return new JHTML.Form("<form action=\"http://example.com\">");
         }
@@ -404,20 +425,31 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
         public int placeFinalBid(CookieJar cj, JHTML.Form bidForm, AuctionEntry inEntry, Currency inBid, int inQuantity) {
           return BID_ERROR_OUTBID;
         }
+
+        public PreparedBid prepareFinalBid(CookieJar cj, JHTML.Form bidForm, AuctionEntry inEntry, Currency inBid, int inQuantity) {
+          return new PreparedBid() {
+            public int place() { return BID_ERROR_OUTBID; }
+          };
+        }
       };
     } else {
       mBidder = new ebayBidder(T, mLogin);
     }
 
     _etqm = new eBayTimeQueueManager();
+    //  Send snipes when they're due, rather than as much as a second early.
+    _etqm.setPrecise(JConfig.queryConfiguration("timequeue.precise", "true").equals("true"));
     eQueue = new TimerHandler(_etqm);
     eQueue.setName("eBay SuperQueue");
     //noinspection CallToThreadStartDuringObjectConstruction
     eQueue.start();
 
+    mSnipeScheduler = new SnipeScheduler(getFriendlyName() + " Snipes", new SnipeScheduler.Clock() {
+      public long getCurrentTime() { return _etqm.getCurrentTime(); }
+    });
     mSnipeQueue = new SnipeListener(getFriendlyName());
     MQFactory.getConcrete(mSnipeQueue.getQueueName()).registerListener(mSnipeQueue);
-    MQFactory.getConcrete(getFriendlyName()).registerListener(this);
+    MQFactory.subscribe(Topic.auctionServer(getFriendlyName()), this);
 
     JConfig.registerListener(this);
   }
@@ -508,9 +540,9 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
     return new ebayAuction2(T);
   }
 
-  public StringBuffer getAuction(String id) throws FileNotFoundException {
+  public StringBuffer getAuction(String id, Validators validators) throws FileNotFoundException, NotModifiedException {
     long pre = System.currentTimeMillis();
-    StringBuffer sb = getAuction(getURLFromItem(id));
+    StringBuffer sb = getAuction(getURLFromItem(id), validators);
     long post = System.currentTimeMillis();
     if (JConfig.queryConfiguration("timesync.enabled", "true").equals("true")) {
       mPageRequestTime = (post - pre);
@@ -604,7 +636,7 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
     MQFactory.getConcrete("Swing").enqueue("Done Getting Selling Items for " + userId);
   }
 
-  private class SnipeListener implements MessageQueue.Listener {
+  private class SnipeListener implements MessageQueue.BlockingListener {
     private String queueName = "sniper";
     private SnipeListener(String suffix) {
       queueName = suffix + " sniper";
@@ -612,10 +644,11 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
 
     public String getQueueName() { return queueName; }
 
-    //  mSnipeMap maps identifiers to Snipe objects which contain sniping state.
-    private Map<String, Snipe> mSnipeMap = new HashMap<String, Snipe>();
+    //  mSnipeMap maps identifiers to Snipe objects which contain sniping state.  Snipes are fired from the snipe scheduler's threads, as well as the queue's.
+    private final Map<String, Snipe> mSnipeMap = new ConcurrentHashMap<String, Snipe>();
 
     public void delSnipe(String identifier) {
+      mSnipeScheduler.cancel(identifier);
       mSnipeMap.remove(identifier);
     }
 
@@ -633,17 +666,15 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
       AuctionEntry ae = EntryCorral.getInstance().takeForRead(identifier);
       if (ae == null || !ae.isSniped()) return null;
 
-      Snipe snipe;
-      if (mSnipeMap.containsKey(identifier)) {
-        snipe = mSnipeMap.get(identifier);
-      } else {
+      Snipe snipe = mSnipeMap.get(identifier);
+      if (snipe == null) {
         snipe = new Snipe(mLogin, mBidder, ae);
         mSnipeMap.put(identifier, snipe);
       }
       return snipe;
     }
 
-    private boolean resnipe(String identifier, Snipe snipe, boolean force) {
+    private boolean resnipe(String identifier, Snipe snipe) {
       /**
        *  The formula for 'when' the next resnipe is, is a little complex.
        * It's all in the code, though.  If we're 3 seconds or less away,
@@ -660,22 +691,38 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
 
         _etqm.add(identifier, getQueueName(), _etqm.getCurrentTime() + retry_wait);
         return true;
-      } else if (force) {
-        //  Requeue it for _now_
-        MQFactory.getConcrete(getQueueName()).enqueue(identifier);
       }
       return false;
     }
 
+    /**
+     * Hand a prepared snipe to the snipe scheduler, to be fired at its
+     * snipe time; if that's already passed, it's fired right away.
+     *
+     * @param identifier - The auction identifier of the snipe.
+     * @param snipe - The snipe, with its bid prepared.
+     */
+    private void schedule(final String identifier, final Snipe snipe) {
+      long when = snipe.getItem().getEndDate().getTime() - snipe.getItem().getSnipeTime();
+      mSnipeScheduler.schedule(identifier, when, new Runnable() {
+        public void run() {
+          handleResult(identifier, snipe, snipe.fire());
+        }
+      });
+    }
+
     public void messageAction(Object deQ) {
-      final String identifier = (String)deQ;
+      String identifier = (String)deQ;
       Snipe snipe = getSnipe(identifier);
       if(snipe == null) return;
 
-      int snipeResult = snipe.fire();
+      handleResult(identifier, snipe, snipe.fire());
+    }
+
+    private void handleResult(String identifier, Snipe snipe, int snipeResult) {
       switch (snipeResult) {
         case Snipe.RESNIPE:
-          if(resnipe(identifier, snipe, false)) break;
+          if(resnipe(identifier, snipe)) break;
 
           //  If there are less than 3 seconds left, give up by falling through to FAIL and DONE.
           JConfig.log().logDebug("Resnipes failed, and less than 3 seconds away.  Giving up.");
@@ -688,12 +735,7 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
           mSnipeMap.remove(identifier);
           break;
         case Snipe.SUCCESSFUL:
-          if(!_etqm.contains(new TimeQueueManager.Matcher() {
-            public boolean match(Object payload, Object queue, long when) {
-              return payload.equals(identifier) && queue == mSnipeQueue;
-            }})) {
-            resnipe(identifier, snipe, true);
-          }
+          schedule(identifier, snipe);
         default:
           break;
       }
@@ -739,7 +781,19 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
    * @return - An amount that, when added to the local clock time, results in eBay's time.
    */
   public long getServerTimeDelta() {
-    return mOfficialServerTimeDelta;
+    if(!mSkew.isValid()) return mOfficialServerTimeDelta;
+
+    //  Extrapolate for how far the local clock has drifted since the last time check.
+    long delta = mSkew.getOffset(System.currentTimeMillis());
+    return delta == 0 ? 1 : delta;
+  }
+
+  public String getClockStatistics() {
+    return mSkew.getStatistics();
+  }
+
+  public String getSnipeStatistics() {
+    return mSnipeScheduler.getStatistics();
   }
 
   public TimeZone getOfficialServerTimeZone() {
@@ -759,58 +813,62 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
   }
 
   /**
-   * @brief Go to eBay and get their official time page, parse it, and
-   * mark the difference between that time and our current time
-   * internally, so we know how far off this machine's time is.
+   * @brief Go to eBay and get their official time page several times,
+   * parse it, and estimate the difference between that time and our
+   * current time, so we know how far off this machine's time is.
+   *
+   * Each sample is timed, and timed to catch eBay's clock as it ticks over
+   * to the next second, so the estimate can be much closer than the page's
+   * one second resolution, and corrects for how long the page took to arrive.
    *
    * @return - An object containing eBay's date, or null if we fail to
    *         load or parse the 'official time' page properly.
    */
   protected Date getOfficialTime() {
-    UpdateBlocker.startBlocking();
-    String timeRequest = Externalized.getString("ebayServer.timeURL");
-
-    JHTML htmlDocument = new JHTML(timeRequest, null, mCleaner);
-    long localDateAfterPage = System.currentTimeMillis();
+    String timeRequest = JConfig.queryConfiguration("timesync.url", Externalized.getString("ebayServer.timeURL"));
+    int samples = Math.max(1, JConfig.queryIntConfiguration("timesync.samples", 5));
 
     ZoneDate result = null;
+    for(int i=0; i<samples; i++) {
+      long wait = mSkew.nextSampleTime(System.currentTimeMillis()) - System.currentTimeMillis();
+      if(wait > 0) {
+        try {
+          Thread.sleep(wait);
+        } catch(InterruptedException e) {
+          break;
+        }
+      }
 
-    String pageStep = htmlDocument.getNextContent();
-    while (result == null && pageStep != null) {
-      if (pageStep.equals(T.s("ebayServer.timePrequel1")) || pageStep.equals(T.s("ebayServer.timePrequel2"))) {
-        result = StringTools.figureDate(htmlDocument.getNextContent(), Externalized.getString("ebayServer.officialTimeFormat"), false, false);
+      //  Updates are held off only while a sample is in flight, not through the waits between them.
+      UpdateBlocker.startBlocking();
+      long sent;
+      ZoneDate sample;
+      long received;
+      try {
+        sent = System.currentTimeMillis();
+        sample = loadOfficialTime(timeRequest);
+        received = System.currentTimeMillis();
+      } finally {
+        UpdateBlocker.endBlocking();
+      }
+      if(sample != null && sample.getDate() != null) {
+        mSkew.addSample(sent, sample.getDate().getTime(), received);
+        result = sample;
       }
-      pageStep = htmlDocument.getNextContent();
     }
 
-    UpdateBlocker.endBlocking();
-
     //  If we couldn't get a number, clear the page request time.
-    if (result == null || result.getDate() == null) {
+    if (result == null || !mSkew.finish()) {
       mPageRequestTime = 0;
       //  This is bad...
       JConfig.log().logMessage(getName() + ": Error, can't accurately set delta to server's official time.");
-      mOfficialServerTimeDelta = 1;
+      if(!mSkew.isValid()) mOfficialServerTimeDelta = 1;
       return null;
     } else {
-      //  reqTime will always be positive; it's how long it took to request, receive, and pre-parse the eBay page.
-//      long reqTime = localDateAfterPage - localDateBeforePage;
-
-      //  It looks like the best time to use is the time _after_ we've loaded the page, under the presumption that the delays
-      //  in returning the time page are front-loaded.  Specifically, we don't want to get the difference from the time before
-      //  we requested the page, as that'll include socket startup time, request time, eBay's processing time, etc...  Instead,
-      //  we use the time after the request has returned, which should just involve data transfer.  This should make determining
-      //  clock skew more accurate.  This has nothing to do with page request time, which we handle separately.
-      //
-      //  Subtract what time eBay thinks it is, from what time the local computer thinks it is to get the amount we add to the local
-      //  clock to get the server clock.
-      mOfficialServerTimeDelta = (result.getDate().getTime() - localDateAfterPage);
-
-//      //  Subtract half the request time, under the belief that eBay instantiated its date/time halfway through the request.
-//      mOfficialServerTimeDelta -= reqTime / 2;
-
-      //  mOSTD of 0 is a sentinel that we haven't gotten the official time yet, so if we magically get it, make it 1ms instead.
-      if(mOfficialServerTimeDelta == 0) mOfficialServerTimeDelta = 1;
+      //  The amount we add to the local clock to get the server clock.
+      mOfficialServerTimeDelta = getServerTimeDelta();
+      JConfig.log().logDebug(mSkew.getStatistics());
+
       if (result.getZone() != null) mOfficialServerTimeZone = (result.getZone());
       if(Math.abs(mOfficialServerTimeDelta) > Constants.ONE_DAY * 7) {
         MQFactory.getConcrete("Swing").enqueue("NOTIFY Your system time is off from eBay's by more than a week.");
@@ -819,4 +877,25 @@ public final class ebayServer extends AuctionServer implements MessageQueue.List
 
     return result.getDate();
   }
+
+  /**
+   * Load and parse eBay's official time page once.
+   *
+   * @param timeRequest - The URL of the time page.
+   *
+   * @return - The time the page shows, or null if it couldn't be loaded or parsed.
+   */
+  private ZoneDate loadOfficialTime(String timeRequest) {
+    JHTML htmlDocument = new JHTML(timeRequest, null, mCleaner);
+
+    ZoneDate result = null;
+    String pageStep = htmlDocument.getNextContent();
+    while (result == null && pageStep != null) {
+      if (pageStep.equals(T.s("ebayServer.timePrequel1")) || pageStep.equals(T.s("ebayServer.timePrequel2"))) {
+        result = StringTools.figureDate(htmlDocument.getNextContent(), Externalized.getString("ebayServer.officialTimeFormat"), false, false);
+      }
+      pageStep = htmlDocument.getNextContent();
+    }
+    return result;
+  }
 }
@@ -3,6 +3,7 @@ package com.jbidwatcher.auction.server.ebay;
 import com.jbidwatcher.auction.server.ServerMenu;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.AuctionQObject;
 
 import java.awt.event.ActionEvent;
@@ -29,7 +30,7 @@ class ebayServerMenu extends ServerMenu {
 
     //  Handle stuff which is redirected to the search manager.
     if(actionString.equals("Search eBay")) MQFactory.getConcrete("user").enqueue("SEARCH");
-    else MQFactory.getConcrete(mQueueServer).enqueueBean(new AuctionQObject(AuctionQObject.MENU_CMD, actionString, null));
+    else MQFactory.publish(Topic.auctionServer(mQueueServer), new AuctionQObject(AuctionQObject.MENU_CMD, actionString, null));
   }
 
   protected ebayServerMenu(String qServer, String serverName, char ch) {
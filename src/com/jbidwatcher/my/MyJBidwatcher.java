@@ -179,13 +179,13 @@ public class MyJBidwatcher {
   }
 
   private MyJBidwatcher() {
-    MQFactory.getConcrete("my_account").registerListener(new MessageQueue.Listener() {
+    MQFactory.getConcrete("my_account").registerListener(new MessageQueue.BlockingListener() {
       public void messageAction(Object deQ) {
         String cmd = (String) deQ;
         if(cmd.equals("ACCOUNT")) {
           getAccountInfo();
 
-          MQFactory.getConcrete("my").registerListener(new MessageQueue.Listener() {
+          MQFactory.getConcrete("my").registerListener(new MessageQueue.BlockingListener() {
             public void messageAction(Object deQ) {
               String cmd = (String) deQ;
               if (JConfig.queryConfiguration("my.jbidwatcher.enabled", "false").equals("true")) {
@@ -204,7 +204,7 @@ public class MyJBidwatcher {
     //  Get the URLs to POST stuff to, and get a new one every 12 hours.
     SuperQueue.getInstance().preQueue("ACCOUNT", "my_account", System.currentTimeMillis(), Constants.ONE_DAY);
 
-    MQFactory.getConcrete("upload").registerListener(new MessageQueue.Listener() {
+    MQFactory.getConcrete("upload").registerListener(new MessageQueue.BlockingListener() {
       public void messageAction(Object deQ) {
         if(JConfig.queryConfiguration("my.jbidwatcher.id") != null && mSyncQueueURL != null && canSync()) {
           AuctionEntry ae = EntryCorral.getInstance().takeForRead((String) deQ);
@@ -216,7 +216,7 @@ public class MyJBidwatcher {
     });
 
     if(JConfig.queryConfiguration("my.jbidwatcher.id") != null) {
-      MQFactory.getConcrete("report").registerListener(new MessageQueue.Listener() {
+      MQFactory.getConcrete("report").registerListener(new MessageQueue.BlockingListener() {
         public void messageAction(Object deQ) {
           AuctionEntry ae = EntryCorral.getInstance().takeForRead((String)deQ);
           uploadAuctionHTML(ae, "report");
@@ -13,7 +13,7 @@ import com.jbidwatcher.util.browser.BrowserLauncher;
 
 import java.io.*;
 
-public class Browser extends JConfig implements MessageQueue.Listener {
+public class Browser extends JConfig implements MessageQueue.BlockingListener {
   private static Browser sInstance;
 
   public void messageAction(Object deQ) {
@@ -9,6 +9,7 @@ import com.cyberfox.util.platform.Path;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.queue.TimerHandler;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.AuctionQObject;
 import com.jbidwatcher.util.xml.XMLElement;
 import com.jbidwatcher.util.xml.XMLParseException;
@@ -51,35 +52,35 @@ public class SearchManager extends XMLSerializeSimple implements SearchManagerIn
   public class StringSearcher extends Searcher {
     public String getTypeName() { return "Text"; }
     protected void fire() {
-      MQFactory.getConcrete(destinationQueue).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_SEARCH, getId(), getCategory()));
+      MQFactory.publish(Topic.auctionServer(destinationQueue), new AuctionQObject(AuctionQObject.LOAD_SEARCH, getId(), getCategory()));
     }
   }
 
   public class TitleSearcher extends Searcher {
     public String getTypeName() { return "Title"; }
     protected void fire() {
-      MQFactory.getConcrete(destinationQueue).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_TITLE, getId(), getCategory()));
+      MQFactory.publish(Topic.auctionServer(destinationQueue), new AuctionQObject(AuctionQObject.LOAD_TITLE, getId(), getCategory()));
     }
   }
 
   public class URLSearcher extends Searcher {
     public String getTypeName() { return "URL"; }
     protected void fire() {
-      MQFactory.getConcrete(destinationQueue).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_URL, getId(), getCategory()));
+      MQFactory.publish(Topic.auctionServer(destinationQueue), new AuctionQObject(AuctionQObject.LOAD_URL, getId(), getCategory()));
     }
   }
 
   public class SellerSearcher extends Searcher {
     public String getTypeName() { return "Seller"; }
     protected void fire() {
-      MQFactory.getConcrete(destinationQueue).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_SELLER, getId(), getCategory()));
+      MQFactory.publish(Topic.auctionServer(destinationQueue), new AuctionQObject(AuctionQObject.LOAD_SELLER, getId(), getCategory()));
     }
   }
 
   public class MyItemSearcher extends Searcher {
     public String getTypeName() { return "My Items"; }
     protected void fire() {
-      MQFactory.getConcrete(destinationQueue).enqueueBean(new AuctionQObject(AuctionQObject.LOAD_MYITEMS, null, hasCategory() ? getCategory() : null));
+      MQFactory.publish(Topic.auctionServer(destinationQueue), new AuctionQObject(AuctionQObject.LOAD_MYITEMS, null, hasCategory() ? getCategory() : null));
     }
   }
 
@@ -0,0 +1,90 @@
+package com.jbidwatcher.ui;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.auction.AuctionEntry;
+import com.jbidwatcher.auction.AuctionServerInterface;
+import com.jbidwatcher.util.Constants;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What one row of an auction table shows, and sorts by; every fixed
+ * column's value, worked out from the entry once, rather than on every
+ * repaint.  It's only good as long as the entry is the same object, with
+ * the same change stamp, as when it was built.
+ *
+ * The time left is the exception, as it changes with the clock; the row
+ * keeps what it needs to work it out without going back to the entry.
+ */
+class AuctionRow {
+  //  Weak, so the table doesn't keep entries in memory after the corral has let go of them.
+  private final WeakReference<AuctionEntry> mEntry;
+  private final long mStamp;
+  private final Object[] mValues;
+  private final Object[] mSortValues;
+  private Map<Integer, Object> mCustom = null;
+
+  private final AuctionServerInterface mServer;
+  private final Date mEndDate;
+  private final boolean mComplete;
+  private final String mEndedText;
+  //  The time left, as last formatted, and the second it was for.
+  private String mTimeLeft = null;
+  private long mTimeLeftSecond;
+
+  //  The global change count when the row was last found to be current.
+  private int mChecked;
+
+  AuctionRow(AuctionEntry entry, long stamp, Object[] values, Object[] sortValues, Date endDate, String endedText) {
+    mEntry = new WeakReference<AuctionEntry>(entry);
+    mStamp = stamp;
+    mValues = values;
+    mSortValues = sortValues;
+    mServer = entry.getServer();
+    mEndDate = endDate;
+    mComplete = entry.isComplete();
+    mEndedText = endedText;
+  }
+
+  boolean isFor(AuctionEntry entry, long stamp) {
+    //noinspection ObjectEquality
+    return mEntry.get() == entry && mStamp == stamp;
+  }
+
+  boolean isCheckedAt(int changes) { return mChecked == changes; }
+  void setChecked(int changes) { mChecked = changes; }
+
+  Object getValue(int column) { return mValues[column]; }
+  Object getSortValue(int column) { return mSortValues[column]; }
+
+  Object getCustom(int column) { return mCustom == null ? null : mCustom.get(column); }
+  void setCustom(int column, Object value) {
+    if(mCustom == null) mCustom = new HashMap<Integer, Object>();
+    mCustom.put(column, value);
+  }
+
+  /**
+   * @return The time left, as of now, or the end date once the auction's over.
+   * It's only formatted again when the second it shows changes.
+   */
+  String getTimeLeft() {
+    if(mEndDate == null) return "N/A";
+    if(mComplete) return mEndedText;
+
+    long remaining = AuctionEntry.getTimeRemaining(mServer, mEndDate);
+    long second = remaining < 0 ? -1 : remaining / Constants.ONE_SECOND;
+    if(mTimeLeft == null || second != mTimeLeftSecond) {
+      String timeLeft = AuctionEntry.formatTimeLeft(remaining);
+      mTimeLeft = timeLeft.equals(AuctionEntry.endedAuction) ? mEndedText : timeLeft;
+      mTimeLeftSecond = second;
+    }
+    return mTimeLeft;
+  }
+}
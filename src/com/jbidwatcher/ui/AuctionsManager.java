@@ -87,10 +87,16 @@ public class AuctionsManager implements TimerHandler.WakeupProcess, EntryManager
     }
   }
 
-  private List<AuctionEntry> normalizeEntries(List<AuctionEntry> entries) {
+  private List<AuctionEntry> normalizeEntries(List<String> identifiers) {
     List<AuctionEntry> output = new ArrayList<AuctionEntry>();
-    for(AuctionEntry ae : entries) {
-      output.add(EntryCorral.getInstance().takeForRead(ae.getIdentifier()));
+    for(String identifier : identifiers) {
+      AuctionEntry ae = EntryCorral.getInstance().takeForRead(identifier);
+      if(ae == null) {
+        //  It's gone from the database, so stop scheduling it.
+        UpdateIndex.getInstance().remove(identifier);
+      } else {
+        output.add(ae);
+      }
     }
     return output;
   }
@@ -98,52 +104,55 @@ public class AuctionsManager implements TimerHandler.WakeupProcess, EntryManager
   /**
    * @brief Check all the auctions for active events, and check if we
    * should snapshot the auctions off to disk.
-   * 
+   *
+   * Which auctions need updating comes from the in-memory UpdateIndex,
+   * rather than querying the database every time.  While paused, only
+   * auctions the user has explicitly asked to update are checked.
+   *
    * @return True if any auctions updated.
    */
   public boolean check() throws InterruptedException {
-    boolean neededUpdate = false;
-    List<AuctionEntry> needUpdate;
-    if(!mPauseManager.isPaused()) {
-      needUpdate = normalizeEntries(AuctionEntry.findAllNeedingUpdates(Constants.ONE_MINUTE * 69)); // TODO: Simplify to load just identifiers?
-      updateList(needUpdate);
-      neededUpdate = !needUpdate.isEmpty();
-
-      //  These could be two separate threads, doing slow and fast updates.
-      needUpdate = normalizeEntries(AuctionEntry.findEndingNeedingUpdates(Constants.ONE_MINUTE));
-      updateList(needUpdate);
-      neededUpdate |= !needUpdate.isEmpty();
-    }
-
-    //  Or three, doing slow, fast, and manual...
-    needUpdate = normalizeEntries(AuctionEntry.findManualUpdates());
+    List<AuctionEntry> needUpdate = normalizeEntries(UpdateIndex.getInstance().findDue(System.currentTimeMillis(), !mPauseManager.isPaused()));
     updateList(needUpdate);
-    neededUpdate |= !needUpdate.isEmpty();
 
     checkSnapshot();
 
-    return neededUpdate;
+    return !needUpdate.isEmpty();
   }
 
   private void updateList(List<AuctionEntry> needUpdate) throws InterruptedException {
-    for(AuctionEntry ae : needUpdate) {
+    UpdatePool pool = UpdatePool.getInstance();
+    for(final AuctionEntry ae : needUpdate) {
       if (Thread.interrupted()) throw new InterruptedException();
       // It's likely that we've pulled a big list of stuff to update before realizing the
       // networking is down; pause updating for a little bit until it's likely to have come
       // back.
       if (!mPauseManager.isPaused()) {
-        boolean forced = ae.isUpdateRequired();
+        if(pool == null) {
+          updateEntry(ae);
+        } else {
+          //  Entries already being updated by a worker are skipped; they'll come around again if still due.
+          pool.submit(ae.getIdentifier(), new Runnable() {
+            public void run() { updateEntry(ae); }
+          });
+        }
+      }
+    }
+  }
 
-        MQFactory.getConcrete("update " + ae.getCategory()).enqueue("start " + ae.getIdentifier());
+  private void updateEntry(AuctionEntry ae) {
+    //  The network may have gone down while this entry was waiting for a worker.
+    if (mPauseManager.isPaused()) return;
+    boolean forced = ae.isUpdateRequired();
 
-        Auctions.doUpdate(ae);
-        EntryCorral.getInstance().putWeakly(ae);
+    MQFactory.getConcrete("update " + ae.getCategory()).enqueue("start " + ae.getIdentifier());
 
-        MQFactory.getConcrete("update " + ae.getCategory()).enqueue("stop " + ae.getIdentifier());
+    Auctions.doUpdate(ae);
+    EntryCorral.getInstance().putWeakly(ae);
 
-        if (forced) MQFactory.getConcrete("redraw").enqueue(ae.getCategory()); // Redraw a tab that has a forced update.
-      }
-    }
+    MQFactory.getConcrete("update " + ae.getCategory()).enqueue("stop " + ae.getIdentifier());
+
+    if (forced) MQFactory.getConcrete("redraw").enqueue(ae.getCategory()); // Redraw a tab that has a forced update.
   }
 
   /**
@@ -369,6 +378,62 @@ public class AuctionsManager implements TimerHandler.WakeupProcess, EntryManager
     return _saveBuf;
   }
 
+  //  The most recent in-memory copy of the auctions XML, for the web interface.
+  private static final long DEFAULT_SNAPSHOT_AGE = 5 * Constants.ONE_SECOND;
+  private final Object mSnapshotLock = new Object();
+  private StringBuffer mSnapshot = null;
+  private long mSnapshotTime = 0;
+  private boolean mSnapshotBuilding = false;
+
+  /**
+   * @brief Get the auctions as an XML document in memory, without saving them out.
+   *
+   * The document is rebuilt at most every 'proxy.snapshot_age'
+   * milliseconds; while one thread is rebuilding it, others get the
+   * previous copy rather than waiting.
+   *
+   * @param fresh - Rebuild the document even if the last copy is recent, e.g. after adding an auction.
+   *
+   * @return The auctions XML, with no DOCTYPE, so transforming it doesn't try to fetch the DTD.
+   */
+  public StringBuffer getSnapshot(boolean fresh) {
+    long maxAge = JConfig.queryLongConfiguration("proxy.snapshot_age", DEFAULT_SNAPSHOT_AGE);
+
+    synchronized(mSnapshotLock) {
+      if(!fresh && mSnapshot != null) {
+        if(mSnapshotBuilding || System.currentTimeMillis() - mSnapshotTime < maxAge) return mSnapshot;
+      }
+      mSnapshotBuilding = true;
+    }
+
+    StringBuffer snapshot = null;
+    try {
+      snapshot = buildSnapshot(AuctionServerManager.getInstance().toXML());
+    } finally {
+      synchronized(mSnapshotLock) {
+        if(snapshot != null) {
+          mSnapshot = snapshot;
+          mSnapshotTime = System.currentTimeMillis();
+        }
+        mSnapshotBuilding = false;
+      }
+    }
+    return snapshot;
+  }
+
+  public static StringBuffer buildSnapshot(XMLElement auctionsData) {
+    StringBuffer sb = new StringBuffer(AUCTIONCOUNT * ONEK);
+    sb.append("<?xml version=\"1.0\"?>\n\n");
+    sb.append("<jbidwatcher format=\"0101\">\n");
+    if(auctionsData == null) {
+      sb.append("<auctions count=\"0\"></auctions>\n");
+    } else {
+      auctionsData.toStringBuffer(sb, 1);
+    }
+    sb.append("</jbidwatcher>");
+    return sb;
+  }
+
   private static boolean needSwapSaves(String saveName) {
     File oldFile = new File(saveName);
     return oldFile.exists();
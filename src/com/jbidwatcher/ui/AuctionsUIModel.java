@@ -492,6 +492,7 @@ public class AuctionsUIModel {
   }
 
   public void redrawAll() {
+    auctionTableModel.forgetRows();
     _tSort.tableChanged(new TableModelEvent(_tSort));
   }
 }
@@ -18,7 +18,7 @@ import com.jbidwatcher.auction.DeletedEntry;
 import com.jbidwatcher.auction.EntryCorral;
 import com.jbidwatcher.auction.server.AuctionServer;
 
-public class JBWDropHandler implements MessageQueue.Listener {
+public class JBWDropHandler implements MessageQueue.BlockingListener {
   private static JBWDropHandler sInstance = null;
   private static boolean do_uber_debug = false;
   private static String lastSeen = null;
@@ -35,7 +35,12 @@ public class SwingMessageQueue extends MessageQueue
     if (JConfig.queryConfiguration("debug.queues", "false").equals("true")) {
       JConfig.log().logMessage(obj);
     }
+    return enqueueObject(obj);
+  }
+
+  public boolean enqueueObject(Object obj) {
     synchronized(_queue) {
+      //noinspection ObjectEquality
       if (_queue.isEmpty() || _queue.getLast() != obj) {
         _queue.addLast(obj);
         SwingUtilities.invokeLater(this);
@@ -7,6 +7,7 @@ package com.jbidwatcher.ui;
 
 import com.jbidwatcher.util.queue.DropQObject;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.html.JHTML;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.ui.util.JDropHandler;
@@ -81,7 +82,7 @@ public class TargetDrop implements JDropHandler
       for (String auctionURL : allItemsOnPage) {
         if (auctionURL != null) {
           JConfig.log().logDebug("Adding: " + auctionURL.trim());
-          MQFactory.getConcrete("drop").enqueueBean(new DropQObject(auctionURL.trim(), mTargetName, true));
+          MQFactory.publish(Topic.DROP, new DropQObject(auctionURL.trim(), mTargetName, true));
         }
       }
     } else {
@@ -89,7 +90,7 @@ public class TargetDrop implements JDropHandler
       if(newEntry.matches("^.*(\\.(jpg|png|jpeg|gif|bmp))$")) {
         imageResolver.handle(newEntry, location);
       } else {
-        MQFactory.getConcrete("drop").enqueueBean(new DropQObject(newEntry.trim(), mTargetName, true));
+        MQFactory.publish(Topic.DROP, new DropQObject(newEntry.trim(), mTargetName, true));
       }
     }
   }
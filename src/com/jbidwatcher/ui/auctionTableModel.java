@@ -7,6 +7,7 @@ package com.jbidwatcher.ui;
 
 import com.jbidwatcher.auction.*;
 import com.jbidwatcher.util.Constants;
+import com.jbidwatcher.util.HashBacked;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.Currency;
 import com.jbidwatcher.util.IconFactory;
@@ -20,6 +21,7 @@ import javax.swing.*;
 import java.awt.Image;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class auctionTableModel extends BaseTransformation
 {
@@ -32,6 +34,7 @@ public class auctionTableModel extends BaseTransformation
   public String getColumnName(int aColumn) { return TableColumnController.getInstance().getColumnName(aColumn); }
 
   public void delete(int row) {
+    mRows.remove(dispList.getIdentifier(row));
     dispList.remove(row);
   }
 
@@ -48,7 +51,7 @@ public class auctionTableModel extends BaseTransformation
   public Class getColumnClass(int aColumn) { if(aColumn != 5) return String.class; return Icon.class; }
 
   //  Except when we want to sort them...
-  public Class getSortByColumnClass(int i) {
+  public Class<?> getSortByColumnClass(int i) {
     //  Status is the only one where the type is very different than the dummy data.
     if(i==TableColumnController.STATUS ||
        i==TableColumnController.THUMBNAIL ||
@@ -162,102 +165,233 @@ public class auctionTableModel extends BaseTransformation
 
   Integer Zero = 0;
 
-  static Map<String, Seller> sellers = new HashMap<String, Seller>();
+  //  Rows built so far, by entry identifier.
+  private final Map<String, AuctionRow> mRows = new HashMap<String, AuctionRow>();
+  //  The same rows by position, as of the list's mod count when the positions were last good.
+  private AuctionRow[] mByPosition = new AuctionRow[0];
+  private int mPositionsAt = -1;
+  private long mRowsBuilt = 0;
+  //  Building a SimpleDateFormat costs more than the rest of a row put together, so there's just the one.
+  private final SimpleDateFormat mEndFormat = new SimpleDateFormat("dd-MMM-yy HH:mm:ss zzz");
+  private long mRowChecks = 0;
+  //  Bumped when something all rows depend on, besides their entries, changes; the configuration
+  //  (which includes whether custom columns are scripted at all), or a whole table being redrawn.
+  private static final AtomicInteger sForgotten = new AtomicInteger(0);
+  private int mForgottenAt = 0;
+
+  static {
+    JConfig.registerListener(new JConfig.ConfigListener() {
+      public void updateConfiguration() { forgetRows(); }
+    });
+  }
+
+  /**
+   * Drop every table's rows, so they're all built again the next time
+   * they're shown.  Only needed for changes that don't show up in the
+   * entries' change stamps.
+   */
+  public static void forgetRows() {
+    sForgotten.incrementAndGet();
+  }
 
   public Object getSortByValueAt(int i, int j) {
     try {
-      AuctionEntry aEntry = dispList.get(i);
-      Seller seller = getSeller(aEntry.getSellerId());
-      switch(j) {
-        case -1: return aEntry;
-        case TableColumnController.ID: return aEntry.getIdentifier();
-        case TableColumnController.CUR_BID:
-          Currency rval = aEntry.getUSCurBid();
-          if(rval.getValue() == 0.0 && rval.getCurrencyType() == Currency.US_DOLLAR) {
-            return aEntry.getCurrentUSPrice();
-          }
-          return rval;
-        case TableColumnController.SNIPE_OR_MAX:
-          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), getMaxOrSnipe(aEntry));
-        case TableColumnController.TIME_LEFT: return aEntry.getEndDate();
-        case TableColumnController.TITLE: return aEntry.getTitle();
-        case TableColumnController.STATUS: return buildEntryFlags(aEntry);
-        case TableColumnController.THUMBNAIL: return 0;
-        case TableColumnController.SELLER: return aEntry.getSellerName();
-        case TableColumnController.FIXED_PRICE:
-          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getBuyNow());
-        case TableColumnController.SHIPPING_INSURANCE:
-          Currency si = (!aEntry.getShipping().isNull())?aEntry.getShippingWithInsurance(): Currency.NoValue();
-          //  This is crack.  I'm insane to even think about doing this, but it works...
-          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), si);
-        case TableColumnController.BIDDER: return aEntry.getHighBidder();
-        case TableColumnController.MAX:
-          Currency bid = aEntry.isBidOn()?aEntry.getBid(): Currency.NoValue();
-          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), bid);
-        case TableColumnController.SNIPE:
-          Currency snipe = aEntry.getSnipeAmount();
-          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), snipe);
-        case TableColumnController.COMMENT:String s = aEntry.getComment(); return (s==null?"":s);
-        case TableColumnController.END_DATE:return aEntry.getEndDate();
-        case TableColumnController.SELLER_FEEDBACK: if(seller.getFeedback()==0) return Zero; else return seller.getFeedback();
-        case TableColumnController.ITEM_LOCATION: return aEntry.getItemLocation();
-        case TableColumnController.BIDCOUNT: return aEntry.getNumBidders();
-        case TableColumnController.JUSTPRICE: return aEntry.getUSCurBid();
-        case TableColumnController.SELLER_POSITIVE_FEEDBACK: try {
-          String feedbackPercent = seller.getPositivePercentage();
-          if(feedbackPercent != null) feedbackPercent = feedbackPercent.replace("%", "");
-          return safeConvert(feedbackPercent);
-        } catch(Exception e) {
-          return Zero;
+      if(j == -1) return dispList.get(i);
+      AuctionRow row = getRow(i);
+      if(row == null) return getDummyValueAtColumn(j);
+      if(j > TableColumnController.MAX_FIXED_COLUMN) return getCustomValue(i, row, j);
+      return row.getSortValue(j);
+    } catch(IndexOutOfBoundsException ignored) {
+      return getDummyValueAtColumn(j);
+    }
+  }
+
+  /**
+   * Find the snapshot of a row, building it again if its entry has changed.
+   * As long as no record anywhere has changed since the row was last
+   * checked, no entries have been added to or removed from the list, and
+   * the rows haven't been forgotten, that's all done without looking at
+   * the entry, or even the list, at all.
+   *
+   * @param rowIndex - The row to get.
+   *
+   * @return The row's snapshot, or null if its entry has gone away.
+   */
+  private AuctionRow getRow(int rowIndex) {
+    //  Read before checking the entry, so changes made while it's checked are caught next time.
+    int changes = HashBacked.getGlobalChangeCount();
+    int positions = dispList.getModCount();
+    int forgotten = sForgotten.get();
+    if(forgotten != mForgottenAt) {
+      mRows.clear();
+      mPositionsAt = -1;
+      mForgottenAt = forgotten;
+    }
+    if(positions != mPositionsAt) {
+      mByPosition = new AuctionRow[dispList.size()];
+      mPositionsAt = positions;
+    }
+    boolean cacheable = rowIndex < mByPosition.length;
+    AuctionRow row = cacheable ? mByPosition[rowIndex] : null;
+    if(row != null && row.isCheckedAt(changes)) return row;
+
+    String identifier = dispList.getIdentifier(rowIndex);
+    row = mRows.get(identifier);
+    if(row != null && row.isCheckedAt(changes)) {
+      if(cacheable) mByPosition[rowIndex] = row;
+      return row;
+    }
+
+    mRowChecks++;
+    AuctionEntry aEntry = dispList.get(rowIndex);
+    if(aEntry == null) {
+      dispList.remove(rowIndex);
+      mRows.remove(identifier);
+      return null;
+    }
+    long stamp = aEntry.getChangeStamp();
+    if(row == null || !row.isFor(aEntry, stamp)) {
+      row = buildRow(aEntry, stamp);
+      mRows.put(identifier, row);
+      mRowsBuilt++;
+    }
+    row.setChecked(changes);
+    if(cacheable) mByPosition[rowIndex] = row;
+    return row;
+  }
+
+  private AuctionRow buildRow(AuctionEntry aEntry, long stamp) {
+    Seller seller = getSeller(aEntry);
+    String errorNote = aEntry.getErrorPage()==null?"":"*";
+    Object[] values = new Object[TableColumnController.MAX_FIXED_COLUMN + 1];
+    Object[] sortValues = new Object[TableColumnController.MAX_FIXED_COLUMN + 1];
+    for(int column = 0; column <= TableColumnController.MAX_FIXED_COLUMN; column++) {
+      if(column != TableColumnController.TIME_LEFT) values[column] = buildValue(aEntry, seller, errorNote, column);
+      sortValues[column] = buildSortValue(aEntry, seller, column);
+    }
+
+    Date endDate = aEntry.getEndDate();
+    if(endDate != null && endDate.equals(Constants.FAR_FUTURE)) endDate = null;
+    String endedText = null;
+    if(endDate != null) {
+      endedText = formatEndDate(endDate);
+      if(!aEntry.isComplete()) {
+        endedText = "<html><body color=\"red\">" + endedText + "</body></html>";
+      }
+    }
+    return new AuctionRow(aEntry, stamp, values, sortValues, endDate, endedText);
+  }
+
+  private String formatEndDate(Date endDate) {
+    synchronized(mEndFormat) {
+      return mEndFormat.format(endDate);
+    }
+  }
+
+  /**
+   * Custom columns come from scripts, so they're only worked out when
+   * they're asked for, but then kept with the rest of the row.
+   *
+   * @param rowIndex - The row, to look up its entry.
+   * @param row - The row's snapshot.
+   * @param column - The custom column.
+   *
+   * @return The column's value for the row.
+   */
+  private Object getCustomValue(int rowIndex, AuctionRow row, int column) {
+    if(column >= TableColumnController.columnCount()) return "";
+    Object value = row.getCustom(column);
+    if(value == null) {
+      value = TableColumnController.getInstance().customColumn(column, dispList.get(rowIndex));
+      row.setCustom(column, value);
+    }
+    return value;
+  }
+
+  private Object buildSortValue(AuctionEntry aEntry, Seller seller, int j) {
+    switch(j) {
+      case TableColumnController.ID: return aEntry.getIdentifier();
+      case TableColumnController.CUR_BID:
+        Currency rval = aEntry.getUSCurBid();
+        if(rval.getValue() == 0.0 && rval.getCurrencyType() == Currency.US_DOLLAR) {
+          return aEntry.getCurrentUSPrice();
         }
-        case TableColumnController.CUR_TOTAL:
-          Currency shipping = aEntry.getShippingWithInsurance();
-          if (shipping.getCurrencyType() == Currency.NONE) {
-            return shipping; // shipping not set so cannot add up values
-          }
-
-          Currency shippingUSD = Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getShippingWithInsurance());
-          try {
-            return aEntry.getUSCurBid().add(shippingUSD);
-          } catch (Currency.CurrencyTypeException e) {
-            JConfig.log().handleException("Threw a bad currency exception, which should be unlikely.", e); //$NON-NLS-1$
-            return Currency.NoValue();
-          }
-        case TableColumnController.SNIPE_TOTAL: {
-          Currency shipping2 = aEntry.getShippingWithInsurance();
-          if (shipping2.getCurrencyType() == Currency.NONE) {
-            return shipping2; // shipping not set so cannot add up values
-          }
-
-          Currency shippingUSD2 = Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getShippingWithInsurance());
-          try {
-            return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getSnipeAmount()).add(shippingUSD2);
-          } catch (Currency.CurrencyTypeException e) {
-            JConfig.log().handleException("Currency addition or conversion threw a bad currency exception, which should be unlikely.", e); //$NON-NLS-1$
-            return Currency.NoValue();
-          }
+        return rval;
+      case TableColumnController.SNIPE_OR_MAX:
+        return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), getMaxOrSnipe(aEntry));
+      case TableColumnController.TIME_LEFT: return aEntry.getEndDate();
+      case TableColumnController.TITLE: return aEntry.getTitle();
+      case TableColumnController.STATUS: return buildEntryFlags(aEntry);
+      case TableColumnController.THUMBNAIL: return 0;
+      case TableColumnController.SELLER: return aEntry.getSellerName();
+      case TableColumnController.FIXED_PRICE:
+        return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getBuyNow());
+      case TableColumnController.SHIPPING_INSURANCE:
+        Currency si = (!aEntry.getShipping().isNull())?aEntry.getShippingWithInsurance(): Currency.NoValue();
+        //  This is crack.  I'm insane to even think about doing this, but it works...
+        return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), si);
+      case TableColumnController.BIDDER: return aEntry.getHighBidder();
+      case TableColumnController.MAX:
+        Currency bid = aEntry.isBidOn()?aEntry.getBid(): Currency.NoValue();
+        return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), bid);
+      case TableColumnController.SNIPE:
+        Currency snipe = aEntry.getSnipeAmount();
+        return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), snipe);
+      case TableColumnController.COMMENT:String s = aEntry.getComment(); return (s==null?"":s);
+      case TableColumnController.END_DATE:return aEntry.getEndDate();
+      case TableColumnController.SELLER_FEEDBACK: if(seller == null || seller.getFeedback()==0) return Zero; else return seller.getFeedback();
+      case TableColumnController.ITEM_LOCATION: return aEntry.getItemLocation();
+      case TableColumnController.BIDCOUNT: return aEntry.getNumBidders();
+      case TableColumnController.JUSTPRICE: return aEntry.getUSCurBid();
+      case TableColumnController.SELLER_POSITIVE_FEEDBACK: try {
+        if(seller == null) return Zero;
+        String feedbackPercent = seller.getPositivePercentage();
+        if(feedbackPercent != null) feedbackPercent = feedbackPercent.replace("%", "");
+        return safeConvert(feedbackPercent);
+      } catch(Exception e) {
+        return Zero;
+      }
+      case TableColumnController.CUR_TOTAL:
+        Currency shipping = aEntry.getShippingWithInsurance();
+        if (shipping.getCurrencyType() == Currency.NONE) {
+          return shipping; // shipping not set so cannot add up values
         }
 
-        //  This should never happen, but to be safe...
-        default: {
-          if(j > TableColumnController.MAX_FIXED_COLUMN && j < TableColumnController.columnCount()) {
-            return TableColumnController.getInstance().customColumn(j, aEntry);
-          }
-          return "";
+        Currency shippingUSD = Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getShippingWithInsurance());
+        try {
+          return aEntry.getUSCurBid().add(shippingUSD);
+        } catch (Currency.CurrencyTypeException e) {
+          JConfig.log().handleException("Threw a bad currency exception, which should be unlikely.", e); //$NON-NLS-1$
+          return Currency.NoValue();
+        }
+      case TableColumnController.SNIPE_TOTAL: {
+        Currency shipping2 = aEntry.getShippingWithInsurance();
+        if (shipping2.getCurrencyType() == Currency.NONE) {
+          return shipping2; // shipping not set so cannot add up values
+        }
+
+        Currency shippingUSD2 = Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getShippingWithInsurance());
+        try {
+          return Currency.convertToUSD(aEntry.getCurrentUSPrice(), aEntry.getCurrentPrice(), aEntry.getSnipeAmount()).add(shippingUSD2);
+        } catch (Currency.CurrencyTypeException e) {
+          JConfig.log().handleException("Currency addition or conversion threw a bad currency exception, which should be unlikely.", e); //$NON-NLS-1$
+          return Currency.NoValue();
         }
       }
-    } catch(ArrayIndexOutOfBoundsException ignored) {
-      return getDummyValueAtColumn(j);
+
+      //  This should never happen, but to be safe...
+      default:
+        return "";
     }
   }
 
-  private static Seller getSeller(String sellerId) {Seller seller;
-    if(sellers.containsKey(sellerId)) {
-      seller = sellers.get(sellerId);
-    } else {
-      seller = Seller.findFirstBy("id", sellerId);
-    }
-    return seller;
+  /**
+   * @param aEntry - The entry to find the seller of.
+   *
+   * @return The seller, as the entry's auction info has already looked it up, or null if there isn't one.
+   */
+  private static Seller getSeller(AuctionEntry aEntry) {
+    return aEntry.getAuction().getSeller();
   }
 
   private int safeConvert(String feedbackPercent)
@@ -361,116 +495,99 @@ public class auctionTableModel extends BaseTransformation
 
   public Object getValueAt(int rowIndex, int columnIndex) {
     try {
-      AuctionEntry aEntry = dispList.get(rowIndex);
-      if(columnIndex == -1)
-        return aEntry;
-      if(aEntry == null) {
-        dispList.remove(rowIndex);
-        return "*";
-      }
-      String errorNote = aEntry.getErrorPage()==null?"":"*";
-      Seller seller = getSeller(aEntry.getSellerId());
-      switch(columnIndex) {
-        case TableColumnController.ID: return aEntry.getIdentifier();
-        case TableColumnController.CUR_BID:
-          Currency curPrice = aEntry.getCurrentPrice();
-          if(aEntry.isFixed()) {
-            return curPrice + " (FP" + ((aEntry.getQuantity() > 1) ? " x " + aEntry.getQuantity() + ")" : ")");
-          } else {
-            return curPrice + " (" + Integer.toString(aEntry.getNumBidders()) + ')';
-          }
-        case TableColumnController.SNIPE_OR_MAX: return formatSnipeAndBid(aEntry);
-        case TableColumnController.MAX: return aEntry.isBidOn()?formatBid(aEntry, errorNote):neverBid;
-        case TableColumnController.SNIPE:
-          if (aEntry.isSniped()) {
-            return formatSnipe(aEntry, errorNote);
-          }
-          if(aEntry.snipeCancelled() && aEntry.isComplete()) {
-            return errorNote + '(' + aEntry.getCancelledSnipe() + ')';
-          }
-
-          return neverBid;
-        case TableColumnController.TIME_LEFT: {
-          if (aEntry.getEndDate() == null || aEntry.getEndDate().equals(Constants.FAR_FUTURE))
-            return "N/A";
-          String endTime = aEntry.getTimeLeft();
-          if(endTime.equals(AuctionEntry.endedAuction)) {
-            SimpleDateFormat fmt = new SimpleDateFormat("dd-MMM-yy HH:mm:ss zzz");
-            endTime = fmt.format(aEntry.getEndDate());
-            if(!aEntry.isComplete()) {
-              endTime = "<html><body color=\"red\">" + endTime + "</body></html>";
-            }
-          }
-          return endTime;
-        }
-        case TableColumnController.END_DATE: {
-          if (aEntry.getEndDate() == null || aEntry.getEndDate().equals(Constants.FAR_FUTURE))
-            return "N/A";
-          SimpleDateFormat fmt = new SimpleDateFormat("dd-MMM-yy HH:mm:ss zzz");
-          return fmt.format(aEntry.getEndDate());
+      if(columnIndex == -1) return dispList.get(rowIndex);
+      AuctionRow row = getRow(rowIndex);
+      if(row == null) return "*";
+      if(columnIndex == TableColumnController.TIME_LEFT) return row.getTimeLeft();
+      if(columnIndex > TableColumnController.MAX_FIXED_COLUMN) return getCustomValue(rowIndex, row, columnIndex);
+      return row.getValue(columnIndex);
+    } catch(IndexOutOfBoundsException ignored) {
+      return(getDummyValueAtColumn(columnIndex));
+    }
+  }
+
+  private Object buildValue(AuctionEntry aEntry, Seller seller, String errorNote, int columnIndex) {
+    switch(columnIndex) {
+      case TableColumnController.ID: return aEntry.getIdentifier();
+      case TableColumnController.CUR_BID:
+        Currency curPrice = aEntry.getCurrentPrice();
+        if(aEntry.isFixed()) {
+          return curPrice + " (FP" + ((aEntry.getQuantity() > 1) ? " x " + aEntry.getQuantity() + ")" : ")");
+        } else {
+          return curPrice + " (" + Integer.toString(aEntry.getNumBidders()) + ')';
         }
-        case TableColumnController.TITLE: return XMLElement.decodeString(aEntry.getTitle());
-        case TableColumnController.STATUS: return getEntryIcon(aEntry);
-        case TableColumnController.THUMBNAIL: {
-          String thumb = aEntry.getThumbnail();
-          if (thumb != null) {
-            if(iconCache.containsKey(thumb)) return iconCache.get(thumb);
-            thumb = thumb.replaceAll("file:", "");
-            ImageIcon thumbIcon = scaleImage(thumb);
-            iconCache.put(thumb, thumbIcon);
-            return thumbIcon;
-          } else return dummyIcon;
+      case TableColumnController.SNIPE_OR_MAX: return formatSnipeAndBid(aEntry);
+      case TableColumnController.MAX: return aEntry.isBidOn()?formatBid(aEntry, errorNote):neverBid;
+      case TableColumnController.SNIPE:
+        if (aEntry.isSniped()) {
+          return formatSnipe(aEntry, errorNote);
         }
-        case TableColumnController.SELLER: return aEntry.getSellerName();
-        case TableColumnController.COMMENT:
-          String comment = aEntry.getComment();
-          return(comment==null?"":comment);
-        case TableColumnController.BIDDER:
-          String bidder = aEntry.getHighBidder();
-          if(bidder != null && bidder.length() != 0) return bidder;
-          return "--";
-        case TableColumnController.FIXED_PRICE:
-          Currency bin = aEntry.getBuyNow();
-          if(bin.isNull()) return "--";
-          return bin;
-        case TableColumnController.SHIPPING_INSURANCE:
-          Currency ship = aEntry.getShippingWithInsurance();
-          if(ship.isNull()) return "--";
-          return ship;
-        case TableColumnController.ITEM_LOCATION:
-          return aEntry.getItemLocation();
-        case TableColumnController.BIDCOUNT:
-          if(aEntry.getNumBidders() < 0) return "(FP)";
-          return Integer.toString(aEntry.getNumBidders());
-        case TableColumnController.JUSTPRICE:
-          return aEntry.getCurrentPrice();
-        case TableColumnController.SELLER_FEEDBACK:
-          return seller.getFeedback();
-        case TableColumnController.SELLER_POSITIVE_FEEDBACK:
-          String fbp = seller.getPositivePercentage();
-          return (fbp == null || fbp.length() == 0)?"--":fbp;
-        case TableColumnController.CUR_TOTAL:
-          Currency shipping = aEntry.getShippingWithInsurance();
-          if(shipping.getCurrencyType() == Currency.NONE) {
-            return "--"; // shipping not set so cannot add up values
-          }
-          try {
-            return aEntry.getCurrentPrice().add(shipping);
-          } catch (Currency.CurrencyTypeException e) {
-            JConfig.log().handleException("Currency addition threw a bad currency exception, which is odd...", e); //$NON-NLS-1$
-          }
-          return "--";
-        case TableColumnController.SNIPE_TOTAL:
-          return formatTotalSnipe(aEntry, errorNote);
-        default: {
-          if(columnIndex > TableColumnController.MAX_FIXED_COLUMN && columnIndex < TableColumnController.columnCount()) {
-            return TableColumnController.getInstance().customColumn(columnIndex, aEntry);
-          }
-          return "";
+        if(aEntry.snipeCancelled() && aEntry.isComplete()) {
+          return errorNote + '(' + aEntry.getCancelledSnipe() + ')';
         }
+
+        return neverBid;
+      case TableColumnController.END_DATE: {
+        if (aEntry.getEndDate() == null || aEntry.getEndDate().equals(Constants.FAR_FUTURE))
+          return "N/A";
+        return formatEndDate(aEntry.getEndDate());
       }
-    } catch(ArrayIndexOutOfBoundsException aioobe) {
-      return(getDummyValueAtColumn(columnIndex));
+      case TableColumnController.TITLE: return XMLElement.decodeString(aEntry.getTitle());
+      case TableColumnController.STATUS: return getEntryIcon(aEntry);
+      case TableColumnController.THUMBNAIL: {
+        String thumb = aEntry.getThumbnail();
+        if (thumb != null) {
+          if(iconCache.containsKey(thumb)) return iconCache.get(thumb);
+          ImageIcon thumbIcon = scaleImage(thumb.replaceAll("file:", ""));
+          iconCache.put(thumb, thumbIcon);
+          return thumbIcon;
+        } else return dummyIcon;
+      }
+      case TableColumnController.SELLER: return aEntry.getSellerName();
+      case TableColumnController.COMMENT:
+        String comment = aEntry.getComment();
+        return(comment==null?"":comment);
+      case TableColumnController.BIDDER:
+        String bidder = aEntry.getHighBidder();
+        if(bidder != null && bidder.length() != 0) return bidder;
+        return "--";
+      case TableColumnController.FIXED_PRICE:
+        Currency bin = aEntry.getBuyNow();
+        if(bin.isNull()) return "--";
+        return bin;
+      case TableColumnController.SHIPPING_INSURANCE:
+        Currency ship = aEntry.getShippingWithInsurance();
+        if(ship.isNull()) return "--";
+        return ship;
+      case TableColumnController.ITEM_LOCATION:
+        return aEntry.getItemLocation();
+      case TableColumnController.BIDCOUNT:
+        if(aEntry.getNumBidders() < 0) return "(FP)";
+        return Integer.toString(aEntry.getNumBidders());
+      case TableColumnController.JUSTPRICE:
+        return aEntry.getCurrentPrice();
+      case TableColumnController.SELLER_FEEDBACK:
+        if(seller == null) return "--";
+        return seller.getFeedback();
+      case TableColumnController.SELLER_POSITIVE_FEEDBACK:
+        if(seller == null) return "--";
+        String fbp = seller.getPositivePercentage();
+        return (fbp == null || fbp.length() == 0)?"--":fbp;
+      case TableColumnController.CUR_TOTAL:
+        Currency shipping = aEntry.getShippingWithInsurance();
+        if(shipping.getCurrencyType() == Currency.NONE) {
+          return "--"; // shipping not set so cannot add up values
+        }
+        try {
+          return aEntry.getCurrentPrice().add(shipping);
+        } catch (Currency.CurrencyTypeException e) {
+          JConfig.log().handleException("Currency addition threw a bad currency exception, which is odd...", e); //$NON-NLS-1$
+        }
+        return "--";
+      case TableColumnController.SNIPE_TOTAL:
+        return formatTotalSnipe(aEntry, errorNote);
+      default:
+        return "";
     }
   }
 
@@ -523,6 +640,13 @@ public class auctionTableModel extends BaseTransformation
     return result;
   }
 
+  /** @return The number of times a row's entry has been looked up, to check its snapshot is current. */
+  public long getRowChecks() { return mRowChecks; }
+
+  public String getStatistics() {
+    return String.format("auctionTableModel: %d rows held, %d built, %d checked against their entries", mRows.size(), mRowsBuilt, mRowChecks);
+  }
+
   public boolean isCellEditable(int row, int column) {
     return false;
   }
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
+import com.cyberfox.util.config.ErrorManagement;
 import com.cyberfox.util.platform.Path;
 import com.cyberfox.util.platform.Platform;
 import com.github.rjeschke.txtmark.Processor;
@@ -26,7 +27,12 @@ import com.jbidwatcher.util.config.*;
 import com.jbidwatcher.ui.config.JConfigFrame;
 import com.jbidwatcher.ui.util.*;
 import com.jbidwatcher.util.db.Database;
+import com.jbidwatcher.util.db.WriteBehind;
+import com.jbidwatcher.util.http.HostThrottle;
+import com.jbidwatcher.util.http.ConnectionManager;
+import com.jbidwatcher.util.http.Validators;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.AuctionQObject;
 import com.jbidwatcher.util.queue.MessageQueue;
 import com.jbidwatcher.util.services.ActivityMonitor;
@@ -41,7 +47,7 @@ import com.jbidwatcher.auction.server.AuctionServerManager;
 import com.jbidwatcher.auction.AuctionServerInterface;
 import com.l2fprod.common.swing.JFontChooser;
 
-public class UserActions implements MessageQueue.Listener {
+public class UserActions implements MessageQueue.BlockingListener {
   private Map<String, AbstractCommand> commands = new HashMap<String,AbstractCommand>();
   private static JTabManager mTabs = JTabManager.getInstance();
   private static JConfigFrame jcf = null;
@@ -520,6 +526,7 @@ public class UserActions implements MessageQueue.Listener {
     prompt += "<tr><td><b>Current time:</b></td><td>" + new Date() + "</td></tr>";
     prompt += "<tr><td><b>Page load time:</td><td>" + as.getPageRequestTime() + "</td></tr>";
     prompt += "<tr><td><b>eBay time delta:</td><td>" + as.getServerTimeDelta() + "</td></tr>";
+    prompt += "<tr><td><b>Estimate:</td><td>" + as.getClockStatistics() + "</td></tr>";
     prompt += "</table></body></html>";
 
     JOptionPane jop = new JOptionPane(prompt, JOptionPane.INFORMATION_MESSAGE);
@@ -952,7 +959,7 @@ public class UserActions implements MessageQueue.Listener {
                                             "Buy Item", "prompt.bin_confirm");
 
     if(endResult != JOptionPane.CANCEL_OPTION && endResult != JOptionPane.CLOSED_OPTION) {
-      MQFactory.getConcrete(ae.getServer().getFriendlyName()).enqueueBean(new AuctionQObject(AuctionQObject.BID, new AuctionBuy(ae, Currency.NoValue(), 1), "none"));
+      MQFactory.publish(Topic.auctionServer(ae.getServer().getFriendlyName()), new AuctionQObject(AuctionQObject.BID, new AuctionBuy(ae, Currency.NoValue(), 1), "none"));
     }
   }
 
@@ -991,7 +998,7 @@ public class UserActions implements MessageQueue.Listener {
                                     "Bad bid value", JOptionPane.PLAIN_MESSAGE);
       return;
     }
-    MQFactory.getConcrete(ae.getServer().getFriendlyName()).enqueueBean(new AuctionQObject(AuctionQObject.BID, new AuctionBid(ae, bidAmount, 1), "none"));
+    MQFactory.publish(Topic.auctionServer(ae.getServer().getFriendlyName()), new AuctionQObject(AuctionQObject.BID, new AuctionBid(ae, bidAmount, 1), "none"));
   }
 
   private void DoShowInBrowser(Component src, AuctionEntry inAuction) {
@@ -1543,7 +1550,28 @@ public class UserActions implements MessageQueue.Listener {
     else if(actionString.equals("Remove Comment")) DeleteComment(whichAuction);
     else if (actionString.equals("Mark as Won")) DoDebugWin(whichAuction);
 
-    else if(actionString.equals("Dump")) JConfig.log().logDebug("Dump requested.");
+    else if(actionString.equals("Dump")) {
+      JConfig.log().logDebug("Dump requested.");
+      MQFactory.dumpStatistics();
+      String dbStatistics = Database.getSharedStatistics();
+      if(dbStatistics != null) JConfig.log().logDebug(dbStatistics);
+      String writeStatistics = WriteBehind.getSharedStatistics();
+      if(writeStatistics != null) JConfig.log().logDebug(writeStatistics);
+      String updateStatistics = UpdatePool.getSharedStatistics();
+      if(updateStatistics != null) JConfig.log().logDebug(updateStatistics);
+      String indexStatistics = UpdateIndex.getSharedStatistics();
+      if(indexStatistics != null) JConfig.log().logDebug(indexStatistics);
+      String corralStatistics = EntryCorral.getSharedStatistics();
+      if(corralStatistics != null) JConfig.log().logDebug(corralStatistics);
+      JConfig.log().logDebug(HostThrottle.getInstance().getStatistics());
+      JConfig.log().logDebug(ConnectionManager.getInstance().getStatistics());
+      JConfig.log().logDebug(Validators.getStatistics());
+      JConfig.log().logDebug(JHTML.getStatistics());
+      JConfig.log().logDebug(AuctionServerManager.getInstance().getServer().getClockStatistics());
+      JConfig.log().logDebug(AuctionServerManager.getInstance().getServer().getSnipeStatistics());
+      String logStatistics = ErrorManagement.getSharedStatistics();
+      if(logStatistics != null) JConfig.log().logDebug(logStatistics);
+    }
     else if(actionString.equals("Forum")) MQFactory.getConcrete("browse").enqueue("http://forum.jbidwatcher.com");
     else if(actionString.equals("My JBidwatcher")) MQFactory.getConcrete("browse").enqueue("http://my.jbidwatcher.com");
     else if(actionString.equals("Report Bug")) MQFactory.getConcrete("browse").enqueue("http://jbidwatcher.lighthouseapp.com/projects/8037-jbidwatcher/tickets");
@@ -1553,7 +1581,7 @@ public class UserActions implements MessageQueue.Listener {
 
   private void DoGetMyeBay() {
     AuctionQObject loadMyeBay = new AuctionQObject(AuctionQObject.LOAD_MYITEMS, null, "current");
-    MQFactory.getConcrete(AuctionServerManager.getInstance().getServer().getFriendlyName()).enqueueBean(loadMyeBay);
+    MQFactory.publish(Topic.auctionServer(AuctionServerManager.getInstance().getServer().getFriendlyName()), loadMyeBay);
   }
 
   private SubmitLogDialog mLogSubmitDialog;
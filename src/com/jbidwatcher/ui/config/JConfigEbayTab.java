@@ -4,6 +4,7 @@ import com.cyberfox.util.platform.Platform;
 import com.jbidwatcher.ui.commands.UserActions;
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.queue.MQFactory;
+import com.jbidwatcher.util.queue.Topic;
 import com.jbidwatcher.util.queue.AuctionQObject;
 import com.jbidwatcher.util.queue.MessageQueue;
 import com.jbidwatcher.util.Constants;
@@ -58,7 +59,7 @@ public class JConfigEbayTab extends JConfigTab
 
     if(old_pass == null || !new_pass.equals(old_pass) ||
        old_user == null || !new_user.equals(old_user)) {
-      MQFactory.getConcrete(AuctionServerManager.getInstance().getServer().getFriendlyName()).enqueueBean(new AuctionQObject(AuctionQObject.MENU_CMD, "Update login cookie", null));
+      MQFactory.publish(Topic.auctionServer(AuctionServerManager.getInstance().getServer().getFriendlyName()), new AuctionQObject(AuctionQObject.MENU_CMD, "Update login cookie", null));
     }
 
     if(homeSite != null) {
@@ -17,7 +17,7 @@ import java.awt.event.ActionListener;
 * Time: 12:16 AM
 * To change this template use File | Settings | File Templates.
 */
-class LoginTestListener implements ActionListener, MessageQueue.Listener {
+class LoginTestListener implements ActionListener, MessageQueue.BlockingListener {
   CookieJar cj = null;
   private String mSitename;
   private JTextField mUsernameField, mPasswordField;
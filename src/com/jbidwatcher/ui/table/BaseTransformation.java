@@ -135,6 +135,20 @@ public abstract class BaseTransformation extends AbstractTableModel implements B
     return -1;
   }
 
+  /**
+   * @param row - The row, in this model.
+   * @param column - The model column.
+   *
+   * @return The value the row sorts by in the column; unless a model says otherwise, the value it shows.
+   */
+  public Object getSortByValueAt(int row, int column) {
+    return getValueAt(row, column);
+  }
+
+  public Class<?> getSortByColumnClass(int column) {
+    return getColumnClass(column);
+  }
+
   public synchronized boolean isCellEditable(int row, int column) {
     return m_tm.isCellEditable(row, column);
   }
@@ -11,7 +11,7 @@ public class ColumnState {
 	private int mSort = 0;
 	private String mHeaderValue = null;
 
-	ColumnState(int column, int sort) {
+	public ColumnState(int column, int sort) {
 		mColumn = column;
 		mSort = sort;
 	}
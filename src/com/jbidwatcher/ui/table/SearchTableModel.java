@@ -33,7 +33,7 @@ public class SearchTableModel extends BaseTransformation
 
   public Class getColumnClass(int i) { return String.class; }
 
-  public Class getSortByColumnClass(int i) {
+  public Class<?> getSortByColumnClass(int i) {
     if(i==5) return Long.class; else
     if(i==4) return Integer.class; else
     return getColumnClass(i);
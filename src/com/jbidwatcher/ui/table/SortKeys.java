@@ -0,0 +1,374 @@
+package com.jbidwatcher.ui.table;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.Currency;
+
+import java.lang.reflect.Array;
+import java.util.Date;
+
+/**
+ * The values a table's rows sort by, read out of the model once per sort
+ * rather than once per comparison, and kept in flat arrays by model row.
+ * Dates, numbers and booleans become longs or doubles, and currencies their
+ * value in thousandths, so most comparisons never touch an object; columns
+ * whose values don't fit are kept as the values themselves, and compared
+ * the way BaseTransformation.compareByClass() does.
+ *
+ * The order is the same as comparing the rows with the model's compare(),
+ * as long as the values haven't changed since they were read.
+ */
+class SortKeys {
+  private final BaseTransformation mModel;
+  private final int[] mColumns;
+  private final int[] mDirections;
+  private final Key[] mKeys;
+  private int mSize;
+  private long mExtracted = 0;
+
+  /**
+   * One sort column's values, by model row.  Nulls sort before everything else.
+   */
+  private abstract static class Key {
+    protected boolean[] mNull;
+
+    protected Key(int capacity) { mNull = new boolean[capacity]; }
+
+    /**
+     * @param row - The model row.
+     * @param value - The value it sorts by.
+     *
+     * @return false if the value can't be kept in this kind of key.
+     */
+    abstract boolean set(int row, Object value);
+
+    abstract int compareValues(int row1, int row2);
+
+    /**
+     * Make room for a row, moving those from it onwards up by one, or (with
+     * a negative count) close up the gap left by one.
+     *
+     * @param row - The row to insert at, or remove.
+     * @param count - 1 to insert, -1 to remove.
+     * @param size - How many rows there are before the change.
+     */
+    abstract void shift(int row, int count, int size);
+
+    int compare(int row1, int row2) {
+      if(mNull[row1] || mNull[row2]) {
+        return mNull[row1] == mNull[row2] ? 0 : (mNull[row1] ? -1 : 1);
+      }
+      return compareValues(row1, row2);
+    }
+
+    protected void shiftNulls(int row, int count, int size) {
+      mNull = SortKeys.shift(mNull, row, count, size);
+    }
+  }
+
+  private static class LongKey extends Key {
+    private long[] mValues;
+
+    private LongKey(int capacity) {
+      super(capacity);
+      mValues = new long[capacity];
+    }
+
+    boolean set(int row, Object value) {
+      mNull[row] = value == null;
+      if(value instanceof Date) mValues[row] = ((Date) value).getTime();
+      else if(value instanceof Integer) mValues[row] = (Integer) value;
+      else if(value instanceof Boolean) mValues[row] = (Boolean) value ? 1 : 0;
+      else return value == null;
+      return true;
+    }
+
+    int compareValues(int row1, int row2) {
+      long n1 = mValues[row1];
+      long n2 = mValues[row2];
+      return (n1 < n2) ? -1 : ((n1 > n2) ? 1 : 0);
+    }
+
+    void shift(int row, int count, int size) {
+      shiftNulls(row, count, size);
+      mValues = SortKeys.shift(mValues, row, count, size);
+    }
+  }
+
+  private static class DoubleKey extends Key {
+    private double[] mValues;
+
+    private DoubleKey(int capacity) {
+      super(capacity);
+      mValues = new double[capacity];
+    }
+
+    boolean set(int row, Object value) {
+      mNull[row] = value == null;
+      if(value instanceof Number) mValues[row] = ((Number) value).doubleValue();
+      else return value == null;
+      return true;
+    }
+
+    int compareValues(int row1, int row2) {
+      double d1 = mValues[row1];
+      double d2 = mValues[row2];
+      return (d1 < d2) ? -1 : ((d1 > d2) ? 1 : 0);
+    }
+
+    void shift(int row, int count, int size) {
+      shiftNulls(row, count, size);
+      mValues = SortKeys.shift(mValues, row, count, size);
+    }
+  }
+
+  /**
+   * Currencies compare by their value in thousandths, and only against the
+   * same currency; a 'null currency' is less than any other.  So they're
+   * kept as their type and thousandths, and the few comparisons between
+   * different currencies are left to Currency.compareTo().
+   */
+  private static class CurrencyKey extends Key {
+    private long[] mValues;
+    private int[] mTypes;
+    private Currency[] mCurrencies;
+
+    private CurrencyKey(int capacity) {
+      super(capacity);
+      mValues = new long[capacity];
+      mTypes = new int[capacity];
+      mCurrencies = new Currency[capacity];
+    }
+
+    boolean set(int row, Object value) {
+      mNull[row] = value == null;
+      mCurrencies[row] = null;
+      if(value == null) return true;
+      if(!(value instanceof Currency)) return false;
+
+      Currency c = (Currency) value;
+      mCurrencies[row] = c;
+      mTypes[row] = c.isNull() ? -1 : c.getCurrencyType();
+      mValues[row] = (int) (c.getValue() * 1000);
+      return true;
+    }
+
+    int compareValues(int row1, int row2) {
+      int t1 = mTypes[row1];
+      int t2 = mTypes[row2];
+      if(t1 == -1 || t2 == -1) return t1 == t2 ? 0 : (t1 == -1 ? -1 : 1);
+      if(t1 != t2) return BaseTransformation.compareByClass(mCurrencies[row1], mCurrencies[row2], Currency.class);
+
+      long n1 = mValues[row1];
+      long n2 = mValues[row2];
+      return (n1 < n2) ? -1 : ((n1 > n2) ? 1 : 0);
+    }
+
+    void shift(int row, int count, int size) {
+      shiftNulls(row, count, size);
+      mValues = SortKeys.shift(mValues, row, count, size);
+      mTypes = SortKeys.shift(mTypes, row, count, size);
+      mCurrencies = SortKeys.shift(mCurrencies, row, count, size);
+    }
+  }
+
+  /**
+   * Strings compare ignoring case; they're kept with each character folded
+   * the way String.compareToIgnoreCase() does it, so comparing them is a
+   * plain compareTo().
+   */
+  private static class StringKey extends Key {
+    private String[] mValues;
+
+    private StringKey(int capacity) {
+      super(capacity);
+      mValues = new String[capacity];
+    }
+
+    boolean set(int row, Object value) {
+      mNull[row] = value == null;
+      mValues[row] = value == null ? null : fold(value.toString());
+      return true;
+    }
+
+    private static String fold(String s) {
+      char[] folded = null;
+      for(int i=0; i<s.length(); i++) {
+        char c = s.charAt(i);
+        char f = Character.toLowerCase(Character.toUpperCase(c));
+        if(f != c) {
+          if(folded == null) folded = s.toCharArray();
+          folded[i] = f;
+        }
+      }
+      return folded == null ? s : new String(folded);
+    }
+
+    int compareValues(int row1, int row2) {
+      int result = mValues[row1].compareTo(mValues[row2]);
+      return (result < 0) ? -1 : ((result > 0) ? 1 : 0);
+    }
+
+    void shift(int row, int count, int size) {
+      shiftNulls(row, count, size);
+      mValues = SortKeys.shift(mValues, row, count, size);
+    }
+  }
+
+  private static class ObjectKey extends Key {
+    private final Class<?> mType;
+    private Object[] mValues;
+
+    private ObjectKey(int capacity, Class<?> type) {
+      super(capacity);
+      mType = type;
+      mValues = new Object[capacity];
+    }
+
+    boolean set(int row, Object value) {
+      mNull[row] = value == null;
+      mValues[row] = value;
+      return true;
+    }
+
+    int compareValues(int row1, int row2) {
+      return BaseTransformation.compareByClass(mValues[row1], mValues[row2], mType);
+    }
+
+    void shift(int row, int count, int size) {
+      shiftNulls(row, count, size);
+      mValues = SortKeys.shift(mValues, row, count, size);
+    }
+  }
+
+  /**
+   * Read every row's sort values out of the model.
+   *
+   * @param model - The model to read them from.
+   * @param columnStateList - The columns to sort by, in order, and their directions.
+   */
+  SortKeys(BaseTransformation model, ColumnStateList columnStateList) {
+    mModel = model;
+    mSize = model.getRowCount();
+    int count = columnStateList.size();
+    mColumns = new int[count];
+    mDirections = new int[count];
+    mKeys = new Key[count];
+    for(int i=0; i<count; i++) {
+      ColumnState cs = columnStateList.get(i);
+      mColumns[i] = cs.getColumn();
+      mDirections[i] = cs.getSort();
+      mKeys[i] = newKey(model.getSortByColumnClass(mColumns[i]), mSize);
+      for(int row=0; row<mSize; row++) set(i, row);
+    }
+  }
+
+  private static Key newKey(Class<?> type, int capacity) {
+    if(type == Integer.class || type == Date.class || type == Boolean.class) return new LongKey(capacity);
+    if(type.getSuperclass() == Number.class) return new DoubleKey(capacity);
+    if(type == String.class) return new StringKey(capacity);
+    if(type == Currency.class) return new CurrencyKey(capacity);
+    return new ObjectKey(capacity, type);
+  }
+
+  private void set(int column, int row) {
+    Object value = mModel.getSortByValueAt(row, mColumns[column]);
+    mExtracted++;
+    if(!mKeys[column].set(row, value)) {
+      //  A value of some other type than the column's; keep the values themselves, for compareByClass.
+      Class<?> type = mModel.getSortByColumnClass(mColumns[column]);
+      mKeys[column] = new ObjectKey(Math.max(mSize, row + 1), type);
+      for(int i=0; i<mSize; i++) {
+        mKeys[column].set(i, mModel.getSortByValueAt(i, mColumns[column]));
+        mExtracted++;
+      }
+    }
+  }
+
+  /**
+   * @param columnStateList - A list of sort columns.
+   *
+   * @return true if the keys were read for the same columns, in the same directions.
+   */
+  boolean isFor(ColumnStateList columnStateList) {
+    if(columnStateList == null || columnStateList.size() != mColumns.length) return false;
+    for(int i=0; i<mColumns.length; i++) {
+      ColumnState cs = columnStateList.get(i);
+      if(cs.getColumn() != mColumns[i] || cs.getSort() != mDirections[i]) return false;
+    }
+    return true;
+  }
+
+  int size() { return mSize; }
+
+  /** @return How many values have been read out of the model. */
+  long getExtracted() { return mExtracted; }
+
+  int compare(int row1, int row2) {
+    for(int i=0; i<mKeys.length; i++) {
+      int result = mKeys[i].compare(row1, row2) * mDirections[i];
+      if(result != 0) return result;
+    }
+    return 0;
+  }
+
+  /**
+   * Read a row's values again, after it's changed.
+   *
+   * @param row - The model row.
+   */
+  void update(int row) {
+    for(int i=0; i<mKeys.length; i++) set(i, row);
+  }
+
+  /**
+   * A row has been added to the model; move the rows from it onwards up one, and read its values.
+   *
+   * @param row - The new model row.
+   */
+  void insert(int row) {
+    for(Key k : mKeys) k.shift(row, 1, mSize);
+    mSize++;
+    update(row);
+  }
+
+  /**
+   * A row has been removed from the model; move the rows after it down one.
+   *
+   * @param row - The model row that was removed.
+   */
+  void delete(int row) {
+    for(Key k : mKeys) k.shift(row, -1, mSize);
+    mSize--;
+  }
+
+  /**
+   * Make room in one of the key arrays for a row, or close up the gap left by one.
+   *
+   * @param array - The array, which holds size rows.
+   * @param row - The row to insert at, or remove.
+   * @param count - 1 to insert, -1 to remove.
+   * @param size - How many rows there are before the change.
+   *
+   * @return The array, or a bigger copy of it if it was full.
+   */
+  @SuppressWarnings({"unchecked"})
+  private static <A> A shift(A array, int row, int count, int size) {
+    Class<?> type = array.getClass().getComponentType();
+    if(count > 0) {
+      if(size >= Array.getLength(array)) {
+        Object bigger = Array.newInstance(type, Math.max(16, size + (size >> 1)));
+        System.arraycopy(array, 0, bigger, 0, size);
+        array = (A) bigger;
+      }
+      System.arraycopy(array, row, array, row + 1, size - row);
+    } else {
+      System.arraycopy(array, row + 1, array, row, size - row - 1);
+      if(!type.isPrimitive()) Array.set(array, size - 1, null);
+    }
+    return array;
+  }
+}
@@ -7,6 +7,7 @@ package com.jbidwatcher.ui.table;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Created by IntelliJ IDEA.
@@ -17,16 +18,85 @@ import java.util.ArrayList;
  */
 public class SortTransformation extends Transformation {
   private ColumnStateList mColumnStateList;
+  //  The sort values of the model's rows, as of the last sort, or null if they haven't been read.
+  private SortKeys mKeys = null;
 
-  SortTransformation(BaseTransformation chain) {
+  private long mSorts = 0;
+  private long mRepositions = 0;
+  private long mExtracted = 0;
+
+  public SortTransformation(BaseTransformation chain) {
     super(chain);
   }
 
+  /**
+   * Sort the rows from scratch; every row's sort values are read from the
+   * model once, and the rows sorted by those.  Rows which compare the same
+   * stay in the order they were in.
+   */
   public synchronized void sort() {
+    dropKeys();
     if(mColumnStateList == null || mColumnStateList.size() == 0)
       return;
 
-    shuttlesort(new ArrayList<Integer>(m_row_xform), m_row_xform, 0, m_row_xform.size());
+    int size = m_row_xform.size();
+    int[] order = new int[size];
+    for(int i=0; i<size; i++) order[i] = m_row_xform.get(i);
+    mKeys = new SortKeys(m_tm, mColumnStateList);
+    shuttlesort(order.clone(), order, 0, size);
+
+    List<Integer> sorted = new ArrayList<Integer>(size);
+    for(int row : order) sorted.add(row);
+    setRowTransform(Collections.synchronizedList(sorted));
+    mSorts++;
+  }
+
+  private void dropKeys() {
+    if(mKeys != null) mExtracted += mKeys.getExtracted();
+    mKeys = null;
+  }
+
+  /**
+   * @return true if the keys from the last sort are still for the current sort columns, and the rows.
+   */
+  private boolean haveKeys() {
+    return mKeys != null && mKeys.isFor(mColumnStateList) && mKeys.size() == m_tm.getRowCount() && checkRowModel();
+  }
+
+  /**
+   * One row has changed; move it to where it now sorts, rather than sort
+   * everything again.  If it still sorts between its neighbours, it stays
+   * where it is; otherwise it goes after any rows it compares the same as.
+   *
+   * @param row - The row (as sorted) that has changed.
+   *
+   * @return Where the row is now.
+   */
+  public synchronized int reposition(int row) {
+    if(mColumnStateList == null || mColumnStateList.size() == 0) return row;
+    if(!haveKeys()) {
+      int modelRow = m_row_xform.get(row);
+      sort();
+      return m_row_xform.indexOf(modelRow);
+    }
+
+    int modelRow = m_row_xform.get(row);
+    mKeys.update(modelRow);
+    mRepositions++;
+
+    int size = m_row_xform.size();
+    boolean afterPrevious = row == 0 || mKeys.compare(m_row_xform.get(row - 1), modelRow) <= 0;
+    boolean beforeNext = row == size - 1 || mKeys.compare(modelRow, m_row_xform.get(row + 1)) <= 0;
+    if(afterPrevious && beforeNext) return row;
+
+    m_row_xform.remove(row);
+    int low = 0, high = size - 1;
+    while(low < high) {
+      int middle = (low + high) >>> 1;
+      if(mKeys.compare(m_row_xform.get(middle), modelRow) <= 0) low = middle + 1; else high = middle;
+    }
+    m_row_xform.add(low, modelRow);
+    return low;
   }
 
   public void setSortList(ColumnStateList columnStateList) {
@@ -44,7 +114,10 @@ public class SortTransformation extends Transformation {
   // arrays. The number of compares appears to vary between N-1 and
   // NlogN depending on the initial order but the main reason for
   // using it here is that, unlike qsort, it is stable.
-  private void shuttlesort(List<Integer> from, List<Integer> to, int low, int high) {
+  //
+  // It sorts model row numbers, comparing the values read out of the
+  // model for them beforehand, so a comparison never goes to the model.
+  private void shuttlesort(int[] from, int[] to, int low, int high) {
     if (high - low < 2) {
       return;
     }
@@ -70,36 +143,72 @@ public class SortTransformation extends Transformation {
     find out how the performance drops to Nlog(N) as the initial
     order diminishes - it may drop very quickly.  */
 
-    if (high - low >= 4 && adjustCompare(BaseTransformation.getInt(from, middle - 1), BaseTransformation.getInt(from, middle)) <= 0) {
-      for (int i = low; i < high; i++) {
-        to.set(i, from.get(i));
-      }
+    if (high - low >= 4 && mKeys.compare(from[middle - 1], from[middle]) <= 0) {
+      System.arraycopy(from, low, to, low, high - low);
       return;
     }
 
     // A normal merge.
     for (int i = low; i < high; i++) {
-      if (q >= high || (p < middle && adjustCompare(BaseTransformation.getInt(from, p), BaseTransformation.getInt(from, q)) <= 0)) {
-        to.set(i, from.get(p++));
+      if (q >= high || (p < middle && mKeys.compare(from[p], from[q]) <= 0)) {
+        to[i] = from[p++];
       } else {
-        to.set(i, from.get(q++));
+        to[i] = from[q++];
       }
     }
   }
 
-  private int adjustCompare(int r1, int r2) {
-    return m_tm.compare(r1, r2, mColumnStateList);
-  }
-
   private boolean mSortOnInsert = false;
 
   public void sortOnInsert() {
     mSortOnInsert = true;
   }
 
+  /** @return true if the rows are kept sorted as they're added and changed. */
+  public boolean isSortedOnInsert() {
+    return mSortOnInsert;
+  }
+
   public synchronized int insert(Object newObj) {
-    super.insert(newObj);
-    if (mSortOnInsert) sort();
+    boolean incremental = mSortOnInsert && haveKeys();
+    int row = super.insert(newObj);
+    if (mSortOnInsert) {
+      if(incremental) {
+        mKeys.insert(m_row_xform.get(row));
+        return reposition(row);
+      }
+      sort();
+    }
     return findRow(newObj);
   }
+
+  /**
+   * Delete a row, leaving the rest in the order they're in, rather than
+   * sorting them all again.
+   *
+   * @param row - The row (as sorted) to delete.
+   */
+  public synchronized void delete(int row) {
+    if (!checkRowModel()) {
+      initializeRows(m_tm);
+      postInitialize();
+    }
+    int modelRow = m_row_xform.get(row);
+    m_tm.delete(modelRow);
+    m_row_xform.remove(row);
+    for(int i=0; i<m_row_xform.size(); i++) {
+      int step = m_row_xform.get(i);
+      if(step > modelRow) m_row_xform.set(i, step - 1);
+    }
+    if(mKeys != null && mKeys.size() > modelRow) mKeys.delete(modelRow);
+    if (!checkRowModel()) {
+      initializeRows(m_tm);
+      postInitialize();
+    }
+  }
+
+  public synchronized String getStatistics() {
+    long extracted = mExtracted + (mKeys == null ? 0 : mKeys.getExtracted());
+    return String.format("SortTransformation: %d rows, %d sorts, %d repositions, %d sort values read", m_row_xform.size(), mSorts, mRepositions, extracted);
+  }
 }
@@ -238,17 +238,26 @@ public class TableSorter extends Transformation implements TableModelListener {
   }
 
   public boolean update(final Object updated) {
+    final Selection before = _sorted.isSortedOnInsert() ? getSelectionSafely() : null;
     final int myRow;
+    final int newRow;
     synchronized(this) {
       myRow = m_tm.findRow(updated);
+      //  Keep the table sorted, by moving just the row that changed.
+      newRow = (myRow != -1 && _sorted.isSortedOnInsert()) ? _sorted.reposition(myRow) : myRow;
     }
     final TableSorter sorter = this;
     if (myRow != -1) {
       SwingUtilities.invokeLater(new Runnable() {
         public void run() {
-          Selection save = new Selection(_table, _sorted);
-          _table.tableChanged(new TableModelEvent(sorter, myRow));
-          restoreSelection(save);
+          if(newRow == myRow) {
+            Selection save = new Selection(_table, _sorted);
+            _table.tableChanged(new TableModelEvent(sorter, myRow));
+            restoreSelection(save);
+          } else {
+            _table.tableChanged(new TableModelEvent(sorter, Math.min(myRow, newRow), Math.max(myRow, newRow)));
+            if(before != null) restoreSelection(before);
+          }
         }
       });
     }
@@ -24,6 +24,24 @@ public class ByteBuffer {
     crc = (int)crcCalc.getValue();
   }
 
+  /**
+   * @param inData - The data; it may be longer than the length.
+   * @param inLength - How much of inData is actual data.
+   * @param crcLength - How many bytes to take the CRC over; any past inLength are taken as zeros.
+   */
+  public ByteBuffer(byte[] inData, int inLength, int crcLength) {
+    data = inData;
+    length = inLength;
+
+    crcCalc.reset();
+    crcCalc.update(data, 0, inLength);
+    byte[] zeros = new byte[Math.min(Math.max(crcLength - inLength, 0), 8192)];
+    for(int left = crcLength - inLength; left > 0; left -= zeros.length) {
+      crcCalc.update(zeros, 0, Math.min(left, zeros.length));
+    }
+    crc = (int)crcCalc.getValue();
+  }
+
   public int getLength() { return length; }
   public byte[] getData() { return data; }
   public int getCRC() { return crc; }
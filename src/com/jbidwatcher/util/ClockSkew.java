@@ -0,0 +1,257 @@
+package com.jbidwatcher.util;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import java.util.*;
+
+/**
+ * Estimates how far a server's clock is from the local one, from several
+ * timed requests for the server's time, NTP-style.
+ *
+ * Each sample is a request sent at one local time, answered with the
+ * server's time, and received at a later local time.  The server read its
+ * clock somewhere in between, so the sample bounds the offset to a range as
+ * wide as the round trip, plus the resolution of the server's clock (a
+ * server that only shows seconds could have been up to a second past what
+ * it shows).  The samples' ranges are intersected, fastest round trip
+ * first, and any sample whose range doesn't overlap what the faster ones
+ * allow is thrown out as an outlier (a stale or mangled page, or the
+ * server's clock being stepped); the estimate is the middle of what's left.
+ * A slow sample needs no special treatment, as its range is wide enough
+ * that it can only narrow the estimate if it's useful.
+ *
+ * Samples timed by nextSampleTime, to catch the server's clock as it ticks,
+ * narrow the estimate to much less than the resolution.
+ *
+ * The estimates from each round of samples are kept, and once they cover
+ * long enough, the rate at which the local clock drifts from the server's
+ * is worked out from them, so the offset can be extrapolated between rounds.
+ */
+public class ClockSkew {
+  //  Don't work out drift from estimates closer together than this; the error in each would swamp it.
+  private static final long MIN_DRIFT_SPAN = Constants.ONE_MINUTE * 10;
+  //  Any real clock is within this (500 parts per million, or 43 seconds a day); more is an artifact.
+  private static final double MAX_DRIFT = 0.0005;
+  private static final int DEFAULT_HISTORY = 8;
+
+  private final long mResolution;
+  private final int mHistory;
+
+  private final List<Sample> mSamples = new ArrayList<Sample>();
+  private final LinkedList<Estimate> mEstimates = new LinkedList<Estimate>();
+
+  private boolean mValid = false;
+  private long mOffset = 0;
+  private long mAt = 0;
+  private long mError = 0;
+  private double mDrift = 0.0;
+
+  private long mRounds = 0;
+  private long mFailedRounds = 0;
+  private long mSampleCount = 0;
+  private long mDiscarded = 0;
+  private long mMinRoundTrip = 0;
+
+  private static class Sample {
+    private final long mSent;
+    private final long mServer;
+    private final long mReceived;
+
+    private Sample(long sent, long server, long received) {
+      mSent = sent;
+      mServer = server;
+      mReceived = received;
+    }
+
+    private long roundTrip() { return mReceived - mSent; }
+  }
+
+  private static class Estimate {
+    private final long mAt;
+    private final long mOffset;
+
+    private Estimate(long at, long offset) {
+      mAt = at;
+      mOffset = offset;
+    }
+  }
+
+  /**
+   * @param resolution - The resolution of the server's clock in milliseconds; 1000 if it only shows whole seconds.
+   */
+  public ClockSkew(long resolution) {
+    this(resolution, DEFAULT_HISTORY);
+  }
+
+  /**
+   * @param resolution - The resolution of the server's clock in milliseconds.
+   * @param history - How many rounds' estimates to keep for working out drift.
+   */
+  public ClockSkew(long resolution, int history) {
+    mResolution = Math.max(resolution, 1);
+    mHistory = Math.max(history, 2);
+  }
+
+  /**
+   * Record one sample of the server's clock.
+   *
+   * @param sent - The local time the request was sent.
+   * @param serverTime - The time the server reported, as it reported it (truncated to its resolution).
+   * @param received - The local time the answer arrived.
+   */
+  public synchronized void addSample(long sent, long serverTime, long received) {
+    if(received < sent) return;
+    mSamples.add(new Sample(sent, serverTime, received));
+    mSampleCount++;
+  }
+
+  private static final Comparator<Sample> BY_ROUND_TRIP = new Comparator<Sample>() {
+    public int compare(Sample a, Sample b) {
+      long diff = a.roundTrip() - b.roundTrip();
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+  };
+
+  /**
+   * Intersect the ranges of a set of samples.
+   *
+   * @param samples - The samples, sorted fastest round trip first.
+   * @param count - Whether to count the samples thrown out in the statistics.
+   *
+   * @return The lowest and highest offsets the samples allow, and the average local time they were taken.
+   */
+  private long[] combine(List<Sample> samples, boolean count) {
+    long low = Long.MIN_VALUE;
+    long high = Long.MAX_VALUE;
+    long at = 0;
+    int used = 0;
+    for(Sample s : samples) {
+      long sLow = s.mServer - s.mReceived;
+      long sHigh = s.mServer + mResolution - 1 - s.mSent;
+      if(sHigh < low || sLow > high) {
+        if(count) mDiscarded++;
+        continue;
+      }
+      low = Math.max(low, sLow);
+      high = Math.min(high, sHigh);
+      at += (s.mSent + s.mReceived) / 2 - samples.get(0).mSent;
+      used++;
+    }
+    return new long[] { low, high, samples.get(0).mSent + at / used };
+  }
+
+  /**
+   * Work out when to send the next request of a round.  It's timed so that,
+   * if the offset is in the middle of the range the samples so far allow,
+   * the server looks at its clock just as it ticks over to the next second;
+   * whichever second it shows then halves the range (down to about the
+   * round trip time).  Spacing them evenly would need many more samples to
+   * get as close.
+   *
+   * @param now - The current local time.
+   *
+   * @return The local time at which to send the next request.
+   */
+  public synchronized long nextSampleTime(long now) {
+    if(mResolution == 1 || mSamples.isEmpty()) return now;
+
+    List<Sample> samples = new ArrayList<Sample>(mSamples);
+    Collections.sort(samples, BY_ROUND_TRIP);
+    long[] range = combine(samples, false);
+    long halfTrip = samples.get(0).roundTrip() / 2;
+    if(range[1] - range[0] <= halfTrip * 2) return now;
+
+    long middle = range[0] + (range[1] - range[0]) / 2;
+    long serverTime = now + halfTrip + middle;
+    long tick = serverTime - (serverTime % mResolution) + mResolution;
+    return tick - middle - halfTrip;
+  }
+
+  /**
+   * Combine the samples recorded since the last round into a new estimate.
+   *
+   * @return true if there was a usable estimate, false if there were no samples.
+   */
+  public synchronized boolean finish() {
+    if(mSamples.isEmpty()) {
+      mFailedRounds++;
+      return false;
+    }
+
+    List<Sample> samples = new ArrayList<Sample>(mSamples);
+    mSamples.clear();
+    Collections.sort(samples, BY_ROUND_TRIP);
+    long[] range = combine(samples, true);
+
+    mOffset = range[0] + (range[1] - range[0]) / 2;
+    mError = (range[1] - range[0] + 1) / 2;
+    mAt = range[2];
+    mValid = true;
+    mRounds++;
+    mMinRoundTrip = samples.get(0).roundTrip();
+
+    mEstimates.add(new Estimate(mAt, mOffset));
+    while(mEstimates.size() > mHistory) mEstimates.removeFirst();
+    mDrift = computeDrift();
+
+    return true;
+  }
+
+  /**
+   * Fit a line through the kept estimates, by least squares.
+   *
+   * @return The drift, in milliseconds of offset per millisecond of local time.
+   */
+  private double computeDrift() {
+    if(mEstimates.size() < 2 || mEstimates.getLast().mAt - mEstimates.getFirst().mAt < MIN_DRIFT_SPAN) return 0.0;
+
+    long base = mEstimates.getFirst().mAt;
+    long baseOffset = mEstimates.getFirst().mOffset;
+    double n = mEstimates.size(), sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+    for(Estimate e : mEstimates) {
+      double x = e.mAt - base;
+      double y = e.mOffset - baseOffset;
+      sumX += x;
+      sumY += y;
+      sumXX += x * x;
+      sumXY += x * y;
+    }
+    double denominator = n * sumXX - sumX * sumX;
+    if(denominator == 0) return 0.0;
+
+    double drift = (n * sumXY - sumX * sumY) / denominator;
+    return Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, drift));
+  }
+
+  /**
+   * @param localTime - The local time to get the offset for.
+   *
+   * @return The amount to add to the local clock to get the server's clock
+   * at that time, or 0 if there's no estimate yet.
+   */
+  public synchronized long getOffset(long localTime) {
+    if(!mValid) return 0;
+    return mOffset + Math.round(mDrift * (localTime - mAt));
+  }
+
+  public synchronized boolean isValid() { return mValid; }
+
+  /**
+   * @return How far the last round's estimate could be from the true offset, in milliseconds.
+   */
+  public synchronized long getError() { return mError; }
+
+  /**
+   * @return The drift of the local clock from the server's, in parts per million.
+   */
+  public synchronized double getDriftPPM() { return mDrift * 1000000.0; }
+
+  public synchronized String getStatistics() {
+    if(!mValid) return String.format("ClockSkew: no estimate, %d samples, %d failed rounds", mSampleCount, mFailedRounds);
+    return String.format("ClockSkew: offset %dms +/- %dms, drift %.1fppm, %d rounds (%d failed), %d samples (%d discarded), fastest round trip %dms",
+        mOffset, mError, getDriftPPM(), mRounds, mFailedRounds, mSampleCount, mDiscarded, mMinRoundTrip);
+  }
+}
@@ -8,11 +8,19 @@ package com.jbidwatcher.util;
 import com.jbidwatcher.util.config.JConfig;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.zip.*;
 
 public class GZip {
-  private static byte[] _byteHold = new byte[1];
-  private static final Boolean _sync = Boolean.TRUE;
+  private static final int CHUNK = 8192;
+  //  Each thread compresses with its own Deflater and buffers, so several
+  //  update workers saving pages at once never wait on one another.
+  private static final ThreadLocal<Codec> sCodec = new ThreadLocal<Codec>() {
+    protected Codec initialValue() { return new Codec(); }
+  };
   private static final byte[] gzipHdrData = { 0x1f, -117, 0x08, 0x00,
                                               0x00, 0x00, 0x00, 0x00,
                                               0x02, -1 };
@@ -43,6 +51,47 @@ public class GZip {
     _data = compress(newData);
   }
 
+  /**
+   * Compress text straight from its characters, encoding them (in the
+   * platform's default charset, as String.getBytes() would) a chunk at a
+   * time, rather than building a byte array of the whole page first.
+   *
+   * @param content - The text to compress.
+   */
+  public void setData(StringBuffer content) {
+    Codec codec = sCodec.get();
+    codec.startDeflating();
+    CharsetEncoder encoder = codec.mEncoder;
+    java.nio.ByteBuffer encoded = codec.mEncoded;
+    int length = content.length();
+    int start = 0;
+    long total = 0;
+
+    _crc32Calculator.reset();
+    encoder.reset();
+    do {
+      int end = Math.min(length, start + CHUNK);
+      //  Don't split a surrogate pair across chunks.
+      if(end < length && Character.isHighSurrogate(content.charAt(end - 1))) end--;
+      content.getChars(start, end, codec.mChars, 0);
+      CharBuffer chars = CharBuffer.wrap(codec.mChars, 0, end - start);
+      boolean last = end == length;
+      do {
+        encoder.encode(chars, encoded, last);
+        total += codec.deflate(encoded, _crc32Calculator);
+      } while(chars.hasRemaining());
+      if(last) {
+        encoder.flush(encoded);
+        total += codec.deflate(encoded, _crc32Calculator);
+      }
+      start = end;
+    } while(start < length);
+
+    _uccrc32 = (int) _crc32Calculator.getValue();
+    _uclength = (int) total;
+    _data = codec.finish();
+  }
+
   public int readInt(FileInputStream fis) throws IOException {
     int a, b, c, d;
 
@@ -87,72 +136,145 @@ public class GZip {
   }
 
   private byte[] compress(byte[] inBytes) {
-    Deflater df = new Deflater(9);
-    byte[] newData;
-    int deflatedBytes;
-
     //  We can't compress null.
     if(inBytes == null) return null;
 
-    synchronized(_sync) {
-      if(_byteHold == null || _byteHold.length < inBytes.length) {
-        _byteHold = new byte[inBytes.length * 2];
-      }
+    Codec codec = sCodec.get();
+    Deflater df = codec.startDeflating();
+    df.setInput(inBytes);
+    codec.drain();
+    return codec.finish();
+  }
 
-      df.setInput(inBytes);
-      df.finish();
-      deflatedBytes = df.deflate(_byteHold);
+  public static StringBuffer uncompress(byte[] curPage, boolean nowrap) {
+    //  We can't uncompress null.
+    if(curPage == null) return null;
 
-      deflatedBytes -= 4;
+    Codec codec = sCodec.get();
+    Inflater infl = codec.startInflating(nowrap);
+    byte[] hold = codec.hold(curPage.length * 4);
+    int accumOutputBytes = 0;
 
-      newData = new byte[deflatedBytes];
-      System.arraycopy(_byteHold, 0, newData, 0, deflatedBytes);
+    infl.setInput(curPage);
+    try {
+      while(!infl.finished()) {
+        if(accumOutputBytes == hold.length) {
+          try {
+            hold = codec.grow(accumOutputBytes);
+          } catch(OutOfMemoryError oome) {
+            JConfig.log().handleException("FAILING to allocate more bytes @ " + hold.length * 2, oome);
+            break;
+          }
+        }
+        int inflatedBytes = infl.inflate(hold, accumOutputBytes, hold.length - accumOutputBytes);
+        //  The stored data has no trailing checksum, so it can run dry without being 'finished'.
+        if(inflatedBytes == 0 && (infl.needsInput() || infl.needsDictionary())) break;
+        accumOutputBytes += inflatedBytes;
+      }
+      return new StringBuffer(new String(hold, 0, accumOutputBytes));
+    } catch(DataFormatException dfe) {
+      JConfig.log().handleException("Failed to uncompress data: " + dfe, dfe);
+      return null;
+    } finally {
+      codec.release();
     }
-    return newData;
   }
 
-  public static StringBuffer uncompress(byte[] curPage, boolean nowrap) {
-    Inflater infl = new Inflater(nowrap);
-    byte[] outdata;
-    int accumOutputBytes, inflatedBytes;
-    int prevLength;
+  /**
+   * The per-thread compression state; a Deflater, Inflaters, and the
+   * scratch buffers they work through.
+   */
+  private static class Codec {
+    private static final int MAX_RETAINED = 1024 * 1024;
+    private final Deflater mDeflater = new Deflater(getLevel());
+    private final Inflater mInflater = new Inflater(false);
+    private final Inflater mRawInflater = new Inflater(true);
+    private final CharsetEncoder mEncoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final char[] mChars = new char[CHUNK];
+    private final java.nio.ByteBuffer mEncoded = java.nio.ByteBuffer.allocate(CHUNK * 4);
+    private byte[] mOut = new byte[CHUNK];
+    private int mOutLength = 0;
 
-    //  We can't uncompress null.
-    if(curPage == null) return null;
+    private static int getLevel() {
+      int level = JConfig.queryIntConfiguration("compression.level", 6);
+      if(level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION) return level;
+      return Deflater.DEFAULT_COMPRESSION;
+    }
 
-    synchronized(_sync) {
-      prevLength = _byteHold.length;
+    private Deflater startDeflating() {
+      mDeflater.reset();
+      mDeflater.setLevel(getLevel());
+      mOutLength = 0;
+      return mDeflater;
+    }
 
-      if(prevLength < curPage.length) {
-        _byteHold = new byte[curPage.length];
+    private Inflater startInflating(boolean nowrap) {
+      Inflater infl = nowrap ? mRawInflater : mInflater;
+      infl.reset();
+      return infl;
+    }
+
+    /**
+     * Feed whatever has been encoded so far to the deflater and the checksum, leaving the encoding buffer empty.
+     *
+     * @param encoded - The buffer the encoder has been filling.
+     * @param crc - The checksum of the uncompressed bytes.
+     *
+     * @return The number of uncompressed bytes consumed.
+     */
+    private int deflate(java.nio.ByteBuffer encoded, CRC32 crc) {
+      int count = encoded.position();
+      if(count != 0) {
+        crc.update(encoded.array(), 0, count);
+        mDeflater.setInput(encoded.array(), 0, count);
+        drain();
       }
-      infl.setInput(curPage);
-      try {
-        inflatedBytes = infl.inflate(_byteHold);
-        accumOutputBytes = inflatedBytes;
-        while(!infl.finished() && inflatedBytes != 0) {
-          outdata = _byteHold;
-          prevLength = _byteHold.length;
-          if(accumOutputBytes >= (prevLength - 2048)) {
-            try {
-              inflatedBytes = 0;
-              _byteHold = new byte[_byteHold.length * 3];
-              System.arraycopy(outdata, 0, _byteHold, 0, accumOutputBytes);
-              inflatedBytes = infl.inflate(_byteHold, accumOutputBytes, prevLength * 2);
-            } catch(OutOfMemoryError oome) {
-              JConfig.log().handleException("FAILING to allocate more bytes @ " + _byteHold.length * 3, oome);
-            }
-          } else {
-            inflatedBytes = infl.inflate(_byteHold, accumOutputBytes, prevLength - accumOutputBytes);
-          }
-          accumOutputBytes += inflatedBytes;
-        }
-        return new StringBuffer(new String(_byteHold, 0, accumOutputBytes));
-      } catch(DataFormatException dfe) {
-        JConfig.log().handleException("Failed to uncompress data: " + dfe, dfe);
-        return null;
+      encoded.clear();
+      return count;
+    }
+
+    private void drain() {
+      while(!mDeflater.needsInput()) {
+        if(mOutLength == mOut.length) grow(mOutLength);
+        mOutLength += mDeflater.deflate(mOut, mOutLength, mOut.length - mOutLength);
       }
     }
+
+    private byte[] finish() {
+      mDeflater.finish();
+      while(!mDeflater.finished()) {
+        if(mOutLength == mOut.length) grow(mOutLength);
+        mOutLength += mDeflater.deflate(mOut, mOutLength, mOut.length - mOutLength);
+      }
+
+      //  Drop the trailing Adler-32 checksum; the gzip format uses a CRC32 instead.
+      int deflatedBytes = mOutLength - 4;
+      byte[] newData = new byte[deflatedBytes];
+      System.arraycopy(mOut, 0, newData, 0, deflatedBytes);
+      release();
+      return newData;
+    }
+
+    private byte[] hold(int size) {
+      if(mOut.length < size) mOut = new byte[size];
+      return mOut;
+    }
+
+    private byte[] grow(int keep) {
+      byte[] bigger = new byte[mOut.length * 2];
+      System.arraycopy(mOut, 0, bigger, 0, keep);
+      mOut = bigger;
+      return mOut;
+    }
+
+    /**
+     * Don't let one huge page pin a huge buffer to the thread forever.
+     */
+    private void release() {
+      if(mOut.length > MAX_RETAINED) mOut = new byte[CHUNK];
+    }
   }
 
   /** 
@@ -4,10 +4,12 @@ import com.jbidwatcher.util.xml.XMLElement;
 import com.jbidwatcher.util.xml.XMLSerializeSimple;
 import com.jbidwatcher.util.xml.XMLInterface;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.TimeZone;
-import java.text.SimpleDateFormat;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Hash map acting as the backing store for the table information.
@@ -19,11 +21,18 @@ import java.text.SimpleDateFormat;
 public class HashBacked extends XMLSerializeSimple {
   private static final Record EMPTY = new Record();
   private Record mBacking = EMPTY;
-  protected static String DB_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
-  private SimpleDateFormat mDateFormat = new SimpleDateFormat(DB_DATE_FORMAT);
+  protected static String DB_DATE_FORMAT = Record.DATE_FORMAT;
   private Map<String, String> mTranslationTable;
   private String mDefaultCurrency;
+  //  The type of mDefaultCurrency, so building a Currency doesn't have to look up the name every time.
+  private int mDefaultCurrencyType;
   private boolean mDirty = false;
+  //  The keys whose values have changed since startChangeTracking(); null when not tracking.
+  private Set<String> mChanged = null;
+  //  The number of the last change to this record, and a count of changes to all records; see touch().
+  private volatile int mChanges = 0;
+  private static final AtomicInteger sNumbers = new AtomicInteger();
+  private static final AtomicInteger sChanges = new AtomicInteger();
   private static final Currency ONE_DOLLAR = Currency.getCurrency("$1.00");
 
   public HashBacked() {
@@ -31,26 +40,78 @@ public class HashBacked extends XMLSerializeSimple {
   }
 
   public HashBacked(Record data) {
-    mDateFormat.setTimeZone(TimeZone.getDefault());
     mBacking = data;
-    if(data.get("currency") == null) mDefaultCurrency = ONE_DOLLAR.fullCurrencyName();
-    else mDefaultCurrency = get("currency");
+    if(data.get("currency") == null) setDefaultCurrency(ONE_DOLLAR.fullCurrencyName());
+    else setDefaultCurrency(get("currency"));
   }
 
   public void setTranslationTable(Map<String, String> table) { if(mTranslationTable == null) mTranslationTable = table; }
 
   public boolean isDirty() { return mDirty; }
   protected void clearDirty() { mDirty = false; }
-  protected void setDirty() { mDirty = true; }
+  protected void setDirty() {
+    mDirty = true;
+    touch();
+  }
 
-  public Currency getMonetary(String key, int currencyType) {
-    String result = get(key);
-    try {
-      double value = Double.parseDouble(result);
-      return Currency.getCurrency(currencyType, value);
-    } catch (Exception e) {
-      return Currency.NoValue();
+  /**
+   * Note that something about this record has changed, which may not be
+   * one of its values (an in-memory field, or a related record).  Anything
+   * built from the record (like a table row) should be built again.
+   */
+  protected void touch() {
+    //  Each change gets a number of its own, so a record never goes back to a count it's had before.
+    //  The record's is set first, so anyone who sees the global count change sees the record's too.
+    mChanges = sNumbers.incrementAndGet();
+    sChanges.incrementAndGet();
+  }
+
+  /**
+   * @return A count which changes whenever this record does; its values,
+   * either record behind them, or anything touch() is called for.
+   */
+  public int getChangeCount() { return mChanges; }
+
+  /**
+   * @return A count which changes whenever any record does.  As long as it
+   * hasn't, nothing built from any record needs checking.
+   */
+  public static int getGlobalChangeCount() { return sChanges.get(); }
+
+  /**
+   * Start recording which keys change value, including keys in the secondary
+   * record if it's replaced, until finishChangeTracking() is called.  Unlike
+   * the dirty flag, this isn't reset by saving.
+   */
+  public void startChangeTracking() {
+    if(mSecondary == null && !mSecondaryAttempted && mBacking.get("id") != null) {
+      //  Make sure there's a secondary record to compare a replacement against.
+      mSecondaryAttempted = true;
+      loadSecondary();
     }
+    mChanged = new HashSet<String>();
+  }
+
+  /**
+   * @return The keys whose values changed since startChangeTracking(), which
+   * is then turned off.  Empty if tracking was never started.
+   */
+  public Set<String> finishChangeTracking() {
+    Set<String> rval = mChanged;
+    mChanged = null;
+    if(rval == null) return Collections.emptySet();
+    return rval;
+  }
+
+  private void noteChange(String key) {
+    if(mChanged != null) mChanged.add(key);
+  }
+
+  public Currency getMonetary(String key, int currencyType) {
+    Record r = lookup(key);
+    Double value = r == null ? null : r.getDouble(translate(key));
+    if(value == null) return Currency.NoValue();
+    return Currency.getCurrency(currencyType, value);
   }
 
   public Currency getMonetary(String key, Currency fallback) {
@@ -62,7 +123,12 @@ public class HashBacked extends XMLSerializeSimple {
   }
 
   protected void setDefaultCurrency(Currency sample) {
-    mDefaultCurrency = sample.fullCurrencyName();
+    setDefaultCurrency(sample.fullCurrencyName());
+  }
+
+  private void setDefaultCurrency(String name) {
+    mDefaultCurrency = name;
+    mDefaultCurrencyType = Currency.getCurrency(name, 1.0).getCurrencyType();
   }
 
   public Currency getDefaultCurrency() {
@@ -70,14 +136,11 @@ public class HashBacked extends XMLSerializeSimple {
   }
 
   public Currency getMonetary(String key) {
-    String result = get(key);
-    if(result == null) return Currency.NoValue();
-    try {
-      double value = Double.parseDouble(result);
-      return Currency.getCurrency(mDefaultCurrency, value);
-    } catch (Exception e) {
-      return Currency.NoValue();
-    }
+    Record r = lookup(key);
+    Double value = r == null ? null : r.getDouble(translate(key));
+    if(value == null) return Currency.NoValue();
+    if(mDefaultCurrencyType == Currency.NONE) return Currency.getCurrency(mDefaultCurrency, value);
+    return Currency.getCurrency(mDefaultCurrencyType, value);
   }
 
   public void setMonetary(String key, Currency c) {
@@ -93,33 +156,30 @@ public class HashBacked extends XMLSerializeSimple {
           !c.fullCurrencyName().equals(mDefaultCurrency) &&
           c.getCurrencyType() != Currency.US_DOLLAR &&
           c.getCurrencyType() != Currency.NONE) setDefaultCurrency(c);
-      set(key, Double.toString(c.getValue()));
+      key = translate(key);
+      if(mBacking.putDouble(key, c.getValue())) changed(key);
     }
   }
 
   public void setBoolean(String key, boolean value) {
-    set(key, value ? "1" : "0");
+    key = translate(key);
+    if(mBacking.putBoolean(key, value)) changed(key);
   }
 
   public void setDate(String key, Date date) {
     if (date == null || date.getTime() < 0) {
       set(key, null);
     } else {
-      set(key, mDateFormat.format(date));
+      //  Dates are only kept to the second, the same as they're stored in the database.
+      key = translate(key);
+      if(mBacking.putTime(key, date.getTime() - (date.getTime() % 1000))) changed(key);
     }
   }
 
   public Date getDate(String key) {
-    String s_value = get(key);
-    if (s_value == null || s_value.length() == 0) {
-      return null;
-    } else {
-      try {
-        return mDateFormat.parse(s_value);
-      } catch (Exception e) {
-        return null;
-      }
-    }
+    Record r = lookup(key);
+    Long time = r == null ? null : r.getTime(translate(key));
+    return time == null ? null : new Date(time);
   }
 
   public Integer getInteger(String key, Integer fallback) {
@@ -128,29 +188,30 @@ public class HashBacked extends XMLSerializeSimple {
     return result;
   }
   public Integer getInteger(String key) {
-    String s_value = get(key);
-    if (s_value == null || s_value.length() == 0)
-      return null;
-    else
-      return Integer.parseInt(s_value);
+    Record r = lookup(key);
+    return r == null ? null : r.getInteger(translate(key));
   }
 
   public void setInteger(String key, Integer value) {
-    if (value == null)
+    if (value == null) {
       set(key, null);
-    else
-      set(key, Integer.toString(value));
+    } else {
+      key = translate(key);
+      if(mBacking.putInteger(key, value)) changed(key);
+    }
   }
 
   public boolean getBoolean(String key) {
-    String result = get(key);
-    return (result != null && "1".equals(result));
+    Record r = lookup(key);
+    Boolean result = r == null ? null : r.getBoolean(translate(key));
+    return result != null && result;
   }
 
   public boolean getBoolean(String key, boolean fallback) {
-    String result = get(key);
+    Record r = lookup(key);
+    Boolean result = r == null ? null : r.getBoolean(translate(key));
     if(result == null) return fallback;
-    return "1".equals(result);
+    return result;
   }
 
   public void setString(String key, String value) {
@@ -173,40 +234,75 @@ public class HashBacked extends XMLSerializeSimple {
   private boolean mSecondaryAttempted = false;
 
   protected void setSecondary(Record r) {
+    if(mChanged != null && r != mSecondary) noteChanges(mSecondary, r);
+    if(r != mSecondary) touch();
     mSecondary = r;
   }
 
+  private void noteChanges(Record before, Record after) {
+    if(before == null || after == null) {
+      Record present = before == null ? after : before;
+      if(present != null) mChanged.addAll(present.keySet());
+      return;
+    }
+
+    //  Compare the stored values, so typed values don't need turning back into text.
+    for(String key : after.keySet()) {
+      if(!Record.sameValue(before.getValue(key), after.getValue(key))) mChanged.add(key);
+    }
+    for(String key : before.keySet()) {
+      if(before.getValue(key) != null && !after.containsKey(key)) mChanged.add(key);
+    }
+  }
+
   protected void loadSecondary() { }
 
-  public String get(String key) {
+  private String translate(String key) {
     if (mTranslationTable != null && mTranslationTable.containsKey(key)) {
       key = mTranslationTable.get(key);
     }
+    return key;
+  }
 
-    String result = mBacking.get(key);
-    if (result == null && mBacking.get("id") != null) {
-      if (mSecondary != null) {
-        if (mSecondary.containsKey(key)) {
-          result = mSecondary.get(key);
-        }
-      } else if (!mSecondaryAttempted) {
+  /**
+   * Find the record holding a value; the backing record if it's set there,
+   * otherwise the secondary record (loading it, if it hasn't been yet).
+   *
+   * @param key - The name of the value, before translation.
+   *
+   * @return The record to read the value from, or null if neither has it.
+   */
+  private Record lookup(String key) {
+    key = translate(key);
+
+    if (mBacking.getValue(key) != null) return mBacking;
+    if (mBacking.getValue("id") != null) {
+      if (mSecondary == null && !mSecondaryAttempted) {
         mSecondaryAttempted = true;
         loadSecondary();
-        if (mSecondary != null) {
-          result = mSecondary.get(key);
-        }
       }
+      if (mSecondary != null && mSecondary.containsKey(key)) return mSecondary;
     }
-    return result;
+    return null;
+  }
+
+  public String get(String key) {
+    Record r = lookup(key);
+    return r == null ? null : r.get(translate(key));
   }
 
   public void set(String key, String value) {
-    if (mTranslationTable != null && mTranslationTable.containsKey(key)) {
-      key = mTranslationTable.get(key);
-    }
+    key = translate(key);
     String prev = mBacking.put(key, value);
     if( (prev == null && value != null) ||
-        (prev != null && !prev.equals(value))) setDirty();
+        (prev != null && !prev.equals(value))) {
+      changed(key);
+    }
+  }
+
+  private void changed(String key) {
+    setDirty();
+    noteChange(key);
   }
 
   protected XMLElement addCurrencyChild(XMLElement parent, String name) {
@@ -259,9 +355,10 @@ public class HashBacked extends XMLSerializeSimple {
   public Record getBacking() { return mBacking; }
   public void setBacking(Record r) {
     mBacking = r;
-    if(r.get("currency") == null) mDefaultCurrency = ONE_DOLLAR.fullCurrencyName();
-    else mDefaultCurrency = get("currency");    
+    if(r.get("currency") == null) setDefaultCurrency(ONE_DOLLAR.fullCurrencyName());
+    else setDefaultCurrency(get("currency"));    
     clearDirty();
+    touch();
   }
 
   protected void handleTag(int i, XMLElement curElement) { }
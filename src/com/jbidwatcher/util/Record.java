@@ -1,15 +1,376 @@
 package com.jbidwatcher.util;
 
-import java.util.HashMap;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
 
 /**
  * Created by IntelliJ IDEA.
 * User: Morgan
 * Date: Sep 30, 2007
 * Time: 1:44:08 AM
-* To change this template use File | Settings | File Templates.
+*
+* A row of named values.  As a Map, every value is a String, the way the
+* database and XML code want them, but values set or read through the
+* typed accessors are kept typed; dates as milliseconds, money and other
+* numbers as Double or Integer, and flags as Boolean.  A value read from the
+* database as text is converted the first time it's read as a type, so it's
+* only ever parsed once, and text is only produced again when it's asked for.
+*
+* Tables hand every row they read the same strings for its column names,
+* so the keys are shared between records without being kept anywhere else.
+*
+* Since reading a value as a type can convert it in place, even getters
+* change the record; every access is synchronized on it.
 */
-public class Record extends HashMap<String, String> {
+public class Record extends AbstractMap<String, String> {
+  public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final ThreadLocal<SimpleDateFormat> sDateFormat = new ThreadLocal<SimpleDateFormat>() {
+    protected SimpleDateFormat initialValue() {
+      SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+      format.setTimeZone(TimeZone.getDefault());
+      return format;
+    }
+  };
+
+  //  Open addressing, with linear probing; a null key marks an empty slot.
+  private String[] mKeys;
+  private Object[] mValues;
+  private int mSize = 0;
+  private transient Set<Map.Entry<String, String>> mEntries = null;
+
+  public Record() {
+    mKeys = new String[INITIAL_CAPACITY];
+    mValues = new Object[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Copy another record, keeping its values as they're stored; typed values stay typed.
+   *
+   * @param other - The record to copy.
+   */
+  public Record(Record other) {
+    synchronized(other) {
+      mKeys = other.mKeys.clone();
+      mValues = other.mValues.clone();
+      mSize = other.mSize;
+    }
+  }
+
+  private int slot(Object key) {
+    int mask = mKeys.length - 1;
+    int i = spread(key.hashCode()) & mask;
+    String k;
+    while((k = mKeys[i]) != null) {
+      if(k == key || k.equals(key)) return i;
+      i = (i + 1) & mask;
+    }
+    return ~i;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  private synchronized Object store(String key, Object value) {
+    int i = slot(key);
+    if(i >= 0) {
+      Object prev = mValues[i];
+      mValues[i] = value;
+      return prev;
+    }
+    if((mSize + 1) * 4 > mKeys.length * 3) {
+      resize(mKeys.length * 2);
+      i = slot(key);
+    }
+    i = ~i;
+    mKeys[i] = key;
+    mValues[i] = value;
+    mSize++;
+    return null;
+  }
+
+  private void resize(int capacity) {
+    String[] oldKeys = mKeys;
+    Object[] oldValues = mValues;
+    mKeys = new String[capacity];
+    mValues = new Object[capacity];
+    for(int j=0; j<oldKeys.length; j++) {
+      if(oldKeys[j] != null) {
+        int i = ~slot(oldKeys[j]);
+        mKeys[i] = oldKeys[j];
+        mValues[i] = oldValues[j];
+      }
+    }
+  }
+
+  private void removeSlot(int i) {
+    int mask = mKeys.length - 1;
+    mKeys[i] = null;
+    mValues[i] = null;
+    mSize--;
+
+    //  Shift any following entries of the same run back, so lookups don't stop at the gap.
+    int j = (i + 1) & mask;
+    while(mKeys[j] != null) {
+      String k = mKeys[j];
+      Object v = mValues[j];
+      mKeys[j] = null;
+      mValues[j] = null;
+      int to = ~slot(k);
+      mKeys[to] = k;
+      mValues[to] = v;
+      j = (j + 1) & mask;
+    }
+  }
+
+  /**
+   * @param key - The name of the value to get.
+   *
+   * @return The value as it's stored, whether text or typed, or null if there isn't one.
+   */
+  public synchronized Object getValue(String key) {
+    int i = slot(key);
+    return i < 0 ? null : mValues[i];
+  }
+
+  /*
+   * Map methods.  Values go in and come out as text.
+   */
+
+  public synchronized int size() { return mSize; }
+
+  public synchronized boolean containsKey(Object key) {
+    return key instanceof String && slot(key) >= 0;
+  }
+
+  public synchronized String get(Object key) {
+    if(!(key instanceof String)) return null;
+    int i = slot(key);
+    return i < 0 ? null : toText(mValues[i]);
+  }
+
+  public String put(String key, String value) {
+    return toText(store(key, value));
+  }
+
+  public synchronized String remove(Object key) {
+    if(!(key instanceof String)) return null;
+    int i = slot(key);
+    if(i < 0) return null;
+    Object prev = mValues[i];
+    removeSlot(i);
+    return toText(prev);
+  }
+
+  public synchronized void clear() {
+    Arrays.fill(mKeys, null);
+    Arrays.fill(mValues, null);
+    mSize = 0;
+  }
+
+  public Set<Map.Entry<String, String>> entrySet() {
+    if(mEntries == null) {
+      mEntries = new AbstractSet<Map.Entry<String, String>>() {
+        public int size() { return Record.this.size(); }
+        public void clear() { Record.this.clear(); }
+        public Iterator<Map.Entry<String, String>> iterator() { return new EntryIterator(); }
+      };
+    }
+    return mEntries;
+  }
+
+  private synchronized String[] keySnapshot() { return mKeys.clone(); }
+
+  //  Iterates over a snapshot of the keys, so removing entries along the way is safe.
+  private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+    private final String[] mIterKeys = keySnapshot();
+    private int mNext = 0;
+    private String mLast = null;
+
+    private EntryIterator() { advance(); }
+
+    private void advance() {
+      while(mNext < mIterKeys.length && mIterKeys[mNext] == null) mNext++;
+    }
+
+    public boolean hasNext() { return mNext < mIterKeys.length; }
+
+    public Map.Entry<String, String> next() {
+      if(!hasNext()) throw new NoSuchElementException();
+      final String key = mIterKeys[mNext++];
+      advance();
+      mLast = key;
+      return new Map.Entry<String, String>() {
+        public String getKey() { return key; }
+        public String getValue() { return get(key); }
+        public String setValue(String value) { return put(key, value); }
+        public boolean equals(Object o) {
+          if(!(o instanceof Map.Entry)) return false;
+          Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+          String value = getValue();
+          return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+        public int hashCode() {
+          String value = getValue();
+          return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+        public String toString() { return key + "=" + getValue(); }
+      };
+    }
+
+    public void remove() {
+      if(mLast == null) throw new IllegalStateException();
+      Record.this.remove(mLast);
+      mLast = null;
+    }
+  }
+
+  /*
+   * Typed access.  Getters return null if there's no value (or it's empty,
+   * or can't be read as the type asked for), and setters return whether the
+   * value changed.
+   */
+
+  public synchronized Long getTime(String key) {
+    int i = slot(key);
+    if(i < 0) return null;
+    Object value = mValues[i];
+    if(value instanceof Long) return (Long) value;
+    if(value == null) return null;
+
+    Long time = parseTime(toText(value));
+    if(time != null && value instanceof String) mValues[i] = time;
+    return time;
+  }
+
+  public boolean putTime(String key, long time) {
+    return !sameValue(store(key, time), time);
+  }
+
+  public synchronized Double getDouble(String key) {
+    int i = slot(key);
+    if(i < 0) return null;
+    Object value = mValues[i];
+    if(value instanceof Double) return (Double) value;
+    if(value == null) return null;
+
+    Double amount = parseDouble(toText(value));
+    if(amount != null && value instanceof String) mValues[i] = amount;
+    return amount;
+  }
+
+  public boolean putDouble(String key, double amount) {
+    return !sameValue(store(key, amount), amount);
+  }
+
+  /**
+   * @param key - The name of the value to get.
+   *
+   * @return The value as an Integer, or null if there isn't one.
+   *
+   * @throws NumberFormatException - If the value isn't an integer.
+   */
+  public synchronized Integer getInteger(String key) {
+    int i = slot(key);
+    if(i < 0) return null;
+    Object value = mValues[i];
+    if(value instanceof Integer) return (Integer) value;
+    if(value == null) return null;
+
+    String text = toText(value);
+    if(text.length() == 0) return null;
+    Integer number = Integer.valueOf(text);
+    if(value instanceof String) mValues[i] = number;
+    return number;
+  }
+
+  public boolean putInteger(String key, int number) {
+    return !sameValue(store(key, number), number);
+  }
+
+  /**
+   * @param key - The name of the flag to get.
+   *
+   * @return True if the value is "1", false if it's anything else, or null if there isn't a value.
+   */
+  public synchronized Boolean getBoolean(String key) {
+    int i = slot(key);
+    if(i < 0) return null;
+    Object value = mValues[i];
+    if(value instanceof Boolean) return (Boolean) value;
+    if(value == null) return null;
+
+    String text = toText(value);
+    Boolean flag = "1".equals(text);
+    //  Only the canonical forms are converted, so other text is left as it was.
+    if(value instanceof String && (flag || "0".equals(text))) mValues[i] = flag;
+    return flag;
+  }
+
+  public boolean putBoolean(String key, boolean flag) {
+    return !sameValue(store(key, flag), flag);
+  }
+
+  /*
+   * Conversions between text and typed values.
+   */
+
+  public static String formatTime(long time) {
+    return sDateFormat.get().format(new Date(time));
+  }
+
+  public static Long parseTime(String text) {
+    if(text == null || text.length() == 0) return null;
+    try {
+      return sDateFormat.get().parse(text).getTime();
+    } catch(ParseException e) {
+      return null;
+    }
+  }
+
+  private static Double parseDouble(String text) {
+    try {
+      return Double.valueOf(text);
+    } catch(NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String toText(Object value) {
+    if(value == null || value instanceof String) return (String) value;
+    if(value instanceof Long) return formatTime((Long) value);
+    if(value instanceof Boolean) return ((Boolean) value) ? "1" : "0";
+    return value.toString();
+  }
+
+  /**
+   * Compare two stored values; a typed value and text are the same if the
+   * text reads as that typed value.
+   *
+   * @param a - One stored value.
+   * @param b - The other.
+   *
+   * @return true if they represent the same value.
+   */
+  public static boolean sameValue(Object a, Object b) {
+    if(a == b) return true;
+    if(a == null || b == null) return false;
+    if(a.getClass() == b.getClass()) return a.equals(b);
+    if(a instanceof String) return sameAs((String) a, b);
+    if(b instanceof String) return sameAs((String) b, a);
+    return toText(a).equals(toText(b));
+  }
+
+  private static boolean sameAs(String text, Object typed) {
+    if(text.equals(toText(typed))) return true;
+    if(typed instanceof Long) return typed.equals(parseTime(text));
+    if(typed instanceof Double) return typed.equals(parseDouble(text));
+    return false;
+  }
+
   public String dump() {
     StringBuffer sb = dumpRecord(0);
     sb.append("\n");
@@ -9,11 +9,28 @@ package com.jbidwatcher.util;
  * Simple class to manage blocking doing updates while a snipe or bid is going off.
  */
 public class UpdateBlocker {
+  private static final Object sLock = new Object();
   private static volatile boolean isBlocked =false;
 
   public static void startBlocking() { isBlocked = true; }
 
-  public static void endBlocking() { isBlocked = false; }
+  public static void endBlocking() {
+    synchronized(sLock) {
+      isBlocked = false;
+      sLock.notifyAll();
+    }
+  }
 
   public static boolean isBlocked() { return isBlocked; }
+
+  /**
+   * Wait until nothing is blocking updates.
+   *
+   * @throws InterruptedException - If the thread is interrupted while waiting.
+   */
+  public static void waitWhileBlocked() throws InterruptedException {
+    synchronized(sLock) {
+      while(isBlocked) sLock.wait();
+    }
+  }
 }
@@ -21,6 +21,10 @@ public abstract class ActiveRecord extends HashBacked {
     sDBDisabled = true;
   }
 
+  public static void enableDatabase() {
+    sDBDisabled = false;
+  }
+
   protected static Table openDB(String tableName) {
     if (sDBDisabled || tableName == null) return null;
 
@@ -35,6 +39,7 @@ public abstract class ActiveRecord extends HashBacked {
   }
 
   public static void shutdown() {
+    WriteBehind.shutdownShared();
     Set<Database> s = new HashSet<Database>();
     for(Table t : sTables) {
       s.add(t.shutdown());
@@ -113,13 +118,34 @@ public abstract class ActiveRecord extends HashBacked {
       setString("currency", getDefaultCurrency().fullCurrencyName());
     }
     if(!isDirty() && get("id") != null && get("id").length() != 0) return get("id");
-    String id = getDatabase().insertOrUpdate(getBacking());
+
+    //  Updates to existing rows can be left to the write-behind queue, unless they're too important to wait.
+    String id = get("id");
+    WriteBehind queue = WriteBehind.getInstance();
+    if(queue != null && id != null && id.length() != 0 && !isWriteCritical()) {
+      queue.enqueue(db, getBacking());
+      clearDirty();
+      return id;
+    }
+
+    id = queue == null ? db.insertOrUpdate(getBacking()) : queue.write(db, getBacking());
     commit();
     if(id != null && id.length() != 0) set("id", id); else id = get("id");
     clearDirty();
     return id;
   }
 
+  /**
+   * Records whose changes must reach the database as soon as they're saved
+   * (snipes, for instance) override this, so they're never left queued for
+   * writing behind.
+   *
+   * @return true if saves of this record should always be written immediately.
+   */
+  protected boolean isWriteCritical() {
+    return false;
+  }
+
   protected static List<? extends ActiveRecord> findAllBy(Class klass, String key, String value) {
     return findAllBy(klass, key, value, null);
   }
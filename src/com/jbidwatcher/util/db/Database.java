@@ -9,10 +9,14 @@ package com.jbidwatcher.util.db;
 import com.jbidwatcher.util.config.JConfig;
 
 import java.sql.*;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ArrayList;
 import java.util.Properties;
 
 public class Database {
   private static boolean sFirst = true;
+  private static Database sShared = null;
   private String framework;
   private String driver;
   private String protocol;
@@ -20,6 +24,22 @@ public class Database {
   private boolean mNew;
   private boolean mysql = false;
 
+  //  The pool of connections Table operations run on; see acquire() and release().
+  private final List<PooledConnection> mPool = new ArrayList<PooledConnection>();
+  private final LinkedList<PooledConnection> mIdle = new LinkedList<PooledConnection>();
+  //  Connections being opened, outside the lock, for slots the pool already has room for.
+  private int mOpening = 0;
+  //  Whether the primary connection has been put into the pool yet.
+  private boolean mPrimaryPooled = false;
+  //  The connection each thread holds, so a nested acquire() gets it back, rather than waiting on the pool for another.
+  private final ThreadLocal<PooledConnection> mHeld = new ThreadLocal<PooledConnection>();
+  private int mPoolSize;
+  private int mCacheSize;
+  private long mAcquired = 0;
+  private long mWaits = 0;
+  private long mTotalWait = 0;
+  private long mMaxWait = 0;
+
   public boolean executeCanonicalizedSQL(Statement mS, String statement) throws SQLException {
     if(isMySQL()) {
       statement = statement.replace("timestamp", "datetime");
@@ -59,9 +79,25 @@ public class Database {
 //        System.setProperty("derby.language.logQueryPlan", "true");
       }
     }
+    mPoolSize = Math.max(1, JConfig.queryIntConfiguration("db.pool.size", 4));
+    mCacheSize = JConfig.queryIntConfiguration("db.statement_cache", 64);
     setup();
   }
 
+  /**
+   * @return The Database shared by every Table, creating it if necessary.
+   *
+   * @throws SQLException - If there's a problem connecting to the database.
+   * @throws IllegalAccessException - If the database is not able to be accessed.
+   * @throws InstantiationException - If we can't create the JDBC driver for the database.
+   * @throws ClassNotFoundException - If we can't find the JDBC driver for the database at all.
+   */
+  public static synchronized Database getShared() throws ClassNotFoundException, IllegalAccessException, InstantiationException, SQLException {
+    if(sShared == null) sShared = new Database(null);
+    return sShared;
+  }
+
+
   private void setup() throws ClassNotFoundException, IllegalAccessException, InstantiationException, SQLException {
     /*
        The driver is installed by loading its class.
@@ -106,12 +142,165 @@ public class Database {
       JConfig.log().logDebug("Connected to " + (mNew?"and created ":"") + "database " + (isMySQL() ? JConfig.queryConfiguration("db.mysql.database", "jbidwatcher") : "jbdb") + " (JBidwatcher DataBase)");
     }
 
-    mConn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-    boolean autoCommit = JConfig.queryConfiguration("db.autocommit", "true").equals("true");
-    mConn.setAutoCommit(autoCommit);
+    configure(mConn);
     sFirst = false;
   }
 
+  private void configure(Connection conn) throws SQLException {
+    conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+    boolean autoCommit = JConfig.queryConfiguration("db.autocommit", "true").equals("true");
+    conn.setAutoCommit(autoCommit);
+  }
+
+  /**
+   * Open an additional connection to the (already created) database, set up the same way as the primary one.
+   *
+   * @return A new connection.
+   *
+   * @throws SQLException - If the connection can't be made.
+   */
+  Connection openConnection() throws SQLException {
+    Properties props = new Properties();
+    props.setProperty("user", JConfig.queryConfiguration("db.user", "user1"));
+    props.setProperty("password", JConfig.queryConfiguration("db.pass", "user1"));
+
+    Connection conn;
+    if(isMySQL()) {
+      conn = DriverManager.getConnection(protocol + JConfig.queryConfiguration("db.mysql.database", "jbidwatcher"), props);
+    } else {
+      conn = DriverManager.getConnection(protocol + "jbdb", props);
+    }
+    configure(conn);
+    return conn;
+  }
+
+  /**
+   * Check out a connection for the exclusive use of the calling thread,
+   * opening a new one if the pool isn't full yet, or waiting for one to be
+   * released if it is.  A thread which already holds a connection gets
+   * that one back, so nested calls don't wait on themselves.  Every
+   * acquire() must be paired with a release().
+   *
+   * @return A connection, with its own prepared statement cache.
+   *
+   * @throws SQLException - If a new connection was needed, and couldn't be made.
+   */
+  PooledConnection acquire() throws SQLException {
+    PooledConnection held = mHeld.get();
+    if(held != null) {
+      synchronized(mIdle) {
+        mAcquired++;
+      }
+      held.hold();
+      return held;
+    }
+
+    long start = System.nanoTime();
+    boolean waited = false;
+    boolean primary;
+    synchronized(mIdle) {
+      while(mIdle.isEmpty() && mPool.size() + mOpening >= mPoolSize) {
+        waited = true;
+        try {
+          mIdle.wait();
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted waiting for a database connection.");
+        }
+      }
+      mAcquired++;
+      if(waited) {
+        long wait = System.nanoTime() - start;
+        mWaits++;
+        mTotalWait += wait;
+        if(wait > mMaxWait) mMaxWait = wait;
+      }
+      if(!mIdle.isEmpty()) return held(mIdle.removeFirst());
+
+      //  Room's been made for a new connection; it's opened without holding the pool up.
+      mOpening++;
+      primary = !mPrimaryPooled;
+      mPrimaryPooled = true;
+    }
+
+    PooledConnection pc = null;
+    try {
+      //  The first pooled connection is the one we already have.
+      pc = new PooledConnection(this, primary ? mConn : openConnection(), mCacheSize);
+    } finally {
+      synchronized(mIdle) {
+        mOpening--;
+        if(pc == null) {
+          if(primary) mPrimaryPooled = false;
+          //  Let someone waiting try to open one instead.
+          mIdle.notify();
+        } else {
+          mPool.add(pc);
+        }
+      }
+    }
+    return held(pc);
+  }
+
+  private PooledConnection held(PooledConnection pc) {
+    pc.hold();
+    mHeld.set(pc);
+    return pc;
+  }
+
+  void release(PooledConnection pc) {
+    if(pc.unhold()) return;
+
+    mHeld.remove();
+    pc.finish();
+    synchronized(mIdle) {
+      mIdle.addFirst(pc);
+      mIdle.notify();
+    }
+  }
+
+  /**
+   * Commit anything outstanding on the connections nobody is using.
+   */
+  void commitIdle() {
+    synchronized(mIdle) {
+      for(PooledConnection pc : mIdle) pc.commit();
+    }
+  }
+
+  /**
+   * @return A summary of the connection pool and prepared statement cache usage, for debugging.
+   */
+  public String getStatistics() {
+    long hits = 0, misses = 0, evictions = 0;
+    synchronized(mIdle) {
+      for(PooledConnection pc : mPool) {
+        hits += pc.getHits();
+        misses += pc.getMisses();
+        evictions += pc.getEvictions();
+      }
+      return "Database: " + mPool.size() + "/" + mPoolSize + " connections, " + mIdle.size() + " idle; " +
+          mAcquired + " acquired, " + mWaits + " waited (avg " + (mWaits == 0 ? 0 : mTotalWait / mWaits / 1000) + "us, max " + (mMaxWait / 1000) + "us); " +
+          "statements " + hits + " hits, " + misses + " misses, " + evictions + " evicted";
+    }
+  }
+
+  /**
+   * @return How many times a connection has been handed out; one per query or update.
+   */
+  public long getAcquired() {
+    synchronized(mIdle) {
+      return mAcquired;
+    }
+  }
+
+  /**
+   * @return The statistics for the shared database, or null if it hasn't been opened.
+   */
+  public static synchronized String getSharedStatistics() {
+    return sShared == null ? null : sShared.getStatistics();
+  }
+
   public Statement getStatement() {
     Statement rval = null;
 
@@ -135,6 +324,17 @@ public class Database {
   }
 
   public void shutdown() {
+    synchronized(Database.class) {
+      if(sShared == this) sShared = null;
+    }
+    synchronized(mIdle) {
+      for(PooledConnection pc : mPool) {
+        if(pc.getConnection() != mConn) pc.close();
+      }
+      mPool.clear();
+      mIdle.clear();
+      mPrimaryPooled = false;
+    }
     try {
       mConn.close();
       JConfig.log().logDebug("Closed connection");
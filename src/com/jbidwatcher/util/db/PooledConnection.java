@@ -0,0 +1,195 @@
+package com.jbidwatcher.util.db;
+
+import java.sql.*;
+
+/**
+ * A single connection handed out by Database.acquire(), along with its own
+ * prepared-statement cache and a reusable statement for ad-hoc queries.
+ *
+ * A PooledConnection is only ever used by the thread that acquired it, until
+ * it's released back to the Database; that exclusivity is what lets the
+ * ad-hoc statement and the cached prepared statements be reused safely.
+ * A thread which acquires again while it holds one gets the same one back,
+ * so it's only given back to the pool by the last of its releases.
+ */
+class PooledConnection {
+  private final Database mDB;
+  private final StatementCache mCache;
+  private Connection mConn;
+  private Statement mStatement = null;
+  private boolean mInTransaction = false;
+  private boolean mRestoreAutoCommit = false;
+  //  How many acquire() calls the holding thread hasn't yet released; only touched by that thread.
+  private int mHolds = 0;
+
+  PooledConnection(Database db, Connection conn, int cacheSize) {
+    mDB = db;
+    mConn = conn;
+    mCache = new StatementCache(cacheSize);
+  }
+
+  /**
+   * Return a prepared statement for the SQL provided, from the cache if it's
+   * been prepared on this connection before.  Statements not being cached
+   * (if the cache size is zero) must be closed by the caller via done().
+   *
+   * @param sql - The SQL to prepare.
+   *
+   * @return A prepared statement, with no parameters set.
+   *
+   * @throws SQLException - If the statement can't be prepared, even after reconnecting.
+   */
+  PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement ps = mCache.get(sql);
+    if(ps != null) return ps;
+
+    try {
+      ps = mConn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    } catch(SQLException sqe) {
+      if(mConn.isClosed() || "No current connection.".equals(sqe.getMessage())) {
+        reconnect();
+        ps = mConn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+      } else {
+        throw sqe;
+      }
+    }
+    mCache.put(sql, ps);
+    return ps;
+  }
+
+  /**
+   * Finish with a statement returned from prepare(), closing it if it isn't
+   * cached, or resetting its parameters and row limit if it is.  Call it
+   * from a finally block, so a failed statement doesn't leak.
+   *
+   * @param ps - The statement to finish with.
+   */
+  void done(PreparedStatement ps) {
+    if(ps == null) return;
+    try {
+      if(mCache.isCaching()) {
+        ps.clearParameters();
+        ps.setMaxRows(0);
+      } else {
+        ps.close();
+      }
+    } catch(SQLException ignored) {
+      //  Nothing useful to be done; a broken statement will be replaced on reconnect.
+    }
+  }
+
+  /**
+   * @return A plain statement for ad-hoc SQL; reused across calls on this connection.
+   *
+   * @throws SQLException - If the statement can't be created, even after reconnecting.
+   */
+  Statement getStatement() throws SQLException {
+    if(mStatement == null) {
+      if(mConn.isClosed()) reconnect();
+      mStatement = mConn.createStatement();
+    }
+    mStatement.setMaxRows(0);
+    return mStatement;
+  }
+
+  /**
+   * Start a transaction spanning several statements; commit() calls made
+   * by Table operations are ignored until end() commits or rolls it back.
+   *
+   * @throws SQLException - If auto-commit can't be turned off.
+   */
+  void begin() throws SQLException {
+    if(mConn.isClosed()) reconnect();
+    mRestoreAutoCommit = mConn.getAutoCommit();
+    if(mRestoreAutoCommit) mConn.setAutoCommit(false);
+    mInTransaction = true;
+  }
+
+  /**
+   * Finish the transaction started with begin().
+   *
+   * @param success - Whether to commit the transaction, or roll it back.
+   *
+   * @throws SQLException - If the commit fails; the transaction is rolled back.
+   */
+  void end(boolean success) throws SQLException {
+    mInTransaction = false;
+    try {
+      if(success) {
+        mConn.commit();
+      } else {
+        mConn.rollback();
+      }
+    } catch(SQLException e) {
+      if(success) mConn.rollback();
+      throw e;
+    } finally {
+      if(mRestoreAutoCommit) mConn.setAutoCommit(true);
+    }
+  }
+
+  void commit() {
+    if(mInTransaction || mDB.isMySQL()) return;
+
+    try {
+      mConn.commit();
+    } catch(SQLException squee) {
+      Database.printSQLError(squee);
+    }
+  }
+
+  /**
+   * End whatever transaction was left open on the connection, before it
+   * goes back into the pool.  With 'db.autocommit' off, even a plain query
+   * starts a transaction, which holds its locks until it's committed; a
+   * transaction begin() started and nobody ended is rolled back instead.
+   */
+  void finish() {
+    try {
+      if(mInTransaction) {
+        end(false);
+      } else if(!mConn.isClosed() && !mConn.getAutoCommit()) {
+        mConn.commit();
+      }
+    } catch(SQLException squee) {
+      Database.printSQLError(squee);
+    }
+  }
+
+  Connection getConnection() {
+    return mConn;
+  }
+
+  void hold() { mHolds++; }
+
+  /**
+   * @return true if the holding thread still has acquires outstanding on the connection.
+   */
+  boolean unhold() { return --mHolds > 0; }
+
+  private void reconnect() throws SQLException {
+    close();
+    try {
+      mConn = mDB.openConnection();
+    } catch(Exception e) {
+      SQLException error = new SQLException("Failed to reconnect due to: " + e.getMessage());
+      error.initCause(e);
+      throw error;
+    }
+  }
+
+  void close() {
+    mCache.clear();
+    try {
+      if(mStatement != null) mStatement.close();
+      mConn.close();
+    } catch(SQLException ignored) {
+      //  It's going away regardless.
+    }
+    mStatement = null;
+  }
+
+  long getHits() { return mCache.getHits(); }
+  long getMisses() { return mCache.getMisses(); }
+  long getEvictions() { return mCache.getEvictions(); }
+}
@@ -0,0 +1,90 @@
+package com.jbidwatcher.util.db;
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of prepared statements for a single connection.
+ *
+ * Prepared statements are tied to the connection that created them, so
+ * there is one of these per PooledConnection.  Statements which fall off
+ * the end of the cache are closed.
+ */
+class StatementCache {
+  private final int mCapacity;
+  private final LeastRecentlyUsed mStatements;
+  private long mHits = 0;
+  private long mMisses = 0;
+
+  /**
+   * Statements in order of use, closing the least recently used one when
+   * there are more than the cache holds.
+   */
+  private static class LeastRecentlyUsed extends LinkedHashMap<String, PreparedStatement> {
+    private static final long serialVersionUID = 1L;
+    private final int mCapacity;
+    private long mEvictions = 0;
+
+    private LeastRecentlyUsed(int capacity) {
+      super(16, 0.75f, true);
+      mCapacity = capacity;
+    }
+
+    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+      if(size() <= mCapacity) return false;
+
+      mEvictions++;
+      close(eldest.getValue());
+      return true;
+    }
+  }
+
+  StatementCache(int capacity) {
+    mCapacity = capacity;
+    mStatements = new LeastRecentlyUsed(capacity);
+  }
+
+  /**
+   * @param sql - The SQL the statement was prepared from.
+   *
+   * @return The cached statement, or null if it needs to be prepared.
+   */
+  synchronized PreparedStatement get(String sql) {
+    PreparedStatement ps = mStatements.get(sql);
+    if(ps == null) mMisses++; else mHits++;
+    return ps;
+  }
+
+  synchronized void put(String sql, PreparedStatement ps) {
+    if(mCapacity <= 0) return;
+    mStatements.put(sql, ps);
+  }
+
+  boolean isCaching() {
+    return mCapacity > 0;
+  }
+
+  /**
+   * Close and forget every cached statement; used when the connection goes away.
+   */
+  synchronized void clear() {
+    for(PreparedStatement ps : mStatements.values()) close(ps);
+    mStatements.clear();
+  }
+
+  synchronized long getHits() { return mHits; }
+  synchronized long getMisses() { return mMisses; }
+  synchronized long getEvictions() { return mStatements.mEvictions; }
+
+  private static void close(PreparedStatement ps) {
+    try {
+      ps.close();
+    } catch(SQLException e) {
+      JConfig.log().logDebug("Failed to close cached statement: " + e.getMessage());
+    }
+  }
+}
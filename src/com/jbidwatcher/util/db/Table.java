@@ -6,9 +6,6 @@ import com.jbidwatcher.util.Record;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
-import java.util.Date;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 
 /**
  * Wrap the auction information up in a database.
@@ -40,14 +37,18 @@ public class Table
   }
 
   private Database mDB;
-  private Statement mS;
   private Map<String, TypeColumn> mColumnMap;
+  //  Each column's name, so the rows read from the table all share the same key strings.
+  private Map<String, String> mColumnNames;
   private String mTableName;
-  private DateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
   /**
    * Create or open a database for storing auction information.
    *
+   * All tables share a single Database, and each operation runs on a
+   * connection checked out of its pool, so concurrent callers don't queue
+   * behind one another.
+   *
    * @param tablename - The name of the table this auctionDB reference will be talking to.
    *
    * @throws SQLException - If there's something wrong with the SQL to create the database.
@@ -56,34 +57,37 @@ public class Table
    * @throws ClassNotFoundException - If we can't find the JDBC driver for the database at all.
    */
   public Table(String tablename) throws SQLException, IllegalAccessException, InstantiationException, ClassNotFoundException {
-    mDB = new Database(null);
+    mDB = Database.getShared();
     mTableName = tablename;
-    mDateFormat.setTimeZone(TimeZone.getDefault());
-
-    PreparedStatement query = mDB.prepare("SELECT * FROM " + mTableName);
 
-    establishMetadata(query.getMetaData());
-    mS = mDB.getStatement();
+    PooledConnection conn = mDB.acquire();
+    try {
+      PreparedStatement query = conn.prepare("SELECT * FROM " + mTableName);
+      try {
+        establishMetadata(query.getMetaData());
+      } finally {
+        conn.done(query);
+      }
+    } finally {
+      mDB.release(conn);
+    }
   }
 
   /**
-   * Close the statement, commit any last outstanding data (!?) and shut down the database.
-   * @return The database that was shut down.
+   * Commit any last outstanding data (!?) and return the database, so it can be shut down.
+   * @return The database to be shut down.
    */
   public Database shutdown() {
-    synchronized (mS) {
-      try {
-        mS.close();
-      } catch (SQLException e) {
-        JConfig.log().handleException("Can't shut down database.", e);
-      }
-      mDB.commit();
-      return mDB;
-    }
+    commit();
+    return mDB;
   }
 
+  /**
+   * Commit anything outstanding on the pooled connections.  Connections in
+   * use are committed as they're released, so only the idle ones need it.
+   */
   public void commit() {
-    mDB.commit();
+    mDB.commitIdle();
   }
 
   public Record find(int id) {
@@ -91,15 +95,7 @@ public class Table
   }
 
   public boolean delete(int id) {
-    try {
-      PreparedStatement ps = mDB.prepare("DELETE FROM " + mTableName + " WHERE id = " + id);
-      ps.execute();
-      mDB.commit();
-    } catch (SQLException e) {
-      e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-      return false;
-    }
-    return true;
+    return execute("DELETE FROM " + mTableName + " WHERE id = " + id);
   }
 
   public boolean deleteBy(String condition) {
@@ -109,9 +105,14 @@ public class Table
   public boolean execute(String statement) {
     if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing: " + statement);
     try {
-      PreparedStatement ps = mDB.prepare(statement);
-      ps.execute();
-      mDB.commit();
+      PooledConnection conn = mDB.acquire();
+      try {
+        //  Ad-hoc statements have their values embedded, so don't pollute the prepared statement cache with them.
+        conn.getStatement().execute(statement);
+        conn.commit();
+      } finally {
+        mDB.release(conn);
+      }
     } catch (SQLException e) {
       e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
       return false;
@@ -122,14 +123,17 @@ public class Table
   public Record findFirst(String query) {
     if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fF query: " + query);
 
-    synchronized (mS) {
+    try {
+      PooledConnection conn = mDB.acquire();
       try {
-        ResultSet rs = mS.executeQuery(query);
-        return getFirstResult(rs);
-      } catch (SQLException e) {
-        e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-        return null;
+        ResultSet rs = conn.getStatement().executeQuery(query);
+        return latest(getFirstResult(rs));
+      } finally {
+        mDB.release(conn);
       }
+    } catch (SQLException e) {
+      e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+      return null;
     }
   }
 
@@ -140,14 +144,17 @@ public class Table
   public Record findFirstBy(String query) {
     if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fFB query: " + query);
 
-    synchronized (mS) {
+    try {
+      PooledConnection conn = mDB.acquire();
       try {
-        ResultSet rs = mS.executeQuery(query);
-        return getFirstResult(rs);
-      } catch (SQLException e) {
-        e.printStackTrace();
-        return null;
+        ResultSet rs = conn.getStatement().executeQuery(query);
+        return latest(getFirstResult(rs));
+      } finally {
+        mDB.release(conn);
       }
+    } catch (SQLException e) {
+      e.printStackTrace();
+      return null;
     }
   }
 
@@ -186,17 +193,26 @@ public class Table
     if(order != null) statement.append(" ORDER BY ").append(order);
 
     try {
-      PreparedStatement ps = mDB.prepare(statement.toString());
-      if(keys != null && keys.length != 0) {
-        int colnum = 1;
-        for(int i=0; i<values.length; i++) {
-          setColumn(ps, colnum, keys[i], values[i]);
+      PooledConnection conn = mDB.acquire();
+      try {
+        PreparedStatement ps = conn.prepare(statement.toString());
+        try {
+          if(keys != null && keys.length != 0) {
+            int colnum = 1;
+            for(int i=0; i<values.length; i++) {
+              setColumn(ps, colnum, keys[i], values[i]);
+            }
+          }
+          if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fAM query: " + statement);
+
+          ResultSet rs = execute(ps);
+          return getAllResults(rs);
+        } finally {
+          conn.done(ps);
         }
+      } finally {
+        mDB.release(conn);
       }
-      if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fAM query: " + statement);
-
-      ResultSet rs = execute(ps);
-      return getAllResults(rs);
     } catch (SQLException e) {
       e.printStackTrace();
     }
@@ -223,39 +239,45 @@ public class Table
   }
 
   public List<Record> findAll(String query, int count) {
-    synchronized (mS) {
+    try {
+      PooledConnection conn = mDB.acquire();
       try {
-        mS.setMaxRows(count);
+        Statement s = conn.getStatement();
+        s.setMaxRows(count);
         if (STATEMENT_DEBUG) JConfig.log().logDebug("Executing fA query: " + query);
-        ResultSet rs = mS.executeQuery(query);
+        ResultSet rs = s.executeQuery(query);
         return getAllResults(rs);
-      } catch (SQLException e) {
-        JConfig.log().handleDebugException("Error running query: " + query, e);
-        return null;
+      } finally {
+        mDB.release(conn);
       }
+    } catch (SQLException e) {
+      JConfig.log().handleDebugException("Error running query: " + query, e);
+      return null;
     }
   }
 
-  private Map<String,PreparedStatement> mStatementMap = new HashMap<String,PreparedStatement>();
-
   public List<Record> findAllPrepared(String query, int count, String... parameters) {
     try {
-      PreparedStatement ps = mStatementMap.get(query);
-      if(ps==null) {
-        ps = mDB.prepare(query);
-        mStatementMap.put(query, ps);
-      }
-      ps.setMaxRows(count);
+      PooledConnection conn = mDB.acquire();
+      try {
+        PreparedStatement ps = conn.prepare(query);
+        try {
+          ps.setMaxRows(count);
 
-      int paramIndex = 1;
-      for(String param : parameters) {
-        ps.setString(paramIndex++, param);
-      }
+          int paramIndex = 1;
+          for(String param : parameters) {
+            ps.setString(paramIndex++, param);
+          }
 
-      if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fAP query: " + query);
-      ResultSet rs = execute(ps);
-      ps.clearParameters();
-      return getAllResults(rs);
+          if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing fAP query: " + query);
+          ResultSet rs = execute(ps);
+          return getAllResults(rs);
+        } finally {
+          conn.done(ps);
+        }
+      } finally {
+        mDB.release(conn);
+      }
     } catch (SQLException e) {
       JConfig.log().handleDebugException("Error preparing query: " + query, e);
       return null;
@@ -266,13 +288,24 @@ public class Table
     return ps.executeQuery();
   }
 
+  private String[] getColumnNames(ResultSetMetaData rsm) throws SQLException {
+    String[] names = new String[rsm.getColumnCount()];
+    for (int i = 0; i < names.length; i++) {
+      String name = rsm.getColumnName(i + 1).toLowerCase();
+      String shared = mColumnNames == null ? null : mColumnNames.get(name);
+      names[i] = shared == null ? name : shared;
+    }
+    return names;
+  }
+
   private Record getFirstResult(ResultSet rs) throws SQLException {
     Record rval = new Record();
     ResultSetMetaData rsm = rs.getMetaData();
     if (rsm != null) {
       if (rs.next()) {
-        for (int i = 1; i <= rsm.getColumnCount(); i++) {
-          rval.put(rs.getMetaData().getColumnName(i).toLowerCase(), rs.getString(i));
+        String[] names = getColumnNames(rsm);
+        for (int i = 0; i < names.length; i++) {
+          rval.put(names[i], rs.getString(i + 1));
         }
       }
     }
@@ -284,18 +317,32 @@ public class Table
     ArrayList<Record> rval = new ArrayList<Record>();
     ResultSetMetaData rsm = rs.getMetaData();
     if (rsm != null) {
+      String[] names = getColumnNames(rsm);
       while(rs.next()) {
         Record row = new Record();
-        for (int i = 1; i <= rsm.getColumnCount(); i++) {
-          row.put(rs.getMetaData().getColumnName(i).toLowerCase(), rs.getString(i));
+        for (int i = 0; i < names.length; i++) {
+          row.put(names[i], rs.getString(i + 1));
         }
-        rval.add(row);
+        rval.add(latest(row));
       }
     }
     rs.close();
     return rval;
   }
 
+  /**
+   * @param row - A row as read from the database.
+   *
+   * @return The row as it was last saved, if that's still queued to be
+   * written behind, otherwise the row itself.
+   */
+  private Record latest(Record row) {
+    String id = row.get("id");
+    if(id == null) return row;
+    Record pending = WriteBehind.findShared(this, id);
+    return pending == null ? row : pending;
+  }
+
   public String insertOrUpdate(Record row) {
     String value = row.get("id");
     if(value != null && value.length() == 0) value = null;
@@ -303,55 +350,112 @@ public class Table
   }
 
   public String updateMap(String tableName, String columnKey, String value, Record newRow) {
+    //  The read of the old row (FOR UPDATE) and the update itself have to happen on the same connection.
+    PooledConnection conn;
+    try {
+      conn = mDB.acquire();
+    } catch (SQLException e) {
+      JConfig.log().handleException("Can't get a database connection to update " + tableName + ".", e);
+      return null;
+    }
+
+    try {
+      return updateMap(conn, tableName, columnKey, value, newRow);
+    } finally {
+      mDB.release(conn);
+    }
+  }
+
+  /**
+   * Update an existing row by id, on a connection the caller already holds
+   * (and may have a transaction open on).  Unlike insertOrUpdate, a row
+   * that's no longer there is not re-created.
+   *
+   * @param conn - The connection to write on.
+   * @param row - The row to write; it must have an id.
+   *
+   * @return The id of the updated row, or null if it couldn't be updated.
+   *
+   * @throws SQLException - If reading or writing the row fails; the caller's transaction should be rolled back.
+   */
+  String update(PooledConnection conn, Record row) throws SQLException {
+    String value = row.get("id");
+    if(value == null || value.length() == 0) return null;
+    return writeRow(conn, mTableName, "id", value, row, false);
+  }
+
+  private String updateMap(PooledConnection conn, String tableName, String columnKey, String value, Record newRow) {
+    try {
+      return writeRow(conn, tableName, columnKey, value, newRow, true);
+    } catch (SQLException e) {
+      JConfig.log().handleException("Can't update row (" + columnKey + " = '" + value + "') of " + tableName + ".", e);
+    }
+    return null;
+  }
+
+  private String writeRow(PooledConnection conn, String tableName, String columnKey, String value, Record newRow, boolean insert) throws SQLException {
     Record oldRow = null;
     if(value != null) {
-      oldRow = getRow(tableName, columnKey, value, true);
+      oldRow = readRow(conn, tableName, columnKey, value, true);
     }
     newRow = cleanRow(newRow);
 
+    if(!insert && oldRow == null) return null;
     if(value == null || oldRow == null) {
       //  Magic columns; created_at automatically gets set.
       if (mColumnMap.containsKey("created_at")) {
-        newRow.put("created_at", mDateFormat.format(new Date()));
+        newRow.put("created_at", Record.formatTime(System.currentTimeMillis()));
       }
-      return storeMap(newRow);
+      return storeMap(conn, newRow);
     }
 
     //  Magic columns; updated_at automatically gets set.
     if(mColumnMap.containsKey("updated_at")) {
-      newRow.put("updated_at", mDateFormat.format(new Date()));
+      newRow.put("updated_at", Record.formatTime(System.currentTimeMillis()));
     }
     String sql = createPreparedUpdate(tableName, oldRow, newRow);
     if(sql == null) return null;
 
     sql += " WHERE " + columnKey + " = ?";
+    PreparedStatement ps = conn.prepare(sql);
     try {
-      PreparedStatement ps = mDB.prepare(sql);
-
       int colCount = setPreparedUpdate(ps, oldRow, newRow);
-      if(colCount != -1) {
-        //  Set the 'WHERE' value.
-        setColumn(ps, colCount, columnKey, value);
-        if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing update on: " + sql);
-        ps.execute();
-        mDB.commit();
-        return findKeys(ps);
-      }
-    } catch (SQLException e) {
-      e.printStackTrace();
+      if(colCount == -1) return null;
+
+      //  Set the 'WHERE' value.
+      setColumn(ps, colCount, columnKey, value);
+      if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing update on: " + sql);
+      ps.execute();
+      conn.commit();
+      return findKeys(ps);
+    } finally {
+      conn.done(ps);
     }
-    return null;
   }
 
   private Record cleanRow(Record newRow) {
-    Record cleanedNewRow = new Record();
-    for(String column : newRow.keySet()) {
-      if(hasColumn(column)) {
-        cleanedNewRow.put(column, newRow.get(column));
-      }
+    //  A copy keeps typed values typed, so they can be compared with what's in the database as values, not as text.
+    Record cleanedNewRow = new Record(newRow);
+    Iterator<String> it = cleanedNewRow.keySet().iterator();
+    while(it.hasNext()) {
+      if(!hasColumn(it.next())) it.remove();
     }
-    newRow = cleanedNewRow;
-    return newRow;
+    return cleanedNewRow;
+  }
+
+  /**
+   * A value that's been read as a number or a date may no longer print the
+   * way the database does ("12.5" for "12.50"), so values are compared as
+   * values, and only what's really changed is written.
+   *
+   * @param oldRow - The row as it is in the database.
+   * @param newRow - The row to write.
+   * @param key - The column to compare.
+   *
+   * @return true if the column has changed.
+   */
+  private static boolean isChanged(Record oldRow, Record newRow, String key) {
+    return !Record.sameValue(oldRow.getValue(key), newRow.getValue(key));
   }
 
   public Record findByColumn(String columnKey, String value) {
@@ -363,31 +467,66 @@ public class Table
   }
 
   private Record getRow(String tableName, String columnKey, String value, boolean forUpdate) {
-    Record oldRow = null;
+    try {
+      PooledConnection conn = mDB.acquire();
+      try {
+        return getRow(conn, tableName, columnKey, value, forUpdate);
+      } finally {
+        mDB.release(conn);
+      }
+    } catch (SQLException e) {
+      JConfig.log().handleException("Can't get a database connection to read " + tableName + ".", e);
+      return null;
+    }
+  }
+
+  private Record getRow(PooledConnection conn, String tableName, String columnKey, String value, boolean forUpdate) {
+    try {
+      return readRow(conn, tableName, columnKey, value, forUpdate);
+    } catch (SQLException e) {
+      JConfig.log().handleException("Can't get row" + (forUpdate? " for update":"") + " (" + columnKey + " = '" + value +"').", e);
+    }
+    return null;
+  }
 
+  private Record readRow(PooledConnection conn, String tableName, String columnKey, String value, boolean forUpdate) throws SQLException {
+    String statement = "SELECT * FROM " + tableName;
+    statement += " WHERE " + columnKey + " = ?";
+    if (forUpdate) statement += " FOR UPDATE";
+    PreparedStatement ps = conn.prepare(statement);
     try {
-      String statement = "SELECT * FROM " + tableName;
-      statement += " WHERE " + columnKey + " = ?";
-      if (forUpdate) statement += " FOR UPDATE";
-      PreparedStatement ps = mDB.prepare(statement);
       setColumn(ps, 1, columnKey, value);
       if(STATEMENT_DEBUG) JConfig.log().logDebug("Executing gR statement: " + statement);
       ResultSet rs = execute(ps);
-      oldRow = getFirstResult(rs);
-    } catch (SQLException e) {
-      JConfig.log().handleException("Can't get row" + (forUpdate? " for update":"") + " (" + columnKey + " = '" + value +"').", e);
+      Record row = getFirstResult(rs);
+      //  Reading for an update has to see what's really in the database, to know what to change.
+      return forUpdate ? row : latest(row);
+    } finally {
+      conn.done(ps);
     }
-    return oldRow;
   }
 
   public String storeMap(Record newRow) {
+    try {
+      PooledConnection conn = mDB.acquire();
+      try {
+        return storeMap(conn, newRow);
+      } finally {
+        mDB.release(conn);
+      }
+    } catch (SQLException e) {
+      JConfig.log().handleException("Can't store row in " + mTableName + ".", e);
+      return null;
+    }
+  }
+
+  private String storeMap(PooledConnection conn, Record newRow) throws SQLException {
     String sql = createPreparedInsert(mTableName, newRow);
     if(sql == null) return null;
     StringBuffer values = new StringBuffer();
 
+    PreparedStatement ps = conn.prepare(sql);
     try {
-      PreparedStatement ps = mDB.prepare(sql);
-
       int column = 1;
       for(String key: newRow.keySet()) {
         if(key.equals("id")) continue;
@@ -400,14 +539,15 @@ public class Table
       if(STATEMENT_DEBUG) JConfig.log().logDebug("Storing map: " + sql);
 
       ps.execute();
-      mDB.commit();
+      conn.commit();
       return findKeys(ps);
     } catch (SQLException e) {
-      System.err.println("Command: " + sql);
-      System.err.println("Values:  " + values);
-      JConfig.log().handleException("Can't store row in table.", e);
+      JConfig.log().logDebug("Command: " + sql);
+      JConfig.log().logDebug("Values:  " + values);
+      throw e;
+    } finally {
+      conn.done(ps);
     }
-    return null;
   }
 
   private String findKeys(PreparedStatement ps) throws SQLException {
@@ -450,16 +590,12 @@ public class Table
     boolean anyKeys = false;
     StringBuffer update = new StringBuffer("UPDATE " + tableName + " SET ");
     for (String key : newRow.keySet()) {
-      String newVal = newRow.get(key);
-      String oldVal = oldRow.get(key);
-      if(!(newVal == null && oldVal == null)) {
-        if (newVal == null || oldVal == null || !newVal.equals(oldVal)) {
-          if (anyKeys) {
-            update.append(',');
-          }
-          update.append(key).append("=?");
-          anyKeys = true;
+      if (isChanged(oldRow, newRow, key)) {
+        if (anyKeys) {
+          update.append(',');
         }
+        update.append(key).append("=?");
+        anyKeys = true;
       }
     }
     return anyKeys?update.toString():null;
@@ -469,14 +605,10 @@ public class Table
     boolean errors = false;
     int column = 1;
     for (String key : newRow.keySet()) {
-      String newVal = newRow.get(key);
-      String oldVal = oldRow.get(key);
-      if (!(newVal == null && oldVal == null)) {
-        if (newVal == null || oldVal == null || !newVal.equals(oldVal)) {
-          if(!setColumn(ps, column++, key, newRow.get(key))) {
-            JConfig.log().logMessage("Error from columns: (" + column + "," + key + ", " + mColumnMap.get(key).getType() + ", " + newRow.get(key) + ")");
-            errors = true;
-          }
+      if (isChanged(oldRow, newRow, key)) {
+        if(!setColumn(ps, column++, key, newRow.get(key))) {
+          JConfig.log().logMessage("Error from columns: (" + column + "," + key + ", " + mColumnMap.get(key).getType() + ", " + newRow.get(key) + ")");
+          errors = true;
         }
       }
     }
@@ -544,11 +676,13 @@ public class Table
   private void establishMetadata(ResultSetMetaData rsmd) {
     try {
       mColumnMap = new HashMap<String, TypeColumn>();
+      mColumnNames = new HashMap<String, String>();
       for (int i = 1; i <= rsmd.getColumnCount(); i++) {
         String key = rsmd.getColumnName(i).toLowerCase();
         String value = rsmd.getColumnTypeName(i);
 
         mColumnMap.put(key, new TypeColumn(value, i));
+        mColumnNames.put(key, key);
       }
     } catch (SQLException e) {
       JConfig.log().handleException("Can't load metadata for table " + mTableName + ".", e);
@@ -569,6 +703,10 @@ public class Table
     return Integer.parseInt(count);
   }
 
+  public String getName() {
+    return mTableName;
+  }
+
   public Database getDB() {
     return mDB;
   }
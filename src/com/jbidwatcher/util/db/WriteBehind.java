@@ -0,0 +1,403 @@
+package com.jbidwatcher.util.db;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.config.JConfig;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes updates to existing rows from a background thread, so the threads
+ * saving records don't each wait on a statement and commit of their own.
+ *
+ * Saves are coalesced by table and id; a record saved several times before
+ * it's written out is only written once, as it was last saved.  Once the
+ * first save arrives, the writer waits briefly for more, then writes up to a
+ * batch's worth of rows in a single transaction.
+ *
+ * New rows (which need their id right away) and records which can't afford
+ * to be lost, like snipes, are written immediately via write(), which also
+ * discards any older queued copy of the row.  It only waits for a write of
+ * the same row that's already under way, not for the rest of a batch.
+ * Everything queued is written out by flush() and on shutdown.
+ *
+ * Until a queued row is written, reads of it by the table's finders are
+ * given the queued copy (see findShared), rather than the older row the
+ * database still has.
+ */
+public class WriteBehind {
+  private static final long DEFAULT_DELAY = 250;
+  private static final int DEFAULT_BATCH = 200;
+  private static volatile WriteBehind sInstance = null;
+  private static boolean sConfigured = false;
+
+  private final long mDelay;
+  private final int mBatch;
+
+  //  Queued rows, oldest first, keyed by table name and id.
+  private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+
+  //  Rows being written right now, by key; a row isn't written again until its last write is done,
+  //  so an immediate write can't be overtaken by an older queued copy of the same row, or vice versa.
+  private final Map<String, Record> mWriting = new HashMap<String, Record>();
+  private boolean mClosed = false;
+
+  private long mQueued = 0;
+  private long mCoalesced = 0;
+  private long mImmediate = 0;
+  private long mWritten = 0;
+  private long mFailed = 0;
+  private long mBatches = 0;
+  private int mMaxPending = 0;
+  private long mTotalBatchTime = 0;
+  private long mMaxBatchTime = 0;
+
+  private static class Pending {
+    private final String mKey;
+    private final Table mTable;
+    private final Record mRow;
+
+    private Pending(String key, Table table, Record row) {
+      mKey = key;
+      mTable = table;
+      mRow = row;
+    }
+  }
+
+  /**
+   * @return The shared write-behind queue, or null if saves are configured
+   * (db.write_behind = false, the default) to be written synchronously.
+   */
+  public static synchronized WriteBehind getInstance() {
+    if(!sConfigured) {
+      sConfigured = true;
+      if(JConfig.queryConfiguration("db.write_behind", "false").equals("true")) {
+        sInstance = new WriteBehind(JConfig.queryLongConfiguration("db.write_behind.delay", DEFAULT_DELAY),
+                                    JConfig.queryIntConfiguration("db.write_behind.batch", DEFAULT_BATCH));
+      }
+    }
+
+    return sInstance;
+  }
+
+  /**
+   * Write out everything queued, and stop the shared queue; later saves are
+   * written synchronously, unless it's started again.
+   */
+  public static synchronized void shutdownShared() {
+    if(sInstance != null) sInstance.close();
+    sInstance = null;
+    sConfigured = false;
+  }
+
+  /**
+   * @return Statistics for the shared write-behind queue, or null if it isn't running.
+   */
+  public static synchronized String getSharedStatistics() {
+    return sInstance == null ? null : sInstance.getStatistics();
+  }
+
+  /**
+   * @param t - The table to look in.
+   * @param id - The id of the row.
+   *
+   * @return A copy of the row as it was last saved, if the shared queue
+   * hasn't finished writing it yet, or null if the database is up to date.
+   */
+  public static Record findShared(Table t, String id) {
+    WriteBehind queue = sInstance;
+    return queue == null ? null : queue.find(t, id);
+  }
+
+  /**
+   * @param delay - How long (in milliseconds) to wait for more saves after the first one arrives.
+   * @param batch - The most rows to write in a single transaction.
+   */
+  public WriteBehind(long delay, int batch) {
+    mDelay = Math.max(delay, 0);
+    mBatch = Math.max(batch, 1);
+
+    Thread writer = new Thread("WriteBehind") {
+      public void run() { writeLoop(); }
+    };
+    writer.setDaemon(true);
+    writer.start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread("WriteBehind-Shutdown") {
+      public void run() { flush(); }
+    });
+  }
+
+  private static String key(Table t, String id) {
+    return t.getName() + ':' + id;
+  }
+
+  /**
+   * Queue a copy of an existing row to be written out.
+   *
+   * @param t - The table the row belongs in.
+   * @param row - The row's contents; it must have an id.
+   */
+  public void enqueue(Table t, Record row) {
+    Record copy = new Record(row);
+
+    String key = key(t, copy.get("id"));
+    boolean closed;
+    synchronized(this) {
+      closed = mClosed;
+      if(!closed) {
+        if(mPending.remove(key) != null) mCoalesced++;
+        mPending.put(key, new Pending(key, t, copy));
+        mQueued++;
+        if(mPending.size() > mMaxPending) mMaxPending = mPending.size();
+        notifyAll();
+      }
+    }
+    if(closed) write(t, copy);
+  }
+
+  /**
+   * Write a row immediately, on the caller's thread, dropping any queued copy of it.
+   *
+   * @param t - The table the row belongs in.
+   * @param row - The row to insert or update.
+   *
+   * @return The id of the row, as insertOrUpdate returns it.
+   */
+  public String write(Table t, Record row) {
+    String id = row.get("id");
+    String key = (id == null || id.length() == 0) ? null : key(t, id);
+    synchronized(this) {
+      mImmediate++;
+      if(key != null) {
+        mPending.remove(key);
+        awaitWriting(key);
+        mWriting.put(key, new Record(row));
+      }
+    }
+
+    try {
+      return t.insertOrUpdate(row);
+    } finally {
+      if(key != null) {
+        synchronized(this) {
+          mWriting.remove(key);
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Write out everything queued so far, on the caller's thread, and wait
+   * for any writes already under way to finish.
+   */
+  public void flush() {
+    boolean interrupted = false;
+    while(true) {
+      List<Pending> batch = take(Integer.MAX_VALUE);
+      if(!batch.isEmpty()) {
+        writeTaken(batch);
+      } else {
+        synchronized(this) {
+          if(mPending.isEmpty() && mWriting.isEmpty()) break;
+          //  Whatever's left is being written by another thread; wait for it, then take what it held back.
+          try {
+            wait();
+          } catch(InterruptedException ignored) {
+            interrupted = true;
+          }
+        }
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Write out everything queued, and stop the writer thread.  Rows saved
+   * afterwards are written immediately.
+   */
+  public void close() {
+    synchronized(this) {
+      mClosed = true;
+      notifyAll();
+    }
+    flush();
+  }
+
+  private synchronized Record find(Table t, String id) {
+    String key = key(t, id);
+    Pending queued = mPending.get(key);
+    Record row = queued != null ? queued.mRow : mWriting.get(key);
+    return row == null ? null : new Record(row);
+  }
+
+  /**
+   * Must be called holding the queue's lock.
+   *
+   * @param key - The row to wait for any write of to finish.
+   */
+  private void awaitWriting(String key) {
+    boolean interrupted = false;
+    while(mWriting.containsKey(key)) {
+      try {
+        wait();
+      } catch(InterruptedException ignored) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Take queued rows to write, marking them as being written.  Rows with a
+   * write already under way are left queued until it's done.
+   *
+   * @param max - The most rows to take.
+   *
+   * @return The rows taken, oldest first.
+   */
+  private synchronized List<Pending> take(int max) {
+    List<Pending> batch = new ArrayList<Pending>(Math.min(max, mPending.size()));
+    Iterator<Pending> it = mPending.values().iterator();
+    while(it.hasNext() && batch.size() < max) {
+      Pending p = it.next();
+      if(mWriting.containsKey(p.mKey)) continue;
+      batch.add(p);
+      mWriting.put(p.mKey, p.mRow);
+      it.remove();
+    }
+    return batch;
+  }
+
+  private void writeTaken(List<Pending> batch) {
+    try {
+      writeBatch(batch);
+    } finally {
+      synchronized(this) {
+        for(Pending p : batch) mWriting.remove(p.mKey);
+        notifyAll();
+      }
+    }
+  }
+
+  private void writeLoop() {
+    while(true) {
+      List<Pending> batch;
+      synchronized(this) {
+        try {
+          while(mPending.isEmpty() && !mClosed) wait();
+          if(mClosed) return;
+
+          //  Give more saves a chance to arrive, and be coalesced.
+          long until = System.currentTimeMillis() + mDelay;
+          long remaining;
+          while(!mClosed && mPending.size() < mBatch && (remaining = until - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+          }
+        } catch(InterruptedException ignored) {
+          //  Write out what's there.
+        }
+
+        batch = take(mBatch);
+        if(batch.isEmpty()) {
+          //  Everything queued is being written already; try again once some of it's done.
+          try {
+            wait();
+          } catch(InterruptedException ignored) {
+            //  Just look again.
+          }
+          continue;
+        }
+      }
+
+      writeTaken(batch);
+    }
+  }
+
+  /**
+   * Write a batch of rows inside a single transaction.  If any row fails,
+   * the whole transaction is rolled back, and each row is retried on its own,
+   * so one bad row doesn't lose the rest.
+   *
+   * The rows must have been taken (so they're marked as being written).
+   *
+   * @param batch - The rows to write.
+   */
+  private void writeBatch(List<Pending> batch) {
+    long start = System.nanoTime();
+    int written = 0;
+    Database db = batch.get(0).mTable.getDB();
+    try {
+      PooledConnection conn = db.acquire();
+      try {
+        conn.begin();
+        boolean success = false;
+        try {
+          for(Pending p : batch) {
+            if(p.mTable.update(conn, p.mRow) != null) written++;
+          }
+          success = true;
+        } finally {
+          conn.end(success);
+        }
+      } finally {
+        db.release(conn);
+      }
+    } catch(SQLException e) {
+      JConfig.log().handleException("Batched write of " + batch.size() + " rows failed; writing them individually.", e);
+      written = writeEach(db, batch);
+    } catch(RuntimeException e) {
+      //  A value that can't be converted for its column, most likely; it's just as much the one row's problem.
+      JConfig.log().handleException("Batched write of " + batch.size() + " rows failed; writing them individually.", e);
+      written = writeEach(db, batch);
+    }
+
+    long elapsed = System.nanoTime() - start;
+    synchronized(this) {
+      mBatches++;
+      mWritten += written;
+      mFailed += batch.size() - written;
+      mTotalBatchTime += elapsed;
+      if(elapsed > mMaxBatchTime) mMaxBatchTime = elapsed;
+    }
+  }
+
+  private static int writeEach(Database db, List<Pending> batch) {
+    int written = 0;
+    for(Pending p : batch) {
+      try {
+        PooledConnection conn = db.acquire();
+        try {
+          if(p.mTable.update(conn, p.mRow) != null) written++;
+          conn.commit();
+        } finally {
+          db.release(conn);
+        }
+      } catch(SQLException e) {
+        JConfig.log().handleException("Can't write row " + p.mRow.get("id") + " of " + p.mTable.getName() + ".", e);
+      } catch(RuntimeException e) {
+        JConfig.log().handleException("Can't write row " + p.mRow.get("id") + " of " + p.mTable.getName() + ".", e);
+      }
+    }
+    return written;
+  }
+
+  public synchronized int getPending() { return mPending.size(); }
+
+  public synchronized String getStatistics() {
+    return String.format("WriteBehind: %d pending (max %d), %d queued, %d coalesced, %d immediate, %d written, %d not written, %d batches, batch avg %.2fms max %.2fms",
+        mPending.size(), mMaxPending, mQueued, mCoalesced, mImmediate, mWritten, mFailed, mBatches,
+        mBatches == 0 ? 0.0 : mTotalBatchTime / (mBatches * 1000000.0), mMaxBatchTime / 1000000.0);
+  }
+}
@@ -29,15 +29,28 @@ public class JHTML implements JHTMLListener {
   private Form m_curForm;
   private static boolean do_uber_debug=false;
   private String mCharset;
+  private JHTMLIndex mIndex = null;
 
   //  Extract just the HREF portion (should look for HREF=\")
   private static Pattern urlMatcher = Pattern.compile("(?i)href=\"([^\"#]*)");
+  private static Pattern viewItemMatcher = Pattern.compile("^https?://[a-z]+.ebay.[a-z.]+/(?:itm/)?[A-Za-z0-9-]+/[0-9]+(\\?.*)?");
+  private static Pattern imageMatcher = Pattern.compile(".*img.*src=\"(.*?)\".*");
 
   public JHTML(StringBuffer strBuf) {
     setup();
     m_parser = new JHTMLParser(strBuf, this);
   }
 
+  /**
+   * Build the token lookups from a document Jsoup has already parsed, rather than parsing the source again.
+   *
+   * @param doc - The parsed document.
+   */
+  public JHTML(org.jsoup.nodes.Document doc) {
+    setup();
+    m_parser = new JHTMLParser(doc, this);
+  }
+
   private void setup() {
     caselessContentMap = new HashMap<String, intPair>();
     contentMap = new HashMap<String, intPair>();
@@ -348,6 +361,8 @@ public class JHTML implements JHTMLListener {
    * m_parser.getTokenAt(contentIndex) == newTok.
    */
   public void addToken(htmlToken newToken, int contentIndex) {
+    //  Anything looked up so far is out of date.
+    mIndex = null;
     if(newToken.getTokenType() == htmlToken.HTML_CONTENT) {
       //  Non-numeric single character content tokens suck.
       if(newToken.getToken().length() == 1 && !Character.isDigit(newToken.getToken().charAt(0))) return;
@@ -425,11 +440,15 @@ public class JHTML implements JHTMLListener {
 
   public String getTitle() {
     reset();
-    String tagWalk = getNextTag();
-    while(tagWalk != null && !"title".equalsIgnoreCase(tagWalk)) {
-      tagWalk = getNextTag();
+    int at = index().nextTag("title", 0);
+    while(at != -1 && !"title".equalsIgnoreCase(m_parser.getTokenAt(at).getToken())) {
+      at = index().nextTag("title", at + 1);
+    }
+    if(at == -1) {
+      m_tokenIndex = index().getTagWalkEnd();
+      return null;
     }
-    if(tagWalk == null) return null;
+    m_tokenIndex = at + 1;
 
     htmlToken t = nextToken();
     while(t != null && t.getTokenType() != htmlToken.HTML_CONTENT) t = nextToken();
@@ -489,14 +508,17 @@ public class JHTML implements JHTMLListener {
     return contentList.get(m_contentIndex++);
   }
 
-  public String find(String hunt, boolean ignoreCase) {
-    for (String nextContent : contentList) {
-      if (nextContent.regionMatches(ignoreCase, 0, hunt, 0, hunt.length())) {
-        return nextContent;
-      }
-    }
+  /**
+   * @return The lookups over the document's tokens, building them if they haven't been yet.
+   */
+  private JHTMLIndex index() {
+    if(mIndex == null) mIndex = new JHTMLIndex(contentList, m_parser);
+    return mIndex;
+  }
 
-    return null;
+  public String find(String hunt, boolean ignoreCase) {
+    int at = index().find(hunt, ignoreCase);
+    return at == -1 ? null : contentList.get(at);
   }
 
   private String contentFind(String hunt, boolean ignoreCase) {
@@ -509,45 +531,30 @@ public class JHTML implements JHTMLListener {
   }
 
   public String grep(String match) {
-    Pattern matchPat = Pattern.compile(match);
-    for (String nextContent : contentList) {
-      Matcher m = matchPat.matcher(nextContent);
-      if (m.matches()) {
-        //  This might not be safe...
-        return nextContent;
-      }
-    }
-    return null;
+    int at = index().grep(match, 0);
+    return at == -1 ? null : contentList.get(at);
   }
 
   public Matcher realGrep(String match) {
-    Pattern matchPat = Pattern.compile(match);
-    for (String nextContent : contentList) {
-      Matcher m = matchPat.matcher(nextContent);
-      if (m.matches()) {
-        return m;
-      }
-    }
-    return null;
+    int at = index().grep(match, 0);
+    if(at == -1) return null;
+
+    Matcher m = JHTMLIndex.getPattern(match).matcher(contentList.get(at));
+    m.matches();
+    return m;
   }
 
   private String grepAfter(String match, String ignore) {
-    Pattern toMatch = Pattern.compile(match);
-    Pattern toIgnore = (ignore == null ? null : Pattern.compile(ignore));
-
-    for (Iterator<String> it = contentList.iterator(); it.hasNext();) {
-      String contentStep = it.next();
-      if(toMatch.matcher(contentStep).matches()) {
-        Iterator<String> save = it;
-        if(it.hasNext()) {
-          String potential = it.next();
-          if(ignore == null || !toIgnore.matcher(potential).matches()) {
-            contentLookup(contentStep, false);
-            return potential;
-          }
-        }
-        it = save;
+    JHTMLIndex index = index();
+    int at = index.grep(match, 0);
+    while(at != -1 && at + 1 < contentList.size()) {
+      String potential = contentList.get(at + 1);
+      if(ignore == null || !JHTMLIndex.matches(ignore, potential)) {
+        contentLookup(contentList.get(at), false);
+        return potential;
       }
+      //  The ignored entry isn't itself tried as a match; pick up after it.
+      at = index.grep(match, at + 2);
     }
 
     return null;
@@ -588,7 +595,7 @@ public class JHTML implements JHTMLListener {
   }
 
   public class SequenceResult extends LinkedList<String> {
-    Pattern[] sequence;
+    String[] sequence;
     int nextStartPoint;
 
     public int getNextStartPoint() {
@@ -599,35 +606,32 @@ public class JHTML implements JHTMLListener {
   public SequenceResult findSequence(String... originalSequence) {
     SequenceResult contentSequence = new SequenceResult();
     contentSequence.nextStartPoint = 0;
-    Pattern[] inputPattern = new Pattern[originalSequence.length];
-    int currentPattern = 0;
-    for (String step : originalSequence) {
-      inputPattern[currentPattern++] = Pattern.compile(step);
-    }
-    contentSequence.sequence = inputPattern;
+    contentSequence.sequence = originalSequence;
     return findNextSequence(contentSequence);
   }
 
   public SequenceResult findNextSequence(SequenceResult contentSequence) {
-    int stepwise = contentSequence.nextStartPoint;
-    Pattern[] inputPattern = contentSequence.sequence;
-    List<String> toSearch = contentList.subList(stepwise, contentList.size());
-
-    int index = 0;
-
-    for (String contentStep : toSearch) {
-      stepwise++;
-      if(inputPattern[index].matcher(contentStep).matches()) {
-        contentSequence.add(contentStep);
-        index++;
-        if (index == inputPattern.length) {
-          contentSequence.nextStartPoint = stepwise;
-          return contentSequence;
-        }
-      } else {
-        contentSequence.clear();
-        index = 0;
-      }
+    String[] sequence = contentSequence.sequence;
+    int from = contentSequence.nextStartPoint;
+    //  Any entry that doesn't continue a sequence empties the result.
+    boolean broken = false;
+
+    for(int first = index().grep(sequence[0], from); first != -1; first = index().grep(sequence[0], from)) {
+      if(first != from) broken = true;
+      int step = 1;
+      while(step < sequence.length && first + step < contentList.size() &&
+            JHTMLIndex.matches(sequence[step], contentList.get(first + step))) {
+        step++;
+      }
+      if(step == sequence.length) {
+        if(broken) contentSequence.clear();
+        contentSequence.addAll(contentList.subList(first, first + step));
+        contentSequence.nextStartPoint = first + step;
+        return contentSequence;
+      }
+      //  The entry that broke the sequence isn't tried as the start of a new one.
+      broken = true;
+      from = first + step + 1;
     }
     return null;
   }
@@ -654,18 +658,18 @@ public class JHTML implements JHTMLListener {
 
   public List<String> getAllLinks() {
     List<String> linkTags = null;
-    String curTag = getNextTag();
 
-    while(curTag != null) {
+    for(int at = index().nextTag("a", m_tokenIndex); at != -1; at = index().nextTag("a", at + 1)) {
+      String curTag = m_parser.getTokenAt(at).getToken();
       if(curTag.startsWith("A ") || curTag.startsWith("a ")) {
         if(linkTags == null) {
           linkTags = new ArrayList<String>();
         }
         linkTags.add(curTag);
       }
-
-      curTag = getNextTag();
     }
+    //  Leave the tag pointer where walking through all the tags would.
+    m_tokenIndex = Math.max(m_tokenIndex, index().getTagWalkEnd());
     return linkTags;
   }
 
@@ -710,15 +714,14 @@ public class JHTML implements JHTMLListener {
 
   public List<String> getAllImages() {
     HashSet<String> imgUrls = new HashSet<String>();
-    String curTag = getNextTag();
 
-    while(curTag != null) {
+    for(int at = index().nextTag("img", m_tokenIndex); at != -1; at = index().nextTag("img", at + 1)) {
+      String curTag = m_parser.getTokenAt(at).getToken();
       if(curTag.toLowerCase().startsWith("img ")) {
-        imgUrls.add(deAmpersand(curTag).replaceAll(".*img.*src=\"(.*?)\".*", "$1"));
+        imgUrls.add(imageMatcher.matcher(deAmpersand(curTag)).replaceAll("$1"));
       }
-
-      curTag = getNextTag();
     }
+    m_tokenIndex = Math.max(m_tokenIndex, index().getTagWalkEnd());
 
     return new ArrayList<String>(imgUrls);
   }
@@ -736,7 +739,7 @@ public class JHTML implements JHTMLListener {
 
         boolean isView = false;
         if (viewOnly) {
-          isView = href.matches("^https?://[a-z]+.ebay.[a-z.]+/(?:itm/)?[A-Za-z0-9-]+/[0-9]+(\\?.*)?") || (href.indexOf("ViewItem") != -1);
+          isView = viewItemMatcher.matcher(href).matches() || (href.indexOf("ViewItem") != -1);
           if (isView) {
             href = deAmpersand(href);
           }
@@ -817,6 +820,17 @@ public class JHTML implements JHTMLListener {
     return null;
   }
 
+  public static String getStatistics() {
+    return JHTMLIndex.getStatistics();
+  }
+
+  /**
+   * @return The number of searches of documents' content so far, and the number of content entries they've tested.
+   */
+  public static long[] getSearchCounts() {
+    return new long[] { JHTMLIndex.getSearchCount(), JHTMLIndex.getTestedCount() };
+  }
+
   public void setCharset(String charset) {
     mCharset = charset;
   }
@@ -847,7 +861,7 @@ public class JHTML implements JHTMLListener {
     public boolean rowCellMatches(int row, String regexp) {
       if(data.size() == 0) return false;
       for(String cell : data.get(row)) {
-        if(cell.matches(regexp)) return true;
+        if(JHTMLIndex.getPattern(regexp).matcher(cell).matches()) return true;
       }
       return false;
     }
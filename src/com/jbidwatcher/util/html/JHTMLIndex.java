@@ -0,0 +1,305 @@
+package com.jbidwatcher.util.html;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Lookups over one JHTML document's tokens, built the first time they're
+ * needed, so repeated searches of a document don't each walk all of it.
+ *
+ *  - Content entries are indexed by their first character (case folded), so
+ *    a search for a prefix, or for a regex which starts with literal text,
+ *    only tests the entries that could possibly match.
+ *  - Each regex searched for gets a cursor; how far through the candidates
+ *    it's been tested, and the positions where it matched.  Searching again
+ *    with the same regex, or resuming from further on (as grepAfter and
+ *    findSequence do), picks up where the last search stopped.
+ *  - Tags are indexed by name, for the walks looking for one kind of tag.
+ *
+ * The regexes themselves are compiled once per process, rather than once per
+ * search; the parsers use the same few dozen on every page.
+ */
+class JHTMLIndex {
+  //  Past this many, the cache is thrown out and started over; it's far more than the parsers use.
+  private static final int MAX_PATTERNS = 1024;
+  private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+  private static final Map<String, Expression> sExpressions = new ConcurrentHashMap<String, Expression>();
+
+  private static final AtomicLong sCompiled = new AtomicLong();
+  private static final AtomicLong sSearches = new AtomicLong();
+  private static final AtomicLong sTested = new AtomicLong();
+
+  private final List<String> mContent;
+  private final JHTMLParser mParser;
+  private final Map<String, Cursor> mCursors = new HashMap<String, Cursor>();
+  private Map<Character, Positions> mByPrefix = null;
+  private Map<String, Positions> mByTag = null;
+  private int mTagWalkEnd;
+
+  /**
+   * A compiled regex, and the literal text any string it matches has to start with.
+   */
+  private static class Expression {
+    private final Pattern mPattern;
+    private final String mPrefix;
+
+    private Expression(String regex) {
+      mPattern = Pattern.compile(regex);
+      mPrefix = literalPrefix(regex);
+    }
+
+    private boolean matches(String content) {
+      return content.startsWith(mPrefix) && mPattern.matcher(content).matches();
+    }
+  }
+
+  /**
+   * A growable, sorted list of token or content positions.
+   */
+  private static class Positions {
+    private int[] mItems = new int[8];
+    private int mSize = 0;
+
+    private void add(int position) {
+      if(mSize == mItems.length) mItems = Arrays.copyOf(mItems, mSize * 2);
+      mItems[mSize++] = position;
+    }
+
+    private int get(int i) { return mItems[i]; }
+    private int size() { return mSize; }
+
+    /**
+     * @param position - The position to look for.
+     *
+     * @return The index of the first entry at or after position, or size() if there are none.
+     */
+    private int search(int position) {
+      int low = 0, high = mSize;
+      while(low < high) {
+        int middle = (low + high) >>> 1;
+        if(mItems[middle] < position) low = middle + 1; else high = middle;
+      }
+      return low;
+    }
+  }
+
+  private static final Positions NONE = new Positions();
+
+  /**
+   * Where one regex has got to in the document; candidates before mTested
+   * have been tried, and mMatched holds the ones that matched.
+   */
+  private class Cursor {
+    private final Expression mExpression;
+    private final Positions mCandidates;
+    private final Positions mMatched = new Positions();
+    private int mTested = 0;
+
+    private Cursor(Expression expression) {
+      mExpression = expression;
+      mCandidates = expression.mPrefix.length() == 0 ? null : getPrefixed(expression.mPrefix.charAt(0));
+    }
+
+    private int next(int from) {
+      int at = mMatched.search(from);
+      if(at < mMatched.size()) return mMatched.get(at);
+
+      int total = mCandidates == null ? mContent.size() : mCandidates.size();
+      int tested = 0;
+      int found = -1;
+      while(found == -1 && mTested < total) {
+        int position = mCandidates == null ? mTested : mCandidates.get(mTested);
+        mTested++;
+        tested++;
+        if(mExpression.matches(mContent.get(position))) {
+          mMatched.add(position);
+          if(position >= from) found = position;
+        }
+      }
+      sTested.addAndGet(tested);
+      return found;
+    }
+  }
+
+  JHTMLIndex(List<String> content, JHTMLParser parser) {
+    mContent = content;
+    mParser = parser;
+  }
+
+  /**
+   * @param regex - The regular expression to get.
+   *
+   * @return The compiled regex, from the cache if it's been used before.
+   */
+  static Pattern getPattern(String regex) {
+    return getExpression(regex).mPattern;
+  }
+
+  private static Expression getExpression(String regex) {
+    Expression e = sExpressions.get(regex);
+    if(e == null) {
+      e = new Expression(regex);
+      if(sExpressions.size() >= MAX_PATTERNS) sExpressions.clear();
+      sExpressions.put(regex, e);
+      sCompiled.incrementAndGet();
+    }
+    return e;
+  }
+
+  /**
+   * Work out the literal text at the start of a regex, which anything it
+   * matches (in its entirety) has to start with.  It's conservative; any
+   * alternation, or anything but plain characters at the start, and there's
+   * no prefix.
+   *
+   * @param regex - The regex to examine.
+   *
+   * @return The literal prefix, or an empty string if there isn't one.
+   */
+  private static String literalPrefix(String regex) {
+    if(regex.indexOf('|') != -1) return "";
+
+    int i = regex.startsWith("^") ? 1 : 0;
+    int start = i;
+    while(i < regex.length() && METACHARACTERS.indexOf(regex.charAt(i)) == -1) i++;
+    int end = i;
+    //  A following ?, * or {0,...} makes the last character optional.
+    if(end > start && i < regex.length() && "?*{".indexOf(regex.charAt(i)) != -1) end--;
+    return regex.substring(start, end);
+  }
+
+  static boolean matches(String regex, String content) {
+    sTested.incrementAndGet();
+    return getExpression(regex).matches(content);
+  }
+
+  /**
+   * @param regex - The regex to look for.
+   * @param from - The first content position to consider.
+   *
+   * @return The first content position at or after from that the regex matches in its entirety, or -1 if there are none.
+   */
+  int grep(String regex, int from) {
+    sSearches.incrementAndGet();
+    Cursor c = mCursors.get(regex);
+    if(c == null) {
+      c = new Cursor(getExpression(regex));
+      mCursors.put(regex, c);
+    }
+    return c.next(from);
+  }
+
+  /**
+   * @param hunt - The text to look for.
+   * @param ignoreCase - Whether the case of the text matters.
+   *
+   * @return The first content position which starts with the text, or -1 if there are none.
+   */
+  int find(String hunt, boolean ignoreCase) {
+    sSearches.incrementAndGet();
+    if(hunt.length() == 0) return mContent.isEmpty() ? -1 : 0;
+
+    Positions candidates = getPrefixed(hunt.charAt(0));
+    int i;
+    for(i = 0; i < candidates.size(); i++) {
+      int position = candidates.get(i);
+      if(mContent.get(position).regionMatches(ignoreCase, 0, hunt, 0, hunt.length())) break;
+    }
+    sTested.addAndGet(i);
+    return i == candidates.size() ? -1 : candidates.get(i);
+  }
+
+  //  The same folding String.regionMatches uses to ignore case.
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private Positions getPrefixed(char first) {
+    if(mByPrefix == null) {
+      mByPrefix = new HashMap<Character, Positions>();
+      for(int i = 0; i < mContent.size(); i++) {
+        String content = mContent.get(i);
+        if(content.length() == 0) continue;
+        Character key = fold(content.charAt(0));
+        Positions p = mByPrefix.get(key);
+        if(p == null) {
+          p = new Positions();
+          mByPrefix.put(key, p);
+        }
+        p.add(i);
+      }
+    }
+    Positions p = mByPrefix.get(fold(first));
+    return p == null ? NONE : p;
+  }
+
+  private static String tagName(String tag) {
+    int i = 0;
+    while(i < tag.length() && !Character.isWhitespace(tag.charAt(i))) i++;
+    return tag.substring(0, i).toLowerCase();
+  }
+
+  private void indexTags() {
+    mByTag = new HashMap<String, Positions>();
+    int count = mParser.getTokenCount();
+    mTagWalkEnd = count;
+    for(int i = 0; i < count; i++) {
+      htmlToken tok = mParser.getTokenAt(i);
+      if(tok.getTokenType() == htmlToken.HTML_EOF) {
+        mTagWalkEnd = i + 1;
+        break;
+      }
+      if(tok.getTokenType() == htmlToken.HTML_CONTENT) continue;
+
+      String name = tagName(tok.getToken());
+      Positions p = mByTag.get(name);
+      if(p == null) {
+        p = new Positions();
+        mByTag.put(name, p);
+      }
+      p.add(i);
+    }
+  }
+
+  /**
+   * @param name - The tag name (lower case, with a leading / for end tags).
+   * @param from - The first token position to consider.
+   *
+   * @return The first token position at or after from with a tag of that name, or -1 if there are none before the end of the document.
+   */
+  int nextTag(String name, int from) {
+    if(mByTag == null) indexTags();
+    Positions p = mByTag.get(name);
+    if(p == null) return -1;
+    int at = p.search(from);
+    return at == p.size() ? -1 : p.get(at);
+  }
+
+  /**
+   * @return The token position a walk through the tags (with getNextTag) ends up at, once it runs out.
+   */
+  int getTagWalkEnd() {
+    if(mByTag == null) indexTags();
+    return mTagWalkEnd;
+  }
+
+  static long getSearchCount() { return sSearches.get(); }
+  static long getTestedCount() { return sTested.get(); }
+
+  static String getStatistics() {
+    long searches = sSearches.get();
+    long tested = sTested.get();
+    return String.format("JHTML: %d patterns cached (%d compiled), %d searches, %d entries tested (%.1f per search)",
+        sExpressions.size(), sCompiled.get(), searches, tested, searches == 0 ? 0.0 : tested / (double) searches);
+  }
+}
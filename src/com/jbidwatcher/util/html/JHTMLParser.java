@@ -7,6 +7,9 @@ package com.jbidwatcher.util.html;
 
 import com.jbidwatcher.util.config.JConfig;
 import com.jbidwatcher.util.xml.XMLElement;
+import org.jsoup.nodes.*;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -25,6 +28,7 @@ public class JHTMLParser {
   private List<htmlToken> m_tokens;
   private JHTMLListener m_notify = null;
   private final static boolean do_uber_debug = false;
+  private final static Pattern nbspMatcher = Pattern.compile("&nbsp;?");
 
   public JHTMLParser(StringBuffer sb, JHTMLListener notify) {
     m_notify = notify;
@@ -37,11 +41,55 @@ public class JHTMLParser {
     setup();
   }
 
+  /**
+   * Build the token list from an already-parsed Jsoup document, instead of
+   * re-tokenizing the source text; the page only gets parsed once, and the
+   * listener sees the same kinds of tokens it would from parse(StringBuffer).
+   *
+   * @param doc - The parsed document to walk.
+   * @param notify - The listener to tell about each token.
+   */
+  public JHTMLParser(Document doc, JHTMLListener notify) {
+    m_notify = notify;
+    setup();
+    parse(doc);
+  }
+
+  /**
+   * Tokenize a page with a particular tokenizer, rather than the configured one.
+   *
+   * @param page - The page to tokenize.
+   * @param notify - The listener to tell about each token.
+   * @param streaming - true to use parseStream, false to use parseCopy.
+   */
+  public JHTMLParser(CharSequence page, JHTMLListener notify, boolean streaming) {
+    m_notify = notify;
+    setup();
+    if(streaming) {
+      parseStream(page);
+    } else {
+      parseCopy(page instanceof StringBuffer ? (StringBuffer) page : new StringBuffer(page));
+    }
+  }
+
   private void setup() {
     m_tokens = Collections.synchronizedList(new ArrayList<htmlToken>());
   }
 
+  /**
+   * Tokenize a page; with the streaming tokenizer unless html.stream_tokenizer is false.
+   *
+   * @param trueBuffer - The page to tokenize.
+   */
   protected void parse(StringBuffer trueBuffer) {
+    if(JConfig.queryConfiguration("html.stream_tokenizer", "true").equals("true")) {
+      parseStream(trueBuffer);
+    } else {
+      parseCopy(trueBuffer);
+    }
+  }
+
+  protected void parseCopy(StringBuffer trueBuffer) {
     boolean inQuote=false, inTag=false, inComment=false;
     char ch, prev = '\0', next = '\0';
 
@@ -184,6 +232,203 @@ public class JHTMLParser {
     addToken("", htmlToken.HTML_EOF);
   }
 
+  /**
+   * Tokenize a page in one pass, producing exactly the tokens parseCopy
+   * does.  Instead of copying the page twice over to fix up the title and
+   * strip &lt;nobr&gt; tags, it reads through a NormalizedPage, which does
+   * that as it goes.  The configuration is read once, up front, and the
+   * tokens go into an unsynchronized list.
+   *
+   * @param page - The page to tokenize.
+   */
+  protected void parseStream(CharSequence page) {
+    boolean showBadHTML = JConfig.queryConfiguration("show.badhtml", "false").equals("true");
+    boolean debugging = JConfig.debugging;
+    NormalizedPage text = new NormalizedPage(page, JConfig.queryConfiguration("ebay.titleFix", "true").equals("true"));
+    //  Roughly one token per 40 characters, on eBay's pages.
+    List<htmlToken> tokens = new ArrayList<htmlToken>(Math.max(m_tokens.size() + page.length() / 40, 16));
+    tokens.addAll(m_tokens);
+    m_tokens = tokens;
+
+    boolean inQuote=false, inTag=false, inComment=false;
+    char ch, prev = '\0', next = '\0';
+    boolean spitNextTag = false;
+    int start = 0;
+    int firstClose = 0;
+    boolean suspicious = false;
+    //  The characters last read, and where from; stepping forward one at a time, each only needs reading once.
+    int chAt = -1, nextAt = -1;
+    char lastCh = '\0', nextCh = '\0';
+    for(int charStep = 0; text.has(charStep); charStep++) {
+      ch = nextAt == charStep ? nextCh : text.charAt(charStep);
+
+      if(charStep>1) prev = chAt == charStep-1 ? lastCh : text.charAt(charStep-1);
+      if(text.has(charStep+1)) {
+        next = nextCh = text.charAt(charStep+1);
+        nextAt = charStep+1;
+      }
+      chAt = charStep;
+      lastCh = ch;
+
+      if(inTag) {
+        // quoting disabled inside of comment
+        if(!inComment) {
+          if(inQuote && ch == '>') {
+            suspicious = true;
+            if(debugging && showBadHTML) {
+              int pre_nl=0, post_nl=0, i;
+              for(i=charStep-1; pre_nl == 0 && i>0 && i>(charStep-40); i--) if(text.charAt(i) == '\n') pre_nl = i+1;
+              if(pre_nl == 0) pre_nl = i;
+              for(i=charStep+1; post_nl == 0 && text.has(i) && i<(charStep+20); i++) if(text.charAt(i) == '\n') post_nl = i;
+              if(post_nl == 0) post_nl = i;
+              String oddText = text.substring(pre_nl, post_nl);
+              if(oddText.indexOf("type=\"submit\"") == -1 &&
+                 oddText.indexOf("name=\"Submit\"") == -1 &&
+                 !oddText.startsWith("<META")) {
+                JConfig.log().logMessage("Found an unusual tag @ " + charStep + "...  (" + oddText + ")");
+              }
+            }
+            firstClose = charStep;
+          }
+          if(ch == '"') {
+            //  Same check for an unclosed quote as parseCopy.
+            if(suspicious && inQuote && prev == '=') {
+              charStep=firstClose;
+
+              if(charStep>1) prev = text.charAt(charStep-1);
+              if(text.has(charStep+1)) next = text.charAt(charStep+1);
+
+              inQuote = false;
+              suspicious = false;
+              JConfig.log().logDebug("Potential quote error!");
+              spitNextTag = true;
+            }
+            //  This prevents opening a quote at the end of a tag.
+            if(!inQuote && prev != '=' && next == '>') {
+              if(showBadHTML) JConfig.log().logDebug("Quote error!");
+              spitNextTag = true;
+            } else {
+              inQuote = !inQuote;
+            }
+          }
+        }
+        // parsing disabled inside of quoted string
+        if(!inQuote) {
+          // end Tag and start Content
+          if(ch == '>') {
+            if(!inComment) {
+              //  We've ended a tag, outside a quote.  It's all good.
+              suspicious = false;
+              String tag = text.substring(start, charStep);
+              addToken(tag, htmlToken.HTML_TAG);
+              if(spitNextTag) {
+                if(showBadHTML) JConfig.log().logDebug("Added 'bad' tag: <" + tag + ">");
+                spitNextTag = false;
+              }
+            } else {
+              // Comment ends with "-->"
+              inComment = (prev != '-') || (text.charAt(charStep-2) != '-');
+            }
+            inTag = inComment;
+            if(!inTag) start = charStep+1;  // start of content
+          }
+        }
+      } else {
+        // in Content
+        if(ch == '<') {
+          // end Content and start Tag; whitespace-only content is never a token, so don't bother copying it.
+          if(start != charStep && !text.isBlank(start, charStep)) {
+            addToken(text.substring(start, charStep), htmlToken.HTML_CONTENT);
+          }
+
+          inTag = true;
+
+          // Comments begin with "<!--"
+          inComment = text.has(charStep+3) && (next == '!')
+                   && (text.charAt(charStep+2) == '-')
+                   && (text.charAt(charStep+3) == '-');
+
+          start = charStep+1;  // start of tag
+
+          if(inComment) charStep += 3;
+        }
+      }
+    }
+
+    addToken("", htmlToken.HTML_EOF);
+  }
+
+  /**
+   * Walk the document tree, emitting a tag token on entering each element, an
+   * end tag on leaving each non-void element, and content tokens for the text
+   * between them.  Comments are dropped and &lt;nobr&gt; tags are stripped,
+   * just as the text parser does.  Text and attribute values are re-escaped,
+   * so content tokens look the way they did in the page source.
+   *
+   * @param doc - The parsed document to tokenize.
+   */
+  protected void parse(Document doc) {
+    final boolean titleFix = JConfig.queryConfiguration("ebay.titleFix", "true").equals("true");
+    new NodeTraversor(new NodeVisitor() {
+      public void head(Node node, int depth) {
+        if(node instanceof Element) {
+          Element e = (Element) node;
+          if(e.tagName().equals("nobr") || node instanceof Document) return;
+          StringBuilder tag = new StringBuilder(e.tagName());
+          for(Attribute attr : e.attributes()) {
+            tag.append(' ').append(attr.getKey()).append("=\"").append(escape(attr.getValue(), true)).append('"');
+          }
+          addToken(tag.toString(), htmlToken.HTML_TAG);
+        } else if(node instanceof TextNode) {
+          String text = escape(((TextNode) node).getWholeText(), false);
+          //  Match the title quoting parse(StringBuffer) does on the raw source.
+          if(titleFix && node.parent() instanceof Element && ((Element) node.parent()).tagName().equals("title")) {
+            text = XMLElement.encodeString(text);
+          }
+          addToken(text, htmlToken.HTML_CONTENT);
+        } else if(node instanceof DataNode) {
+          addToken(((DataNode) node).getWholeData(), htmlToken.HTML_CONTENT);
+        } else if(node instanceof DocumentType) {
+          String doctype = node.outerHtml().trim();
+          addToken(doctype.substring(1, doctype.length() - 1), htmlToken.HTML_TAG);
+        }
+      }
+
+      public void tail(Node node, int depth) {
+        if(node instanceof Element && !(node instanceof Document)) {
+          Element e = (Element) node;
+          if(e.tagName().equals("nobr") || e.tag().isEmpty()) return;
+          addToken("/" + e.tagName(), htmlToken.HTML_TAG);
+        }
+      }
+    }).traverse(doc);
+
+    addToken("", htmlToken.HTML_EOF);
+  }
+
+  private static String escape(String raw, boolean inAttribute) {
+    StringBuilder sb = null;
+    int len = raw.length();
+    for(int i=0; i<len; i++) {
+      char ch = raw.charAt(i);
+      String entity = null;
+      switch(ch) {
+        case '&': entity = "&amp;"; break;
+        case '<': entity = "&lt;"; break;
+        case '>': entity = "&gt;"; break;
+        case '"': if(inAttribute) entity = "&quot;"; break;
+      }
+      if(entity != null) {
+        if(sb == null) sb = new StringBuilder(len + 16).append(raw, 0, i);
+        sb.append(entity);
+      } else if(sb != null) {
+        sb.append(ch);
+      }
+    }
+
+    return sb == null ? raw : sb.toString();
+  }
+
   private void addToken(String newToken, int tokType) {
     htmlToken finalToken;
 
@@ -238,7 +483,7 @@ public class JHTMLParser {
   //  Strip whitespace, including 'faked' whitespace (&nbsp;) from both sides of the provided string,
   //  and faked whitespace from the inside of the string.
   private String stripWhitespace(String cleanupString) {
-    String resultString = cleanupString.replaceAll("&nbsp;?", " ");
+    String resultString = cleanupString.indexOf("&nbsp") == -1 ? cleanupString : nbspMatcher.matcher(cleanupString).replaceAll(" ");
 
     if(resultString.length() != 0) {
       resultString = resultString.replace((char)160, (char)32);
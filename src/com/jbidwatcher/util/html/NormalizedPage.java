@@ -0,0 +1,237 @@
+package com.jbidwatcher.util.html;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.xml.XMLElement;
+
+import java.util.Arrays;
+
+/**
+ * A page's text as JHTMLParser tokenizes it, read straight out of the page
+ * rather than copied.  &lt;nobr&gt; and &lt;/nobr&gt; are skipped, and with
+ * the title fix on, each &lt;title&gt;...&lt;/title&gt; on a line reads as
+ * the first one on the page, XML-encoded; the same text that rewriting the
+ * page with the regular expressions in parseCopy() produces.
+ *
+ * The text is a series of runs of the page, with the title replacements in
+ * between.  Each run is found just before the tokenizer reaches it, by
+ * looking ahead to the next tag that needs changing.  The page is read a
+ * window at a time, rather than a character at a time; every call on a
+ * StringBuffer takes its lock.
+ */
+class NormalizedPage {
+  private static final String TITLE = "<title>";
+  private static final String END_TITLE = "</title>";
+  private static final int WINDOW = 4096;
+
+  private final CharSequence mSource;
+  private final int mSourceLength;
+  private final boolean mTitleFix;
+  private String mTitle = null;
+
+  //  The runs found so far; where each starts in the normalized text, and where it comes
+  //  from, either an offset into the page, or (when mReplacement isn't null) replacement text.
+  private int mRuns = 0;
+  private int[] mStart = new int[16];
+  private int[] mFrom = new int[16];
+  private String[] mReplacement = new String[16];
+  private int mLength = 0;
+  private int mScanned = 0;
+
+  //  The run the last character came from, as most reads are close to the one before.
+  private int mRun = -1;
+  private int mRunStart = 0;
+  private int mRunEnd = 0;
+  private int mRunFrom = 0;
+  private String mRunText = null;
+
+  private final char[] mWindow;
+  private int mWindowStart = 0;
+  private int mWindowLength = 0;
+
+  NormalizedPage(CharSequence source, boolean titleFix) {
+    mSource = source;
+    mSourceLength = source.length();
+    mTitleFix = titleFix;
+    mWindow = new char[Math.min(WINDOW, mSourceLength)];
+  }
+
+  private char sourceChar(int at) {
+    int offset = at - mWindowStart;
+    if(offset < 0 || offset >= mWindowLength) {
+      //  Keep a little of what comes before, for looking back at the last few characters.
+      mWindowStart = Math.max(0, Math.min(at - mWindow.length / 8, mSourceLength - mWindow.length));
+      mWindowLength = mWindow.length;
+      if(mSource instanceof StringBuffer) {
+        ((StringBuffer) mSource).getChars(mWindowStart, mWindowStart + mWindowLength, mWindow, 0);
+      } else if(mSource instanceof String) {
+        ((String) mSource).getChars(mWindowStart, mWindowStart + mWindowLength, mWindow, 0);
+      } else {
+        for(int i = 0; i < mWindowLength; i++) mWindow[i] = mSource.charAt(mWindowStart + i);
+      }
+      offset = at - mWindowStart;
+    }
+    return mWindow[offset];
+  }
+
+  /**
+   * @param i - A position in the normalized text.
+   *
+   * @return true if the normalized text is longer than i.
+   */
+  boolean has(int i) {
+    while(i >= mLength && mScanned < mSourceLength) scan();
+    return i < mLength;
+  }
+
+  char charAt(int i) {
+    if(i < mRunStart || i >= mRunEnd) seek(i);
+    return mRunText == null ? sourceChar(mRunFrom + i - mRunStart) : mRunText.charAt(i - mRunStart);
+  }
+
+  /**
+   * @param start - The first position.
+   * @param end - The position just past the last.
+   *
+   * @return true if every character between them is whitespace (or a control character), as String.trim() sees it.
+   */
+  boolean isBlank(int start, int end) {
+    for(int i = start; i < end; i++) {
+      if(charAt(i) > ' ') return false;
+    }
+    return true;
+  }
+
+  String substring(int start, int end) {
+    if(start == end) return "";
+    seek(start);
+    if(end <= mRunEnd) {
+      int offset = start - mRunStart;
+      if(mRunText != null) return mRunText.substring(offset, offset + end - start);
+
+      int from = mRunFrom + offset;
+      if(from >= mWindowStart && from + end - start <= mWindowStart + mWindowLength) {
+        return new String(mWindow, from - mWindowStart, end - start);
+      }
+      return mSource.subSequence(from, from + end - start).toString();
+    }
+
+    StringBuilder sb = new StringBuilder(end - start);
+    for(int at = start; at < end; at = mRunEnd) {
+      seek(at);
+      int offset = at - mRunStart;
+      int count = Math.min(end, mRunEnd) - at;
+      if(mRunText == null) {
+        sb.append(mSource, mRunFrom + offset, mRunFrom + offset + count);
+      } else {
+        sb.append(mRunText, offset, offset + count);
+      }
+    }
+    return sb.toString();
+  }
+
+  private void seek(int i) {
+    if(!has(i)) throw new StringIndexOutOfBoundsException(i);
+
+    int run;
+    if(mRun + 1 < mRuns && i >= mStart[mRun + 1] && (mRun + 2 == mRuns || i < mStart[mRun + 2])) {
+      run = mRun + 1;
+    } else {
+      run = Arrays.binarySearch(mStart, 0, mRuns, i);
+      if(run < 0) run = -run - 2;
+    }
+    mRun = run;
+    mRunStart = mStart[run];
+    mRunEnd = run + 1 < mRuns ? mStart[run + 1] : mLength;
+    mRunFrom = mFrom[run];
+    mRunText = mReplacement[run];
+  }
+
+  private void addRun(int from, String replacement, int length) {
+    if(length == 0) return;
+    if(mRuns == mStart.length) {
+      mStart = Arrays.copyOf(mStart, mRuns * 2);
+      mFrom = Arrays.copyOf(mFrom, mRuns * 2);
+      mReplacement = Arrays.copyOf(mReplacement, mRuns * 2);
+    }
+    mStart[mRuns] = mLength;
+    mFrom[mRuns] = from;
+    mReplacement[mRuns] = replacement;
+    mRuns++;
+    mLength += length;
+  }
+
+  /**
+   * Find the next run of the page, up to the next tag that has to be
+   * stripped or replaced, or the end of the page.
+   */
+  private void scan() {
+    int from = mScanned;
+    for(int at = from; at < mSourceLength; at++) {
+      if(sourceChar(at) != '<') continue;
+
+      int skip = nobrLength(at);
+      if(skip != 0) {
+        addRun(from, null, at - from);
+        mScanned = at + skip;
+        return;
+      }
+      if(mTitleFix) {
+        int end = titleEnd(at);
+        if(end != -1) {
+          addRun(from, null, at - from);
+          if(mTitle == null) {
+            mTitle = TITLE + XMLElement.encodeString(mSource.subSequence(at + TITLE.length(), end - END_TITLE.length()).toString()) + END_TITLE;
+          }
+          addRun(0, mTitle, mTitle.length());
+          mScanned = end;
+          return;
+        }
+      }
+    }
+    addRun(from, null, mSourceLength - from);
+    mScanned = mSourceLength;
+  }
+
+  private boolean startsWith(String prefix, int at) {
+    if(at + prefix.length() > mSourceLength) return false;
+    for(int i = 0; i < prefix.length(); i++) {
+      if(sourceChar(at + i) != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private int nobrLength(int at) {
+    if(startsWith("<nobr>", at)) return 6;
+    if(startsWith("</nobr>", at)) return 7;
+    return 0;
+  }
+
+  private static boolean isLineTerminator(char ch) {
+    return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+  }
+
+  /**
+   * Match &lt;title&gt;(.*)&lt;/title&gt; at a position; as '.' doesn't match
+   * line terminators, and '*' is greedy, it runs to the last &lt;/title&gt;
+   * on the same line.
+   *
+   * @param at - The position to match at.
+   *
+   * @return The position just past the match, or -1 if it doesn't match.
+   */
+  private int titleEnd(int at) {
+    if(!startsWith(TITLE, at)) return -1;
+
+    int contentStart = at + TITLE.length();
+    int lineEnd = contentStart;
+    while(lineEnd < mSourceLength && !isLineTerminator(sourceChar(lineEnd))) lineEnd++;
+    for(int close = lineEnd - END_TITLE.length(); close >= contentStart; close--) {
+      if(startsWith(END_TITLE, close)) return close + END_TITLE.length();
+    }
+    return -1;
+  }
+}
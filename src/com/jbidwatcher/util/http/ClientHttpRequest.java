@@ -65,7 +65,7 @@ public class ClientHttpRequest {
    *
    * @param url the URL to send request to
    */
-  public ClientHttpRequest(URL url) throws IOException { this(url.openConnection()); }
+  public ClientHttpRequest(URL url) throws IOException { this(ConnectionManager.getInstance().open(url)); }
 
   /**
    * Creates a new multipart POST HTTP request for a specified URL string
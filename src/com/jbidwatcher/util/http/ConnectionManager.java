@@ -0,0 +1,165 @@
+package com.jbidwatcher.util.http;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Opens the connections Http makes, and finishes with them so they can be
+ * reused.
+ *
+ * HttpURLConnection keeps finished connections open in a per-host pool, and
+ * hands them to the next request to the same host, which saves a TCP (and
+ * for https, TLS) handshake.  A connection only goes back in the pool once
+ * its response has been read to the end and closed, though; a redirect whose
+ * body was never read, or an error page, costs a fresh connection next time.
+ * release() reads out what's left (within reason) and closes it.
+ *
+ * Each connection gets its connect and read timeouts, and its proxy, from
+ * the configuration here, rather than relying on JVM-wide system properties:
+ *
+ *  - http.connect_timeout, http.read_timeout: in milliseconds (5000, 15000).
+ *  - http.keepalive: false asks servers to close each connection after one request.
+ *  - http.max_idle: how many idle connections to keep per host (8); read once, at startup.
+ *
+ * The JVM reads its keep-alive settings when it makes its first connection,
+ * so getInstance() has to be called before anything connects (JBidWatch
+ * does so as soon as the configuration is loaded); called any later, the
+ * JVM's defaults stay in effect.
+ */
+public class ConnectionManager {
+  private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+  private static final int DEFAULT_READ_TIMEOUT = 15000;
+  private static final int DEFAULT_MAX_IDLE = 8;
+  //  Past this much unread response, it's cheaper to drop the connection than to read it out.
+  private static final int MAX_DRAIN = 64 * 1024;
+  private static ConnectionManager sInstance = null;
+
+  private long mOpened = 0;
+  private long mReleased = 0;
+  private long mDrained = 0;
+  private long mDropped = 0;
+
+  public static synchronized ConnectionManager getInstance() {
+    if(sInstance == null) {
+      //  The JVM reads these once, when it makes its first connection; an explicit -D setting wins.
+      if(System.getProperty("http.keepAlive") == null) System.setProperty("http.keepAlive", "true");
+      if(System.getProperty("http.maxConnections") == null) {
+        System.setProperty("http.maxConnections", Integer.toString(JConfig.queryIntConfiguration("http.max_idle", DEFAULT_MAX_IDLE)));
+      }
+      sInstance = new ConnectionManager();
+    }
+    return sInstance;
+  }
+
+
+  /**
+   * Open a connection, set up with the configured proxy and timeouts.
+   *
+   * @param url - The URL to connect to.
+   *
+   * @return - An unconnected URLConnection for the URL.
+   * @throws IOException - If the connection can't be created.
+   */
+  public URLConnection open(URL url) throws IOException {
+    Proxy proxy = getProxy(url);
+    URLConnection uc = proxy == null ? url.openConnection() : url.openConnection(proxy);
+    uc.setConnectTimeout(JConfig.queryIntConfiguration("http.connect_timeout", DEFAULT_CONNECT_TIMEOUT));
+    uc.setReadTimeout(JConfig.queryIntConfiguration("http.read_timeout", DEFAULT_READ_TIMEOUT));
+    if(uc instanceof HttpURLConnection && JConfig.queryConfiguration("http.keepalive", "true").equals("false")) {
+      uc.setRequestProperty("Connection", "close");
+    }
+    synchronized(this) {
+      mOpened++;
+    }
+    return uc;
+  }
+
+  /**
+   * Work out the proxy to use for a URL, from the firewall configuration.
+   *
+   * @param url - The URL being connected to.
+   *
+   * @return - The proxy to connect through, or null to use the JVM's default.
+   */
+  private static Proxy getProxy(URL url) {
+    String mode = JConfig.queryConfiguration("proxyfirewall", "none");
+    if(mode.equals("firewall")) {
+      String host = JConfig.queryConfiguration("firewall.host", null);
+      if(host != null) return makeProxy(Proxy.Type.SOCKS, host, JConfig.queryConfiguration("firewall.port", "1080"));
+    }
+
+    if(url.getProtocol().equals("https")) {
+      if(JConfig.queryConfiguration("proxy.https.set", "false").equals("true")) {
+        return makeProxy(Proxy.Type.HTTP, JConfig.queryConfiguration("proxy.https.host", null), JConfig.queryConfiguration("proxy.https.port", null));
+      }
+    } else if(mode.equals("proxy")) {
+      return makeProxy(Proxy.Type.HTTP, JConfig.queryConfiguration("proxy.host", null), JConfig.queryConfiguration("proxy.port", null));
+    }
+    return null;
+  }
+
+  private static Proxy makeProxy(Proxy.Type type, String host, String port) {
+    if(host == null || port == null) return null;
+    try {
+      return new Proxy(type, InetSocketAddress.createUnresolved(host, Integer.parseInt(port)));
+    } catch(IllegalArgumentException badPort) {
+      return null;
+    }
+  }
+
+  /**
+   * Finish with a connection whose response won't be read (or was only
+   * partly read), so it can go back in the pool.
+   *
+   * @param uc - The connection to finish with; it's safe to pass one that's already been read and closed.
+   */
+  public void release(URLConnection uc) {
+    if(!(uc instanceof HttpURLConnection)) return;
+    HttpURLConnection huc = (HttpURLConnection) uc;
+
+    InputStream is;
+    try {
+      is = huc.getInputStream();
+    } catch(IOException e) {
+      //  Error responses (4xx, 5xx) have their body here instead.
+      is = huc.getErrorStream();
+    }
+    if(is == null) return;
+
+    long drained = 0;
+    try {
+      byte[] buffer = new byte[4096];
+      int count;
+      while(drained <= MAX_DRAIN && (count = is.read(buffer)) != -1) drained += count;
+    } catch(IOException ignored) {
+      //  Already read and closed, or the connection failed; either way there's nothing left to read.
+    } finally {
+      try { is.close(); } catch(IOException ignored) { }
+    }
+
+    boolean tooLong = drained > MAX_DRAIN;
+    synchronized(this) {
+      mReleased++;
+      mDrained += drained;
+      if(tooLong) mDropped++;
+    }
+    if(tooLong) huc.disconnect();
+  }
+
+  public synchronized String getStatistics() {
+    return String.format("ConnectionManager: %d opened, %d released unread (%d bytes drained, %d dropped instead), keep-alive %s, %s idle per host",
+        mOpened, mReleased, mDrained, mDropped, System.getProperty("http.keepAlive"), System.getProperty("http.maxConnections"));
+  }
+}
@@ -99,17 +99,34 @@ public class CookieJar {
     return connect(page, null, null, false, null);
   }
 
+  /**
+   * Make a conditional request for a page.  The conditions only go with the
+   * request for the page itself; if it's redirected, the page it's
+   * redirected to is requested in full.
+   *
+   * @param page - The page to load.
+   * @param validators - The validators from the last time the page was loaded, or null.
+   * @return - A URLConnection connected to the response from the server for the given request.
+   */
+  public URLConnection connect(String page, Validators validators) {
+    URLConnection rval;
+    mRedirections = new HashMap<String, Integer>();
+    rval = internal_connect(page, null, null, false, null, validators);
+    mRedirections = null;
+    return rval;
+  }
+
   private Map<String, Integer> mRedirections;
 
   public URLConnection connect(String page, String body, String referer, boolean post, List<String> pages) {
     URLConnection rval;
     mRedirections = new HashMap<String, Integer>();
-    rval = internal_connect(page, body, referer, post, pages);
+    rval = internal_connect(page, body, referer, post, pages, null);
     mRedirections = null;
     return rval;
   }
 
-  private URLConnection internal_connect(String page, String body, String referer, boolean post, List<String> pages) {
+  private URLConnection internal_connect(String page, String body, String referer, boolean post, List<String> pages, Validators validators) {
     if(handleInfiniteRedirection(page)) {
       //  If we're posting, and we hit an infloop, maybe we don't want to re-submit the data...
       if(post) {
@@ -125,6 +142,7 @@ public class CookieJar {
     HttpURLConnection uc = initiateRequest(post, page, body, referer);
 
     if(uc != null) {
+      if(validators != null) validators.addTo(uc);
       String redirect = handleRedirect(uc, page);
 
       if(redirect != null) {
@@ -140,8 +158,10 @@ public class CookieJar {
             //  If there's no content or it's an unrecognized type, ignore it.
           }
         }
+        //  Finish with the redirect, so the next hop can reuse its connection.
+        Http.net().release(uc);
 
-        return internal_connect(redirect, body, referer, post, pages);
+        return internal_connect(redirect, body, referer, post, pages, null);
       }
     }
 
@@ -0,0 +1,143 @@
+package com.jbidwatcher.util.http;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Spaces out requests to each host, so several update workers running at
+ * once don't hammer a single server, and backs off exponentially from a host
+ * that's failing to respond.
+ *
+ * Callers bracket each request with acquire() and done(); acquire() sleeps
+ * until the host's next request slot comes up.
+ *
+ * The shared throttle only does anything by default when updates run on a
+ * pool of workers; with 'updates.workers' at zero, requests are already one
+ * at a time, unless 'http.host_rate' or 'http.max_backoff' say otherwise.
+ */
+public class HostThrottle {
+  private static final double DEFAULT_RATE = 2.0;
+  private static final long DEFAULT_MAX_BACKOFF = 60 * 1000;
+  private static HostThrottle sInstance = null;
+
+  private final long mInterval;
+  private final long mMaxBackoff;
+  private final Map<String, HostState> mHosts = new TreeMap<String, HostState>();
+
+  private static class HostState {
+    private long mNextAllowed = 0;
+    private long mBackoff = 0;
+    private int mFailures = 0;
+
+    private long mRequests = 0;
+    private long mErrors = 0;
+    private long mTotalLatency = 0;
+    private long mMaxLatency = 0;
+    private long mTotalThrottled = 0;
+  }
+
+  public static synchronized HostThrottle getInstance() {
+    if(sInstance == null) {
+      //  Only the update pool's workers wait on the throttle; without them, updates aren't throttled unless asked.
+      boolean pooled = JConfig.queryIntConfiguration("updates.workers", 1) > 0;
+      double rate = JConfig.queryDoubleConfiguration("http.host_rate", pooled ? DEFAULT_RATE : 0);
+      long maxBackoff = JConfig.queryLongConfiguration("http.max_backoff", pooled ? DEFAULT_MAX_BACKOFF : 0);
+      sInstance = new HostThrottle(rate, maxBackoff);
+    }
+
+    return sInstance;
+  }
+
+  /**
+   * @param rate - The most requests per second to make to any one host; zero or less means no limit.
+   * @param maxBackoff - The longest (in milliseconds) to back off from a failing host; zero means never back off.
+   */
+  public HostThrottle(double rate, long maxBackoff) {
+    mInterval = rate <= 0 ? 0 : (long) (1000 / rate);
+    mMaxBackoff = maxBackoff;
+  }
+
+  private synchronized HostState getState(String host) {
+    HostState state = mHosts.get(host);
+    if(state == null) {
+      state = new HostState();
+      mHosts.put(host, state);
+    }
+    return state;
+  }
+
+  /**
+   * Wait for the next request slot to the given host, reserving it.
+   *
+   * @param host - The host about to be contacted.
+   *
+   * @throws InterruptedException - If the thread is interrupted while waiting.
+   */
+  public void acquire(String host) throws InterruptedException {
+    if(host == null) return;
+    HostState state = getState(host);
+    long delay;
+    synchronized(state) {
+      long now = System.currentTimeMillis();
+      //  Any backoff was already applied to mNextAllowed when the failure was recorded.
+      long slot = Math.max(now, state.mNextAllowed);
+      state.mNextAllowed = slot + mInterval;
+      delay = slot - now;
+      state.mTotalThrottled += delay;
+    }
+    if(delay > 0) Thread.sleep(delay);
+  }
+
+  /**
+   * Record how a request to the host went; failures back off further from
+   * the host each time, and a success clears the backoff.
+   *
+   * @param host - The host that was contacted.
+   * @param success - Whether the host responded usefully.
+   * @param nanos - How long the request took.
+   */
+  public void done(String host, boolean success, long nanos) {
+    if(host == null) return;
+    HostState state = getState(host);
+    synchronized(state) {
+      state.mRequests++;
+      state.mTotalLatency += nanos;
+      if(nanos > state.mMaxLatency) state.mMaxLatency = nanos;
+
+      if(success) {
+        state.mFailures = 0;
+        state.mBackoff = 0;
+      } else {
+        state.mErrors++;
+        state.mFailures++;
+        long base = Math.max(mInterval, 500);
+        state.mBackoff = Math.min(mMaxBackoff, base << Math.min(state.mFailures - 1, 16));
+        state.mNextAllowed = Math.max(state.mNextAllowed, System.currentTimeMillis() + state.mBackoff);
+        JConfig.log().logDebug("Backing off from " + host + " for " + state.mBackoff + "ms after " + state.mFailures + " failure(s).");
+      }
+    }
+  }
+
+  public String getStatistics() {
+    StringBuilder sb = new StringBuilder();
+    synchronized(this) {
+      for(Map.Entry<String, HostState> entry : mHosts.entrySet()) {
+        HostState state = entry.getValue();
+        synchronized(state) {
+          double avg = state.mRequests == 0 ? 0.0 : state.mTotalLatency / (state.mRequests * 1000000.0);
+          if(sb.length() != 0) sb.append('\n');
+          sb.append(String.format("%s: %d requests, %d errors, fetch avg %.2fms max %.2fms, throttled %dms total, backoff %dms",
+              entry.getKey(), state.mRequests, state.mErrors, avg, state.mMaxLatency / 1000000.0, state.mTotalThrottled, state.mBackoff));
+        }
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -14,7 +14,12 @@ import com.jbidwatcher.util.StringTools;
 
 import java.net.*;
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 
 public class Http implements HttpInterface {
@@ -24,6 +29,13 @@ public class Http implements HttpInterface {
   private static HttpInterface sInstance = new Http();
   public static HttpInterface net() { return sInstance; }
 
+  /**
+   * Replace the HTTP layer every caller goes through, e.g. with an HttpMock.
+   *
+   * @param net - The HTTP layer to use from now on.
+   */
+  public static void setNet(HttpInterface net) { sInstance = net; }
+
   public void setAuthInfo(String user, String pass) {
     mUsername = user;
     mPassword = pass;
@@ -44,8 +56,6 @@ public class Http implements HttpInterface {
         String user = JConfig.queryConfiguration("proxy.user", null);
         String pass = JConfig.queryConfiguration("proxy.pass", null);
 
-        System.setProperty("http.proxyUser", user);
-        System.setProperty("http.proxyPassword", pass);
         if (user != null && pass != null) {
           String str = user + ':' + pass;
           String encoded = "Basic " + Base64.encodeString(str);
@@ -64,7 +74,7 @@ public class Http implements HttpInterface {
       }
       URL authURL = JConfig.getURL(url);
 
-      huc = authURL.openConnection();
+      huc = ConnectionManager.getInstance().open(authURL);
       setConnectionInfo(huc);
       huc.setDoOutput(true);
 
@@ -121,7 +131,7 @@ public class Http implements HttpInterface {
     if(JConfig.queryConfiguration("debug.urls", "false").equals("true")) {
       JConfig.log().logDebug("makeRequest: " + source.toString());
     }
-    URLConnection uc = source.openConnection();
+    URLConnection uc = ConnectionManager.getInstance().open(source);
     setConnectionInfo(uc);
     if(cookie != null) {
       uc.setRequestProperty("Cookie", cookie);
@@ -132,7 +142,11 @@ public class Http implements HttpInterface {
   }
 
   public ByteBuffer getURL(URL url) {
-    return getURL(url, null);
+    return getURL(url, (String) null);
+  }
+
+  public ByteBuffer getURL(URL url, Validators validators) throws NotModifiedException {
+    return getURL(url, null, validators);
   }
 
   /** 
@@ -144,11 +158,33 @@ public class Http implements HttpInterface {
    * @return - A result with raw data and the length.
    */
   private ByteBuffer getURL(URL url, String inCookie) {
+    try {
+      return getURL(url, inCookie, null);
+    } catch(NotModifiedException cantHappen) {
+      //  Without validators, the request wasn't conditional.
+      return null;
+    }
+  }
+
+  /**
+   * @brief Retrieve data from HTTP in raw byte form, if it's changed.
+   *
+   * @param url - The URL of the raw data to retrieve.
+   * @param inCookie - Any cookie needed to be passed along.
+   * @param validators - The validators from the last time the URL was retrieved, or null to retrieve it unconditionally.
+   *
+   * @return - A result with raw data and the length, or null if it couldn't be retrieved.
+   * @throws NotModifiedException - If the data hasn't changed since the validators were recorded.
+   */
+  private ByteBuffer getURL(URL url, String inCookie, Validators validators) throws NotModifiedException {
     ByteBuffer rval;
 
     try {
       URLConnection uc = makeRequest(url, inCookie);
-      rval = receiveData(uc);
+      if(validators != null) validators.addTo(uc);
+      rval = receiveData(uc, validators);
+    } catch(NotModifiedException unchanged) {
+      throw unchanged;
     } catch(FileNotFoundException fnfe) {
       //  It'd be great if we could pass along something that said, 'not here, never will be'.
       rval = null;
@@ -168,18 +204,89 @@ public class Http implements HttpInterface {
    * @brief Retrieve raw data from an already existing URL connection.
    *
    * @param uc - The URLConnection to pull the data from.
+   * @param validators - The validators the request was made with, or null.
    *
    * @return - A structure containing the raw data and the length.
    * @throws java.io.IOException if an error occurs while reading the data.
    */
-  private ByteBuffer receiveData(URLConnection uc) throws IOException {
-    InputStream is = uc.getInputStream();
+  private ByteBuffer receiveData(URLConnection uc, Validators validators) throws IOException {
+    Received received = receiveResponse(uc, validators);
+    byte[] data = new byte[received.mLength];
+    System.arraycopy(received.mData, 0, data, 0, received.mLength);
+
+    //  The known placeholder thumbnails' CRCs (see ThumbnailLoader) were
+    //  taken over the whole buffer the image used to be read into, zeros and all.
+    int legacyBuffer = INITIAL_BUFFER;
+    while(legacyBuffer <= received.mLength) legacyBuffer *= 3;
+    return new ByteBuffer(data, received.mLength, legacyBuffer);
+  }
+
+  /**
+   * Receive a response, checking it against the validators the request was
+   * made with (if any), and recording its own in them.
+   *
+   * @param uc - The connection to receive the response from.
+   * @param validators - The validators the request was made with, or null.
+   *
+   * @return - The response's data, in this thread's receive buffer.
+   * @throws NotModifiedException - If the server says it's not modified, or sent the same content as last time.
+   * @throws IOException - If the response couldn't be read.
+   */
+  private Received receiveResponse(URLConnection uc, Validators validators) throws IOException {
+    if(validators != null && validators.isNotModified(uc)) {
+      release(uc);
+      throw new NotModifiedException(uc.getURL().toString());
+    }
 
+    Received received = receiveResponse(uc);
+    if(validators != null && !validators.update(uc, received.mData, received.mLength)) {
+      throw new NotModifiedException(uc.getURL().toString());
+    }
+    return received;
+  }
+
+  private Received receiveResponse(URLConnection uc) throws IOException {
+    InputStream is;
+    try {
+      is = uc.getInputStream();
+    } catch(IOException e) {
+      //  Read out the error page, so the connection can be reused.
+      release(uc);
+      throw e;
+    }
+
+    //  A compressed response's length says nothing about how big it will be once it's expanded.
+    int expected = -1;
     if("gzip".equals(uc.getContentEncoding())) {
       is = new GZIPInputStream(is);
+    } else {
+      expected = uc.getContentLength();
     }
 
-    return receiveStream(is);
+    return receiveStream(is, expected);
+  }
+
+  //  The size of a new receive buffer, when the length of what's coming isn't known.
+  private static final int INITIAL_BUFFER = 111821;  //  A prime; no good reason.
+  //  Buffers which grow past this aren't kept for reuse.
+  private static final int MAX_POOLED = 1024 * 1024;
+
+  //  Each thread keeps the buffers it last received and decoded into, and reuses them for its next page.
+  private static final ThreadLocal<byte[]> sReceiveBuffer = new ThreadLocal<byte[]>();
+  private static final ThreadLocal<CharBuffer> sDecodeBuffer = new ThreadLocal<CharBuffer>();
+
+  /**
+   * Raw data received into this thread's receive buffer; only good until
+   * the thread receives something else.
+   */
+  private static class Received {
+    private final byte[] mData;
+    private final int mLength;
+
+    private Received(byte[] data, int length) {
+      mData = data;
+      mLength = length;
+    }
   }
 
   /**
@@ -188,45 +295,51 @@ public class Http implements HttpInterface {
    * at about 22ms/read. This means a 100K page loads in about 1.5 seconds. :(
    *
    * @param is - The InputStream to read from.
-   * @return - A ByteBuffer containing the data read from the InputStream.
+   * @param expected - How many bytes are expected (the Content-Length), or -1 if it's not known.
+   * @return - The data read from the InputStream, in this thread's receive buffer.
    * @throws IOException - If any problems occur while reading.
    */
-  private ByteBuffer receiveStream(InputStream is) throws IOException {
-    int curMax = 111821;  //  A prime; no good reason.
-    byte[] mainBuf = new byte[curMax];
+  private static Received receiveStream(InputStream is, int expected) throws IOException {
+    //  Leave room for one more byte than expected, so reading a correctly-sized response doesn't grow the buffer to find its end.
+    int wanted = expected >= 0 ? expected + 1 : INITIAL_BUFFER;
+    byte[] pooled = sReceiveBuffer.get();
+    byte[] mainBuf = (pooled != null && pooled.length >= wanted) ? pooled : new byte[wanted];
 
-    int count = is.read(mainBuf, 0, curMax);
     int offset = 0;
+    int count = is.read(mainBuf, 0, mainBuf.length);
 
     while(count != -1) {
-      if(offset+count == curMax) {
-        curMax *= 3;
-        byte[] tmp = new byte[curMax];
-        System.arraycopy(mainBuf, 0, tmp, 0, offset+count);
+      offset += count;
+      if(offset == mainBuf.length) {
+        byte[] tmp = new byte[mainBuf.length * 2];
+        System.arraycopy(mainBuf, 0, tmp, 0, offset);
         mainBuf = tmp;
       }
-      offset += count;
 
       try {
-        count = is.read(mainBuf, offset, curMax-offset);
+        count = is.read(mainBuf, offset, mainBuf.length-offset);
       } catch(EOFException badEnd) {
         JConfig.log().logDebug("Got a bad end of compressed input stream.");
         count = -1;
       }
     }
     is.close();
-    return new ByteBuffer(mainBuf, offset);
+
+    if(mainBuf != pooled && mainBuf.length <= MAX_POOLED && (pooled == null || mainBuf.length > pooled.length)) {
+      sReceiveBuffer.set(mainBuf);
+    }
+    return new Received(mainBuf, offset);
   }
 
   public StringBuffer get(String url) {
     try {
       HttpURLConnection huc = (HttpURLConnection)getPage(url);
       InputStream is = getStream(huc);
+      if(is == null) return null;
       if("gzip".equals(huc.getContentEncoding())) {
         is = new GZIPInputStream(is);
       }
-      ByteBuffer results = receiveStream(is);
-      StringBuffer sb = convertByteBufferToStringBuffer(huc, results);
+      StringBuffer sb = decode(receiveStream(is, -1), huc.getContentType());
       if((huc.getResponseCode() / 100) > 3) {
         JConfig.log().logMessage("Failed to get " + url + ": " + sb);
         return null;
@@ -240,19 +353,75 @@ public class Http implements HttpInterface {
 
   public StringBuffer receivePage(URLConnection uc) throws IOException {
     if(uc == null) return null;
-    ByteBuffer buff = receiveData(uc);
 
-    return convertByteBufferToStringBuffer(uc, buff);
+    return decode(receiveResponse(uc), uc.getContentType());
+  }
+
+  public StringBuffer receivePage(URLConnection uc, Validators validators) throws IOException {
+    if(uc == null) return null;
+
+    //  An unchanged page isn't decoded at all.
+    return decode(receiveResponse(uc, validators), uc.getContentType());
   }
 
-  private StringBuffer convertByteBufferToStringBuffer(URLConnection uc, ByteBuffer buff) throws UnsupportedEncodingException {
-    if(buff == null) return null;
-    String charset = uc.getContentType();
-    if(charset != null && charset.matches(".*charset=([^;]*).*")) {
-      charset = charset.replaceFirst(".*charset=([^;]*).*", "$1");
-      return new StringBuffer(new String(buff.getData(), 0, buff.getLength(), charset));
+  /**
+   * Decode received data into a page, in the character set its content
+   * type names, or the platform's default if it doesn't name one.  The
+   * data's decoded straight into this thread's decode buffer, and copied
+   * once, into a StringBuffer of exactly the page's size.
+   *
+   * @param received - The data to decode.
+   * @param contentType - The response's content type, or null.
+   *
+   * @return - The decoded page.
+   * @throws UnsupportedEncodingException - If the content type names a character set Java doesn't know.
+   */
+  private static StringBuffer decode(Received received, String contentType) throws UnsupportedEncodingException {
+    CharsetDecoder decoder = getCharset(contentType).newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    int maxChars = (int) Math.ceil(received.mLength * (double) decoder.maxCharsPerByte()) + 1;
+    CharBuffer chars = sDecodeBuffer.get();
+    if(chars == null || chars.capacity() < maxChars) {
+      chars = CharBuffer.allocate(maxChars);
+      if(maxChars <= MAX_POOLED) sDecodeBuffer.set(chars);
+    }
+    chars.clear();
+
+    decoder.decode(java.nio.ByteBuffer.wrap(received.mData, 0, received.mLength), chars, true);
+    decoder.flush(chars);
+    chars.flip();
+
+    StringBuffer page = new StringBuffer(chars.remaining());
+    page.append(chars.array(), chars.arrayOffset(), chars.remaining());
+    return page;
+  }
+
+  //  Content types repeat page after page, so remember the character sets the first few name.
+  private static final Map<String, Charset> sCharsets = new ConcurrentHashMap<String, Charset>();
+
+  private static Charset getCharset(String contentType) throws UnsupportedEncodingException {
+    if(contentType == null) return Charset.defaultCharset();
+    Charset charset = sCharsets.get(contentType);
+    if(charset != null) return charset;
+
+    int start = contentType.lastIndexOf("charset=");
+    if(start == -1) {
+      charset = Charset.defaultCharset();
+    } else {
+      start += "charset=".length();
+      int end = contentType.indexOf(';', start);
+      String name = contentType.substring(start, end == -1 ? contentType.length() : end).trim();
+      if(name.length() > 1 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') name = name.substring(1, name.length() - 1);
+      try {
+        charset = Charset.forName(name);
+      } catch(IllegalArgumentException unknown) {
+        throw new UnsupportedEncodingException(name);
+      }
     }
-    return new StringBuffer(new String(buff.getData(), 0, buff.getLength()));
+    if(sCharsets.size() < 64) sCharsets.put(contentType, charset);
+    return charset;
   }
 
   /**
@@ -273,7 +442,7 @@ public class Http implements HttpInterface {
         JConfig.log().logDebug("getPage: " + url);
       }
       URL authURL = JConfig.getURL(url);
-      URLConnection uc = authURL.openConnection();
+      URLConnection uc = ConnectionManager.getInstance().open(authURL);
       if(!(uc instanceof HttpURLConnection)) {
         return uc;
       }
@@ -296,7 +465,7 @@ public class Http implements HttpInterface {
     HttpURLConnection huc = null;
     String result = null;
     try {
-      huc = (HttpURLConnection) JConfig.getURL(url).openConnection();
+      huc = (HttpURLConnection) ConnectionManager.getInstance().open(JConfig.getURL(url));
       setConnectionInfo(huc);
       huc.setRequestProperty("Content-Type", "application/octet-stream");
       huc.setRequestProperty("Content-Length", Integer.toString(sb.length() - 1));
@@ -361,6 +530,7 @@ public class Http implements HttpInterface {
         rval = huc.getErrorStream();
       } else if (status / 100 == 3) {
         String location = huc.getHeaderField("Location");
+        release(huc);
         huc = (HttpURLConnection)getPage(location);
         rval = huc.getInputStream();
       } else {
@@ -372,4 +542,8 @@ public class Http implements HttpInterface {
     }
     return rval;
   }
+
+  public void release(URLConnection uc) {
+    ConnectionManager.getInstance().release(uc);
+  }
 }
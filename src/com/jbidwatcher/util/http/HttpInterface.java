@@ -25,10 +25,36 @@ public interface HttpInterface {
 
   ByteBuffer getURL(URL url);
 
+  /**
+   * Retrieve raw data, unless it hasn't changed since it was last retrieved.
+   * The request carries the validators' conditions, and the response's are
+   * recorded in them; saving them is up to the caller.
+   *
+   * @param url - The URL of the data to retrieve.
+   * @param validators - The validators from the last time the URL was retrieved.
+   *
+   * @return - The data, or null if it couldn't be retrieved.
+   * @throws NotModifiedException - If the data hasn't changed.
+   */
+  ByteBuffer getURL(URL url, Validators validators) throws NotModifiedException;
+
   StringBuffer get(String url);
 
   StringBuffer receivePage(URLConnection uc) throws IOException;
 
+  /**
+   * Receive a page requested with a set of validators' conditions (see
+   * Validators.addTo), recording the response's validators in them.
+   *
+   * @param uc - The connection the request was made on.
+   * @param validators - The validators the request was made with.
+   *
+   * @return - The page.
+   * @throws NotModifiedException - If the page hasn't changed since the validators were recorded.
+   * @throws IOException - If the page couldn't be read.
+   */
+  StringBuffer receivePage(URLConnection uc, Validators validators) throws IOException;
+
   URLConnection getPage(String url);
 
   URLConnection getPage(String url, String cookie, String referer, boolean redirect);
@@ -38,4 +64,12 @@ public interface HttpInterface {
   String postTo(String url, Parameters params);
 
   InputStream getStream(HttpURLConnection huc);
+
+  /**
+   * Finish with a connection without reading its response (a redirect, or
+   * an error page), so it can be reused for the next request to its host.
+   *
+   * @param uc - The connection to finish with.
+   */
+  void release(URLConnection uc);
 }
@@ -90,6 +90,12 @@ public class HttpMock implements HttpInterface {
     throw new UnimplementedException();
   }
 
+  public ByteBuffer getURL(URL url, Validators validators) throws NotModifiedException {
+    String newURL = lookup(GET, url.toString());
+    if(newURL == null) return mReal.getURL(url, validators);
+    throw new UnimplementedException();
+  }
+
   public StringBuffer get(String url) {
     String newURL = lookup(GET, url);
     if(newURL == null) return mReal.get(url);
@@ -100,6 +106,14 @@ public class HttpMock implements HttpInterface {
     return mReal.receivePage(uc);
   }
 
+  public StringBuffer receivePage(URLConnection uc, Validators validators) throws IOException {
+    return mReal.receivePage(uc, validators);
+  }
+
+  public void release(URLConnection uc) {
+    mReal.release(uc);
+  }
+
   public String putTo(String url, String sb) {
     String newURL = lookup(PUT, url);
     if(newURL == null) mReal.putTo(url, sb);
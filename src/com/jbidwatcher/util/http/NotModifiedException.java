@@ -0,0 +1,22 @@
+package com.jbidwatcher.util.http;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import java.io.IOException;
+
+/**
+ * Thrown by a conditional request when the resource hasn't changed since
+ * its validators were recorded; either the server answered 304 Not
+ * Modified, or it sent the same content again.  Like FileNotFoundException
+ * for a 404, it's an answer, not a failure.
+ */
+public class NotModifiedException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public NotModifiedException(String url) {
+    super("Not modified: " + url);
+  }
+}
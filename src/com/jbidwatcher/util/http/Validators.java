@@ -0,0 +1,221 @@
+package com.jbidwatcher.util.http;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.Record;
+import com.jbidwatcher.util.db.ActiveRecord;
+import com.jbidwatcher.util.db.Table;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What's known about the last copy of a URL that was fetched for an item;
+ * its ETag and Last-Modified headers, and a hash of its content.  Sent back
+ * with the next request for the URL (If-None-Match, If-Modified-Since), they
+ * let the server answer 304 Not Modified instead of sending it all again;
+ * servers that don't support that are caught by the content being the same.
+ *
+ * Each request works on its own copy, from forURL(); what it learns is only
+ * kept, with save(), once the caller has made use of the response.  Copies
+ * are cached in memory by URL, so only the first request for an item in a
+ * session looks them up in the database.
+ */
+public class Validators extends ActiveRecord {
+  private static final Map<String, Validators> sCache = new ConcurrentHashMap<String, Validators>();
+
+  private static long sConditional = 0;
+  private static long sNotModified = 0;
+  private static long sSameContent = 0;
+  private static long sChanged = 0;
+
+  public Validators() { }
+
+  private Validators(String identifier, String url) {
+    setString("identifier", identifier);
+    setString("url", url);
+  }
+
+  private Validators copy() {
+    Validators rval = new Validators();
+    rval.setBacking(new Record(getBacking()));
+    return rval;
+  }
+
+  /**
+   * @param identifier - The item the URL belongs to.
+   * @param url - The URL to be requested.
+   *
+   * @return - A copy of the validators last saved for the URL, or an empty set if there are none.
+   */
+  public static Validators forURL(String identifier, String url) {
+    Validators saved = sCache.get(url);
+    if(saved == null) {
+      for(Validators v : findAllByIdentifier(identifier)) {
+        sCache.put(v.getString("url"), v);
+      }
+      saved = sCache.get(url);
+      if(saved == null) {
+        //  Remember there aren't any, so it isn't looked up again.
+        saved = new Validators(identifier, url);
+        sCache.put(url, saved);
+      }
+    }
+    return saved.copy();
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static List<Validators> findAllByIdentifier(String identifier) {
+    return (List<Validators>) findAllBy(Validators.class, "identifier", identifier);
+  }
+
+  /**
+   * Drop the validators, so the next request fetches the whole resource.
+   * For when there's nothing to fall back on if the server says it hasn't changed.
+   */
+  public void forget() {
+    setString("etag", null);
+    setString("last_modified", null);
+    setString("content_hash", null);
+  }
+
+  public boolean hasConditions() {
+    return getString("etag") != null || getString("last_modified") != null || getString("content_hash") != null;
+  }
+
+  /**
+   * Add the conditional request headers to a request which hasn't been sent yet.
+   *
+   * @param uc - The request.
+   */
+  public void addTo(URLConnection uc) {
+    String etag = getString("etag");
+    String lastModified = getString("last_modified");
+    if(etag != null) uc.setRequestProperty("If-None-Match", etag);
+    if(lastModified != null) uc.setRequestProperty("If-Modified-Since", lastModified);
+    if(hasConditions()) {
+      synchronized(Validators.class) {
+        sConditional++;
+      }
+    }
+  }
+
+  /**
+   * @param uc - A request made with these validators.
+   *
+   * @return - true if the server answered that the resource hasn't changed.
+   * @throws IOException - If the response couldn't be read.
+   */
+  boolean isNotModified(URLConnection uc) throws IOException {
+    if(!hasConditions() || !(uc instanceof HttpURLConnection)) return false;
+    if(((HttpURLConnection) uc).getResponseCode() != HttpURLConnection.HTTP_NOT_MODIFIED) return false;
+
+    synchronized(Validators.class) {
+      sNotModified++;
+    }
+    return true;
+  }
+
+  /**
+   * Record the validators from a full response.
+   *
+   * @param uc - The response's connection, for its headers.
+   * @param data - The content received.
+   * @param length - How much of data is content.
+   *
+   * @return - true if the content is different from the last copy (or there was no last copy).
+   */
+  boolean update(URLConnection uc, byte[] data, int length) {
+    String hash = hash(data, length);
+    boolean changed = !hash.equals(getString("content_hash"));
+
+    setString("etag", uc.getHeaderField("ETag"));
+    setString("last_modified", uc.getHeaderField("Last-Modified"));
+    setString("content_hash", hash);
+
+    synchronized(Validators.class) {
+      if(changed) sChanged++; else sSameContent++;
+    }
+    return changed;
+  }
+
+  private static String hash(byte[] data, int length) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(data, 0, length);
+      StringBuffer sb = new StringBuffer(32);
+      for(byte b : md5.digest()) {
+        sb.append(Character.forDigit((b >> 4) & 0x0f, 16)).append(Character.forDigit(b & 0x0f, 16));
+      }
+      return sb.toString();
+    } catch(NoSuchAlgorithmException e) {
+      //  Every Java platform has MD5; failing that, fall back to something that never matches.
+      return Long.toString(System.nanoTime());
+    }
+  }
+
+  /**
+   * Keep these validators for the next request for the URL.
+   */
+  public void save() {
+    synchronized(Validators.class) {
+      //  Another copy may have been saved (and given a row) since this one was made.
+      Validators current = sCache.get(getString("url"));
+      if(get("id") == null && current != null && current.get("id") != null) set("id", current.get("id"));
+      if(isDirty()) saveDB();
+      sCache.put(getString("url"), copy());
+    }
+  }
+
+  /**
+   * Forget the validators for items that are being deleted.
+   *
+   * @param identifiers - The items' identifiers.
+   */
+  public static void deleteAll(List<String> identifiers) {
+    if(identifiers.isEmpty()) return;
+
+    StringBuffer ids = new StringBuffer();
+    for(String identifier : identifiers) {
+      if(ids.length() != 0) ids.append(", ");
+      ids.append('\'').append(identifier.replace("'", "''")).append('\'');
+    }
+    for(Iterator<Validators> it = sCache.values().iterator(); it.hasNext(); ) {
+      if(identifiers.contains(it.next().getString("identifier"))) it.remove();
+    }
+    Table t = getRealDatabase();
+    if(t != null) t.deleteBy("identifier IN (" + ids + ")");
+  }
+
+  public static synchronized String getStatistics() {
+    return String.format("Validators: %d cached, %d conditional requests, %d not modified, %d same content, %d changed",
+        sCache.size(), sConditional, sNotModified, sSameContent, sChanged);
+  }
+
+  protected static String getTableName() { return "validators"; }
+
+  @Override
+  protected Table getDatabase() {
+    return getRealDatabase();
+  }
+
+  private static ThreadLocal<Table> tDB = new ThreadLocal<Table>() {
+    protected synchronized Table initialValue() {
+      return openDB(getTableName());
+    }
+  };
+
+  public static Table getRealDatabase() {
+    return tDB.get();
+  }
+}
@@ -6,7 +6,7 @@ package com.jbidwatcher.util.queue;
  */
 
 public class AuctionQObject extends QObject {
-  private int mCmd;
+  private final int mCmd;
 
   public static final int LOAD_URL = 0;
   public static final int LOAD_SEARCH = 1;
@@ -17,8 +17,6 @@ public class AuctionQObject extends QObject {
   public static final int LOAD_TITLE = 6;
   public static final int LOAD_STRINGS = 7;
 
-  public AuctionQObject() { super(); }
-
   public AuctionQObject(int cmd, Object data, String label) {
     super(data, label);
     mCmd = cmd;
@@ -31,7 +29,6 @@ public class AuctionQObject extends QObject {
 //            '}';
 //  }
 
-  public void setCommand(int cmd) { mCmd = cmd; }
   public int getCommand() { return mCmd; }
 
   public String getStringData() { return (String) mData; }
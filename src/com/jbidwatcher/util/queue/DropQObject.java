@@ -6,11 +6,7 @@ package com.jbidwatcher.util.queue;
  */
 
 public class DropQObject extends QObject {
-  private boolean mInteractive;
-
-  public DropQObject() {
-    // Empty constructor for serialization purposes.
-  }
+  private final boolean mInteractive;
 
   public DropQObject(String data, String label, boolean isInteractive) {
     super(data, label);
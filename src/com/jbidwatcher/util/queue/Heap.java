@@ -141,6 +141,21 @@ public class Heap  {
     return least;
   }
 
+  //  Removing from the middle of the heap can leave the moved element smaller than its new parent.
+  private void siftUp(int k) {
+    if (k >= mCount) return;
+    Object x = mNodes[k];
+    while (k > 0) {
+      int par = parent(k);
+      if (compare(x, mNodes[par]) < 0) {
+        mNodes[k] = mNodes[par];
+        k = par;
+      }
+      else break;
+    }
+    mNodes[k] = x;
+  }
+
   /** Return least element without removing it, or null if empty **/
   public synchronized Object peek() {
     if (mCount > 0)
@@ -172,10 +187,11 @@ public class Heap  {
     return base;
   }
 
-  public boolean erase(Object o) {
-    for (int i = 0; i < mNodes.length; i++) {
+  public synchronized boolean erase(Object o) {
+    for (int i = 0; i < mCount; i++) {
       if(mNodes[i] == o) {
         extractElementAt(i);
+        siftUp(i);
         return true;
       }
     }
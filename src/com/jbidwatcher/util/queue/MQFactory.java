@@ -5,6 +5,8 @@ package com.jbidwatcher.util.queue;
  * Developed by mrs (Morgan Schweers)
  */
 
+import com.jbidwatcher.util.config.JConfig;
+
 import java.util.*;
 
 /** MQFactory is a factory class, returning MessageQueue objects from a pool.
@@ -18,7 +20,7 @@ public class MQFactory {
 
   private MQFactory() { }
 
-  public static void addQueue(String queueName, MessageQueue whatQueue) {
+  public static synchronized void addQueue(String queueName, MessageQueue whatQueue) {
     if(MQs == null) {
       MQs = new HashMap<Object, MessageQueue>();
     }
@@ -30,11 +32,15 @@ public class MQFactory {
    * Find or create a message queue with a given name.  The first time this is called, it will create a plain message queue with
    * this name, and return it.  Subsequent calls will return the same message queue.
    *
+   * If 'queue.dispatcher' is configured as 'pool', plain queues share the QueueDispatcher's
+   * worker threads instead of each getting a thread of their own, unless their listener may
+   * block (see MessageQueue.BlockingListener).
+   *
    * @param whatConcrete The name of the queue; this also becomes its thread name.
    *
    * @return A queue addressable by the provided name.
    */
-  public static MessageQueue getConcrete(String whatConcrete) {
+  public static synchronized MessageQueue getConcrete(String whatConcrete) {
     if(MQs == null) {
       MQs = new HashMap<Object, MessageQueue>();
     }
@@ -42,10 +48,73 @@ public class MQFactory {
     MessageQueue foundMQ = MQs.get(whatConcrete);
 
     if(foundMQ == null) {
-      foundMQ = new PlainMessageQueue(whatConcrete);
+      if(JConfig.queryConfiguration("queue.dispatcher", "thread").equals("pool")) {
+        foundMQ = new PlainMessageQueue(whatConcrete, QueueDispatcher.getInstance());
+      } else {
+        foundMQ = new PlainMessageQueue(whatConcrete);
+      }
       MQs.put(whatConcrete, foundMQ);
     }
 
     return foundMQ;
   }
+
+  /**
+   * Send a message to a topic's queue.  The message itself is handed to the
+   * queue's listeners, on the queue's thread; it isn't serialized or copied.
+   *
+   * @param topic - Where to send it.
+   * @param message - The message, which mustn't be changed once it's been published.
+   *
+   * @return true if it was queued, false if it was the same object as the last one still waiting.
+   */
+  public static <T> boolean publish(Topic<T> topic, T message) {
+    return getConcrete(topic.getName()).enqueueObject(message);
+  }
+
+  /**
+   * Make a subscriber the listener for a topic's queue, replacing any
+   * existing listener (as MessageQueue.registerListener does).  Anything
+   * else that turns up on the queue, like a String sent with enqueue(), is
+   * logged and dropped rather than handed to the subscriber.
+   *
+   * @param topic - The topic to listen to.
+   * @param subscriber - What to hand each message to.
+   *
+   * @return The listener that was replaced, if any.
+   */
+  public static <T> MessageQueue.Listener subscribe(final Topic<T> topic, final Topic.Subscriber<T> subscriber) {
+    MessageQueue.Listener listener;
+    if(subscriber instanceof Topic.BlockingSubscriber) {
+      listener = new MessageQueue.BlockingListener() {
+        public void messageAction(Object deQ) { deliver(topic, subscriber, deQ); }
+      };
+    } else {
+      listener = new MessageQueue.Listener() {
+        public void messageAction(Object deQ) { deliver(topic, subscriber, deQ); }
+      };
+    }
+    return getConcrete(topic.getName()).registerListener(listener);
+  }
+
+  private static <T> void deliver(Topic<T> topic, Topic.Subscriber<T> subscriber, Object deQ) {
+    if(topic.getType().isInstance(deQ)) {
+      subscriber.messageAction(topic.getType().cast(deQ));
+    } else {
+      JConfig.log().logDebug("Dropping unexpected message on " + topic + ": " + deQ);
+    }
+  }
+
+  /**
+   * Log the backlog and dispatch latency of every plain message queue, to find slow listeners.
+   */
+  public static synchronized void dumpStatistics() {
+    if(MQs == null) return;
+
+    for(MessageQueue q : MQs.values()) {
+      if(q instanceof PlainMessageQueue) {
+        JConfig.log().logDebug(((PlainMessageQueue)q).getStatistics());
+      }
+    }
+  }
 }
@@ -6,10 +6,6 @@ package com.jbidwatcher.util.queue;
  */
 
 import java.util.*;
-import java.beans.*;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import com.jbidwatcher.util.Currency;
 
 public abstract class MessageQueue implements Runnable {
   protected final LinkedList<Object> _queue = new LinkedList<Object>();
@@ -20,6 +16,13 @@ public abstract class MessageQueue implements Runnable {
     void messageAction(Object deQ);
   }
 
+  /**
+   * A listener which may block for a long time; on the network, the disk,
+   * or a dialog.  A queue sharing the QueueDispatcher's workers moves to a
+   * thread of its own when one of these is registered on it.
+   */
+  public interface BlockingListener extends Listener { }
+
   /**
    * registerListener treats the message queue as if it is a 1-entry list,
    * replacing all existing listeners (expected to be one or zero) with the
@@ -37,39 +40,22 @@ public abstract class MessageQueue implements Runnable {
     return old;
   }
 
-  //  TODO -- Should end up only allowing String and XMLEncode'able objects (which get converted to a String?).
   public abstract boolean enqueue(String objToEnqueue);
 
-  //  Maybe XML queues are different?  MQFactory.getXMLQueue()?
-  public void enqueueBean(QObject xe) {
-    // Create output stream.
-    ByteArrayOutputStream fos = new ByteArrayOutputStream();
-    XMLEncoder xe2 = new XMLEncoder(fos);
-    xe2.setPersistenceDelegate(Currency.class, Currency.getDelegate());
-    xe2.writeObject(xe);
-    xe2.close();
-    enqueue(fos.toString());
-  }
-
-  private Object convertBean(String obj) {
-    ByteArrayInputStream fis = new ByteArrayInputStream(obj.getBytes());
-    XMLDecoder xd = new XMLDecoder(fis);
-    Object rval = xd.readObject();
-    xd.close();
-    return rval;
-  }
+  /**
+   * Queue an object to be handed to the listeners as-is; it isn't copied,
+   * so it shouldn't be changed once it's been enqueued.
+   *
+   * @param objToEnqueue - The message to deliver.
+   *
+   * @return true if it was queued, false if it was the same object as the last one still waiting.
+   */
+  public abstract boolean enqueueObject(Object objToEnqueue);
 
   public Object dequeue() {
-    Object out;
     synchronized(_queue) {
-      out = _queue.removeFirst();
-    }
-    if(out instanceof String) {
-      if( ((String)out).contains("java.beans.XMLDecoder") ) {
-        out = convertBean((String)out);
-      }
+      return _queue.removeFirst();
     }
-    return out;
   }
 
   public void clear() {
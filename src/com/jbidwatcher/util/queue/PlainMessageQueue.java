@@ -8,12 +8,34 @@ package com.jbidwatcher.util.queue;
 import com.jbidwatcher.util.config.JConfig;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 /** @noinspection ThisEscapedInObjectConstruction,CallToThreadStartDuringObjectConstruction*/
 public final class PlainMessageQueue extends MessageQueue {
+  //  The most messages a pooled queue delivers before giving its worker back to the dispatcher.
+  private static final int BATCH_SIZE = 32;
+  //  How long (in milliseconds) a listener may hold a shared worker before its queue gets its own thread.
+  private static final long DEFAULT_MAX_LISTENER_TIME = 1000;
+
   List<Object> _postpone = new ArrayList<Object>();
   Thread _myself;
+  private final String mName;
+  //  Null once the queue has a thread of its own; only changed holding _queue.
+  private volatile QueueDispatcher mDispatcher;
+  //  Guarded by _queue; true while a drain task for this queue is submitted to the dispatcher.
+  private boolean mScheduled = false;
+  private final long mMaxListenerNanos;
+  private final Runnable mDrain = new Runnable() {
+    public void run() { drain(); }
+  };
+  private final LinkedList<Long> mEnqueuedAt = new LinkedList<Long>();
+
+  private long mDispatched = 0;
+  private long mTotalWait = 0;
+  private long mMaxWait = 0;
+  private long mTotalListenerTime = 0;
+  private long mMaxListenerTime = 0;
 
   protected void handleListener() {
     if(_postpone != null) {
@@ -25,14 +47,68 @@ public final class PlainMessageQueue extends MessageQueue {
     }
   }
 
+  /**
+   * Create a message queue with its own thread.
+   *
+   * @param qName - The name of the queue, which also names its thread.
+   */
   public PlainMessageQueue(Object qName) {
+    mName = "MQ_" + qName;
+    mDispatcher = null;
+    mMaxListenerNanos = 0;
+    startThread();
+  }
+
+  private void startThread() {
     _myself = new Thread(this);
     //  Go ahead and die if all other threads are closed!
     _myself.setDaemon(true);
-    _myself.setName("MQ_" + qName);
+    _myself.setName(mName);
     _myself.start();
   }
 
+  /**
+   * Create a message queue that has no thread of its own, delivering its
+   * messages on the dispatcher's shared workers instead.
+   *
+   * @param qName - The name of the queue.
+   * @param dispatcher - The shared worker pool to deliver messages on.
+   */
+  public PlainMessageQueue(Object qName, QueueDispatcher dispatcher) {
+    mName = "MQ_" + qName;
+    mDispatcher = dispatcher;
+    _myself = null;
+    mMaxListenerNanos = JConfig.queryLongConfiguration("queue.dispatcher.max_listener_ms", DEFAULT_MAX_LISTENER_TIME) * 1000000L;
+  }
+
+  public Listener registerListener(Listener ml) {
+    Listener old = super.registerListener(ml);
+    if(ml instanceof BlockingListener) dedicate("its listener may block");
+    return old;
+  }
+
+  public void addListener(Listener listener) {
+    super.addListener(listener);
+    if(listener instanceof BlockingListener) dedicate("its listener may block");
+  }
+
+  /**
+   * Stop delivering on the dispatcher's shared workers, and give the queue
+   * a thread of its own.  A drain already running finishes the message it's
+   * delivering first, and the new thread waits for it, so the queue's
+   * messages are still delivered one at a time, in order.
+   *
+   * @param reason - Why, for the log.
+   */
+  private void dedicate(String reason) {
+    synchronized(_queue) {
+      if(mDispatcher == null) return;
+      mDispatcher = null;
+      startThread();
+    }
+    JConfig.log().logDebug(mName + " moved to its own thread, as " + reason + ".");
+  }
+
   /** @noinspection StringContatenationInLoop*/
   public void run() {
     //noinspection InfiniteLoopStatement
@@ -40,7 +116,8 @@ public final class PlainMessageQueue extends MessageQueue {
       Object data = null;
       try {
         synchronized(_queue) {
-          if(_queue.isEmpty()) _queue.wait();
+          //  If the queue used to be pooled, a drain may still be delivering; wait for it to stop.
+          while(_queue.isEmpty() || mScheduled) _queue.wait();
           data = dequeue();
         }
       } catch(InterruptedException ignore) {
@@ -50,25 +127,7 @@ public final class PlainMessageQueue extends MessageQueue {
       if(data != null) {
         boolean empty;
         do {
-          boolean listeners = !_listeners.isEmpty();
-          boolean heard = false;
-          if (listeners) {
-            try {
-              for(Listener l : _listeners) {
-                if(l != null) {
-                  heard = true;
-                  l.messageAction(data);
-                }
-              }
-            } catch (Exception e) {
-              JConfig.log().handleException("PMQ Caught exception: " + e, e);
-              clear();
-            }
-          }
-          if(!heard) {
-            JConfig.log().logDebug(_myself.getName() + ": Postponing Message: " + data);
-            if(_postpone != null) _postpone.add(data);
-          }
+          deliver(data);
           synchronized (_queue) {
             empty = _queue.isEmpty();
             if(!empty) data = dequeue();
@@ -78,6 +137,77 @@ public final class PlainMessageQueue extends MessageQueue {
     }
   }
 
+  /**
+   * Deliver up to BATCH_SIZE messages on the current (pooled) worker, and
+   * resubmit to the dispatcher if there are more, so one busy queue can't
+   * monopolize a worker.  Only one drain is ever outstanding per queue,
+   * which is what preserves the queue's ordering.
+   */
+  private void drain() {
+    for(int i=0; i<BATCH_SIZE; i++) {
+      Object data;
+      synchronized(_queue) {
+        if(_queue.isEmpty() || mDispatcher == null) {
+          mScheduled = false;
+          _queue.notifyAll();
+          return;
+        }
+        data = dequeue();
+      }
+      deliver(data);
+    }
+    synchronized(_queue) {
+      if(mDispatcher == null) {
+        mScheduled = false;
+        _queue.notifyAll();
+      } else {
+        mDispatcher.dispatch(mDrain);
+      }
+    }
+  }
+
+  private void deliver(Object data) {
+    boolean listeners = !_listeners.isEmpty();
+    boolean heard = false;
+    if (listeners) {
+      long start = System.nanoTime();
+      try {
+        for(Listener l : _listeners) {
+          if(l != null) {
+            heard = true;
+            l.messageAction(data);
+          }
+        }
+      } catch (Exception e) {
+        JConfig.log().handleException("PMQ Caught exception: " + e, e);
+        clear();
+      }
+      long elapsed = System.nanoTime() - start;
+      recordListenerTime(elapsed);
+      if(mDispatcher != null && mMaxListenerNanos > 0 && elapsed > mMaxListenerNanos) {
+        dedicate("its listener held a shared worker for " + (elapsed / 1000000) + "ms");
+      }
+    }
+    if(!heard) {
+      JConfig.log().logDebug(mName + ": Postponing Message: " + data);
+      if(_postpone != null) _postpone.add(data);
+    }
+  }
+
+  public Object dequeue() {
+    synchronized(_queue) {
+      if(!mEnqueuedAt.isEmpty()) recordWait(System.nanoTime() - mEnqueuedAt.removeFirst());
+      return super.dequeue();
+    }
+  }
+
+  public void clear() {
+    synchronized(_queue) {
+      super.clear();
+      mEnqueuedAt.clear();
+    }
+  }
+
   public boolean enqueue(String entry) {
     if(JConfig.queryConfiguration("debug.queues", "false").equals("true")) {
       JConfig.log().logMessage(entry);
@@ -91,10 +221,51 @@ public final class PlainMessageQueue extends MessageQueue {
       //noinspection ObjectEquality
       if(_queue.isEmpty() || _queue.getLast() != objToEnqueue) {
         _queue.addLast(objToEnqueue);
-        _queue.notifyAll();
+        mEnqueuedAt.addLast(System.nanoTime());
+        if(mDispatcher == null) {
+          _queue.notifyAll();
+        } else if(!mScheduled) {
+          mScheduled = true;
+          mDispatcher.dispatch(mDrain);
+        }
         return true;
       }
     }
     return false;
   }
+
+  private synchronized void recordWait(long nanos) {
+    mDispatched++;
+    mTotalWait += nanos;
+    if(nanos > mMaxWait) mMaxWait = nanos;
+  }
+
+  private synchronized void recordListenerTime(long nanos) {
+    mTotalListenerTime += nanos;
+    if(nanos > mMaxListenerTime) mMaxListenerTime = nanos;
+  }
+
+  public String getName() { return mName; }
+
+  /** @return The number of messages waiting to be delivered. */
+  public int getBacklog() {
+    synchronized(_queue) {
+      return _queue.size();
+    }
+  }
+
+  public synchronized long getDispatchCount() { return mDispatched; }
+
+  /** @return The average time (in milliseconds) a message waited between being enqueued and being delivered. */
+  public synchronized double getAverageWait() { return mDispatched == 0 ? 0.0 : mTotalWait / (mDispatched * 1000000.0); }
+  public synchronized double getMaxWait() { return mMaxWait / 1000000.0; }
+
+  /** @return The average time (in milliseconds) the listeners took to handle a message. */
+  public synchronized double getAverageListenerTime() { return mDispatched == 0 ? 0.0 : mTotalListenerTime / (mDispatched * 1000000.0); }
+  public synchronized double getMaxListenerTime() { return mMaxListenerTime / 1000000.0; }
+
+  public String getStatistics() {
+    return String.format("%s: backlog %d, dispatched %d, wait avg %.2fms max %.2fms, listener avg %.2fms max %.2fms",
+        mName, getBacklog(), getDispatchCount(), getAverageWait(), getMaxWait(), getAverageListenerTime(), getMaxListenerTime());
+  }
 }
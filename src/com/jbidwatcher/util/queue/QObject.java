@@ -5,17 +5,20 @@ package com.jbidwatcher.util.queue;
  * Developed by mrs (Morgan Schweers)
  */
 
+/**
+ * A message for a queue; what to act on, and a label for it.  Messages are
+ * passed to listeners by reference (see Topic), so they can't be changed
+ * once they're created.
+ */
 public class QObject {
-  protected Object mData;
-  protected String mLabel;
+  protected final Object mData;
+  protected final String mLabel;
 
   public QObject(Object data, String label) {
     mData = data;
     mLabel = label;
   }
 
-  public QObject() { }
-
 //  public String toString() {
 //    return "QObject{" +
 //            "mData=" + mData +
@@ -24,8 +27,6 @@ public class QObject {
 //  }
 //
   public Object getData() { return mData; }
-  public void setData(Object newData) { mData = newData; }
 
   public String getLabel() { return mLabel; }
-  public void setLabel(String label) { mLabel = label; }
 }
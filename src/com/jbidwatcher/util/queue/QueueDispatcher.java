@@ -0,0 +1,66 @@
+package com.jbidwatcher.util.queue;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+import com.jbidwatcher.util.config.JConfig;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small, bounded pool of daemon threads shared by every PlainMessageQueue
+ * running in 'pool' mode, instead of each queue owning a thread of its own.
+ *
+ * Ordering within a queue is the queue's responsibility; a queue never has
+ * more than one drain task submitted at a time, so its messages are still
+ * delivered one after another, in the order they were enqueued.
+ *
+ * Listeners on pooled queues mustn't block for long periods, as they hold
+ * one of the shared workers while they do, and enough of them at once would
+ * stall every other queue.  Listeners which may block are registered as a
+ * MessageQueue.BlockingListener, and their queue gets a thread of its own;
+ * a queue whose listener holds a worker for longer than
+ * 'queue.dispatcher.max_listener_ms' (a second, by default) is moved onto
+ * its own thread as well.
+ */
+public class QueueDispatcher {
+  private static final int DEFAULT_THREADS = 4;
+  private static QueueDispatcher sInstance = null;
+  private final ThreadPoolExecutor mPool;
+
+  public static synchronized QueueDispatcher getInstance() {
+    if(sInstance == null) {
+      int threads = JConfig.queryIntConfiguration("queue.dispatcher.threads", DEFAULT_THREADS);
+      sInstance = new QueueDispatcher(Math.max(1, threads));
+    }
+
+    return sInstance;
+  }
+
+  public QueueDispatcher(int threads) {
+    final AtomicInteger count = new AtomicInteger(0);
+    mPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "MQ_Dispatch-" + count.incrementAndGet());
+        //  Go ahead and die if all other threads are closed!
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    mPool.allowCoreThreadTimeOut(true);
+  }
+
+  public void dispatch(Runnable drain) {
+    mPool.execute(drain);
+  }
+
+  public int getPoolSize() { return mPool.getPoolSize(); }
+  public int getActiveCount() { return mPool.getActiveCount(); }
+  public int getPending() { return mPool.getQueue().size(); }
+}
@@ -6,6 +6,7 @@ package com.jbidwatcher.util.queue;
  * Developed by mrs (Morgan Schweers)
  */
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,14 +16,14 @@ import java.util.List;
  * Time: 11:07:18 PM
  *
  */
-public class TimeQueue {
+public class TimeQueue implements TimeQueueInterface {
   private Heap m_heap = new Heap(11);
 
-  public boolean erase(QObject tqo) {
+  public boolean erase(Entry tqo) {
     return m_heap.erase(tqo);
   }
 
-  public class QObject implements Comparable {
+  public class QObject implements Comparable, Entry {
     private long m_when;
     private Object m_event;
 
@@ -50,16 +51,32 @@ public class TimeQueue {
     }
   }
 
-  public void addEvent(long when, Object o) {
-      m_heap.insert(new QObject(when, o));
+  public Entry addEvent(long when, Object o) {
+    QObject tqo = new QObject(when, o);
+    m_heap.insert(tqo);
+    return tqo;
   }
 
-  public List getSorted() {
-    return m_heap.getSorted();
+  public int size() {
+    return m_heap.size();
   }
 
-  public List getUnsorted() {
-    return m_heap.getUnsorted();
+  public void setClock(Clock clock) {
+    //  The heap only ever compares scheduled times, so it never needs the current time.
+  }
+
+  public List<Entry> getSorted() {
+    return entries(m_heap.getSorted());
+  }
+
+  public List<Entry> getUnsorted() {
+    return entries(m_heap.getUnsorted());
+  }
+
+  private static List<Entry> entries(List<?> heap) {
+    List<Entry> rval = new ArrayList<Entry>(heap.size());
+    for(Object step : heap) rval.add((Entry) step);
+    return rval;
   }
 
   public Object getAnyLessThan(long when) {
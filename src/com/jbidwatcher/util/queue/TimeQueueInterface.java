@@ -0,0 +1,66 @@
+package com.jbidwatcher.util.queue;
+
+import java.util.List;
+
+/**
+ * The operations TimeQueueManager needs from the structure that actually holds its timed events.
+ *
+ * There are two implementations; TimeQueue, which is backed by a binary Heap, and TimingWheel,
+ * which is a hierarchical timing wheel with constant time insert and cancel.
+ */
+public interface TimeQueueInterface {
+  /**
+   * A handle to a single scheduled event, which can be passed back to erase() to cancel it.
+   */
+  public interface Entry {
+    Object getEvent();
+    long getTime();
+  }
+
+  /**
+   * Where the queue reads the current time from, in the same terms as the times events are scheduled for.
+   */
+  public interface Clock {
+    long getCurrentTime();
+  }
+
+  /**
+   * Tell the queue which clock its events are scheduled against; queues that
+   * never need the current time can ignore it.
+   *
+   * @param clock - The clock to use.
+   */
+  void setClock(Clock clock);
+
+  /**
+   * Schedule an event.
+   *
+   * @param when - The time (in milliseconds) at which the event becomes due.
+   * @param o - The event object.
+   *
+   * @return A handle which can be used to erase the event later.
+   */
+  Entry addEvent(long when, Object o);
+
+  /**
+   * Cancel a previously scheduled event.
+   *
+   * @param tqo - The handle returned by addEvent.
+   *
+   * @return true if the event was still scheduled and has been removed.
+   */
+  boolean erase(Entry tqo);
+
+  /**
+   * Remove and return any event due strictly before the time provided.
+   *
+   * @param when - The cutoff time.
+   *
+   * @return The event object (not the handle), or null if nothing is due.
+   */
+  Object getAnyLessThan(long when);
+
+  List<? extends Entry> getSorted();
+  List<? extends Entry> getUnsorted();
+  int size();
+}
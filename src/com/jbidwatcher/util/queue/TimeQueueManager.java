@@ -11,11 +11,35 @@ import java.util.*;
  * Date: May 19, 2005
  * Time: 11:41:40 PM
  */
-public class TimeQueueManager implements TimerHandler.WakeupProcess {
-  protected TimeQueue mTQ;
-
+public class TimeQueueManager implements TimerHandler.ScheduledProcess, TimeQueueInterface.Clock {
+  //  By default, events are sent up to this long before they're due, as they're only checked once a second.
+  private static final long LOOKAHEAD = 900;
+
+  protected TimeQueueInterface mTQ;
+  //  Every scheduled carrier, indexed by payload, so erase and contains don't have to scan the queue.
+  private final Map<Object, List<TQCarrier>> mPayloads = new HashMap<Object, List<TQCarrier>>();
+  //  How many events are due at each time, so the next one can be found without asking the queue; only kept when precise.
+  private final TreeMap<Long, Integer> mDueTimes = new TreeMap<Long, Integer>();
+  private boolean mPrecise = false;
+  private volatile TimerHandler mTimer = null;
+
+  /**
+   * Build a manager on whichever queue engine is configured; 'heap' (the
+   * default) or 'wheel' for the hierarchical timing wheel.
+   */
   public TimeQueueManager() {
-    mTQ = new TimeQueue();
+    this(createQueue(JConfig.queryConfiguration("timequeue.engine", "heap")));
+  }
+
+  public TimeQueueManager(TimeQueueInterface tq) {
+    mTQ = tq;
+    //  Events are scheduled in this manager's time, which (for eBay) isn't necessarily the local clock.
+    mTQ.setClock(this);
+  }
+
+  public static TimeQueueInterface createQueue(String engine) {
+    if("wheel".equals(engine)) return new TimingWheel();
+    return new TimeQueue();
   }
 
   protected class TQCarrier {
@@ -23,6 +47,7 @@ public class TimeQueueManager implements TimerHandler.WakeupProcess {
     private String destination_queue;
     private long repeatRate;
     private int repeatCount;
+    private TimeQueueInterface.Entry handle;
 
     public Object getPayload() { return payload; }
     public String getDestinationQueue() { return destination_queue; }
@@ -38,26 +63,61 @@ public class TimeQueueManager implements TimerHandler.WakeupProcess {
     }
   }
 
-  protected long getCurrentTime() { return System.currentTimeMillis(); }
+  public long getCurrentTime() { return System.currentTimeMillis(); }
+
+  /**
+   * In precise mode, events are sent when they're due (to the timer's
+   * accuracy, usually a millisecond or two) instead of up to a second early,
+   * and the timer sleeps until the next one is due.
+   *
+   * @param precise - Whether to send events exactly when due.
+   */
+  public synchronized void setPrecise(boolean precise) {
+    if(precise && !mPrecise) {
+      for(List<TQCarrier> carriers : mPayloads.values()) {
+        for(TQCarrier carrier : carriers) addDue(carrier.handle.getTime());
+      }
+    } else if(!precise) {
+      mDueTimes.clear();
+    }
+    mPrecise = precise;
+  }
+
+  public void setTimer(TimerHandler timer) { mTimer = timer; }
+
+  public synchronized long getNextWakeup() {
+    if(!mPrecise || mDueTimes.isEmpty()) return Long.MAX_VALUE;
+    //  Due times are in this queue's time, which may be adjusted from the local clock.
+    return mDueTimes.firstKey() - (getCurrentTime() - System.currentTimeMillis());
+  }
+
+  private void addDue(long when) {
+    Integer count = mDueTimes.get(when);
+    mDueTimes.put(when, count == null ? 1 : count + 1);
+  }
+
+  private void removeDue(long when) {
+    Integer count = mDueTimes.get(when);
+    if(count == null) return;
+    if(count == 1) mDueTimes.remove(when);
+    else mDueTimes.put(when, count - 1);
+  }
+
+  private synchronized long getLookahead() {
+    //  The queue only returns events due strictly before the time asked for.
+    return mPrecise ? 1 : LOOKAHEAD;
+  }
 
   public boolean check() {
-    Object deQ;
-    while( (deQ = mTQ.getAnyLessThan(getCurrentTime()+900)) != null) {
-      TQCarrier interim = (TQCarrier) deQ;
+    TQCarrier interim;
+    while( (interim = next(getCurrentTime() + getLookahead())) != null) {
       MessageQueue q = MQFactory.getConcrete(interim.getDestinationQueue());
 
       Object payload = interim.getPayload();
-      if(payload instanceof QObject) {
-        q.enqueueBean((QObject)payload);
-      } else if (payload instanceof String) {
+      if (payload instanceof String) {
         q.enqueue((String) payload);
-      } else if(q instanceof PlainMessageQueue) {
-        ((PlainMessageQueue)q).enqueueObject(interim.getPayload());
       } else {
-        //  Payload isn't a QObject or String, and q isn't a plainMessageQueue.
-        //  Trying to submit an arbitrary object to the SwingMessageQueue?  Teh fail.
-        JConfig.log().logDebug("Submitting: " + payload.toString() + " to " + q.toString() + " will probably fail.");
-        q.enqueue(payload.toString());
+        q.enqueueObject(payload);
       }
       if(interim.getRepeatRate() != 0) {
         //  If there's a positive repeat count, decrement it once.
@@ -66,7 +126,7 @@ public class TimeQueueManager implements TimerHandler.WakeupProcess {
         }
         //  As long as repeat count hasn't reached zero, re-add it.
         if(interim.getRepeatCount() != 0) {
-          mTQ.addEvent(getCurrentTime()+interim.getRepeatRate(), interim);
+          schedule(getCurrentTime()+interim.getRepeatRate(), interim);
         }
       }
     }
@@ -74,74 +134,99 @@ public class TimeQueueManager implements TimerHandler.WakeupProcess {
     return false;
   }
 
+  private synchronized TQCarrier next(long when) {
+    TQCarrier carrier = (TQCarrier) mTQ.getAnyLessThan(when);
+    if(carrier != null) unindex(carrier);
+    return carrier;
+  }
+
+  private synchronized void schedule(long when, TQCarrier carrier) {
+    carrier.handle = mTQ.addEvent(when, carrier);
+    if(mPrecise) addDue(when);
+    List<TQCarrier> carriers = mPayloads.get(carrier.getPayload());
+    if(carriers == null) {
+      carriers = new ArrayList<TQCarrier>(1);
+      mPayloads.put(carrier.getPayload(), carriers);
+    }
+    carriers.add(carrier);
+  }
+
+  private void unindex(TQCarrier carrier) {
+    if(mPrecise) removeDue(carrier.handle.getTime());
+    List<TQCarrier> carriers = mPayloads.get(carrier.getPayload());
+    if(carriers != null) {
+      carriers.remove(carrier);
+      if(carriers.isEmpty()) mPayloads.remove(carrier.getPayload());
+    }
+    carrier.handle = null;
+  }
+
   private TQCarrier createCarrier(Object payload, String destination, long repeat, int howmany) {
     return new TQCarrier(payload, destination, repeat, howmany);
   }
 
   public void add(Object payload, String destination, long when) {
-    mTQ.addEvent(when, createCarrier(payload, destination, 0, 1));
+    schedule(when, createCarrier(payload, destination, 0, 1));
+    wakeTimer();
   }
 
   public void add(Object payload, String destination, long when, long repeat) {
-    mTQ.addEvent(when, createCarrier(payload, destination, repeat, -1));
+    schedule(when, createCarrier(payload, destination, repeat, -1));
+    wakeTimer();
   }
 
   public void add(Object payload, String destination, long when, long repeat, int howmany) {
-    mTQ.addEvent(when, createCarrier(payload, destination, repeat, howmany));
-  }
-
-  public boolean erase(Object payload) {
-    List<TimeQueue.QObject> doErase = new ArrayList<TimeQueue.QObject>();
-    List current = mTQ.getUnsorted();
-    boolean didErase = false;
-    for(Object aCurrent : current) {
-      TimeQueue.QObject tqo = (TimeQueue.QObject) aCurrent;
-      TQCarrier event = (TQCarrier) tqo.getEvent();
-      if (event.getPayload() == payload || event.getPayload().equals(payload)) {
-        doErase.add(tqo);
-        didErase = true;
-      }
-    }
-    if(didErase) {
-      for (TimeQueue.QObject delMe : doErase) {
-        mTQ.erase(delMe);
-      }
+    schedule(when, createCarrier(payload, destination, repeat, howmany));
+    wakeTimer();
+  }
+
+  //  Called without holding this object's lock, as the timer holds its own lock while asking for the next wakeup.
+  private void wakeTimer() {
+    TimerHandler timer = mTimer;
+    if(timer != null && getNextWakeup() != Long.MAX_VALUE) timer.wakeup();
+  }
+
+  public synchronized boolean erase(Object payload) {
+    List<TQCarrier> carriers = mPayloads.remove(payload);
+    if(carriers == null) return false;
+
+    for(TQCarrier carrier : carriers) {
+      if(mPrecise) removeDue(carrier.handle.getTime());
+      mTQ.erase(carrier.handle);
+      carrier.handle = null;
     }
-    return didErase;
+    return true;
   }
 
   public interface Matcher {
     public boolean match(Object payload, Object queue, long when);
   }
 
-  public boolean contains(Matcher m) {
-    for(Object o : mTQ.getUnsorted()) {
-      TimeQueue.QObject qo = (TimeQueue.QObject) o;
-      TQCarrier carrier = (TQCarrier) qo.getEvent();
-      if(m.match(carrier.getPayload(), carrier.getDestinationQueue(), qo.getTime())) return true;
+  public synchronized boolean contains(Matcher m) {
+    for(List<TQCarrier> carriers : mPayloads.values()) {
+      for(TQCarrier carrier : carriers) {
+        if(m.match(carrier.getPayload(), carrier.getDestinationQueue(), carrier.handle.getTime())) return true;
+      }
     }
     return false;
   }
 
-  public boolean contains(Object payload) {
-    for(Object o : mTQ.getUnsorted()) {
-      TimeQueue.QObject qo = (TimeQueue.QObject)o;
-      TQCarrier carrier = (TQCarrier) qo.getEvent();
-      if(payload.equals(carrier.getPayload())) return true;
-    }
+  public synchronized boolean contains(Object payload) {
+    return mPayloads.containsKey(payload);
+  }
 
-    return false;
+  public int size() {
+    return mTQ.size();
   }
 
   public void dumpQueue(String prefix) {
-    List current = mTQ.getSorted();
+    List<? extends TimeQueueInterface.Entry> current = mTQ.getSorted();
 
     if(current.isEmpty()) {
       JConfig.log().logDebug(prefix + ": queue empty");
     }
 
-    for(Object aCurrent : current) {
-      TimeQueue.QObject step = (TimeQueue.QObject) aCurrent;
+    for(TimeQueueInterface.Entry step : current) {
       TQCarrier event = (TQCarrier) step.getEvent();
       JConfig.log().logDebug(prefix + ": Queue: " + event.getDestinationQueue());
       JConfig.log().logDebug(prefix + ": Object: [" + event.getPayload() + "]");
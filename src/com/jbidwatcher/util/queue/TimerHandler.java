@@ -34,17 +34,74 @@ public class TimerHandler extends Thread {
     boolean check() throws InterruptedException;
   }
 
+  /**
+   * A process which knows when it next needs to be woken, so it can be
+   * checked right then, instead of at the next once-a-second wakeup.
+   */
+  public interface ScheduledProcess extends WakeupProcess {
+    /**
+     * A process which isn't going to handle an event that's due when it's
+     * checked must not return that event's time, or it'll be checked
+     * continually until it does.
+     *
+     * @return The local time (as System.currentTimeMillis) at which the process next needs checking, or Long.MAX_VALUE if it doesn't.
+     */
+    long getNextWakeup();
+
+    /**
+     * @param timer - The timer checking this process, to call wakeup() on when something is scheduled sooner.
+     */
+    void setTimer(TimerHandler timer);
+  }
+
+  private final Object mWakeLock = new Object();
+  private boolean mWoken = false;
+
   public TimerHandler(WakeupProcess inWake, long sleeptime) {
-    _toWake = inWake;
+    this(inWake);
     _sleep_ms = sleeptime;
-    setDaemon(true);
   }
 
   public TimerHandler(WakeupProcess inWake) {
     _toWake = inWake;
+    if(inWake instanceof ScheduledProcess) ((ScheduledProcess)inWake).setTimer(this);
     setDaemon(true);
   }
 
+  /**
+   * Recheck when the process next needs waking, because something's been scheduled.
+   */
+  public void wakeup() {
+    synchronized(mWakeLock) {
+      mWoken = true;
+      mWakeLock.notifyAll();
+    }
+  }
+
+  /**
+   * Sleep for the usual time, or until the process needs checking, if that's sooner.
+   *
+   * @throws InterruptedException - If the timer is interrupted while sleeping.
+   */
+  private void sleepUntilNeeded() throws InterruptedException {
+    //  While paused, the process isn't checked, so whatever's due would stay due.
+    if(!(_toWake instanceof ScheduledProcess) || _remainAsleep) {
+      sleep(_sleep_ms);
+      return;
+    }
+
+    ScheduledProcess process = (ScheduledProcess) _toWake;
+    long until = System.currentTimeMillis() + _sleep_ms;
+    synchronized(mWakeLock) {
+      while(!mWoken) {
+        long remaining = Math.min(until, process.getNextWakeup()) - System.currentTimeMillis();
+        if(remaining <= 0) break;
+        mWakeLock.wait(remaining);
+      }
+      mWoken = false;
+    }
+  }
+
   public void pause() { _remainAsleep = true; }
   public void unpause() { _remainAsleep = false; }
   public boolean isPaused() { return _remainAsleep; }
@@ -57,7 +114,7 @@ public class TimerHandler extends Thread {
         interrupted = true;
       } else {
         try {
-          sleep(_sleep_ms);
+          sleepUntilNeeded();
           if (!_remainAsleep) {
             _toWake.check();
           }
@@ -0,0 +1,253 @@
+package com.jbidwatcher.util.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel, as an alternative to the Heap-backed TimeQueue.
+ *
+ * Time is divided into ticks of a fixed resolution.  The lowest wheel holds
+ * events due in the next WHEEL_SIZE ticks, one slot per tick; each higher
+ * wheel covers WHEEL_SIZE slots of the wheel below it.  When the lowest wheel
+ * wraps, the next slot of the wheel above is cascaded down into it.  Events
+ * live in doubly linked slot lists, so inserting and cancelling (through the
+ * Entry handle) are constant time, and the cost of a tick doesn't depend on
+ * how many events are outstanding.
+ *
+ * All public methods are synchronized, matching Heap.
+ */
+public class TimingWheel implements TimeQueueInterface {
+  private static final int WHEEL_BITS = 6;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int LEVELS = 6;
+  private static final long DEFAULT_RESOLUTION = 100;
+
+  private final long mResolution;
+  private final Node[][] mSlots = new Node[LEVELS][WHEEL_SIZE];
+  private final int[] mLevelCounts = new int[LEVELS];
+  //  Events further out than the top wheel can reach; very rare, since the wheels span years.
+  private Node mOverflow = null;
+  private int mCount = 0;
+  private long mCurrentTick = -1;
+  private Clock mClock = SYSTEM_CLOCK;
+
+  private static final Clock SYSTEM_CLOCK = new Clock() {
+    public long getCurrentTime() { return System.currentTimeMillis(); }
+  };
+
+  private static final int OVERFLOW_LEVEL = LEVELS;
+
+  private class Node implements Entry, Comparable<Node> {
+    private final long mWhen;
+    private final long mTick;
+    private final Object mEvent;
+    private Node mPrev, mNext;
+    private int mLevel = -1;
+    private int mSlot;
+
+    private Node(long when, Object event) {
+      mWhen = when;
+      mTick = when / mResolution;
+      mEvent = event;
+    }
+
+    public Object getEvent() { return mEvent; }
+    public long getTime() { return mWhen; }
+
+    public int compareTo(Node cmp) {
+      if (mWhen < cmp.mWhen) return -1;
+      if (mWhen > cmp.mWhen) return 1;
+
+      return 0;
+    }
+  }
+
+  public TimingWheel() {
+    this(DEFAULT_RESOLUTION);
+  }
+
+  /**
+   * @param resolution - The width of a single tick, in milliseconds.
+   */
+  public TimingWheel(long resolution) {
+    if (resolution <= 0) throw new IllegalArgumentException();
+    mResolution = resolution;
+  }
+
+  public synchronized void setClock(Clock clock) {
+    mClock = clock == null ? SYSTEM_CLOCK : clock;
+  }
+
+  public synchronized Entry addEvent(long when, Object o) {
+    Node n = new Node(when, o);
+    if (mCurrentTick == -1 || mCount == 0) mCurrentTick = Math.max(mCurrentTick, Math.min(n.mTick, now()));
+    place(n);
+    mCount++;
+    return n;
+  }
+
+  public synchronized boolean erase(Entry tqo) {
+    if (!(tqo instanceof Node)) return false;
+    Node n = (Node) tqo;
+    if (n.mLevel == -1) return false;
+    unlink(n);
+    mCount--;
+    return true;
+  }
+
+  public synchronized Object getAnyLessThan(long when) {
+    if (mCount == 0) {
+      if (mCurrentTick != -1) mCurrentTick = Math.max(mCurrentTick, when / mResolution);
+      return null;
+    }
+
+    long target = when / mResolution;
+    while (true) {
+      Node found = null;
+      for (Node step = mSlots[0][(int) (mCurrentTick & WHEEL_MASK)]; step != null; step = step.mNext) {
+        if (step.mWhen < when && (found == null || step.mWhen < found.mWhen)) found = step;
+      }
+      if (found != null) {
+        unlink(found);
+        mCount--;
+        return found.mEvent;
+      }
+      if (mCurrentTick >= target) return null;
+      advance(target);
+    }
+  }
+
+  public synchronized List<Entry> getUnsorted() {
+    return new ArrayList<Entry>(nodes());
+  }
+
+  public List<Entry> getSorted() {
+    List<Node> base;
+    synchronized(this) {
+      base = nodes();
+    }
+    Collections.sort(base);
+    return new ArrayList<Entry>(base);
+  }
+
+  //  Must be called holding the wheel's lock.
+  private List<Node> nodes() {
+    List<Node> rval = new ArrayList<Node>(mCount);
+    for (Node[] level : mSlots) {
+      for (Node head : level) {
+        for (Node step = head; step != null; step = step.mNext) rval.add(step);
+      }
+    }
+    for (Node step = mOverflow; step != null; step = step.mNext) rval.add(step);
+
+    return rval;
+  }
+
+  public synchronized int size() {
+    return mCount;
+  }
+
+  private long now() {
+    return mClock.getCurrentTime() / mResolution;
+  }
+
+  /**
+   * Move the current tick forward by at least one, but no further than
+   * target, skipping over empty wheels when possible and cascading higher
+   * wheels whenever the lowest wheel wraps.
+   *
+   * @param target - The tick we're trying to reach.
+   */
+  private void advance(long target) {
+    long next = mCurrentTick + 1;
+    int empty = 0;
+    while (empty < LEVELS && mLevelCounts[empty] == 0) empty++;
+    if (empty != 0) {
+      //  Every wheel below 'empty' has nothing in it, so nothing can become
+      //  due before the next point where that wheel (or the overflow) gets cascaded.
+      long span = (1L << (WHEEL_BITS * empty)) - 1;
+      long wrap = (mCurrentTick | span) + 1;
+      next = Math.max(next, Math.min(wrap, target));
+    }
+    mCurrentTick = next;
+
+    if ((mCurrentTick & WHEEL_MASK) == 0) cascade(1);
+  }
+
+  private void cascade(int level) {
+    if (level == LEVELS) {
+      Node overflow = mOverflow;
+      mOverflow = null;
+      replace(overflow);
+      return;
+    }
+
+    int shift = WHEEL_BITS * level;
+    int slot = (int) ((mCurrentTick >> shift) & WHEEL_MASK);
+    //  Cascade the wheel above first; nothing it redistributes can land back in this slot.
+    if (slot == 0) cascade(level + 1);
+
+    Node head = mSlots[level][slot];
+    mSlots[level][slot] = null;
+    for (Node step = head; step != null; step = step.mNext) mLevelCounts[level]--;
+    replace(head);
+  }
+
+  private void replace(Node head) {
+    while (head != null) {
+      Node following = head.mNext;
+      head.mPrev = head.mNext = null;
+      head.mLevel = -1;
+      place(head);
+      head = following;
+    }
+  }
+
+  private void place(Node n) {
+    long delta = n.mTick - mCurrentTick;
+    if (delta < 0) {
+      //  Already overdue; drop it into the current slot so the next check picks it up.
+      link(n, 0, (int) (mCurrentTick & WHEEL_MASK));
+      return;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+      if (delta < (1L << (WHEEL_BITS * (level + 1)))) {
+        link(n, level, (int) ((n.mTick >> (WHEEL_BITS * level)) & WHEEL_MASK));
+        return;
+      }
+    }
+
+    n.mLevel = OVERFLOW_LEVEL;
+    n.mNext = mOverflow;
+    if (mOverflow != null) mOverflow.mPrev = n;
+    mOverflow = n;
+  }
+
+  private void link(Node n, int level, int slot) {
+    Node head = mSlots[level][slot];
+    n.mLevel = level;
+    n.mSlot = slot;
+    n.mPrev = null;
+    n.mNext = head;
+    if (head != null) head.mPrev = n;
+    mSlots[level][slot] = n;
+    mLevelCounts[level]++;
+  }
+
+  private void unlink(Node n) {
+    if (n.mPrev != null) {
+      n.mPrev.mNext = n.mNext;
+    } else if (n.mLevel == OVERFLOW_LEVEL) {
+      mOverflow = n.mNext;
+    } else {
+      mSlots[n.mLevel][n.mSlot] = n.mNext;
+    }
+    if (n.mNext != null) n.mNext.mPrev = n.mPrev;
+    if (n.mLevel != OVERFLOW_LEVEL) mLevelCounts[n.mLevel]--;
+    n.mPrev = n.mNext = null;
+    n.mLevel = -1;
+  }
+}
@@ -0,0 +1,60 @@
+package com.jbidwatcher.util.queue;
+/*
+ * Copyright (c) 2000-2007, CyberFOX Software, Inc. All Rights Reserved.
+ *
+ * Developed by mrs (Morgan Schweers)
+ */
+
+/**
+ * A named message queue, along with the type of message published on it.
+ * Publishing to a topic (MQFactory.publish) hands the message object itself
+ * to the queue's listeners; nothing is copied or serialized on the way, so
+ * messages should not be changed once they're published.
+ *
+ * The names are the same queue names used with MQFactory.getConcrete(), so
+ * String messages can still be sent to the same queues.
+ *
+ * @param <T> - The type of message published on the topic.
+ */
+public final class Topic<T> {
+  /** Items to be added, from drag-and-drop, the clipboard, or searches. */
+  public static final Topic<DropQObject> DROP = new Topic<DropQObject>("drop", DropQObject.class);
+
+  private final String mName;
+  private final Class<T> mType;
+
+  /**
+   * A listener which is only handed messages of the topic's type.
+   *
+   * @param <T> - The type of message it handles.
+   */
+  public interface Subscriber<T> {
+    void messageAction(T message);
+  }
+
+  /**
+   * A subscriber which may block for a long time, like MessageQueue.BlockingListener.
+   *
+   * @param <T> - The type of message it handles.
+   */
+  public interface BlockingSubscriber<T> extends Subscriber<T> { }
+
+  public Topic(String name, Class<T> type) {
+    mName = name;
+    mType = type;
+  }
+
+  /**
+   * @param friendlyName - The auction server's friendly name, which is also the name of its queue.
+   *
+   * @return The topic for commands to that auction server.
+   */
+  public static Topic<AuctionQObject> auctionServer(String friendlyName) {
+    return new Topic<AuctionQObject>(friendlyName, AuctionQObject.class);
+  }
+
+  public String getName() { return mName; }
+  public Class<T> getType() { return mType; }
+
+  public String toString() { return mName + " (" + mType.getSimpleName() + ")"; }
+}